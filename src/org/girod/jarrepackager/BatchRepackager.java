@@ -0,0 +1,275 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.girod.jarrepackager.model.OutputModel;
+import org.girod.jarrepackager.parser.PackagerError;
+import org.girod.jarrepackager.zip.ZipArchivePool;
+
+/**
+ * Performs the repackagings of several properties files in the same JVM.
+ *
+ * <h1>Dependencies</h1>
+ * A repackaging which has the output file of another repackaging in its input files depends on this other repackaging,
+ * and is only started when this other repackaging has finished successfully. The output files of other repackagings
+ * must be declared as explicit files in the properties files, because they may not exist when the properties files are
+ * parsed. The repackagings which do not depend on each other are performed concurrently, on
+ * {@link #getBatchThreads()} threads.
+ *
+ * <h1>Shared input files</h1>
+ * All the repackagings open their input files in the same shared {@link ZipArchivePool}, so the central directory of an
+ * input file used by several repackagings is only parsed once. If the settings have a pool (see
+ * {@link JarRepackager#getArchivePool()}), this pool is used and is not closed at the end of the batch.
+ *
+ * @since 0.2
+ */
+public class BatchRepackager {
+   private final JarRepackager settings;
+   private final List<File> propertiesFiles = new ArrayList<>();
+   private int batchThreads = Runtime.getRuntime().availableProcessors();
+   private ZipArchivePool archivePool = null;
+
+   /**
+    * Constructor.
+    *
+    * @param settings the repackager whose settings are used for all the repackagings, and which receives their errors
+    */
+   public BatchRepackager(JarRepackager settings) {
+      this.settings = settings;
+   }
+
+   /**
+    * Add a properties file to the batch.
+    *
+    * @param propertiesFile the properties file
+    */
+   public void addPropertiesFile(File propertiesFile) {
+      propertiesFiles.add(propertiesFile);
+   }
+
+   /**
+    * Set the maximum number of repackagings performed concurrently.
+    *
+    * @param batchThreads the number of repackagings
+    */
+   public void setBatchThreads(int batchThreads) {
+      this.batchThreads = Math.max(1, batchThreads);
+   }
+
+   /**
+    * Return the maximum number of repackagings performed concurrently.
+    *
+    * @return the number of repackagings
+    */
+   public int getBatchThreads() {
+      return batchThreads;
+   }
+
+   /**
+    * Return the pool of input files used by the last batch. The pool is closed at the end of the batch, except if it is
+    * the pool of the settings.
+    *
+    * @return the pool, or null if the batch has not been performed
+    */
+   public ZipArchivePool getArchivePool() {
+      return archivePool;
+   }
+
+   private void addError(Job job, String message) {
+      settings.getErrors().add(new PackagerError(job.propertiesFile.getName() + ": " + message));
+   }
+
+   /**
+    * Perform all the repackagings of the batch.
+    *
+    * @return true if all the repackagings could be performed
+    * @throws IOException
+    */
+   public boolean repackage() throws IOException {
+      boolean ownPool = settings.getArchivePool() == null;
+      if (ownPool) {
+         archivePool = new ZipArchivePool(settings.getMaxOpenInputs());
+         archivePool.setShared(true);
+      } else {
+         archivePool = settings.getArchivePool();
+      }
+      List<Job> jobs = new ArrayList<>();
+      Map<File, Job> producers = new HashMap<>();
+      for (File propertiesFile : propertiesFiles) {
+         Job job = new Job(propertiesFile);
+         jobs.add(job);
+         job.repackager.copySettings(settings);
+         job.repackager.setArchivePool(archivePool);
+         job.repackager.setPropertiesFile(propertiesFile);
+         job.repackager.loadProperties();
+         if (!job.repackager.getErrors().isEmpty()) {
+            for (PackagerError error : job.repackager.getErrors()) {
+               job.fail(error.getMessage());
+            }
+         } else if (job.repackager.getOutputFile() == null || job.repackager.getInputFiles() == null) {
+            job.fail("No input files or no output file");
+         } else {
+            for (OutputModel output : job.repackager.getOutputModels()) {
+               File outputFile = output.getOutputFile().getAbsoluteFile();
+               if (producers.containsKey(outputFile)) {
+                  job.fail("Output File " + outputFile.getPath() + " is also the output of " + producers.get(outputFile).propertiesFile.getName());
+               } else {
+                  producers.put(outputFile, job);
+               }
+            }
+         }
+      }
+      for (Job job : jobs) {
+         File[] inputFiles = job.repackager.getInputFiles();
+         for (int i = 0; inputFiles != null && i < inputFiles.length; i++) {
+            Job producer = producers.get(inputFiles[i].getAbsoluteFile());
+            if (producer != null && producer != job && !producer.dependents.contains(job)) {
+               producer.dependents.add(job);
+               job.pendingDependencies++;
+            }
+         }
+      }
+      for (Job job : jobs) {
+         if (job.failed) {
+            skipDependents(job);
+         }
+      }
+      ExecutorService executor = Executors.newFixedThreadPool(batchThreads);
+      try {
+         CompletionService<Job> completion = new ExecutorCompletionService<>(executor);
+         int running = 0;
+         for (Job job : jobs) {
+            if (!job.failed && job.pendingDependencies == 0) {
+               completion.submit(job);
+               running++;
+            }
+         }
+         while (running > 0) {
+            Job job = completion.take().get();
+            running--;
+            job.finished = true;
+            if (job.failed) {
+               skipDependents(job);
+               continue;
+            }
+            for (Job dependent : job.dependents) {
+               dependent.pendingDependencies--;
+               if (!dependent.failed && dependent.pendingDependencies == 0) {
+                  completion.submit(dependent);
+                  running++;
+               }
+            }
+         }
+      } catch (InterruptedException ex) {
+         Thread.currentThread().interrupt();
+         throw new IOException("Batch interrupted", ex);
+      } catch (ExecutionException ex) {
+         throw new IOException(ex.getCause());
+      } finally {
+         executor.shutdownNow();
+         // the jobs which are still running must be stopped before the input files are closed
+         JarRepackager.awaitTermination(executor);
+         if (ownPool) {
+            archivePool.close();
+         }
+      }
+      boolean success = true;
+      for (Job job : jobs) {
+         if (!job.failed && !job.finished) {
+            job.fail("Cyclic dependency between the output and input files");
+         }
+         if (job.failed) {
+            success = false;
+            for (String message : job.errors) {
+               addError(job, message);
+            }
+         }
+      }
+      return success;
+   }
+
+   private void skipDependents(Job job) {
+      for (Job dependent : job.dependents) {
+         if (!dependent.failed) {
+            dependent.fail("Not performed because " + job.propertiesFile.getName() + " failed");
+            skipDependents(dependent);
+         }
+      }
+   }
+
+   /**
+    * The repackaging of one properties file.
+    */
+   private static class Job implements Callable<Job> {
+      private final File propertiesFile;
+      private final JarRepackager repackager = new JarRepackager();
+      private final List<Job> dependents = new ArrayList<>();
+      private final List<String> errors = new ArrayList<>();
+      private int pendingDependencies = 0;
+      private boolean failed = false;
+      private boolean finished = false;
+
+      private Job(File propertiesFile) {
+         this.propertiesFile = propertiesFile;
+      }
+
+      private void fail(String message) {
+         failed = true;
+         errors.add(message);
+      }
+
+      @Override
+      public Job call() {
+         try {
+            repackager.repackage();
+         } catch (IOException ex) {
+            repackager.getErrors().add(new PackagerError(ex));
+         }
+         for (PackagerError error : repackager.getErrors()) {
+            fail(error.getMessage());
+         }
+         return this;
+      }
+   }
+}
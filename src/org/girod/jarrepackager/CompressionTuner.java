@@ -0,0 +1,564 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import org.girod.jarrepackager.model.CompressionPolicy;
+import org.girod.jarrepackager.zip.ZipArchive;
+import org.girod.jarrepackager.zip.ZipArchivePool;
+import org.girod.jarrepackager.zip.ZipConstants;
+
+/**
+ * Chooses the compression of the entries of the output file from measures on the current machine.
+ *
+ * <h1>Categories</h1>
+ * The entries are grouped in categories by the extension of their name, for example the class files or the properties
+ * files. The entries without extension, and the entries to which a rule of the compression policy already applies, are
+ * not tuned.
+ *
+ * <h1>Measures</h1>
+ * For each category, a sample of about {@link #getSampleSize()} bytes is read from entries spread over the category.
+ * The sample is stored and deflated with each level, and the time and the size of each encoding are extrapolated to
+ * all the entries of the category. In the raw copy mode, the entries of a category can also be copied as they are,
+ * which only costs the copy of their compressed content.
+ *
+ * <h1>Target</h1>
+ * The target is the time of the encoding of the tuned entries, either as a budget in milliseconds, or as a factor of
+ * the time of the default level (so that a factor of 2 means "minimize the size within twice the time of the default
+ * level"). The time is shared by the compression threads. Starting from the fastest encoding of each category, the
+ * encodings which save the most bytes for their additional time are chosen while they fit in the target.
+ *
+ * @since 0.2
+ */
+public class CompressionTuner {
+   /**
+    * The target is a time budget in milliseconds.
+    */
+   public static final short TIME_BUDGET = 0;
+   /**
+    * The target is a factor of the time of the default level.
+    */
+   public static final short TIME_FACTOR = 1;
+   /**
+    * The default size of the sample of each category, in bytes.
+    */
+   public static final long DEFAULT_SAMPLE_SIZE = 512 * 1024;
+   private static final int DEFAULT_LEVEL = 6;
+   // the options are the copy of the compressed content, the stored method, and the deflate levels 1 to 9
+   private static final int COPY = 0;
+   private static final int STORED = 1;
+   private static final int OPTIONS = 11;
+   private static final int MEASURE_RUNS = 2;
+   private static final int MAX_EXTENSION_LENGTH = 10;
+   private short target = TIME_FACTOR;
+   private double targetValue = 1d;
+   private long sampleSize = DEFAULT_SAMPLE_SIZE;
+
+   public CompressionTuner() {
+   }
+
+   /**
+    * Parse a target: a number of milliseconds, a number of seconds followed by "s", or a factor of the time of the
+    * default level followed by "x".
+    *
+    * @param value the value
+    * @return the tuner, or null if the value is invalid
+    */
+   public static CompressionTuner parse(String value) {
+      value = value.trim().toLowerCase(Locale.ROOT);
+      CompressionTuner tuner = new CompressionTuner();
+      try {
+         if (value.endsWith("x")) {
+            tuner.setTimeFactor(Double.parseDouble(value.substring(0, value.length() - 1)));
+         } else if (value.endsWith("ms")) {
+            tuner.setTimeBudget(Long.parseLong(value.substring(0, value.length() - 2)));
+         } else if (value.endsWith("s")) {
+            tuner.setTimeBudget(Math.round(Double.parseDouble(value.substring(0, value.length() - 1)) * 1000d));
+         } else {
+            tuner.setTimeBudget(Long.parseLong(value));
+         }
+      } catch (NumberFormatException ex) {
+         return null;
+      }
+      return tuner.targetValue >= 0 ? tuner : null;
+   }
+
+   /**
+    * Set the target as a time budget.
+    *
+    * @param budget the budget in milliseconds
+    */
+   public void setTimeBudget(long budget) {
+      this.target = TIME_BUDGET;
+      this.targetValue = budget;
+   }
+
+   /**
+    * Set the target as a factor of the time of the default level.
+    *
+    * @param factor the factor
+    */
+   public void setTimeFactor(double factor) {
+      this.target = TIME_FACTOR;
+      this.targetValue = factor;
+   }
+
+   /**
+    * Return the type of the target.
+    *
+    * @return {@link #TIME_BUDGET} or {@link #TIME_FACTOR}
+    */
+   public short getTarget() {
+      return target;
+   }
+
+   /**
+    * Return the value of the target.
+    *
+    * @return the budget in milliseconds, or the factor of the time of the default level
+    */
+   public double getTargetValue() {
+      return targetValue;
+   }
+
+   /**
+    * Set the size of the sample of each category.
+    *
+    * @param sampleSize the size in bytes
+    */
+   public void setSampleSize(long sampleSize) {
+      this.sampleSize = Math.max(1, sampleSize);
+   }
+
+   /**
+    * Return the size of the sample of each category.
+    *
+    * @return the size in bytes
+    */
+   public long getSampleSize() {
+      return sampleSize;
+   }
+
+   /**
+    * Return a description of the target, used in the fingerprint of the settings of the incremental mode.
+    *
+    * @return the description
+    */
+   public String getDescription() {
+      if (target == TIME_BUDGET) {
+         return "autoTune=" + (long) targetValue + "ms\n";
+      } else {
+         return "autoTune=" + targetValue + "x\n";
+      }
+   }
+
+   /**
+    * Create a new tuning.
+    *
+    * @param policy the compression policy whose rules have precedence on the tuning, or null
+    * @param rawCopy true if the entries can be copied without being inflated
+    * @param threads the number of compression threads
+    * @return the tuning
+    */
+   public Tuning createTuning(CompressionPolicy policy, boolean rawCopy, int threads) {
+      return new Tuning(policy, rawCopy, threads);
+   }
+
+   private static String getExtension(CharSequence path) {
+      int length = path.length();
+      for (int i = length - 1; i >= 0; i--) {
+         char c = path.charAt(i);
+         if (c == '.') {
+            return i > 0 && i < length - 1 && path.charAt(i - 1) != '/' ? path.subSequence(i + 1, length).toString() : null;
+         } else if (length - i > MAX_EXTENSION_LENGTH || (!Character.isLetterOrDigit(c) && c != '_' && c != '-')) {
+            return null;
+         }
+      }
+      return null;
+   }
+
+   private static String getOptionName(int option) {
+      switch (option) {
+         case COPY:
+            return "copied";
+         case STORED:
+            return "stored";
+         default:
+            return "level " + (option - 1);
+      }
+   }
+
+   private static String formatSize(double size) {
+      if (size >= 1024 * 1024) {
+         return String.format(Locale.ROOT, "%.1f MB", size / (1024 * 1024));
+      } else {
+         return String.format(Locale.ROOT, "%.1f KB", size / 1024);
+      }
+   }
+
+   private static String formatTime(double nanos) {
+      return String.format(Locale.ROOT, "%.0f ms", nanos / 1000000d);
+   }
+
+   /**
+    * One tuning of the compression of the entries of an output file. The entries are added with
+    * {@link #addEntry(CharSequence, ZipArchive, int)}, then the tuning is performed with {@link #tune(ZipArchivePool)}.
+    */
+   public class Tuning {
+      private final CompressionPolicy basePolicy;
+      private final boolean rawCopy;
+      private final int threads;
+      private final Map<String, Category> categories = new TreeMap<>();
+      private CompressionPolicy policy = null;
+      private String report = null;
+      private double estimatedTime = 0;
+      private double estimatedSize = 0;
+
+      private Tuning(CompressionPolicy basePolicy, boolean rawCopy, int threads) {
+         this.basePolicy = basePolicy;
+         this.rawCopy = rawCopy;
+         this.threads = Math.max(1, threads);
+      }
+
+      /**
+       * Add an entry of the output file.
+       *
+       * @param path the path of the entry
+       * @param archive the input archive of the entry
+       * @param index the index of the entry in its archive
+       */
+      public void addEntry(CharSequence path, ZipArchive archive, int index) {
+         if (basePolicy != null && basePolicy.getRule(path) != null) {
+            return;
+         }
+         String extension = getExtension(path);
+         if (extension == null) {
+            return;
+         }
+         Category category = categories.get(extension);
+         if (category == null) {
+            category = new Category(extension);
+            categories.put(extension, category);
+         }
+         category.archives.add(archive);
+         category.indexes.add(index);
+         category.size += archive.getSize(index);
+         category.compressedSize += archive.getCompressedSize(index);
+      }
+
+      /**
+       * Measure the encodings of the categories of the entries, choose the encoding of each category, and return the
+       * resulting compression policy.
+       *
+       * @param archivePool the pool of the input archives, or null
+       * @return the compression policy
+       * @throws IOException
+       */
+      public CompressionPolicy tune(ZipArchivePool archivePool) throws IOException {
+         for (Category category : categories.values()) {
+            category.measure(archivePool, sampleSize);
+         }
+         double budget;
+         double defaultTime = 0;
+         double defaultSize = 0;
+         for (Category category : categories.values()) {
+            if (category.sampled) {
+               defaultTime += category.times[DEFAULT_LEVEL + 1];
+               defaultSize += category.sizes[DEFAULT_LEVEL + 1];
+            }
+         }
+         if (target == TIME_BUDGET) {
+            budget = targetValue * 1000000d * threads;
+         } else {
+            budget = targetValue * defaultTime;
+         }
+         choose(budget);
+         policy = createPolicy();
+         report = createReport(defaultTime, defaultSize);
+         return policy;
+      }
+
+      private void choose(double budget) {
+         double used = 0;
+         for (Category category : categories.values()) {
+            if (category.sampled) {
+               category.choice = rawCopy ? COPY : STORED;
+               for (int option = STORED; option < OPTIONS; option++) {
+                  if (category.times[option] < category.times[category.choice]) {
+                     category.choice = option;
+                  }
+               }
+               used += category.times[category.choice];
+            }
+         }
+         while (true) {
+            // choose the encoding which saves the most bytes for its additional time
+            Category bestCategory = null;
+            int bestOption = -1;
+            double bestRatio = -1;
+            for (Category category : categories.values()) {
+               if (!category.sampled) {
+                  continue;
+               }
+               int choice = category.choice;
+               for (int option = STORED; option < OPTIONS; option++) {
+                  double saved = category.sizes[choice] - category.sizes[option];
+                  double added = category.times[option] - category.times[choice];
+                  if (saved > 0 && used + added <= budget) {
+                     double ratio = saved / Math.max(added, 1d);
+                     if (ratio > bestRatio) {
+                        bestRatio = ratio;
+                        bestCategory = category;
+                        bestOption = option;
+                     }
+                  }
+               }
+            }
+            if (bestCategory == null) {
+               break;
+            }
+            used += bestCategory.times[bestOption] - bestCategory.times[bestCategory.choice];
+            bestCategory.choice = bestOption;
+         }
+         estimatedTime = used / threads;
+         estimatedSize = 0;
+         for (Category category : categories.values()) {
+            if (category.sampled) {
+               estimatedSize += category.sizes[category.choice];
+            }
+         }
+      }
+
+      private CompressionPolicy createPolicy() {
+         CompressionPolicy tunedPolicy = new CompressionPolicy();
+         if (basePolicy != null) {
+            tunedPolicy.setDetectIncompressible(basePolicy.isDetectingIncompressible());
+            tunedPolicy.setStoreClasses(basePolicy.isStoringClasses());
+            for (CompressionPolicy.Rule rule : basePolicy.getRules()) {
+               tunedPolicy.addRule(rule.getPattern(), rule.getMethod(), rule.getLevel());
+            }
+         }
+         for (Category category : categories.values()) {
+            if (!category.sampled || category.choice == COPY) {
+               continue;
+            }
+            String pattern = "**/*." + category.extension;
+            if (category.choice == STORED) {
+               tunedPolicy.addRule(pattern, ZipConstants.STORED, Deflater.DEFAULT_COMPRESSION);
+            } else {
+               tunedPolicy.addRule(pattern, ZipConstants.DEFLATED, category.choice - 1);
+            }
+         }
+         return tunedPolicy;
+      }
+
+      private String createReport(double defaultTime, double defaultSize) {
+         StringBuilder buf = new StringBuilder();
+         buf.append("Compression tuned for ");
+         if (target == TIME_BUDGET) {
+            buf.append((long) targetValue).append(" ms");
+         } else {
+            buf.append(targetValue).append(" times the default level");
+         }
+         buf.append(" with ").append(threads).append(" compression threads\n");
+         for (Category category : categories.values()) {
+            if (!category.sampled) {
+               continue;
+            }
+            buf.append("   *.").append(category.extension).append(": ").append(category.indexes.size()).append(" entries, ");
+            buf.append(formatSize(category.size)).append(", ").append(getOptionName(category.choice));
+            buf.append(", ").append(formatTime(category.times[category.choice] / threads));
+            buf.append(", ").append(formatSize(category.sizes[category.choice])).append('\n');
+         }
+         buf.append("   estimated: ").append(formatTime(estimatedTime)).append(", ").append(formatSize(estimatedSize));
+         buf.append(" (default level: ").append(formatTime(defaultTime / threads)).append(", ");
+         buf.append(formatSize(defaultSize)).append(')');
+         return buf.toString();
+      }
+
+      /**
+       * Return the compression policy resulting from the tuning.
+       *
+       * @return the policy, or null if the tuning has not been performed
+       */
+      public CompressionPolicy getPolicy() {
+         return policy;
+      }
+
+      /**
+       * Return the report of the tuning, with the encoding chosen for each category and its estimated time and size.
+       *
+       * @return the report, or null if the tuning has not been performed
+       */
+      public String getReport() {
+         return report;
+      }
+
+      /**
+       * Return the estimated time of the encoding of the tuned entries.
+       *
+       * @return the time in milliseconds
+       */
+      public long getEstimatedTime() {
+         return Math.round(estimatedTime / 1000000d);
+      }
+
+      /**
+       * Return the estimated size of the tuned entries in the output file.
+       *
+       * @return the size in bytes
+       */
+      public long getEstimatedSize() {
+         return Math.round(estimatedSize);
+      }
+
+      /**
+       * Return the encoding chosen for each category.
+       *
+       * @return the encodings, by extension: "copied", "stored", or "level n"
+       */
+      public Map<String, String> getChoices() {
+         Map<String, String> choices = new TreeMap<>();
+         for (Category category : categories.values()) {
+            if (category.sampled) {
+               choices.put(category.extension, getOptionName(category.choice));
+            }
+         }
+         return choices;
+      }
+   }
+
+   /**
+    * The entries of one extension.
+    */
+   private static class Category {
+      private final String extension;
+      private final List<ZipArchive> archives = new ArrayList<>();
+      private final List<Integer> indexes = new ArrayList<>();
+      private long size = 0;
+      private long compressedSize = 0;
+      private boolean sampled = false;
+      // the extrapolated time in nanoseconds and size in bytes of each option
+      private final double[] times = new double[OPTIONS];
+      private final double[] sizes = new double[OPTIONS];
+      private int choice = COPY;
+
+      private Category(String extension) {
+         this.extension = extension;
+      }
+
+      private void measure(ZipArchivePool archivePool, long sampleSize) throws IOException {
+         List<byte[]> sample = new ArrayList<>();
+         long sampleBytes = 0;
+         long readTime = 0;
+         // the entries of the sample are spread over the category
+         int stride = (int) Math.max(1, Math.min(indexes.size(), size / sampleSize));
+         for (int i = 0; i < indexes.size() && sampleBytes < sampleSize; i += stride) {
+            ZipArchive archive = archives.get(i);
+            int index = indexes.get(i);
+            int length = (int) Math.min(archive.getSize(index), sampleSize);
+            if (length == 0) {
+               continue;
+            }
+            byte[] buf = new byte[length];
+            if (archivePool != null) {
+               archivePool.acquire(archive);
+            }
+            long start = System.nanoTime();
+            try (InputStream in = archive.getInputStream(index)) {
+               int count = 0;
+               int len;
+               while (count < length && (len = in.read(buf, count, length - count)) > 0) {
+                  count += len;
+               }
+               length = count;
+            } finally {
+               readTime += System.nanoTime() - start;
+               if (archivePool != null) {
+                  archivePool.release(archive);
+               }
+            }
+            sample.add(buf);
+            sampleBytes += length;
+         }
+         if (sampleBytes == 0) {
+            return;
+         }
+         double scale = (double) size / sampleBytes;
+         long start = System.nanoTime();
+         CRC32 crc = new CRC32();
+         for (byte[] buf : sample) {
+            crc.update(buf, 0, buf.length);
+         }
+         long crcTime = System.nanoTime() - start;
+         times[COPY] = 0;
+         sizes[COPY] = compressedSize;
+         times[STORED] = (readTime + crcTime) * scale;
+         sizes[STORED] = size;
+         byte[] out = new byte[64 * 1024];
+         for (int level = 1; level <= 9; level++) {
+            Deflater deflater = new Deflater(level, true);
+            long compressed = 0;
+            long deflateTime = Long.MAX_VALUE;
+            try {
+               // the best of several runs, so that the first runs do not pay for the warm-up
+               for (int run = 0; run < MEASURE_RUNS; run++) {
+                  compressed = 0;
+                  start = System.nanoTime();
+                  for (byte[] buf : sample) {
+                     deflater.reset();
+                     deflater.setInput(buf);
+                     deflater.finish();
+                     while (!deflater.finished()) {
+                        compressed += deflater.deflate(out);
+                     }
+                  }
+                  deflateTime = Math.min(deflateTime, System.nanoTime() - start);
+               }
+            } finally {
+               deflater.end();
+            }
+            times[level + 1] = (readTime + crcTime + deflateTime) * scale;
+            sizes[level + 1] = compressed * scale;
+         }
+         sampled = true;
+      }
+   }
+}
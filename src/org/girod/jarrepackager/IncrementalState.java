@@ -0,0 +1,295 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The state of a repackaging, used by the incremental mode. The state is stored in a sidecar file next to the output
+ * jar file, and contains:
+ * <ul>
+ * <li>A fingerprint of the settings of the repackaging</li>
+ * <li>The size and the last modification time of the output jar file</li>
+ * <li>For each input file, its size, its last modification time, and the SHA-256 hash of its content</li>
+ * </ul>
+ * The hash of an input file is only computed again if its size or its last modification time has changed since the
+ * previous repackaging.
+ *
+ * <h1>Scope</h1>
+ * Only the no-op path is accelerated: if the state has not changed (see {@link #isUpToDate(IncrementalState, File)}),
+ * the output is neither analyzed nor written again. If any input file has changed, all the input files are analyzed
+ * again and the whole output is written again. Nothing is reused from the previous output.
+ *
+ * @since 0.2
+ */
+public class IncrementalState {
+   /**
+    * The extension of the sidecar state files.
+    */
+   public static final String STATE_EXTENSION = ".state";
+   private static final int MAGIC = 0x4A525354;
+   private static final int VERSION = 1;
+   private static final int BUFFER_SIZE = 64 * 1024;
+   private final String settingsFingerprint;
+   private long outputLength = -1;
+   private long outputLastModified = -1;
+   private final Map<String, InputFingerprint> inputs = new HashMap<>();
+
+   private IncrementalState(String settingsFingerprint) {
+      this.settingsFingerprint = settingsFingerprint;
+   }
+
+   /**
+    * Return the sidecar state file associated with an output file.
+    *
+    * @param outputFile the output file
+    * @return the state file
+    */
+   public static File getStateFile(File outputFile) {
+      return new File(outputFile.getPath() + STATE_EXTENSION);
+   }
+
+   /**
+    * Create the state of the current repackaging. The content hash of the input files is reused from the previous state
+    * for the files whose size and last modification time have not changed.
+    *
+    * @param inputFiles the input files
+    * @param settingsFingerprint the fingerprint of the settings of the repackaging
+    * @param previous the previous state, or null if there is none
+    * @return the state
+    * @throws IOException
+    */
+   public static IncrementalState create(File[] inputFiles, String settingsFingerprint, IncrementalState previous) throws IOException {
+      IncrementalState state = new IncrementalState(settingsFingerprint);
+      for (int i = 0; i < inputFiles.length; i++) {
+         File file = inputFiles[i];
+         String path = file.getAbsolutePath();
+         long length = file.length();
+         long lastModified = file.lastModified();
+         InputFingerprint previousFingerprint = previous != null ? previous.inputs.get(path) : null;
+         String hash;
+         if (previousFingerprint != null && previousFingerprint.length == length && previousFingerprint.lastModified == lastModified) {
+            hash = previousFingerprint.hash;
+         } else {
+            hash = hash(file);
+         }
+         state.inputs.put(path, new InputFingerprint(length, lastModified, hash));
+      }
+      return state;
+   }
+
+   /**
+    * Return a state with the same input files as this state, but with other settings. This allows to compute the hashes
+    * of the input files only once for several output files.
+    *
+    * @param settingsFingerprint the fingerprint of the settings
+    * @return the state
+    */
+   public IncrementalState derive(String settingsFingerprint) {
+      IncrementalState state = new IncrementalState(settingsFingerprint);
+      state.inputs.putAll(inputs);
+      return state;
+   }
+
+   /**
+    * Read a state from its sidecar file.
+    *
+    * @param stateFile the state file
+    * @return the state, or null if the file does not exist or is not a valid state file
+    */
+   public static IncrementalState read(File stateFile) {
+      if (!stateFile.exists() || !stateFile.isFile()) {
+         return null;
+      }
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(stateFile)))) {
+         if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            return null;
+         }
+         IncrementalState state = new IncrementalState(in.readUTF());
+         state.outputLength = in.readLong();
+         state.outputLastModified = in.readLong();
+         int count = in.readInt();
+         for (int i = 0; i < count; i++) {
+            String path = in.readUTF();
+            long length = in.readLong();
+            long lastModified = in.readLong();
+            String hash = in.readUTF();
+            state.inputs.put(path, new InputFingerprint(length, lastModified, hash));
+         }
+         return state;
+      } catch (IOException ex) {
+         return null;
+      }
+   }
+
+   /**
+    * Write this state in a sidecar file, after the output file has been written.
+    *
+    * @param stateFile the state file
+    * @param outputFile the output file
+    * @throws IOException
+    */
+   public void write(File stateFile, File outputFile) throws IOException {
+      outputLength = outputFile.length();
+      outputLastModified = outputFile.lastModified();
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(stateFile)))) {
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         out.writeUTF(settingsFingerprint);
+         out.writeLong(outputLength);
+         out.writeLong(outputLastModified);
+         out.writeInt(inputs.size());
+         for (Map.Entry<String, InputFingerprint> entry : inputs.entrySet()) {
+            InputFingerprint fingerprint = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeLong(fingerprint.length);
+            out.writeLong(fingerprint.lastModified);
+            out.writeUTF(fingerprint.hash);
+         }
+      }
+   }
+
+   /**
+    * Return true if the output file is up to date: the settings and all the input files are the same as for the previous
+    * state, and the output file has not been modified since.
+    *
+    * @param previous the previous state
+    * @param outputFile the output file
+    * @return true if the output file is up to date
+    */
+   public boolean isUpToDate(IncrementalState previous, File outputFile) {
+      if (previous == null || !outputFile.exists() || !settingsFingerprint.equals(previous.settingsFingerprint)) {
+         return false;
+      }
+      if (outputFile.length() != previous.outputLength || outputFile.lastModified() != previous.outputLastModified) {
+         return false;
+      }
+      return inputs.keySet().equals(previous.inputs.keySet()) && getUnchangedInputs(previous).size() == inputs.size();
+   }
+
+   /**
+    * Return the absolute paths of the input files whose content has not changed since a previous state.
+    *
+    * @param previous the previous state
+    * @return the paths of the unchanged input files
+    */
+   public Set<String> getUnchangedInputs(IncrementalState previous) {
+      Set<String> unchanged = new HashSet<>();
+      if (previous == null || !settingsFingerprint.equals(previous.settingsFingerprint)) {
+         return unchanged;
+      }
+      for (Map.Entry<String, InputFingerprint> entry : inputs.entrySet()) {
+         InputFingerprint previousFingerprint = previous.inputs.get(entry.getKey());
+         if (previousFingerprint != null && previousFingerprint.hash.equals(entry.getValue().hash)) {
+            unchanged.add(entry.getKey());
+         }
+      }
+      return unchanged;
+   }
+
+   /**
+    * Return the hexadecimal SHA-256 hash of a file content.
+    *
+    * @param file the file
+    * @return the hash
+    * @throws IOException
+    */
+   public static String hash(File file) throws IOException {
+      MessageDigest digest = createDigest();
+      byte[] buf = new byte[BUFFER_SIZE];
+      try (InputStream in = new FileInputStream(file)) {
+         int len;
+         while ((len = in.read(buf)) > 0) {
+            digest.update(buf, 0, len);
+         }
+      }
+      return toHex(digest.digest());
+   }
+
+   /**
+    * Create a SHA-256 message digest.
+    *
+    * @return the message digest
+    */
+   public static MessageDigest createDigest() {
+      try {
+         return MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException ex) {
+         // SHA-256 is available on every Java platform
+         throw new IllegalStateException(ex);
+      }
+   }
+
+   /**
+    * Return the hexadecimal representation of an array of bytes.
+    *
+    * @param bytes the bytes
+    * @return the hexadecimal representation
+    */
+   public static String toHex(byte[] bytes) {
+      StringBuilder buf = new StringBuilder(bytes.length * 2);
+      for (int i = 0; i < bytes.length; i++) {
+         buf.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+         buf.append(Character.forDigit(bytes[i] & 0xF, 16));
+      }
+      return buf.toString();
+   }
+
+   /**
+    * The fingerprint of an input file.
+    */
+   private static class InputFingerprint {
+      private final long length;
+      private final long lastModified;
+      private final String hash;
+
+      private InputFingerprint(long length, long lastModified, String hash) {
+         this.length = length;
+         this.lastModified = lastModified;
+         this.hash = hash;
+      }
+   }
+}
@@ -1,96 +1,267 @@
-/*
-Copyright (c) 2023 Herve Girod
-All rights reserved.
-
-Redistribution and use in source and binary forms, with or without
-modification, are permitted provided that the following conditions are met:
-
-1. Redistributions of source code must retain the above copyright notice, this
-   list of conditions and the following disclaimer.
-2. Redistributions in binary form must reproduce the above copyright notice,
-   this list of conditions and the following disclaimer in the documentation
-   and/or other materials provided with the distribution.
-
-THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
-ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
-WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
-DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
-ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
-(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
-LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
-ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
-(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
-SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
-
-The views and conclusions contained in the software and documentation are those
-of the authors and should not be interpreted as representing official policies,
-either expressed or implied, of the FreeBSD Project.
-
-Alternatively if you have any questions about this project, you can visit
-the project website at the project page on https://github.com/hervegirod/jarrepackager
- */
-package org.girod.jarrepackager;
-
-import java.io.File;
-import java.io.IOException;
-import java.util.Enumeration;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import org.girod.jarrepackager.model.JarCollectionModel;
-import org.girod.jarrepackager.model.ManifestModel;
-
-/**
- * The Jar reader used for the repackaging.
- *
- * @since 0.1
- */
-public class JarPackagerReader {
-   private File[] inputFiles = null;
-   private final JarCollectionModel jarModel = new JarCollectionModel();
-
-   /**
-    * Constructor.
-    *
-    * @param inputFiles the input files
-    */
-   public JarPackagerReader(File[] inputFiles) {
-      this.inputFiles = inputFiles;
-   }
-
-   public void setManifestModel(ManifestModel manifestModel) {
-      jarModel.setManifestModel(manifestModel);
-   }
-
-   /**
-    * Return the resulting model.
-    *
-    * @return the model
-    */
-   public JarCollectionModel getModel() {
-      return jarModel;
-   }
-
-   /**
-    * Analyse the content of the model.
-    *
-    * @return the model
-    * @throws IOException
-    */
-   public JarCollectionModel analyze() throws IOException {
-      for (int i = 0; i < inputFiles.length; i++) {
-         File file = inputFiles[i];
-         analyze(file);
-      }
-      return jarModel;
-   }
-
-   private void analyze(File file) throws IOException {
-      JarFile jarFile = new JarFile(file);
-      jarModel.setJarFile(jarFile);
-      Enumeration<JarEntry> en = jarFile.entries();
-      while (en.hasMoreElements()) {
-         JarEntry entry = en.nextElement();
-         jarModel.addJarEntry(entry);
-      }
-   }
-}
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarFile;
+import org.girod.jarrepackager.model.ConflictResolver;
+import org.girod.jarrepackager.model.EntryFilter;
+import org.girod.jarrepackager.model.JarCollectionModel;
+import org.girod.jarrepackager.model.ManifestModel;
+import org.girod.jarrepackager.model.PlatformFilter;
+import org.girod.jarrepackager.zip.ZipArchive;
+import org.girod.jarrepackager.zip.ZipArchivePool;
+
+/**
+ * The Jar reader used for the repackaging. The input files are opened as {@link ZipArchive}, so only their central
+ * directory is parsed during the analysis.
+ *
+ * <h1>Parallel analysis</h1>
+ * Each input file is analyzed in its own partial {@link JarCollectionModel}, and the partial models are merged in the
+ * order of the input files. If {@link #setAnalysisThreads(int)} is greater than 1, the input files are analyzed
+ * concurrently, but the resulting model is the same as for a sequential analysis.
+ *
+ * <h1>Conflicts</h1>
+ * The entries which have the same path in several input files are resolved during the analysis with the
+ * {@link ConflictResolver} set with {@link #setConflictResolver(ConflictResolver)}. With the {@link ConflictResolver#FAIL}
+ * policy, the analysis fails on the first conflict, before anything is written.
+ *
+ * <h1>Input files</h1>
+ * If a {@link ZipArchivePool} is set with {@link #setArchivePool(ZipArchivePool)}, the input files are opened in this
+ * pool, so that the number of input files mapped at the same time is bounded. The input files must then be closed by
+ * closing the pool. Else the input files are opened in a pool owned by the reader, and are closed when the reader is
+ * closed, after the model has been written.
+ *
+ * @since 0.1
+ */
+public class JarPackagerReader implements Closeable {
+   private File[] inputFiles = null;
+   private final JarCollectionModel jarModel = new JarCollectionModel();
+   private int analysisThreads = Runtime.getRuntime().availableProcessors();
+   private ZipArchivePool archivePool = null;
+   private ZipArchivePool ownPool = null;
+   private PlatformFilter platformFilter = null;
+   private EntryFilter entryFilter = null;
+
+   /**
+    * Constructor.
+    *
+    * @param inputFiles the input files
+    */
+   public JarPackagerReader(File[] inputFiles) {
+      this.inputFiles = inputFiles;
+   }
+
+   public void setManifestModel(ManifestModel manifestModel) {
+      jarModel.setManifestModel(manifestModel);
+   }
+
+   /**
+    * Set the pool in which the input files are opened.
+    *
+    * @param archivePool the pool
+    * @since 0.2
+    */
+   public void setArchivePool(ZipArchivePool archivePool) {
+      this.archivePool = archivePool;
+   }
+
+   /**
+    * Set the filter of the native libraries. The native libraries of the other platforms are not added to the model.
+    *
+    * @param platformFilter the filter, or null to keep all the native libraries
+    * @since 0.2
+    */
+   public void setPlatformFilter(PlatformFilter platformFilter) {
+      this.platformFilter = platformFilter;
+   }
+
+   /**
+    * Set the filter of the entries. The entries which are rejected by the filter are not added to the model.
+    *
+    * @param entryFilter the filter, or null to keep all the entries
+    * @since 0.2
+    */
+   public void setEntryFilter(EntryFilter entryFilter) {
+      this.entryFilter = entryFilter;
+   }
+
+   /**
+    * Set the resolver for the conflicts between entries which have the same path.
+    *
+    * @param conflictResolver the resolver
+    * @since 0.2
+    */
+   public void setConflictResolver(ConflictResolver conflictResolver) {
+      jarModel.setConflictResolver(conflictResolver);
+   }
+
+   /**
+    * Set the number of threads used to analyze the input files.
+    *
+    * @param analysisThreads the number of threads
+    * @since 0.2
+    */
+   public void setAnalysisThreads(int analysisThreads) {
+      this.analysisThreads = analysisThreads;
+   }
+
+   /**
+    * Return the number of threads used to analyze the input files.
+    *
+    * @return the number of threads
+    * @since 0.2
+    */
+   public int getAnalysisThreads() {
+      return analysisThreads;
+   }
+
+   /**
+    * Return the resulting model.
+    *
+    * @return the model
+    */
+   public JarCollectionModel getModel() {
+      return jarModel;
+   }
+
+   /**
+    * Analyse the content of the model.
+    *
+    * @return the model
+    * @throws IOException
+    */
+   public JarCollectionModel analyze() throws IOException {
+      int threads = Math.min(analysisThreads, inputFiles.length);
+      if (threads <= 1) {
+         for (int i = 0; i < inputFiles.length; i++) {
+            File file = inputFiles[i];
+            jarModel.merge(analyze(file));
+         }
+      } else {
+         analyzeConcurrently(threads);
+      }
+      return jarModel;
+   }
+
+   private void analyzeConcurrently(int threads) throws IOException {
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+         List<Future<JarCollectionModel>> futures = new ArrayList<>(inputFiles.length);
+         for (int i = 0; i < inputFiles.length; i++) {
+            final File file = inputFiles[i];
+            futures.add(executor.submit(new Callable<JarCollectionModel>() {
+               @Override
+               public JarCollectionModel call() throws Exception {
+                  return analyze(file);
+               }
+            }));
+         }
+         for (int i = 0; i < futures.size(); i++) {
+            jarModel.merge(futures.get(i).get());
+         }
+      } catch (InterruptedException ex) {
+         Thread.currentThread().interrupt();
+         throw new IOException("Analysis interrupted", ex);
+      } catch (ExecutionException ex) {
+         Throwable cause = ex.getCause();
+         if (cause instanceof IOException) {
+            throw (IOException) cause;
+         } else {
+            throw new IOException(cause);
+         }
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   private JarCollectionModel analyze(File file) throws IOException {
+      JarCollectionModel partialModel = jarModel.createPartialModel();
+      ZipArchivePool pool = archivePool != null ? archivePool : getOwnPool();
+      ZipArchive archive = pool.open(file);
+      pool.acquire(archive);
+      try {
+         analyze(partialModel, archive);
+      } finally {
+         pool.release(archive);
+      }
+      return partialModel;
+   }
+
+   private synchronized ZipArchivePool getOwnPool() {
+      if (ownPool == null) {
+         // the input files are not pinned by the users of the model, so they must never be evicted
+         ownPool = new ZipArchivePool(Integer.MAX_VALUE);
+      }
+      return ownPool;
+   }
+
+   /**
+    * Close the input files opened by the reader if no pool has been set with {@link #setArchivePool(ZipArchivePool)}.
+    * The model can not be written anymore after the reader has been closed.
+    *
+    * @throws IOException
+    * @since 0.2
+    */
+   @Override
+   public synchronized void close() throws IOException {
+      if (ownPool != null) {
+         ownPool.close();
+         ownPool = null;
+      }
+   }
+
+   private void analyze(JarCollectionModel partialModel, ZipArchive archive) throws IOException {
+      partialModel.setArchive(archive);
+      EntryFilter.Selector selector = entryFilter != null ? entryFilter.getSelector(archive.getFile()) : null;
+      int count = archive.size();
+      for (int i = 0; i < count; i++) {
+         String path = archive.getName(i);
+         if (platformFilter != null && !platformFilter.accept(path)) {
+            continue;
+         }
+         if (selector != null && !path.endsWith("/") && !path.equals(JarFile.MANIFEST_NAME) && !selector.accept(path)) {
+            continue;
+         }
+         partialModel.addJarEntry(i, path);
+      }
+   }
+}
@@ -0,0 +1,333 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+import org.girod.jarrepackager.model.CompressionPolicy;
+import org.girod.jarrepackager.model.ConflictResolver;
+import org.girod.jarrepackager.model.EntryFilter;
+import org.girod.jarrepackager.model.JarCollectionModel;
+import org.girod.jarrepackager.model.ManifestModel;
+import org.girod.jarrepackager.model.PlatformFilter;
+import org.girod.jarrepackager.transform.EntryTransformers;
+import org.girod.jarrepackager.zip.ZipArchive;
+import org.girod.jarrepackager.zip.ZipArchivePool;
+import org.girod.jarrepackager.zip.ZipConstants;
+import org.girod.jarrepackager.zip.ZipContainerWriter;
+import org.girod.jarrepackager.zip.ZipEntrySource;
+
+/**
+ * The streaming Jar writer used for the repackaging. Contrary to the {@link JarPackagerReader} and
+ * {@link JarPackagerWriter}, no {@link org.girod.jarrepackager.model.JarCollectionModel} is built: each entry of the
+ * input files is written in the output file as soon as it is read, and each input file is released as soon as all its
+ * entries have been written.
+ *
+ * <h1>Memory</h1>
+ * The only state kept during the repackaging is the set of the names of the entries already written (which is also
+ * needed to write the central directory of the output), and the main attributes of the input manifests.
+ *
+ * <h1>Differences with the default mode</h1>
+ * <ul>
+ * <li>The entries are written in the order of the input files and of their central directory</li>
+ * <li>The manifest is written at the end of the output file, after all the main attributes of the input manifests
+ * have been collected</li>
+ * <li>The entries are written as soon as they are found, so only the {@link ConflictResolver#FIRST_WINS} and
+ * {@link ConflictResolver#FAIL} policies can be used to resolve the conflicts between entries which have the same path
+ * </li>
+ * </ul>
+ *
+ * @since 0.2
+ */
+public class JarPackagerStreamer {
+   private final File[] inputFiles;
+   private final File outputFile;
+   private final WritableByteChannel outputChannel;
+   private ZipArchivePool archivePool = null;
+   private ManifestModel manifestModel = new ManifestModel();
+   private ConflictResolver conflictResolver = new ConflictResolver();
+   private final Map<String, String> manifestMainAttrs = new HashMap<>();
+   private boolean debug = false;
+   private boolean rawCopy = true;
+   private int compressionThreads = Runtime.getRuntime().availableProcessors();
+   private long maxInFlightBytes = ZipContainerWriter.DEFAULT_MAX_INFLIGHT_BYTES;
+   private PlatformFilter platformFilter = null;
+   private EntryFilter entryFilter = null;
+   private EntryTransformers transformers = null;
+   private CompressionPolicy compressionPolicy = null;
+
+   /**
+    * Constructor.
+    *
+    * @param inputFiles the input files
+    * @param outputFile the output Jar file
+    */
+   public JarPackagerStreamer(File[] inputFiles, File outputFile) {
+      this.inputFiles = inputFiles;
+      this.outputFile = outputFile;
+      this.outputChannel = null;
+   }
+
+   /**
+    * Constructor for an output written to a channel, for example the channel of the standard output. The channel is
+    * not closed by the streamer.
+    *
+    * @param inputFiles the input files
+    * @param outputChannel the output channel
+    */
+   public JarPackagerStreamer(File[] inputFiles, WritableByteChannel outputChannel) {
+      this.inputFiles = inputFiles;
+      this.outputFile = null;
+      this.outputChannel = outputChannel;
+   }
+
+   /**
+    * Set the pool in which the input files are opened. If there is no pool, each input file is opened and closed in turn.
+    * A pool allows to use containers which are not files (see {@link ZipArchivePool#register(ZipArchive)}).
+    *
+    * @param archivePool the pool
+    */
+   public void setArchivePool(ZipArchivePool archivePool) {
+      this.archivePool = archivePool;
+   }
+
+   /**
+    * Set the manifest model.
+    *
+    * @param manifestModel the manifest model
+    */
+   public void setManifestModel(ManifestModel manifestModel) {
+      this.manifestModel = manifestModel;
+   }
+
+   /**
+    * Set the resolver for the conflicts between entries which have the same path. Only the
+    * {@link ConflictResolver#FIRST_WINS} and {@link ConflictResolver#FAIL} policies are supported.
+    *
+    * @param conflictResolver the resolver
+    */
+   public void setConflictResolver(ConflictResolver conflictResolver) {
+      this.conflictResolver = conflictResolver;
+   }
+
+   /**
+    * Set the filter of the native libraries. The native libraries of the other platforms are not written.
+    *
+    * @param platformFilter the filter, or null to keep all the native libraries
+    */
+   public void setPlatformFilter(PlatformFilter platformFilter) {
+      this.platformFilter = platformFilter;
+   }
+
+   /**
+    * Set the filter of the entries. The entries which are rejected by the filter are not written.
+    *
+    * @param entryFilter the filter, or null to keep all the entries
+    */
+   public void setEntryFilter(EntryFilter entryFilter) {
+      this.entryFilter = entryFilter;
+   }
+
+   /**
+    * Set the transformers of the content of the entries. The entries claimed by a transformer are deflated again.
+    *
+    * @param transformers the transformers, or null to copy all the entries
+    */
+   public void setTransformers(EntryTransformers transformers) {
+      this.transformers = transformers;
+   }
+
+   /**
+    * Set the compression policy of the entries.
+    *
+    * @param compressionPolicy the policy, or null to deflate all the new entries with the default level
+    */
+   public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+      this.compressionPolicy = compressionPolicy;
+   }
+
+   /**
+    * Set the Debug mode.
+    *
+    * @param debug true for the Debug mode
+    */
+   public void setDebug(boolean debug) {
+      this.debug = debug;
+   }
+
+   /**
+    * Set the raw copy mode. If true (the default), the compressed content of the input entries is copied without being
+    * inflated and deflated again.
+    *
+    * @param rawCopy true for the raw copy mode
+    */
+   public void setRawCopy(boolean rawCopy) {
+      this.rawCopy = rawCopy;
+   }
+
+   /**
+    * Set the number of threads used to compress the entries which can not be copied without being compressed again.
+    *
+    * @param compressionThreads the number of threads
+    */
+   public void setCompressionThreads(int compressionThreads) {
+      this.compressionThreads = compressionThreads;
+   }
+
+   /**
+    * Set the maximum number of uncompressed bytes of the entries which are being compressed but not yet written.
+    *
+    * @param maxInFlightBytes the maximum number of bytes
+    */
+   public void setMaxInFlightBytes(long maxInFlightBytes) {
+      this.maxInFlightBytes = maxInFlightBytes;
+   }
+
+   /**
+    * Return the stream of the debug messages. The messages are printed on the standard error stream if the output is
+    * written on a channel, because it may be the standard output.
+    *
+    * @return the stream
+    */
+   private PrintStream getMessageStream() {
+      return outputChannel != null ? System.err : System.out;
+   }
+
+   /**
+    * Perform the repackaging on the output file.
+    *
+    * @throws IOException
+    */
+   public void write() throws IOException {
+      if (!isSupported(conflictResolver.getPolicy()) || !isSupported(conflictResolver.getManifestPolicy())) {
+         throw new IOException("Only the firstWins and fail conflict policies are supported in the streaming mode");
+      }
+      try (ZipContainerWriter out = JarPackagerWriter.createContainerWriter(outputFile, outputChannel)) {
+         out.setCompressionThreads(compressionThreads);
+         out.setMaxInFlightBytes(maxInFlightBytes);
+         for (int i = 0; i < inputFiles.length; i++) {
+            if (archivePool == null) {
+               try (ZipArchive archive = new ZipArchive(inputFiles[i])) {
+                  write(out, archive);
+                  // the pending entries must be written before the input file is released
+                  out.flush();
+               }
+            } else {
+               ZipArchive archive = archivePool.open(inputFiles[i]);
+               archivePool.acquire(archive);
+               try {
+                  write(out, archive);
+                  out.flush();
+               } finally {
+                  archivePool.release(archive);
+               }
+            }
+         }
+         Manifest manifest = JarPackagerWriter.createManifest(manifestModel, manifestMainAttrs, debug ? getMessageStream() : null);
+         JarPackagerWriter.writeManifest(out, manifest);
+      }
+   }
+
+   private static boolean isSupported(short policy) {
+      return policy == ConflictResolver.FIRST_WINS || policy == ConflictResolver.FAIL;
+   }
+
+   private void addMainManifestAttributes(ZipArchive archive) throws IOException {
+      Manifest manifest = archive.getManifest();
+      if (manifest != null) {
+         Iterator<Entry<Object, Object>> it = manifest.getMainAttributes().entrySet().iterator();
+         while (it.hasNext()) {
+            Entry<Object, Object> entry = it.next();
+            String key = entry.getKey().toString();
+            if (!manifestMainAttrs.containsKey(key)) {
+               manifestMainAttrs.put(key, entry.getValue().toString());
+            }
+         }
+      }
+   }
+
+   private void write(ZipContainerWriter out, final ZipArchive archive) throws IOException {
+      addMainManifestAttributes(archive);
+      EntryFilter.Selector selector = entryFilter != null ? entryFilter.getSelector(archive.getFile()) : null;
+      int count = archive.size();
+      for (int i = 0; i < count; i++) {
+         String path = archive.getName(i);
+         if (path.endsWith("/") || path.equals(JarFile.MANIFEST_NAME) || JarCollectionModel.isTopLevelEntry(path)) {
+            continue;
+         }
+         if (platformFilter != null && !platformFilter.accept(path)) {
+            continue;
+         }
+         if (selector != null && !selector.accept(path)) {
+            continue;
+         }
+         if (out.containsEntry(path)) {
+            if (conflictResolver.getPolicy(path) == ConflictResolver.FIRST_WINS) {
+               continue;
+            } else {
+               throw new ZipException("duplicate entry: " + path + " in " + archive.getFile().getName());
+            }
+         }
+         if (debug) {
+            getMessageStream().println("path: " + path);
+         }
+         final boolean transformed = transformers != null && transformers.claims(path);
+         boolean encoded = compressionPolicy != null
+            && compressionPolicy.isEncoded(path, archive.getMethod(i), archive.getSize(i), archive.getCompressedSize(i));
+         if (rawCopy && !transformed && !encoded) {
+            out.writeRawEntry(path, archive, i);
+         } else {
+            final int index = i;
+            final String name = path;
+            out.writeEntry(path, archive.getDosTime(i), archive.getSize(i), new ZipEntrySource() {
+               @Override
+               public InputStream openStream() throws IOException {
+                  InputStream in = archive.getInputStream(index);
+                  return transformed ? transformers.transform(name, in) : in;
+               }
+            }, compressionPolicy != null ? compressionPolicy.getMethod(path) : ZipConstants.DEFLATED,
+               compressionPolicy != null ? compressionPolicy.getLevel(path) : Deflater.DEFAULT_COMPRESSION);
+         }
+      }
+   }
+}
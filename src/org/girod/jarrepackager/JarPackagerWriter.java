@@ -1,183 +1,810 @@
-/*
-Copyright (c) 2023 Herve Girod
-All rights reserved.
-
-Redistribution and use in source and binary forms, with or without
-modification, are permitted provided that the following conditions are met:
-
-1. Redistributions of source code must retain the above copyright notice, this
-   list of conditions and the following disclaimer.
-2. Redistributions in binary form must reproduce the above copyright notice,
-   this list of conditions and the following disclaimer in the documentation
-   and/or other materials provided with the distribution.
-
-THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
-ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
-WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
-DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
-ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
-(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
-LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
-ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
-(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
-SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
-
-The views and conclusions contained in the software and documentation are those
-of the authors and should not be interpreted as representing official policies,
-either expressed or implied, of the FreeBSD Project.
-
-Alternatively if you have any questions about this project, you can visit
-the project website at the project page on https://github.com/hervegirod/jarrepackager
- */
-package org.girod.jarrepackager;
-
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Map.Entry;
-import java.util.Set;
-import java.util.jar.Attributes;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.jar.JarInputStream;
-import java.util.jar.JarOutputStream;
-import java.util.jar.Manifest;
-import org.girod.jarrepackager.model.AbstractJarFileDirectory;
-import org.girod.jarrepackager.model.JarCollectionModel;
-import org.girod.jarrepackager.model.JarFileEntry;
-import org.girod.jarrepackager.model.ManifestJarEntry;
-import org.girod.jarrepackager.model.ManifestModel;
-
-/**
- * The Jar writer used for the repackaging.
- *
- * @since 0.1
- */
-public class JarPackagerWriter {
-   private final JarCollectionModel inputModel;
-   private final File outputFile;
-   private boolean debug = false;
-
-   /**
-    * Constructor.
-    *
-    * @param inputModel the input Jar files model
-    * @param outputFile the output Jar file
-    */
-   public JarPackagerWriter(JarCollectionModel inputModel, File outputFile) {
-      this.inputModel = inputModel;
-      this.outputFile = outputFile;
-   }
-
-   /**
-    * Set the Debug mode.
-    *
-    * @param debug true for the Debug mode
-    */
-   public void setDebug(boolean debug) {
-      this.debug = debug;
-   }
-
-   /**
-    * Perform the writing on the output file.
-    *
-    * @throws IOException
-    */
-   public void write() throws IOException {
-      // Create a buffer for reading the files
-      byte[] buf = new byte[1024];
-      Manifest manifest = createManifest();
-      try (JarOutputStream out = new JarOutputStream(new FileOutputStream(outputFile), manifest)) {
-         zipFile(buf, out);
-      }
-   }
-
-   private Manifest createManifest() {
-      Set<String> addedProperties = new HashSet<>();
-      Manifest manifest = new Manifest();
-      Attributes global = manifest.getMainAttributes();
-      global.put(Attributes.Name.MANIFEST_VERSION, "1.0.0");
-      addedProperties.add(Attributes.Name.MANIFEST_VERSION.toString());
-      ManifestModel manifestModel = inputModel.getManifestModel();
-      Iterator<Entry<String, String>> it = manifestModel.getNewProperties().entrySet().iterator();
-      while (it.hasNext()) {
-         Entry<String, String> entry = it.next();
-         global.put(new Attributes.Name(entry.getKey()), entry.getValue());
-         addedProperties.add(entry.getKey());
-         if (debug) {
-            System.out.println("Manifest property added: " + entry.getKey());
-         }
-      }
-      it = inputModel.getManifestAttributes().entrySet().iterator();
-      while (it.hasNext()) {
-         Entry<String, String> property = it.next();
-         String key = property.getKey();
-         if (!addedProperties.contains(key) && manifestModel.allowExistingProperty(key)) {
-            global.put(new Attributes.Name(key), property.getValue());
-            if (debug) {
-               System.out.println("Manifest property added: " + key);
-            }
-            addedProperties.add(key);
-         }
-      }
-      return manifest;
-   }
-
-   private void zipFile(byte[] buf, JarOutputStream out) throws IOException {
-      Iterator<AbstractJarFileDirectory> it = inputModel.getJarDirectories().iterator();
-      while (it.hasNext()) {
-         AbstractJarFileDirectory jarDir = it.next();
-         write(buf, out, jarDir);
-      }
-      if (inputModel.hasManifestContent()) {
-         writeManifestContent(buf, out);
-      }
-   }
-
-   private void writeManifestContent(byte[] buf, JarOutputStream out) throws IOException {
-      // https://stackoverflow.com/questions/62313791/replacing-the-manifest-mf-file-in-a-jar-programmatically
-      Iterator<ManifestJarEntry> it = inputModel.getManifestContent().values().iterator();
-      while (it.hasNext()) {
-         ManifestJarEntry jarEntry = it.next();
-         String path = jarEntry.getPath();
-         if (debug) {
-            System.out.println("Manifest entry: " + path);
-         }
-         JarEntry inEntry = jarEntry.getEntry();
-         JarFile jarFile = jarEntry.getParent().getJarFile();
-         try (JarInputStream in = new JarInputStream(jarFile.getInputStream(inEntry))) {
-            out.putNextEntry(new JarEntry(path));
-            int len;
-            while ((len = in.read(buf)) > 0) {
-               out.write(buf, 0, len);
-            }
-            // complete the entry
-            out.closeEntry();
-         }
-      }
-   }
-
-   private void write(byte[] buf, JarOutputStream out, AbstractJarFileDirectory jarDir) throws IOException {
-      Iterator<JarFileEntry> it = jarDir.getEntries().iterator();
-      while (it.hasNext()) {
-         JarFileEntry fileEntry = it.next();
-         String path = fileEntry.getPath();
-         if (debug) {
-            System.out.println("jarDir: " + jarDir.getPath() + " path: " + path);
-         }
-         JarEntry inEntry = fileEntry.getEntry();
-         JarFile jarFile = jarDir.getJarFile();
-         try (JarInputStream in = new JarInputStream(jarFile.getInputStream(inEntry))) {
-            out.putNextEntry(new JarEntry(path));
-            int len;
-            while ((len = in.read(buf)) > 0) {
-               out.write(buf, 0, len);
-            }
-            // complete the entry
-            out.closeEntry();
-         }
-      }
-   }
-}
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.Deflater;
+import org.girod.jarrepackager.model.AbstractJarFileDirectory;
+import org.girod.jarrepackager.model.CompressionPolicy;
+import org.girod.jarrepackager.model.JarCollectionModel;
+import org.girod.jarrepackager.model.JarFileEntry;
+import org.girod.jarrepackager.model.ManifestJarEntry;
+import org.girod.jarrepackager.model.ManifestModel;
+import org.girod.jarrepackager.model.OutputModel;
+import org.girod.jarrepackager.transform.EntryTransformers;
+import org.girod.jarrepackager.zip.ZipArchive;
+import org.girod.jarrepackager.zip.ZipArchivePool;
+import org.girod.jarrepackager.zip.ZipConstants;
+import org.girod.jarrepackager.zip.ZipContainerWriter;
+import org.girod.jarrepackager.zip.ZipEntrySource;
+
+/**
+ * The Jar writer used for the repackaging.
+ *
+ * <h1>Raw copy</h1>
+ * By default the entries of the input jar files are copied in the output jar file without being inflated and deflated
+ * again: their compressed data, CRC, sizes and timestamps are taken directly from the input jar files. Only the entries
+ * whose content is changed by the repackaging are compressed again.
+ *
+ * <h1>Input files</h1>
+ * The entries are written input file by input file: the entries of the directories of an input file are written first,
+ * then the entries of its "META-INF/" directory, so that each input file is only accessed once. If the input files have
+ * been opened in a {@link ZipArchivePool} (see {@link #setArchivePool(ZipArchivePool)}), each input file is pinned in
+ * the pool while its entries are written.
+ *
+ * <h1>Output model</h1>
+ * If an {@link OutputModel} is set (see {@link #setOutputModel(OutputModel)}), only the entries accepted by its filters
+ * are written, and its manifest properties override the ones of the manifest model. Several writers can write
+ * concurrently from the same input model, each with its own output model.
+ *
+ * <h1>Transformers</h1>
+ * If {@link EntryTransformers} are set (see {@link #setTransformers(EntryTransformers)}), the content of the entries
+ * claimed by a transformer is transformed and deflated as a stream. The other entries are still copied without being
+ * inflated.
+ *
+ * <h1>Compression</h1>
+ * The {@link CompressionPolicy} (see {@link #setCompressionPolicy(CompressionPolicy)}) chooses the method and the level
+ * of the entries. If a {@link CompressionTuner} is set (see {@link #setCompressionTuner(CompressionTuner)}), the
+ * compression of each category of entries is first tuned to meet the target of the tuner on the current machine, and
+ * the chosen compression is available with {@link #getTuning()}.
+ *
+ * <h1>Reproducible mode</h1>
+ * In the reproducible mode (see {@link #setReproducible(boolean)}), the same inputs always produce the same bytes: the
+ * entries are written in the order of their paths (the entries of the "META-INF/" directory first) rather than input
+ * file by input file, all the entries have the same timestamp (see {@link #getReproducibleDosTime()}), and the
+ * attributes of the manifest are sorted by name. The entries never have other extra fields than the Zip64 ones. The
+ * SHA-256 hash of the content of the output is computed after the writing (see {@link #getContentHash()}).
+ *
+ * @since 0.1
+ */
+public class JarPackagerWriter {
+   /**
+    * The default timestamp of the entries in the reproducible mode, 1980-02-01 00:00:00 in MS-DOS format.
+    */
+   public static final long REPRODUCIBLE_DOS_TIME = (2 << 21) | (1 << 16);
+   private static final byte[] MANIFEST_NEWLINE = { '\r', '\n' };
+   private final JarCollectionModel inputModel;
+   private final File outputFile;
+   private final WritableByteChannel outputChannel;
+   private boolean debug = false;
+   private boolean rawCopy = true;
+   private int compressionThreads = Runtime.getRuntime().availableProcessors();
+   private ExecutorService compressionExecutor = null;
+   private long maxInFlightBytes = ZipContainerWriter.DEFAULT_MAX_INFLIGHT_BYTES;
+   private final StringBuilder pathBuffer = new StringBuilder(256);
+   private ZipArchivePool archivePool = null;
+   private OutputModel outputModel = null;
+   private EntryTransformers transformers = null;
+   private CompressionPolicy compressionPolicy = null;
+   private CompressionTuner compressionTuner = null;
+   private CompressionTuner.Tuning tuning = null;
+   private CompressionPolicy activePolicy = null;
+   private boolean reproducible = false;
+   private String contentHash = null;
+
+   /**
+    * Constructor.
+    *
+    * @param inputModel the input Jar files model
+    * @param outputFile the output Jar file
+    */
+   public JarPackagerWriter(JarCollectionModel inputModel, File outputFile) {
+      this.inputModel = inputModel;
+      this.outputFile = outputFile;
+      this.outputChannel = null;
+   }
+
+   /**
+    * Constructor for an output written to a channel, for example the channel of an in-memory stream or of the standard
+    * output. The channel is written sequentially, and it is not closed by the writer.
+    *
+    * @param inputModel the input Jar files model
+    * @param outputChannel the output channel
+    * @since 0.2
+    */
+   public JarPackagerWriter(JarCollectionModel inputModel, WritableByteChannel outputChannel) {
+      this.inputModel = inputModel;
+      this.outputFile = null;
+      this.outputChannel = outputChannel;
+   }
+
+   /**
+    * Set the Debug mode.
+    *
+    * @param debug true for the Debug mode
+    */
+   public void setDebug(boolean debug) {
+      this.debug = debug;
+   }
+
+   /**
+    * Set the raw copy mode. If true (the default), the compressed content of the input entries is copied without being
+    * inflated and deflated again.
+    *
+    * @param rawCopy true for the raw copy mode
+    * @since 0.2
+    */
+   public void setRawCopy(boolean rawCopy) {
+      this.rawCopy = rawCopy;
+   }
+
+   /**
+    * Return true if the compressed content of the input entries is copied without being inflated and deflated again.
+    *
+    * @return true for the raw copy mode
+    * @since 0.2
+    */
+   public boolean isRawCopy() {
+      return rawCopy;
+   }
+
+   /**
+    * Set the number of threads used to compress the entries which can not be copied without being compressed again.
+    *
+    * @param compressionThreads the number of threads
+    * @since 0.2
+    */
+   public void setCompressionThreads(int compressionThreads) {
+      this.compressionThreads = compressionThreads;
+   }
+
+   /**
+    * Return the number of threads used to compress the entries.
+    *
+    * @return the number of threads
+    * @since 0.2
+    */
+   public int getCompressionThreads() {
+      return compressionThreads;
+   }
+
+   /**
+    * Set the executor used to compress the entries, so that the writers of several outputs share the same compression
+    * threads. The executor is not shut down by the writer.
+    *
+    * @param compressionExecutor the executor, or null to use an executor of {@link #getCompressionThreads()} threads
+    * @since 0.2
+    */
+   public void setCompressionExecutor(ExecutorService compressionExecutor) {
+      this.compressionExecutor = compressionExecutor;
+   }
+
+   /**
+    * Set the maximum number of uncompressed bytes of the entries which are being compressed but not yet written.
+    *
+    * @param maxInFlightBytes the maximum number of bytes
+    * @since 0.2
+    */
+   public void setMaxInFlightBytes(long maxInFlightBytes) {
+      this.maxInFlightBytes = maxInFlightBytes;
+   }
+
+   /**
+    * Return the maximum number of uncompressed bytes of the entries which are being compressed but not yet written.
+    *
+    * @return the maximum number of bytes
+    * @since 0.2
+    */
+   public long getMaxInFlightBytes() {
+      return maxInFlightBytes;
+   }
+
+   /**
+    * Set the pool in which the input files have been opened.
+    *
+    * @param archivePool the pool
+    * @since 0.2
+    */
+   public void setArchivePool(ZipArchivePool archivePool) {
+      this.archivePool = archivePool;
+   }
+
+   /**
+    * Set the model of the output file, which filters the written entries and overrides the manifest properties.
+    *
+    * @param outputModel the output model, or null to write all the entries
+    * @since 0.2
+    */
+   public void setOutputModel(OutputModel outputModel) {
+      this.outputModel = outputModel;
+   }
+
+   /**
+    * Return the model of the output file.
+    *
+    * @return the output model, or null if all the entries are written
+    * @since 0.2
+    */
+   public OutputModel getOutputModel() {
+      return outputModel;
+   }
+
+   /**
+    * Set the transformers of the content of the entries.
+    *
+    * @param transformers the transformers, or null to copy all the entries
+    * @since 0.2
+    */
+   public void setTransformers(EntryTransformers transformers) {
+      this.transformers = transformers;
+   }
+
+   /**
+    * Return the transformers of the content of the entries.
+    *
+    * @return the transformers, or null if all the entries are copied
+    * @since 0.2
+    */
+   public EntryTransformers getTransformers() {
+      return transformers;
+   }
+
+   /**
+    * Set the compression policy of the entries.
+    *
+    * @param compressionPolicy the policy, or null to deflate all the new entries with the default level
+    * @since 0.2
+    */
+   public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+      this.compressionPolicy = compressionPolicy;
+   }
+
+   /**
+    * Return the compression policy of the entries.
+    *
+    * @return the policy, or null if all the new entries are deflated with the default level
+    * @since 0.2
+    */
+   public CompressionPolicy getCompressionPolicy() {
+      return compressionPolicy;
+   }
+
+   /**
+    * Set the tuner of the compression of the entries. If a tuner is set, the compression of each category of entries
+    * is chosen from measures on a sample of the entries before writing them, and the rules of the compression policy
+    * have precedence on the tuning.
+    *
+    * @param compressionTuner the tuner, or null to use the compression policy as is
+    * @since 0.2
+    */
+   public void setCompressionTuner(CompressionTuner compressionTuner) {
+      this.compressionTuner = compressionTuner;
+   }
+
+   /**
+    * Return the tuner of the compression of the entries.
+    *
+    * @return the tuner, or null if the compression policy is used as is
+    * @since 0.2
+    */
+   public CompressionTuner getCompressionTuner() {
+      return compressionTuner;
+   }
+
+   /**
+    * Set the reproducible mode.
+    *
+    * @param reproducible true for the reproducible mode
+    * @since 0.2
+    */
+   public void setReproducible(boolean reproducible) {
+      this.reproducible = reproducible;
+   }
+
+   /**
+    * Return true for the reproducible mode.
+    *
+    * @return true for the reproducible mode
+    * @since 0.2
+    */
+   public boolean isReproducible() {
+      return reproducible;
+   }
+
+   /**
+    * Return the SHA-256 hash of the content of the output, computed in the reproducible mode.
+    *
+    * @return the hash in lower-case hexadecimal, or null if the output has not been written in the reproducible mode
+    * @since 0.2
+    */
+   public String getContentHash() {
+      return contentHash;
+   }
+
+   /**
+    * Return the timestamp of the entries in the reproducible mode. This is the time of the SOURCE_DATE_EPOCH environment
+    * variable (a number of seconds since the epoch) in UTC if it is defined, else 1980-02-01 00:00:00, the first date
+    * which is valid for all the zip tools.
+    *
+    * @return the timestamp in MS-DOS format
+    * @since 0.2
+    */
+   public static long getReproducibleDosTime() {
+      String epoch = System.getenv("SOURCE_DATE_EPOCH");
+      if (epoch != null) {
+         try {
+            return ZipContainerWriter.toDosTime(Long.parseLong(epoch.trim()) * 1000L, TimeZone.getTimeZone("UTC"));
+         } catch (NumberFormatException ex) {
+            // the variable is not a number of seconds, the default timestamp is used
+         }
+      }
+      return REPRODUCIBLE_DOS_TIME;
+   }
+
+   /**
+    * Return the last tuning of the compression of the entries.
+    *
+    * @return the tuning, or null if there is no tuner
+    * @since 0.2
+    */
+   public CompressionTuner.Tuning getTuning() {
+      return tuning;
+   }
+
+   /**
+    * Return the stream of the debug messages. The messages are printed on the standard error stream if the output is
+    * written on a channel, because it may be the standard output.
+    *
+    * @return the stream
+    */
+   private PrintStream getMessageStream() {
+      return outputChannel != null ? System.err : System.out;
+   }
+
+   /**
+    * Perform the writing on the output file.
+    *
+    * @throws IOException
+    */
+   public void write() throws IOException {
+      activePolicy = compressionPolicy;
+      tuning = null;
+      contentHash = null;
+      if (compressionTuner != null) {
+         tuning = compressionTuner.createTuning(compressionPolicy, rawCopy, compressionThreads);
+         addTunedEntries(tuning);
+         activePolicy = tuning.tune(archivePool);
+      }
+      Manifest manifest = createManifest();
+      if (!reproducible) {
+         try (ZipContainerWriter out = createContainerWriter(outputFile, outputChannel)) {
+            out.setCompressionThreads(compressionThreads);
+            out.setCompressionExecutor(compressionExecutor);
+            out.setMaxInFlightBytes(maxInFlightBytes);
+            writeManifest(out, manifest);
+            zipFile(out);
+         }
+         return;
+      }
+      DigestChannel digestChannel = outputChannel != null ? new DigestChannel(outputChannel) : null;
+      try (ZipContainerWriter out = createContainerWriter(outputFile, digestChannel)) {
+         out.setCompressionThreads(compressionThreads);
+         out.setCompressionExecutor(compressionExecutor);
+         out.setMaxInFlightBytes(maxInFlightBytes);
+         out.setFixedDosTime(getReproducibleDosTime());
+         ByteArrayOutputStream bout = new ByteArrayOutputStream();
+         writeCanonicalManifest(bout, manifest);
+         out.writeEntry(JarFile.MANIFEST_NAME, 0, new ByteArrayInputStream(bout.toByteArray()));
+         zipCanonicalFile(out);
+      }
+      if (digestChannel != null) {
+         contentHash = IncrementalState.toHex(digestChannel.digest.digest());
+      } else {
+         contentHash = IncrementalState.hash(outputFile);
+      }
+   }
+
+   static ZipContainerWriter createContainerWriter(File outputFile, WritableByteChannel outputChannel) throws IOException {
+      if (outputChannel == null) {
+         return new ZipContainerWriter(outputFile);
+      }
+      ZipContainerWriter out = new ZipContainerWriter(outputChannel);
+      // the channel belongs to the caller
+      out.setCloseChannel(false);
+      return out;
+   }
+
+   static void writeManifest(ZipContainerWriter out, Manifest manifest) throws IOException {
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      manifest.write(bout);
+      long dosTime = ZipContainerWriter.toDosTime(System.currentTimeMillis());
+      out.writeEntry(JarFile.MANIFEST_NAME, dosTime, new ByteArrayInputStream(bout.toByteArray()));
+   }
+
+   /**
+    * Write a manifest with its attributes sorted by name, the "Manifest-Version" attribute first, and its sections
+    * sorted by name.
+    *
+    * @param out the output stream
+    * @param manifest the manifest
+    * @throws IOException
+    */
+   static void writeCanonicalManifest(OutputStream out, Manifest manifest) throws IOException {
+      writeCanonicalSection(out, null, manifest.getMainAttributes());
+      for (Entry<String, Attributes> section : new TreeMap<>(manifest.getEntries()).entrySet()) {
+         writeCanonicalSection(out, section.getKey(), section.getValue());
+      }
+   }
+
+   private static void writeCanonicalSection(OutputStream out, String name, Attributes attributes) throws IOException {
+      Map<String, String> sorted = new TreeMap<>();
+      for (Entry<Object, Object> attribute : attributes.entrySet()) {
+         sorted.put(attribute.getKey().toString(), attribute.getValue().toString());
+      }
+      if (name != null) {
+         writeManifestLine(out, "Name", name);
+      } else {
+         String version = sorted.remove(Attributes.Name.MANIFEST_VERSION.toString());
+         if (version != null) {
+            writeManifestLine(out, Attributes.Name.MANIFEST_VERSION.toString(), version);
+         }
+      }
+      for (Entry<String, String> attribute : sorted.entrySet()) {
+         writeManifestLine(out, attribute.getKey(), attribute.getValue());
+      }
+      out.write(MANIFEST_NEWLINE);
+   }
+
+   private static void writeManifestLine(OutputStream out, String key, String value) throws IOException {
+      byte[] line = (key + ": " + value).getBytes(StandardCharsets.UTF_8);
+      // the lines have at most 72 bytes, and are continued on the next lines after a space
+      int pos = 0;
+      int max = 72;
+      while (line.length - pos > max) {
+         int length = max;
+         // a multi-bytes character is not split
+         while ((line[pos + length] & 0xC0) == 0x80) {
+            length--;
+         }
+         out.write(line, pos, length);
+         out.write(MANIFEST_NEWLINE);
+         out.write(' ');
+         pos += length;
+         max = 71;
+      }
+      out.write(line, pos, line.length - pos);
+      out.write(MANIFEST_NEWLINE);
+   }
+
+   private Manifest createManifest() {
+      ManifestModel manifestModel = inputModel.getManifestModel();
+      if (outputModel != null) {
+         manifestModel = outputModel.createManifestModel(manifestModel);
+      }
+      return createManifest(manifestModel, inputModel.getManifestAttributes(), debug ? getMessageStream() : null);
+   }
+
+   /**
+    * Create the manifest of the output jar file.
+    *
+    * @param manifestModel the manifest model
+    * @param attributes the main manifest attributes of the input jar files
+    * @param debugStream the stream of the debug messages, or null if not in the debug mode
+    * @return the manifest
+    */
+   static Manifest createManifest(ManifestModel manifestModel, Map<String, String> attributes, PrintStream debugStream) {
+      Set<String> addedProperties = new HashSet<>();
+      Manifest manifest = new Manifest();
+      Attributes global = manifest.getMainAttributes();
+      global.put(Attributes.Name.MANIFEST_VERSION, "1.0.0");
+      addedProperties.add(Attributes.Name.MANIFEST_VERSION.toString());
+      Iterator<Entry<String, String>> it = manifestModel.getNewProperties().entrySet().iterator();
+      while (it.hasNext()) {
+         Entry<String, String> entry = it.next();
+         global.put(new Attributes.Name(entry.getKey()), entry.getValue());
+         addedProperties.add(entry.getKey());
+         if (debugStream != null) {
+            debugStream.println("Manifest property added: " + entry.getKey());
+         }
+      }
+      it = attributes.entrySet().iterator();
+      while (it.hasNext()) {
+         Entry<String, String> property = it.next();
+         String key = property.getKey();
+         if (!addedProperties.contains(key) && manifestModel.allowExistingProperty(key)) {
+            global.put(new Attributes.Name(key), property.getValue());
+            if (debugStream != null) {
+               debugStream.println("Manifest property added: " + key);
+            }
+            addedProperties.add(key);
+         }
+      }
+      return manifest;
+   }
+
+   private void zipFile(ZipContainerWriter out) throws IOException {
+      Map<ZipArchive, List<AbstractJarFileDirectory>> directories = new HashMap<>();
+      Iterator<AbstractJarFileDirectory> it = inputModel.getJarDirectories().iterator();
+      while (it.hasNext()) {
+         AbstractJarFileDirectory jarDir = it.next();
+         List<AbstractJarFileDirectory> list = directories.get(jarDir.getArchive());
+         if (list == null) {
+            list = new ArrayList<>();
+            directories.put(jarDir.getArchive(), list);
+         }
+         list.add(jarDir);
+      }
+      Map<ZipArchive, List<ManifestJarEntry>> manifestContent = new HashMap<>();
+      Iterator<ManifestJarEntry> it2 = inputModel.getManifestContent().values().iterator();
+      while (it2.hasNext()) {
+         ManifestJarEntry jarEntry = it2.next();
+         List<ManifestJarEntry> list = manifestContent.get(jarEntry.getArchive());
+         if (list == null) {
+            list = new ArrayList<>();
+            manifestContent.put(jarEntry.getArchive(), list);
+         }
+         list.add(jarEntry);
+      }
+      Iterator<ZipArchive> it3 = inputModel.getArchives().iterator();
+      while (it3.hasNext()) {
+         ZipArchive archive = it3.next();
+         List<AbstractJarFileDirectory> archiveDirectories = directories.get(archive);
+         List<ManifestJarEntry> archiveManifestContent = manifestContent.get(archive);
+         if (archiveDirectories == null && archiveManifestContent == null) {
+            continue;
+         }
+         if (archivePool != null) {
+            archivePool.acquire(archive);
+         }
+         try {
+            if (archiveDirectories != null) {
+               for (AbstractJarFileDirectory jarDir : archiveDirectories) {
+                  write(out, jarDir);
+               }
+            }
+            if (archiveManifestContent != null) {
+               writeManifestContent(out, archiveManifestContent);
+            }
+            if (archivePool != null) {
+               // the pending entries must be written before the input file is released, so that it is not evicted
+               // while they are read
+               out.flush();
+            }
+         } finally {
+            if (archivePool != null) {
+               archivePool.release(archive);
+            }
+         }
+      }
+   }
+
+   private void zipCanonicalFile(ZipContainerWriter out) throws IOException {
+      List<OutputEntry> entries = new ArrayList<>();
+      Iterator<AbstractJarFileDirectory> it = inputModel.getJarDirectories().iterator();
+      while (it.hasNext()) {
+         AbstractJarFileDirectory jarDir = it.next();
+         for (JarFileEntry fileEntry : jarDir.getEntries()) {
+            String path = fileEntry.getPath();
+            if (outputModel == null || outputModel.accept(path)) {
+               entries.add(new OutputEntry(path, jarDir.getArchive(), fileEntry.getIndex()));
+            }
+         }
+      }
+      for (ManifestJarEntry jarEntry : inputModel.getManifestContent().values()) {
+         String path = jarEntry.getPath();
+         if (outputModel == null || outputModel.accept(path)) {
+            entries.add(new OutputEntry(path, jarEntry.getParent().getArchive(), jarEntry.getIndex()));
+         }
+      }
+      Collections.sort(entries);
+      // the entries of all the input files are interleaved, so all the input files stay pinned during the writing
+      List<ZipArchive> archives = inputModel.getArchives();
+      List<ZipArchive> pinned = new ArrayList<>();
+      try {
+         if (archivePool != null) {
+            for (ZipArchive archive : archives) {
+               archivePool.acquire(archive);
+               pinned.add(archive);
+            }
+         }
+         for (OutputEntry entry : entries) {
+            if (debug) {
+               getMessageStream().println("path: " + entry.path);
+            }
+            writeEntry(out, entry.path, entry.archive, entry.index);
+         }
+         out.flush();
+      } finally {
+         for (ZipArchive archive : pinned) {
+            archivePool.release(archive);
+         }
+      }
+   }
+
+   private void addTunedEntries(CompressionTuner.Tuning tuning) {
+      Iterator<AbstractJarFileDirectory> it = inputModel.getJarDirectories().iterator();
+      while (it.hasNext()) {
+         AbstractJarFileDirectory jarDir = it.next();
+         for (JarFileEntry fileEntry : jarDir.getEntries()) {
+            pathBuffer.setLength(0);
+            fileEntry.appendPath(pathBuffer);
+            if (outputModel == null || outputModel.accept(pathBuffer)) {
+               tuning.addEntry(pathBuffer, jarDir.getArchive(), fileEntry.getIndex());
+            }
+         }
+      }
+      for (ManifestJarEntry jarEntry : inputModel.getManifestContent().values()) {
+         String path = jarEntry.getPath();
+         if (outputModel == null || outputModel.accept(path)) {
+            tuning.addEntry(path, jarEntry.getParent().getArchive(), jarEntry.getIndex());
+         }
+      }
+   }
+
+   private void writeEntry(ZipContainerWriter out, CharSequence path, final ZipArchive archive, final int index) throws IOException {
+      int method = activePolicy != null ? activePolicy.getMethod(path) : ZipConstants.DEFLATED;
+      int level = activePolicy != null ? activePolicy.getLevel(path) : Deflater.DEFAULT_COMPRESSION;
+      if (transformers != null && transformers.claims(path)) {
+         // the path buffer is reused for the next entries, but the content may be transformed later by another thread
+         final String name = path.toString();
+         out.writeEntry(name, archive.getDosTime(index), archive.getSize(index), new ZipEntrySource() {
+            @Override
+            public InputStream openStream() throws IOException {
+               return transformers.transform(name, archive.getInputStream(index));
+            }
+         }, method, level);
+         return;
+      }
+      if (rawCopy && !isEncoded(path, archive, index)) {
+         out.writeRawEntry(path, archive, index);
+      } else {
+         out.writeEntry(path, archive.getDosTime(index), archive.getSize(index), new ZipEntrySource() {
+            @Override
+            public InputStream openStream() throws IOException {
+               return archive.getInputStream(index);
+            }
+         }, method, level);
+      }
+   }
+
+   private boolean isEncoded(CharSequence path, ZipArchive archive, int index) {
+      return activePolicy != null
+         && activePolicy.isEncoded(path, archive.getMethod(index), archive.getSize(index), archive.getCompressedSize(index));
+   }
+
+   private void writeManifestContent(ZipContainerWriter out, List<ManifestJarEntry> manifestContent) throws IOException {
+      // https://stackoverflow.com/questions/62313791/replacing-the-manifest-mf-file-in-a-jar-programmatically
+      Iterator<ManifestJarEntry> it = manifestContent.iterator();
+      while (it.hasNext()) {
+         ManifestJarEntry jarEntry = it.next();
+         String path = jarEntry.getPath();
+         if (outputModel != null && !outputModel.accept(path)) {
+            continue;
+         }
+         if (debug) {
+            getMessageStream().println("Manifest entry: " + path);
+         }
+         ZipArchive archive = jarEntry.getParent().getArchive();
+         writeEntry(out, path, archive, jarEntry.getIndex());
+      }
+   }
+
+   private void write(ZipContainerWriter out, AbstractJarFileDirectory jarDir) throws IOException {
+      Iterator<JarFileEntry> it = jarDir.getEntries().iterator();
+      while (it.hasNext()) {
+         JarFileEntry fileEntry = it.next();
+         pathBuffer.setLength(0);
+         fileEntry.appendPath(pathBuffer);
+         if (outputModel != null && !outputModel.accept(pathBuffer)) {
+            continue;
+         }
+         if (debug) {
+            getMessageStream().println("jarDir: " + jarDir.getPath() + " path: " + pathBuffer);
+         }
+         ZipArchive archive = jarDir.getArchive();
+         writeEntry(out, pathBuffer, archive, fileEntry.getIndex());
+      }
+   }
+
+   /**
+    * An entry of the output in the reproducible mode.
+    */
+   private static class OutputEntry implements Comparable<OutputEntry> {
+      private final String path;
+      private final ZipArchive archive;
+      private final int index;
+
+      private OutputEntry(String path, ZipArchive archive, int index) {
+         this.path = path;
+         this.archive = archive;
+         this.index = index;
+      }
+
+      private boolean isMetaInf() {
+         return path.startsWith("META-INF/");
+      }
+
+      @Override
+      public int compareTo(OutputEntry other) {
+         if (isMetaInf() != other.isMetaInf()) {
+            return isMetaInf() ? -1 : 1;
+         }
+         return path.compareTo(other.path);
+      }
+   }
+
+   /**
+    * A channel which computes the hash of the bytes written to another channel.
+    */
+   private static class DigestChannel implements WritableByteChannel {
+      private final WritableByteChannel channel;
+      private final MessageDigest digest = IncrementalState.createDigest();
+
+      private DigestChannel(WritableByteChannel channel) {
+         this.channel = channel;
+      }
+
+      @Override
+      public int write(ByteBuffer src) throws IOException {
+         ByteBuffer written = src.duplicate();
+         int count = channel.write(src);
+         written.limit(written.position() + count);
+         digest.update(written);
+         return count;
+      }
+
+      @Override
+      public boolean isOpen() {
+         return channel.isOpen();
+      }
+
+      @Override
+      public void close() throws IOException {
+         channel.close();
+      }
+   }
+}
@@ -1,238 +1,1515 @@
-/*
-Copyright (c) 2023 Herve Girod
-All rights reserved.
-
-Redistribution and use in source and binary forms, with or without
-modification, are permitted provided that the following conditions are met:
-
-1. Redistributions of source code must retain the above copyright notice, this
-   list of conditions and the following disclaimer.
-2. Redistributions in binary form must reproduce the above copyright notice,
-   this list of conditions and the following disclaimer in the documentation
-   and/or other materials provided with the distribution.
-
-THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
-ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
-WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
-DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
-ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
-(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
-LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
-ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
-(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
-SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
-
-The views and conclusions contained in the software and documentation are those
-of the authors and should not be interpreted as representing official policies,
-either expressed or implied, of the FreeBSD Project.
-
-Alternatively if you have any questions about this project, you can visit
-the project website at the project page on https://github.com/hervegirod/jarrepackager
- */
-package org.girod.jarrepackager;
-
-import java.io.File;
-import java.io.IOException;
-import java.net.URL;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.PropertyResourceBundle;
-import org.girod.jarrepackager.gui.ErrorLogger;
-import org.girod.jarrepackager.gui.JarRepackagerGUI;
-import org.girod.jarrepackager.model.JarCollectionModel;
-import org.girod.jarrepackager.model.ManifestModel;
-import org.girod.jarrepackager.parser.PackagerError;
-import org.girod.jarrepackager.parser.ParserUtils;
-import org.girod.jarrepackager.parser.PropertiesParser;
-import org.mdiutil.util.LauncherUtils;
-
-/**
- * The Jar repackager main class.
- *
- * @since 0.1
- */
-public class JarRepackager {
-   private static final String EXT_JAR = "jar";
-   private static final String EXT_XML = "xml";
-   private File[] inputFiles = null;
-   private File outputFile = null;
-   private File propertiesFile = null;
-   private JarRepackagerGUI gui = null;
-   private final List<PackagerError> packagerErrors = new ArrayList<>();
-   private boolean debug = false;
-
-   public JarRepackager() {
-   }
-
-   public static void main(String[] args) {
-      JarRepackager repackager = new JarRepackager();
-      repackager.launch(args);
-   }
-
-   private void printVersion() {
-      URL url = JarRepackager.class.getResource("jarrepackager.properties");
-      try {
-         PropertyResourceBundle prb = new PropertyResourceBundle(url.openStream());
-         String version = prb.getString("version");
-         System.out.println("JarRepackager version " + version);
-      } catch (IOException ex) {
-      }
-   }
-
-   /**
-    * Start the application. See {@link #main(java.lang.String[])} for the arguments list.
-    *
-    * @param args the arguments
-    * @see #main(java.lang.String[])
-    */
-   public void launch(String[] args) {
-      Map<String, String> props = LauncherUtils.getLaunchProperties(args);
-      if (props.size() == 1 && props.containsKey("version")) {
-         printVersion();
-         return;
-      }
-      File dir = new File(System.getProperty("user.dir"));
-      for (Map.Entry<String, String> entry : props.entrySet()) {
-         String propKey = entry.getKey();
-         String propValue = entry.getValue();
-         switch (propKey) {
-            case "inputFiles":
-            case "input":
-               inputFiles = ParserUtils.parseFilesValue(dir, propValue);
-               break;
-            case "outputFile":
-            case "output":
-               outputFile = ParserUtils.parseFileValue(dir, propValue, EXT_JAR);
-               break;
-            case "properties":
-               propertiesFile = ParserUtils.parseFileValue(dir, propValue, EXT_XML);
-               break;
-            case "debug":
-               debug = propValue.equals("true");
-               break;
-         }
-      }
-      if (inputFiles != null && outputFile != null) {
-         try {
-            repackage();
-         } catch (IOException ex) {
-            packagerErrors.add(new PackagerError(ex));
-            System.err.println(ex.getMessage());
-         }
-         if (!packagerErrors.isEmpty()) {
-            ErrorLogger logger = new ErrorLogger();
-            logger.printErrors(packagerErrors);
-         }
-      } else {
-         gui = new JarRepackagerGUI(this);
-         gui.setVisible(true);
-      }
-   }
-
-   /**
-    * Return the errors encountered during the repackaging.
-    *
-    * @return the errors
-    */
-   public List<PackagerError> getErrors() {
-      return packagerErrors;
-   }
-
-   /**
-    * Set the input jar files.
-    *
-    * @param inputFiles the input files
-    */
-   public void setInputFiles(File[] inputFiles) {
-      this.inputFiles = inputFiles;
-      if (gui != null) {
-         gui.setInputFiles(inputFiles);
-      }
-   }
-
-   /**
-    * Return the input jar files.
-    *
-    * @return the input files
-    */
-   public File[] getInputFiles() {
-      return inputFiles;
-   }
-
-   /**
-    * Set the output jar file.
-    *
-    * @param outputFile the output file
-    */
-   public void setOutputFile(File outputFile) {
-      this.outputFile = outputFile;
-      if (gui != null) {
-         gui.setOutputFile(outputFile);
-      }
-   }
-
-   /**
-    * Return the output jar file.
-    *
-    * @return the output file
-    */
-   public File getOutputFile() {
-      return outputFile;
-   }
-
-   /**
-    * Set the properties xml file.
-    *
-    * @param propertiesFile the properties file
-    */
-   public void setPropertiesFile(File propertiesFile) {
-      this.propertiesFile = propertiesFile;
-   }
-
-   /**
-    * Set the debug property.
-    *
-    * @param debug the debug property
-    */
-   public void setDebug(boolean debug) {
-      this.debug = debug;
-   }
-
-   /**
-    * Return the debug property.
-    *
-    * @return the debug property
-    */
-   public boolean isDebugging() {
-      return debug;
-   }
-
-   /**
-    * Perform the repackaging.
-    *
-    * @return true if it could be performed
-    * @throws IOException
-    */
-   public boolean repackage() throws IOException {
-      ManifestModel manifestModel = new ManifestModel();
-      if (propertiesFile != null && propertiesFile.exists() && propertiesFile.isFile()) {
-         PropertiesParser propertiesParser = new PropertiesParser(this);
-         manifestModel = propertiesParser.parse(propertiesFile);
-      }
-      if (inputFiles != null && inputFiles.length != 0 && outputFile != null && packagerErrors.isEmpty()) {
-         JarPackagerReader reader = new JarPackagerReader(inputFiles);
-         reader.setManifestModel(manifestModel);
-         JarCollectionModel jarModel = reader.analyze();
-         JarPackagerWriter writer = new JarPackagerWriter(jarModel, outputFile);
-         writer.setDebug(debug);
-         writer.write();
-         System.out.println("Repackaging Finished");
-         return true;
-      } else {
-         System.out.println("Repackaging Failed");
-         packagerErrors.add(new PackagerError("Repackaging Failed"));
-         return false;
-      }
-   }
-}
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.PropertyResourceBundle;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import org.girod.jarrepackager.gui.ErrorLogger;
+import org.girod.jarrepackager.gui.JarRepackagerGUI;
+import org.girod.jarrepackager.model.CompressionPolicy;
+import org.girod.jarrepackager.model.ConflictResolver;
+import org.girod.jarrepackager.model.EntryFilter;
+import org.girod.jarrepackager.model.JarCollectionModel;
+import org.girod.jarrepackager.model.ManifestModel;
+import org.girod.jarrepackager.model.OutputModel;
+import org.girod.jarrepackager.model.PlatformFilter;
+import org.girod.jarrepackager.parser.CompiledConfiguration;
+import org.girod.jarrepackager.parser.ConfigurationCache;
+import org.girod.jarrepackager.parser.PackagerError;
+import org.girod.jarrepackager.parser.ParserUtils;
+import org.girod.jarrepackager.parser.PropertiesParser;
+import org.girod.jarrepackager.transform.EntryTransformers;
+import org.girod.jarrepackager.zip.ZipArchive;
+import org.girod.jarrepackager.zip.ZipArchivePool;
+import org.girod.jarrepackager.zip.ZipContainerWriter;
+import org.mdiutil.util.LauncherUtils;
+
+/**
+ * The Jar repackager main class.
+ *
+ * @since 0.1
+ */
+public class JarRepackager {
+   private static final String EXT_JAR = "jar";
+   private static final String EXT_XML = "xml";
+   private static final String EXT_SHA256 = "sha256";
+   private File[] inputFiles = null;
+   private final List<ZipArchive> inputArchives = new ArrayList<>();
+   private File[] resolvedInputs = null;
+   private File outputFile = null;
+   private WritableByteChannel outputChannel = null;
+   private File propertiesFile = null;
+   private JarRepackagerGUI gui = null;
+   private final List<PackagerError> packagerErrors = new ArrayList<>();
+   private boolean debug = false;
+   private boolean rawCopy = true;
+   private int analysisThreads = Runtime.getRuntime().availableProcessors();
+   private int compressionThreads = Runtime.getRuntime().availableProcessors();
+   private long maxInFlightBytes = ZipContainerWriter.DEFAULT_MAX_INFLIGHT_BYTES;
+   private boolean incremental = false;
+   private boolean streaming = false;
+   private boolean reproducible = false;
+   private int maxOpenInputs = ZipArchivePool.DEFAULT_MAX_MAPPED_ARCHIVES;
+   private short conflictPolicy = ConflictResolver.FAIL;
+   private short manifestConflictPolicy = ConflictResolver.FIRST_WINS;
+   private File configurationCacheDir = ConfigurationCache.getDefaultCacheDirectory();
+   private ConfigurationCache configurationCache = null;
+   private File[] batchFiles = null;
+   private int batchThreads = Runtime.getRuntime().availableProcessors();
+   private boolean watch = false;
+   private long watchDebounce = RepackagerWatcher.DEFAULT_DEBOUNCE;
+   private ZipArchivePool archivePool = null;
+   private ManifestModel manifestModel = null;
+   private List<OutputModel> outputModels = null;
+   private PlatformFilter platformFilter = null;
+   private EntryFilter entryFilter = null;
+   private EntryTransformers transformers = null;
+   private URLClassLoader transformersLoader = null;
+   private static EntryTransformers defaultTransformers = null;
+   private CompressionPolicy compressionPolicy = new CompressionPolicy();
+   private CompressionTuner compressionTuner = null;
+
+   public JarRepackager() {
+   }
+
+   public static void main(String[] args) {
+      JarRepackager repackager = new JarRepackager();
+      repackager.launch(args);
+   }
+
+   private void printVersion() {
+      URL url = JarRepackager.class.getResource("jarrepackager.properties");
+      try {
+         PropertyResourceBundle prb = new PropertyResourceBundle(url.openStream());
+         String version = prb.getString("version");
+         System.out.println("JarRepackager version " + version);
+      } catch (IOException ex) {
+      }
+   }
+
+   private static int parseInt(String value, int defaultValue) {
+      try {
+         return Integer.parseInt(value.trim());
+      } catch (NumberFormatException ex) {
+         return defaultValue;
+      }
+   }
+
+   private static long parseLong(String value, long defaultValue) {
+      try {
+         return Long.parseLong(value.trim());
+      } catch (NumberFormatException ex) {
+         return defaultValue;
+      }
+   }
+
+   private static File[] parseBatchFiles(File dir, String value) {
+      List<File> files = new ArrayList<>();
+      for (String path : value.split(";")) {
+         File file = ParserUtils.parseFileValue(dir, path.trim(), EXT_XML);
+         if (file != null) {
+            files.add(file);
+         }
+      }
+      return files.isEmpty() ? null : files.toArray(new File[files.size()]);
+   }
+
+   private static PlatformFilter parsePlatforms(String value) {
+      PlatformFilter filter = new PlatformFilter();
+      for (String classifier : value.split(";")) {
+         if (!classifier.trim().isEmpty() && !filter.addPlatform(classifier)) {
+            System.err.println("Platform " + classifier + " is unknown");
+         }
+      }
+      return filter.getPlatforms().isEmpty() ? null : filter;
+   }
+
+   private EntryFilter parseEntryPatterns(String value, boolean include) {
+      EntryFilter filter = entryFilter != null ? entryFilter : new EntryFilter();
+      for (String pattern : value.split(";")) {
+         pattern = pattern.trim();
+         if (!pattern.isEmpty() && !filter.addRule(null, include, pattern)) {
+            System.err.println("Entry pattern " + pattern + " is invalid");
+         }
+      }
+      return filter.isEmpty() ? null : filter;
+   }
+
+   private static void parseCompressionRules(CompressionPolicy policy, String value) {
+      for (String rule : value.split(";")) {
+         rule = rule.trim();
+         if (rule.isEmpty()) {
+            continue;
+         }
+         // the rules have the form pattern:method or pattern:method:level
+         String pattern = rule;
+         int level = Deflater.DEFAULT_COMPRESSION;
+         int sep = pattern.lastIndexOf(':');
+         if (sep > 0 && pattern.substring(sep + 1).trim().matches("\\d")) {
+            level = Integer.parseInt(pattern.substring(sep + 1).trim());
+            pattern = pattern.substring(0, sep);
+            sep = pattern.lastIndexOf(':');
+         }
+         int method = sep > 0 ? CompressionPolicy.parseMethod(pattern.substring(sep + 1)) : CompressionPolicy.UNDEFINED;
+         if (method == CompressionPolicy.UNDEFINED || !policy.addRule(pattern.substring(0, sep).trim(), method, level)) {
+            System.err.println("Compression rule " + rule + " is invalid");
+         }
+      }
+   }
+
+   private EntryTransformers parseTransformers(File dir, String value) {
+      if (value.equals("false")) {
+         return new EntryTransformers();
+      }
+      List<URL> urls = new ArrayList<>();
+      for (String path : value.split(";")) {
+         File file = ParserUtils.parseFileValue(dir, path.trim(), EXT_JAR);
+         if (file != null) {
+            try {
+               urls.add(file.toURI().toURL());
+            } catch (MalformedURLException ex) {
+               System.err.println("Transformers File " + path + " is invalid");
+            }
+         }
+      }
+      if (urls.isEmpty()) {
+         return null;
+      }
+      closeTransformers();
+      transformersLoader = new URLClassLoader(urls.toArray(new URL[urls.size()]), JarRepackager.class.getClassLoader());
+      return EntryTransformers.load(transformersLoader);
+   }
+
+   /**
+    * Close the class loader of the transformers jar files declared by the "transformers" property, if any. The
+    * transformers of these jar files can not be used anymore after this method has been called.
+    */
+   void closeTransformers() {
+      if (transformersLoader != null) {
+         try {
+            transformersLoader.close();
+         } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+         }
+         transformersLoader = null;
+      }
+   }
+
+   private static short parsePolicy(String value, short defaultValue) {
+      short policy = ConflictResolver.parsePolicy(value);
+      return policy == -1 ? defaultValue : policy;
+   }
+
+   /**
+    * Start the application. See {@link #main(java.lang.String[])} for the arguments list.
+    *
+    * @param args the arguments
+    * @see #main(java.lang.String[])
+    */
+   public void launch(String[] args) {
+      Map<String, String> props = LauncherUtils.getLaunchProperties(args);
+      if (props.size() == 1 && props.containsKey("version")) {
+         printVersion();
+         return;
+      }
+      if (props.containsKey("daemon")) {
+         launchDaemon(props);
+         return;
+      }
+      File dir = new File(System.getProperty("user.dir"));
+      configure(dir, props);
+      if (watch && batchFiles == null && hasCommand()) {
+         RepackagerWatcher watcher = new RepackagerWatcher(this);
+         watcher.setDebounce(watchDebounce);
+         try {
+            watcher.watch();
+         } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+         }
+      } else if (hasCommand()) {
+         execute();
+         if (!packagerErrors.isEmpty()) {
+            ErrorLogger logger = new ErrorLogger();
+            logger.printErrors(packagerErrors);
+         }
+      } else {
+         gui = new JarRepackagerGUI(this);
+         gui.setVisible(true);
+      }
+   }
+
+   private void launchDaemon(Map<String, String> props) {
+      int port = props.containsKey("daemonPort") ? parseInt(props.get("daemonPort"), RepackagerDaemon.DEFAULT_PORT) : RepackagerDaemon.DEFAULT_PORT;
+      try {
+         if (props.get("daemon").equals("stop")) {
+            RepackagerClient client = RepackagerClient.readTokenFile(RepackagerClient.getDefaultTokenFile());
+            if (props.containsKey("daemonPort")) {
+               client = new RepackagerClient(port, client.getSecret());
+            }
+            client.stop();
+            getMessageStream().println("Daemon stopped");
+         } else {
+            int maxOpenInputs = props.containsKey("maxOpenInputs") ? parseInt(props.get("maxOpenInputs"), this.maxOpenInputs) : this.maxOpenInputs;
+            RepackagerDaemon daemon = new RepackagerDaemon(port, maxOpenInputs);
+            daemon.start();
+            getMessageStream().println("Daemon listening on port " + daemon.getPort());
+            daemon.awaitTermination();
+         }
+      } catch (IOException ex) {
+         System.err.println(ex.getMessage());
+      } catch (InterruptedException ex) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * Apply the command line properties.
+    *
+    * @param dir the directory against which the relative paths are resolved
+    * @param props the properties
+    */
+   void configure(File dir, Map<String, String> props) {
+      for (Map.Entry<String, String> entry : props.entrySet()) {
+         String propKey = entry.getKey();
+         String propValue = entry.getValue();
+         switch (propKey) {
+            case "inputFiles":
+            case "input":
+               if (propValue.equals("-")) {
+                  readStandardInput();
+               } else {
+                  inputFiles = ParserUtils.parseFilesValue(dir, propValue);
+               }
+               break;
+            case "outputFile":
+            case "output":
+               if (propValue.equals("-")) {
+                  outputChannel = Channels.newChannel(new FileOutputStream(FileDescriptor.out));
+               } else {
+                  outputFile = ParserUtils.parseFileValue(dir, propValue, EXT_JAR);
+               }
+               break;
+            case "properties":
+               propertiesFile = ParserUtils.parseFileValue(dir, propValue, EXT_XML);
+               break;
+            case "debug":
+               debug = propValue.equals("true");
+               break;
+            case "rawCopy":
+               rawCopy = !propValue.equals("false");
+               break;
+            case "incremental":
+               incremental = !propValue.equals("false");
+               break;
+            case "streaming":
+               streaming = !propValue.equals("false");
+               break;
+            case "reproducible":
+               reproducible = !propValue.equals("false");
+               break;
+            case "conflictPolicy":
+               conflictPolicy = parsePolicy(propValue, conflictPolicy);
+               break;
+            case "manifestConflictPolicy":
+               manifestConflictPolicy = parsePolicy(propValue, manifestConflictPolicy);
+               break;
+            case "analysisThreads":
+               analysisThreads = parseInt(propValue, analysisThreads);
+               break;
+            case "compressionThreads":
+               compressionThreads = parseInt(propValue, compressionThreads);
+               break;
+            case "maxInFlightBytes":
+               maxInFlightBytes = parseLong(propValue, maxInFlightBytes);
+               break;
+            case "maxOpenInputs":
+               maxOpenInputs = parseInt(propValue, maxOpenInputs);
+               break;
+            case "configCache":
+               if (propValue.equals("false")) {
+                  configurationCacheDir = null;
+               }
+               break;
+            case "configCacheDir":
+               File cacheDir = ParserUtils.parseDirectoryValue(dir, propValue);
+               if (cacheDir != null) {
+                  configurationCacheDir = cacheDir;
+               } else {
+                  System.err.println("Configuration cache directory " + propValue + " is not a directory");
+               }
+               break;
+            case "batch":
+               batchFiles = parseBatchFiles(dir, propValue);
+               break;
+            case "batchThreads":
+               batchThreads = parseInt(propValue, batchThreads);
+               break;
+            case "platforms":
+               platformFilter = parsePlatforms(propValue);
+               break;
+            case "includeEntries":
+               entryFilter = parseEntryPatterns(propValue, true);
+               break;
+            case "excludeEntries":
+               entryFilter = parseEntryPatterns(propValue, false);
+               break;
+            case "transformers":
+               transformers = parseTransformers(dir, propValue);
+               break;
+            case "compression":
+               parseCompressionRules(compressionPolicy, propValue);
+               break;
+            case "detectIncompressible":
+               compressionPolicy.setDetectIncompressible(!propValue.equals("false"));
+               break;
+            case "storeClasses":
+               compressionPolicy.setStoreClasses(propValue.equals("true"));
+               break;
+            case "autoTune":
+               compressionTuner = propValue.equals("false") ? null : CompressionTuner.parse(propValue);
+               if (compressionTuner == null && !propValue.equals("false")) {
+                  System.err.println("Auto-tuning target " + propValue + " is invalid");
+               }
+               break;
+            case "watch":
+               watch = !propValue.equals("false");
+               break;
+            case "watchDebounce":
+               watchDebounce = parseLong(propValue, watchDebounce);
+               break;
+         }
+      }
+   }
+
+   private void readStandardInput() {
+      try {
+         inputArchives.add(ZipArchive.read("stdin.jar", System.in));
+      } catch (IOException ex) {
+         System.err.println("Standard input is not a zip container: " + ex.getMessage());
+      }
+   }
+
+   /**
+    * Return true if the command line properties declare a repackaging or a batch.
+    *
+    * @return true if there is something to repackage
+    */
+   boolean hasCommand() {
+      boolean hasInputs = inputFiles != null || !inputArchives.isEmpty();
+      return batchFiles != null || (hasInputs && (outputFile != null || outputChannel != null)) || propertiesFile != null;
+   }
+
+   /**
+    * Perform the repackaging or the batch declared by the command line properties.
+    *
+    * @return true if it could be performed without errors
+    */
+   boolean execute() {
+      boolean success;
+      try {
+         if (batchFiles != null) {
+            BatchRepackager batch = new BatchRepackager(this);
+            batch.setBatchThreads(batchThreads);
+            for (File file : batchFiles) {
+               batch.addPropertiesFile(file);
+            }
+            success = batch.repackage();
+         } else {
+            success = repackage();
+         }
+      } catch (IOException ex) {
+         packagerErrors.add(new PackagerError(ex));
+         System.err.println(ex.getMessage());
+         success = false;
+      }
+      return success && packagerErrors.isEmpty();
+   }
+
+   /**
+    * Return the errors encountered during the repackaging.
+    *
+    * @return the errors
+    */
+   public List<PackagerError> getErrors() {
+      return packagerErrors;
+   }
+
+   /**
+    * Set the input jar files.
+    *
+    * @param inputFiles the input files
+    */
+   public void setInputFiles(File[] inputFiles) {
+      this.inputFiles = inputFiles;
+      if (gui != null) {
+         gui.setInputFiles(inputFiles);
+      }
+   }
+
+   /**
+    * Return the input jar files.
+    *
+    * @return the input files
+    */
+   public File[] getInputFiles() {
+      return inputFiles;
+   }
+
+   /**
+    * Set the output jar file.
+    *
+    * @param outputFile the output file
+    */
+   public void setOutputFile(File outputFile) {
+      this.outputFile = outputFile;
+      this.outputModels = null;
+      if (gui != null) {
+         gui.setOutputFile(outputFile);
+      }
+   }
+
+   /**
+    * Return the output jar file.
+    *
+    * @return the output file
+    */
+   public File getOutputFile() {
+      return outputFile;
+   }
+
+   /**
+    * Add an input container opened outside of the repackager, for example a container in memory (see
+    * {@link ZipArchive#ZipArchive(String, java.nio.ByteBuffer)}). The input containers are used after the input files,
+    * in their order of addition, and they are closed at the end of the repackaging. The incremental mode is not used if
+    * there are input containers.
+    *
+    * @param archive the container
+    * @since 0.2
+    */
+   public void addInputArchive(ZipArchive archive) {
+      inputArchives.add(archive);
+   }
+
+   /**
+    * Add an input path, which can be on any file system. A path of the default file system is added to the input files,
+    * a path of another file system is read in memory.
+    *
+    * @param path the path
+    * @throws IOException if the path can not be read
+    * @since 0.2
+    */
+   public void addInput(Path path) throws IOException {
+      if (path.getFileSystem() == FileSystems.getDefault()) {
+         List<File> files = new ArrayList<>();
+         if (inputFiles != null) {
+            files.addAll(Arrays.asList(inputFiles));
+         }
+         files.add(path.toFile());
+         setInputFiles(files.toArray(new File[files.size()]));
+      } else {
+         inputArchives.add(new ZipArchive(path));
+      }
+   }
+
+   /**
+    * Return the input containers opened outside of the repackager.
+    *
+    * @return the containers
+    * @since 0.2
+    */
+   public List<ZipArchive> getInputArchives() {
+      return inputArchives;
+   }
+
+   /**
+    * Set the channel on which the output is written instead of the output file, for example the channel of an in-memory
+    * stream. The channel is written sequentially and it is not closed by the repackager. Only the main output is written
+    * on the channel, and the incremental mode is not used.
+    *
+    * @param outputChannel the channel, or null to write the output file
+    * @since 0.2
+    */
+   public void setOutputChannel(WritableByteChannel outputChannel) {
+      this.outputChannel = outputChannel;
+   }
+
+   /**
+    * Set the stream on which the output is written instead of the output file. The stream is not closed by the
+    * repackager.
+    *
+    * @param outputStream the stream, or null to write the output file
+    * @since 0.2
+    */
+   public void setOutputStream(OutputStream outputStream) {
+      this.outputChannel = outputStream != null ? Channels.newChannel(outputStream) : null;
+   }
+
+   /**
+    * Return the channel on which the output is written instead of the output file.
+    *
+    * @return the channel, or null if the output file is written
+    * @since 0.2
+    */
+   public WritableByteChannel getOutputChannel() {
+      return outputChannel;
+   }
+
+   /**
+    * Set the models of the output files. All the output files are written from the same analysis of the input files.
+    *
+    * @param outputModels the output models, or null to only write the output file
+    * @since 0.2
+    */
+   public void setOutputModels(List<OutputModel> outputModels) {
+      this.outputModels = outputModels;
+   }
+
+   /**
+    * Return the models of the output files. If no models have been set, return one model for the output file, without
+    * filters.
+    *
+    * @return the output models
+    * @since 0.2
+    */
+   public List<OutputModel> getOutputModels() {
+      if (outputModels == null || outputModels.isEmpty()) {
+         List<OutputModel> list = new ArrayList<>();
+         if (outputFile != null) {
+            list.add(new OutputModel(outputFile));
+         }
+         return list;
+      }
+      return outputModels;
+   }
+
+   /**
+    * Set the filter of the platforms. The input files which have a classifier of another platform are not used, and the
+    * native libraries of the other platforms are not written.
+    *
+    * @param platformFilter the filter, or null to keep all the platforms
+    * @since 0.2
+    */
+   public void setPlatformFilter(PlatformFilter platformFilter) {
+      this.platformFilter = platformFilter;
+   }
+
+   /**
+    * Return the filter of the platforms.
+    *
+    * @return the filter, or null if all the platforms are kept
+    * @since 0.2
+    */
+   public PlatformFilter getPlatformFilter() {
+      return platformFilter;
+   }
+
+   /**
+    * Set the filter of the entries of the input files. The entries which are rejected by the filter are skipped when the
+    * input files are analyzed, so they are never read nor written.
+    *
+    * @param entryFilter the filter, or null to keep all the entries
+    * @since 0.2
+    */
+   public void setEntryFilter(EntryFilter entryFilter) {
+      this.entryFilter = entryFilter;
+   }
+
+   /**
+    * Return the filter of the entries of the input files.
+    *
+    * @return the filter, or null if all the entries are kept
+    * @since 0.2
+    */
+   public EntryFilter getEntryFilter() {
+      return entryFilter;
+   }
+
+   /**
+    * Set the transformers of the content of the entries. If no transformers are set, the transformers declared as
+    * services in the class loader of the repackager are used.
+    *
+    * @param transformers the transformers
+    * @since 0.2
+    */
+   public void setTransformers(EntryTransformers transformers) {
+      this.transformers = transformers;
+   }
+
+   /**
+    * Return the transformers of the content of the entries. If no transformers have been set, the transformers declared
+    * as services in the class loader of the repackager are returned.
+    *
+    * @return the transformers
+    * @since 0.2
+    */
+   public EntryTransformers getTransformers() {
+      if (transformers != null) {
+         return transformers;
+      }
+      synchronized (JarRepackager.class) {
+         if (defaultTransformers == null) {
+            defaultTransformers = EntryTransformers.load(JarRepackager.class.getClassLoader());
+         }
+         return defaultTransformers;
+      }
+   }
+
+   /**
+    * Set the compression policy of the entries of the output file.
+    *
+    * @param compressionPolicy the policy
+    * @since 0.2
+    */
+   public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+      this.compressionPolicy = compressionPolicy;
+   }
+
+   /**
+    * Return the compression policy of the entries of the output file. By default, the new entries are deflated, except
+    * if their content is detected as incompressible.
+    *
+    * @return the policy
+    * @since 0.2
+    */
+   public CompressionPolicy getCompressionPolicy() {
+      return compressionPolicy;
+   }
+
+   /**
+    * Set the tuner of the compression of the entries of the output file. The tuner is not used in the streaming mode.
+    *
+    * @param compressionTuner the tuner, or null to use the compression policy as is
+    * @since 0.2
+    */
+   public void setCompressionTuner(CompressionTuner compressionTuner) {
+      this.compressionTuner = compressionTuner;
+   }
+
+   /**
+    * Return the tuner of the compression of the entries of the output file.
+    *
+    * @return the tuner, or null if the compression policy is used as is
+    * @since 0.2
+    */
+   public CompressionTuner getCompressionTuner() {
+      return compressionTuner;
+   }
+
+   private EntryTransformers getActiveTransformers() {
+      EntryTransformers active = getTransformers();
+      return active.isEmpty() ? null : active;
+   }
+
+   /**
+    * Set the properties xml file.
+    *
+    * @param propertiesFile the properties file
+    */
+   public void setPropertiesFile(File propertiesFile) {
+      this.propertiesFile = propertiesFile;
+      this.manifestModel = null;
+   }
+
+   /**
+    * Return the properties xml file.
+    *
+    * @return the properties file
+    * @since 0.2
+    */
+   public File getPropertiesFile() {
+      return propertiesFile;
+   }
+
+   /**
+    * Set the debug property.
+    *
+    * @param debug the debug property
+    */
+   public void setDebug(boolean debug) {
+      this.debug = debug;
+   }
+
+   /**
+    * Return the debug property.
+    *
+    * @return the debug property
+    */
+   public boolean isDebugging() {
+      return debug;
+   }
+
+   /**
+    * Set the raw copy mode. If true (the default), the compressed content of the input entries is copied in the output
+    * without being inflated and deflated again.
+    *
+    * @param rawCopy true for the raw copy mode
+    * @since 0.2
+    */
+   public void setRawCopy(boolean rawCopy) {
+      this.rawCopy = rawCopy;
+   }
+
+   /**
+    * Return the raw copy mode.
+    *
+    * @return true for the raw copy mode
+    * @since 0.2
+    */
+   public boolean isRawCopy() {
+      return rawCopy;
+   }
+
+   /**
+    * Set the incremental mode. In this mode, the fingerprints of the input files are stored in a sidecar file next to the
+    * output file. If no input file and no setting has changed since the previous repackaging, the output file is neither
+    * analyzed nor written again. Else all the input files are analyzed again and the whole output file is written again,
+    * exactly as without the incremental mode.
+    *
+    * @param incremental true for the incremental mode
+    * @since 0.2
+    */
+   public void setIncremental(boolean incremental) {
+      this.incremental = incremental;
+   }
+
+   /**
+    * Return true for the incremental mode.
+    *
+    * @return true for the incremental mode
+    * @since 0.2
+    */
+   public boolean isIncremental() {
+      return incremental;
+   }
+
+   /**
+    * Set the policy for the conflicts between entries which have the same path outside of the "META-INF/" directory.
+    * The default is {@link ConflictResolver#FAIL}.
+    *
+    * @param conflictPolicy the policy
+    * @since 0.2
+    */
+   public void setConflictPolicy(short conflictPolicy) {
+      this.conflictPolicy = conflictPolicy;
+   }
+
+   /**
+    * Return the policy for the conflicts between entries which have the same path outside of the "META-INF/" directory.
+    *
+    * @return the policy
+    * @since 0.2
+    */
+   public short getConflictPolicy() {
+      return conflictPolicy;
+   }
+
+   /**
+    * Set the policy for the conflicts between entries which have the same path in the "META-INF/" directory. The
+    * default is {@link ConflictResolver#FIRST_WINS}.
+    *
+    * @param manifestConflictPolicy the policy
+    * @since 0.2
+    */
+   public void setManifestConflictPolicy(short manifestConflictPolicy) {
+      this.manifestConflictPolicy = manifestConflictPolicy;
+   }
+
+   /**
+    * Return the policy for the conflicts between entries which have the same path in the "META-INF/" directory.
+    *
+    * @return the policy
+    * @since 0.2
+    */
+   public short getManifestConflictPolicy() {
+      return manifestConflictPolicy;
+   }
+
+   /**
+    * Set the maximum number of input files which are opened at the same time. The least recently used input files are
+    * closed when this number is reached, and opened again when they are needed.
+    *
+    * @param maxOpenInputs the maximum number of input files
+    * @since 0.2
+    */
+   public void setMaxOpenInputs(int maxOpenInputs) {
+      this.maxOpenInputs = maxOpenInputs;
+   }
+
+   /**
+    * Return the maximum number of input files which are opened at the same time.
+    *
+    * @return the maximum number of input files
+    * @since 0.2
+    */
+   public int getMaxOpenInputs() {
+      return maxOpenInputs;
+   }
+
+   /**
+    * Set the directory of the cache of the compiled properties files. The default is the directory returned by
+    * {@link ConfigurationCache#getDefaultCacheDirectory()}.
+    *
+    * @param configurationCacheDir the directory, or null to disable the cache
+    * @since 0.2
+    */
+   public void setConfigurationCacheDirectory(File configurationCacheDir) {
+      this.configurationCacheDir = configurationCacheDir;
+      this.configurationCache = null;
+   }
+
+   /**
+    * Return the directory of the cache of the compiled properties files.
+    *
+    * @return the directory, or null if the cache is disabled
+    * @since 0.2
+    */
+   public File getConfigurationCacheDirectory() {
+      return configurationCacheDir;
+   }
+
+   /**
+    * Set the cache of the compiled properties files. This cache is used instead of a cache created for the
+    * {@link #getConfigurationCacheDirectory()} directory, so that a resident cache can be shared by several repackagers.
+    *
+    * @param configurationCache the cache, or null to use the cache directory
+    * @since 0.2
+    */
+   public void setConfigurationCache(ConfigurationCache configurationCache) {
+      this.configurationCache = configurationCache;
+   }
+
+   /**
+    * Return the cache of the compiled properties files set by {@link #setConfigurationCache(ConfigurationCache)}.
+    *
+    * @return the cache, or null if there is no shared cache
+    * @since 0.2
+    */
+   public ConfigurationCache getConfigurationCache() {
+      return configurationCache;
+   }
+
+   /**
+    * Set a pool of input files shared with other repackagings. The pool is not closed at the end of the repackaging. If
+    * no pool is set, the repackaging uses its own pool, with {@link #getMaxOpenInputs()} input files mapped at most.
+    *
+    * @param archivePool the pool, or null
+    * @since 0.2
+    */
+   public void setArchivePool(ZipArchivePool archivePool) {
+      this.archivePool = archivePool;
+   }
+
+   /**
+    * Return the pool of input files shared with other repackagings.
+    *
+    * @return the pool, or null if the repackaging uses its own pool
+    * @since 0.2
+    */
+   public ZipArchivePool getArchivePool() {
+      return archivePool;
+   }
+
+   /**
+    * Copy the settings of another repackager, except its input files, output file and properties file.
+    *
+    * @param settings the other repackager
+    * @since 0.2
+    */
+   public void copySettings(JarRepackager settings) {
+      debug = settings.debug;
+      rawCopy = settings.rawCopy;
+      analysisThreads = settings.analysisThreads;
+      compressionThreads = settings.compressionThreads;
+      maxInFlightBytes = settings.maxInFlightBytes;
+      incremental = settings.incremental;
+      streaming = settings.streaming;
+      reproducible = settings.reproducible;
+      maxOpenInputs = settings.maxOpenInputs;
+      conflictPolicy = settings.conflictPolicy;
+      manifestConflictPolicy = settings.manifestConflictPolicy;
+      configurationCacheDir = settings.configurationCacheDir;
+      configurationCache = settings.configurationCache;
+      platformFilter = settings.platformFilter;
+      entryFilter = settings.entryFilter;
+      transformers = settings.transformers;
+      compressionPolicy = settings.compressionPolicy;
+      compressionTuner = settings.compressionTuner;
+   }
+
+   /**
+    * Parse the properties file if it has not already been parsed, and return the model of the manifest. The input files,
+    * the output file and the settings declared in the properties file are applied to this repackager.
+    *
+    * @return the manifest model
+    * @since 0.2
+    */
+   public ManifestModel loadProperties() {
+      if (manifestModel == null) {
+         if (propertiesFile != null && propertiesFile.exists() && propertiesFile.isFile()) {
+            manifestModel = parseProperties();
+         } else {
+            manifestModel = new ManifestModel();
+         }
+      }
+      return manifestModel;
+   }
+
+   /**
+    * Set the streaming mode. In this mode, the entries are written in the output as soon as they are read, without
+    * building the model of all the input files (see {@link JarPackagerStreamer}). The incremental mode is not used in the
+    * streaming mode.
+    *
+    * @param streaming true for the streaming mode
+    * @since 0.2
+    */
+   public void setStreaming(boolean streaming) {
+      this.streaming = streaming;
+   }
+
+   /**
+    * Return true for the streaming mode.
+    *
+    * @return true for the streaming mode
+    * @since 0.2
+    */
+   public boolean isStreaming() {
+      return streaming;
+   }
+
+   /**
+    * Set the reproducible mode. In this mode, the same inputs always produce the same output, with its entries sorted by
+    * path, fixed timestamps and a sorted manifest (see {@link JarPackagerWriter#setReproducible(boolean)}). The SHA-256
+    * hash of each output file is recorded in a file of the same name with a ".sha256" extension. The streaming mode and
+    * the compression tuner, whose results depend on the inputs order or on the machine, are not used in this mode.
+    *
+    * @param reproducible true for the reproducible mode
+    * @since 0.2
+    */
+   public void setReproducible(boolean reproducible) {
+      this.reproducible = reproducible;
+   }
+
+   /**
+    * Return true for the reproducible mode.
+    *
+    * @return true for the reproducible mode
+    * @since 0.2
+    */
+   public boolean isReproducible() {
+      return reproducible;
+   }
+
+   /**
+    * Set the number of threads used to analyze the input files.
+    *
+    * @param analysisThreads the number of threads
+    * @since 0.2
+    */
+   public void setAnalysisThreads(int analysisThreads) {
+      this.analysisThreads = analysisThreads;
+   }
+
+   /**
+    * Return the number of threads used to analyze the input files.
+    *
+    * @return the number of threads
+    * @since 0.2
+    */
+   public int getAnalysisThreads() {
+      return analysisThreads;
+   }
+
+   /**
+    * Set the number of threads used to compress the entries which must be compressed again.
+    *
+    * @param compressionThreads the number of threads
+    * @since 0.2
+    */
+   public void setCompressionThreads(int compressionThreads) {
+      this.compressionThreads = compressionThreads;
+   }
+
+   /**
+    * Return the number of threads used to compress the entries which must be compressed again.
+    *
+    * @return the number of threads
+    * @since 0.2
+    */
+   public int getCompressionThreads() {
+      return compressionThreads;
+   }
+
+   /**
+    * Set the maximum number of uncompressed bytes of the entries which are being compressed but not yet written.
+    *
+    * @param maxInFlightBytes the maximum number of bytes
+    * @since 0.2
+    */
+   public void setMaxInFlightBytes(long maxInFlightBytes) {
+      this.maxInFlightBytes = maxInFlightBytes;
+   }
+
+   /**
+    * Return the maximum number of uncompressed bytes of the entries which are being compressed but not yet written.
+    *
+    * @return the maximum number of bytes
+    * @since 0.2
+    */
+   public long getMaxInFlightBytes() {
+      return maxInFlightBytes;
+   }
+
+   /**
+    * Perform the repackaging.
+    *
+    * @return true if it could be performed
+    * @throws IOException
+    */
+   public boolean repackage() throws IOException {
+      ManifestModel manifestModel = loadProperties();
+      List<File> inputs = new ArrayList<>();
+      if (inputFiles != null) {
+         for (int i = 0; i < inputFiles.length; i++) {
+            if (!inputFiles[i].isFile()) {
+               packagerErrors.add(new PackagerError("Input File " + inputFiles[i].getPath() + " not found or is not a File"));
+            }
+         }
+         inputs.addAll(Arrays.asList(inputFiles));
+      }
+      for (ZipArchive archive : inputArchives) {
+         inputs.add(archive.getFile());
+      }
+      resolvedInputs = inputs.toArray(new File[inputs.size()]);
+      if (platformFilter != null) {
+         File[] platformFiles = platformFilter.filter(resolvedInputs);
+         if (debug && platformFiles.length != resolvedInputs.length) {
+            getMessageStream().println((resolvedInputs.length - platformFiles.length) + " input files of other platforms skipped");
+         }
+         resolvedInputs = platformFiles;
+      }
+      boolean hasOutput = outputFile != null || outputChannel != null;
+      if (resolvedInputs.length != 0 && hasOutput && packagerErrors.isEmpty()) {
+         if (!inputArchives.isEmpty()) {
+            // the input containers are only known by a private pool, which closes them at the end of the repackaging
+            try (ZipArchivePool pool = new ZipArchivePool(maxOpenInputs)) {
+               for (ZipArchive archive : inputArchives) {
+                  pool.register(archive);
+               }
+               inputArchives.clear();
+               return repackage(manifestModel, pool, true);
+            }
+         } else if (archivePool != null) {
+            // the input files of a shared pool are closed by the owner of the pool, and are referenced by the session of
+            // this repackaging so that they are not closed while they are used
+            try (ZipArchivePool session = archivePool.openSession()) {
+               return repackage(manifestModel, session, false);
+            }
+         } else {
+            // all the input files are closed when the pool is closed
+            try (ZipArchivePool pool = new ZipArchivePool(maxOpenInputs)) {
+               return repackage(manifestModel, pool, false);
+            }
+         }
+      } else {
+         getMessageStream().println("Repackaging Failed");
+         packagerErrors.add(new PackagerError("Repackaging Failed"));
+         return false;
+      }
+   }
+
+   private boolean repackage(ManifestModel manifestModel, ZipArchivePool pool, boolean inputsInMemory) throws IOException {
+      List<OutputModel> outputs = getOutputModels();
+      if (outputChannel != null) {
+         // only the main output is written on the channel
+         OutputModel output = outputs.isEmpty() ? new OutputModel(null) : outputs.get(0);
+         if (streaming && !reproducible && output.isDefault()) {
+            createStreamer(manifestModel, pool, new JarPackagerStreamer(resolvedInputs, outputChannel)).write();
+         } else {
+            JarPackagerWriter writer = new JarPackagerWriter(analyze(manifestModel, pool), outputChannel);
+            configureWriter(writer, pool, output);
+            writer.write();
+            printTuningReport(writer);
+            if (writer.getContentHash() != null) {
+               getMessageStream().println("Output hash: " + writer.getContentHash());
+            }
+         }
+         getMessageStream().println("Repackaging Finished");
+         return true;
+      }
+      if (streaming && !reproducible && outputs.size() == 1 && outputs.get(0).isDefault()) {
+         createStreamer(manifestModel, pool, new JarPackagerStreamer(resolvedInputs, outputFile)).write();
+         getMessageStream().println("Repackaging Finished");
+         return true;
+      }
+      List<OutputState> outdatedOutputs = new ArrayList<>();
+      IncrementalState inputsState = null;
+      for (OutputModel output : outputs) {
+         OutputState outputState = new OutputState(output);
+         // the state of the inputs in memory can not be checked by the next repackaging
+         if (incremental && !inputsInMemory) {
+            outputState.previousState = IncrementalState.read(outputState.stateFile);
+            if (inputsState == null) {
+               // the hashes of the input files are only computed once for all the outputs
+               inputsState = IncrementalState.create(resolvedInputs, "", outputState.previousState);
+            }
+            outputState.state = inputsState.derive(getSettingsFingerprint(manifestModel, output));
+            if (outputState.state.isUpToDate(outputState.previousState, output.getOutputFile())) {
+               if (debug) {
+                  getMessageStream().println("Output " + output.getOutputFile().getName() + " is up to date");
+               }
+               continue;
+            }
+         }
+         outdatedOutputs.add(outputState);
+      }
+      if (outdatedOutputs.isEmpty()) {
+         getMessageStream().println("Repackaging Finished, output is up to date");
+         return true;
+      }
+      repackage(manifestModel, pool, outdatedOutputs);
+      getMessageStream().println("Repackaging Finished");
+      return true;
+   }
+
+   private JarPackagerStreamer createStreamer(ManifestModel manifestModel, ZipArchivePool pool, JarPackagerStreamer streamer) {
+      streamer.setManifestModel(manifestModel);
+      streamer.setConflictResolver(new ConflictResolver(conflictPolicy, manifestConflictPolicy));
+      streamer.setDebug(debug);
+      streamer.setRawCopy(rawCopy);
+      streamer.setCompressionThreads(compressionThreads);
+      streamer.setMaxInFlightBytes(maxInFlightBytes);
+      streamer.setPlatformFilter(platformFilter);
+      streamer.setEntryFilter(entryFilter);
+      streamer.setTransformers(getActiveTransformers());
+      streamer.setCompressionPolicy(compressionPolicy);
+      streamer.setArchivePool(pool);
+      return streamer;
+   }
+
+   private JarCollectionModel analyze(ManifestModel manifestModel, ZipArchivePool pool) throws IOException {
+      JarPackagerReader reader = new JarPackagerReader(resolvedInputs);
+      reader.setManifestModel(manifestModel);
+      reader.setConflictResolver(new ConflictResolver(conflictPolicy, manifestConflictPolicy));
+      reader.setAnalysisThreads(analysisThreads);
+      reader.setArchivePool(pool);
+      reader.setPlatformFilter(platformFilter);
+      reader.setEntryFilter(entryFilter);
+      return reader.analyze();
+   }
+
+   private void repackage(ManifestModel manifestModel, final ZipArchivePool pool, List<OutputState> outputStates) throws IOException {
+      final JarCollectionModel jarModel = analyze(manifestModel, pool);
+      if (outputStates.size() == 1) {
+         write(jarModel, pool, outputStates.get(0), null);
+         return;
+      }
+      // the input files are analyzed once, then all the outputs are written concurrently from the same model, and their
+      // entries are compressed by the same threads
+      int threads = Math.max(1, compressionThreads);
+      ExecutorService executor = Executors.newFixedThreadPool(Math.min(outputStates.size(), threads));
+      final ExecutorService compressionExecutor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+      try {
+         List<Future<Void>> futures = new ArrayList<>();
+         for (final OutputState outputState : outputStates) {
+            futures.add(executor.submit(new Callable<Void>() {
+               @Override
+               public Void call() throws IOException {
+                  write(jarModel, pool, outputState, compressionExecutor);
+                  return null;
+               }
+            }));
+         }
+         for (Future<Void> future : futures) {
+            future.get();
+         }
+      } catch (InterruptedException ex) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Repackaging interrupted");
+      } catch (ExecutionException ex) {
+         if (ex.getCause() instanceof IOException) {
+            throw (IOException) ex.getCause();
+         } else {
+            throw new IOException(ex.getCause());
+         }
+      } finally {
+         // the writers which are still running must be stopped before the input files are closed
+         executor.shutdownNow();
+         if (compressionExecutor != null) {
+            compressionExecutor.shutdownNow();
+         }
+         awaitTermination(executor);
+         if (compressionExecutor != null) {
+            awaitTermination(compressionExecutor);
+         }
+      }
+   }
+
+   /**
+    * Wait until all the tasks of an executor which has been shut down are finished. An interruption does not stop the
+    * wait, because the tasks may still read the input files, but the interrupted status is restored.
+    *
+    * @param executor the executor
+    */
+   static void awaitTermination(ExecutorService executor) {
+      boolean interrupted = false;
+      while (true) {
+         try {
+            if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+               break;
+            }
+         } catch (InterruptedException ex) {
+            interrupted = true;
+         }
+      }
+      if (interrupted) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private void write(JarCollectionModel jarModel, ZipArchivePool pool, OutputState outputState, ExecutorService compressionExecutor)
+      throws IOException {
+      if (incremental) {
+         writeIncrementally(jarModel, pool, outputState, compressionExecutor);
+      } else {
+         OutputModel output = outputState.output;
+         JarPackagerWriter writer = createWriter(jarModel, pool, output, output.getOutputFile(), compressionExecutor);
+         writer.write();
+         printTuningReport(writer);
+         recordContentHash(writer, output.getOutputFile());
+      }
+   }
+
+   /**
+    * Return the stream of the messages of the repackager. The messages are printed on the standard error stream if the
+    * output is written on a channel, because it may be the standard output.
+    *
+    * @return the stream
+    * @since 0.2
+    */
+   public PrintStream getMessageStream() {
+      return outputChannel != null ? System.err : System.out;
+   }
+
+   /**
+    * Print the report of the compression tuning of an output file, if the compression has been tuned.
+    *
+    * @param writer the writer of the output file
+    */
+   private void printTuningReport(JarPackagerWriter writer) {
+      CompressionTuner.Tuning tuning = writer.getTuning();
+      if (tuning != null && tuning.getReport() != null) {
+         getMessageStream().println(tuning.getReport());
+      }
+   }
+
+   /**
+    * Record the hash of an output file written in the reproducible mode, in the format of the sha256sum tool.
+    *
+    * @param writer the writer of the output file
+    * @param outputFile the output file
+    * @throws IOException
+    */
+   private void recordContentHash(JarPackagerWriter writer, File outputFile) throws IOException {
+      String hash = writer.getContentHash();
+      File hashFile = new File(outputFile.getPath() + "." + EXT_SHA256);
+      if (hash == null) {
+         // a hash of a previous reproducible output would not match this output
+         hashFile.delete();
+         return;
+      }
+      String line = hash + "  " + outputFile.getName() + "\n";
+      Files.write(hashFile.toPath(), line.getBytes(StandardCharsets.UTF_8));
+      if (debug) {
+         getMessageStream().println("Output " + outputFile.getName() + " hash: " + hash);
+      }
+   }
+
+   private ManifestModel parseProperties() {
+      ConfigurationCache cache = configurationCache;
+      if (cache == null && configurationCacheDir != null) {
+         cache = new ConfigurationCache(configurationCacheDir);
+      }
+      if (cache != null) {
+         CompiledConfiguration configuration = cache.get(propertiesFile);
+         if (configuration != null) {
+            configuration.apply(this);
+            if (debug) {
+               getMessageStream().println("Configuration of " + propertiesFile.getName() + " read from the cache");
+            }
+            return configuration.getManifestModel();
+         }
+      }
+      PropertiesParser propertiesParser = new PropertiesParser(this);
+      ManifestModel manifestModel = propertiesParser.parse(propertiesFile);
+      if (cache != null && !propertiesParser.hasParserExceptions() && packagerErrors.isEmpty()) {
+         try {
+            cache.put(propertiesFile, propertiesParser.getConfiguration());
+         } catch (IOException ex) {
+            // the cache is only an optimization, the configuration will be parsed again the next time
+         }
+      }
+      return manifestModel;
+   }
+
+   private JarPackagerWriter createWriter(JarCollectionModel jarModel, ZipArchivePool archivePool, OutputModel output, File file,
+      ExecutorService compressionExecutor) {
+      JarPackagerWriter writer = new JarPackagerWriter(jarModel, file);
+      configureWriter(writer, archivePool, output);
+      writer.setCompressionExecutor(compressionExecutor);
+      return writer;
+   }
+
+   private void configureWriter(JarPackagerWriter writer, ZipArchivePool archivePool, OutputModel output) {
+      writer.setArchivePool(archivePool);
+      writer.setOutputModel(output);
+      writer.setDebug(debug);
+      writer.setRawCopy(rawCopy);
+      writer.setCompressionThreads(compressionThreads);
+      writer.setMaxInFlightBytes(maxInFlightBytes);
+      writer.setTransformers(getActiveTransformers());
+      writer.setCompressionPolicy(compressionPolicy);
+      writer.setReproducible(reproducible);
+      // the tuning depends on the machine, so it would not be reproducible
+      writer.setCompressionTuner(reproducible ? null : compressionTuner);
+   }
+
+   private void writeIncrementally(JarCollectionModel jarModel, ZipArchivePool archivePool, OutputState outputState,
+      ExecutorService compressionExecutor) throws IOException {
+      // the output is written in a temporary file, then moved atomically, so that a failed repackaging does not leave a
+      // partial output next to the state of the previous output
+      File outputFile = outputState.output.getOutputFile();
+      IncrementalState state = outputState.state;
+      File dir = outputFile.getAbsoluteFile().getParentFile();
+      File tmpFile = File.createTempFile(outputFile.getName(), ".tmp", dir);
+      JarPackagerWriter writer;
+      try {
+         writer = createWriter(jarModel, archivePool, outputState.output, tmpFile, compressionExecutor);
+         writer.write();
+      } catch (IOException ex) {
+         tmpFile.delete();
+         throw ex;
+      }
+      Files.move(tmpFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      printTuningReport(writer);
+      recordContentHash(writer, outputFile);
+      state.write(outputState.stateFile, outputFile);
+   }
+
+   /**
+    * Return a fingerprint of the settings which have an effect on the content of the output file.
+    *
+    * @param manifestModel the manifest model
+    * @param output the output model
+    * @return the fingerprint
+    */
+   private String getSettingsFingerprint(ManifestModel manifestModel, OutputModel output) {
+      StringBuilder buf = new StringBuilder();
+      for (int i = 0; i < resolvedInputs.length; i++) {
+         buf.append("input=").append(resolvedInputs[i].getAbsolutePath()).append('\n');
+      }
+      buf.append("rawCopy=").append(rawCopy).append('\n');
+      if (reproducible) {
+         // the timestamp of the entries depends on the SOURCE_DATE_EPOCH environment variable
+         buf.append("reproducible=").append(JarPackagerWriter.getReproducibleDosTime()).append('\n');
+      }
+      buf.append("conflictPolicy=").append(conflictPolicy).append('\n');
+      buf.append("manifestConflictPolicy=").append(manifestConflictPolicy).append('\n');
+      buf.append("manifest=").append(manifestModel.getDefaultType()).append('\n');
+      if (platformFilter != null) {
+         buf.append("platforms=").append(platformFilter.getPlatforms()).append('\n');
+      }
+      if (entryFilter != null) {
+         buf.append(entryFilter.getDescription());
+      }
+      buf.append(getTransformers().getDescription());
+      buf.append(compressionPolicy.getDescription());
+      if (compressionTuner != null && !reproducible) {
+         buf.append(compressionTuner.getDescription());
+      }
+      for (Map.Entry<String, String> entry : new TreeMap<>(manifestModel.getNewProperties()).entrySet()) {
+         buf.append("newProperty=").append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+      }
+      for (Map.Entry<String, Short> entry : new TreeMap<>(manifestModel.getExistingPropertyTypes()).entrySet()) {
+         buf.append("existingProperty=").append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+      }
+      if (!output.isDefault()) {
+         buf.append(output.getDescription());
+      }
+      MessageDigest digest = IncrementalState.createDigest();
+      return IncrementalState.toHex(digest.digest(buf.toString().getBytes(StandardCharsets.UTF_8)));
+   }
+
+   /**
+    * The incremental state of an output file which must be written.
+    */
+   private static class OutputState {
+      private final OutputModel output;
+      private final File stateFile;
+      private IncrementalState state = null;
+      private IncrementalState previousState = null;
+
+      private OutputState(OutputModel output) {
+         this.output = output;
+         this.stateFile = IncrementalState.getStateFile(output.getOutputFile());
+      }
+   }
+}
@@ -0,0 +1,220 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The client of a {@link RepackagerDaemon}. The {@link #main(java.lang.String[])} method accepts the same arguments as
+ * the {@link JarRepackager} command line, and forwards them to the daemon whose port and secret are in the token file
+ * of the user (see {@link #getDefaultTokenFile()}). The "daemonPort" argument overrides the port of the token file. If
+ * there is no token file or no daemon is listening, the repackaging is performed in the current JVM.
+ *
+ * <h1>Token file</h1>
+ * The token file is written by the daemon when it starts, and is only readable by the user. Its first line is the port
+ * of the daemon, and its second line is the secret which the client must send with each request.
+ *
+ * <p>This class only depends on the JDK, so that it is fast to load.</p>
+ *
+ * @since 0.2
+ */
+public class RepackagerClient {
+   /**
+    * The path of the default token file, relative to the home directory of the user.
+    */
+   public static final String TOKEN_FILE = ".jarrepackager/daemon.token";
+   private final int port;
+   private final String secret;
+
+   /**
+    * Constructor.
+    *
+    * @param port the port of the daemon
+    * @param secret the secret of the daemon
+    */
+   public RepackagerClient(int port, String secret) {
+      this.port = port;
+      this.secret = secret;
+   }
+
+   /**
+    * Create a client for the daemon whose port and secret are in a token file.
+    *
+    * @param tokenFile the token file
+    * @return the client
+    * @throws IOException if the token file can not be read or is invalid
+    */
+   public static RepackagerClient readTokenFile(File tokenFile) throws IOException {
+      List<String> lines = Files.readAllLines(tokenFile.toPath(), StandardCharsets.UTF_8);
+      if (lines.size() < 2) {
+         throw new IOException("Invalid daemon token file " + tokenFile.getPath());
+      }
+      try {
+         return new RepackagerClient(Integer.parseInt(lines.get(0).trim()), lines.get(1).trim());
+      } catch (NumberFormatException ex) {
+         throw new IOException("Invalid daemon token file " + tokenFile.getPath());
+      }
+   }
+
+   /**
+    * Return the default token file, in the home directory of the user.
+    *
+    * @return the token file
+    */
+   public static File getDefaultTokenFile() {
+      return new File(System.getProperty("user.home"), TOKEN_FILE);
+   }
+
+   public static void main(String[] args) {
+      File tokenFile = getDefaultTokenFile();
+      if (!tokenFile.isFile()) {
+         JarRepackager.main(args);
+         return;
+      }
+      try {
+         RepackagerClient client = readTokenFile(tokenFile);
+         for (String arg : args) {
+            int index = arg.indexOf("daemonPort=");
+            if (index != -1) {
+               try {
+                  client = new RepackagerClient(Integer.parseInt(arg.substring(index + 11).trim()), client.getSecret());
+               } catch (NumberFormatException ex) {
+               }
+            }
+         }
+         List<String> errors = new ArrayList<>();
+         boolean success = client.repackage(new File(System.getProperty("user.dir")), args, errors);
+         for (String error : errors) {
+            System.err.println(error);
+         }
+         System.out.println(success ? "Repackaging Finished" : "Repackaging Failed");
+      } catch (ConnectException ex) {
+         JarRepackager.main(args);
+      } catch (IOException ex) {
+         System.err.println(ex.getMessage());
+      }
+   }
+
+   /**
+    * Return the port of the daemon.
+    *
+    * @return the port
+    */
+   public int getPort() {
+      return port;
+   }
+
+   /**
+    * Return the secret of the daemon.
+    *
+    * @return the secret
+    */
+   public String getSecret() {
+      return secret;
+   }
+
+   private DataOutputStream openRequest(Socket socket, short type) throws IOException {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      out.writeInt(RepackagerDaemon.MAGIC);
+      out.writeUTF(secret);
+      out.writeShort(type);
+      return out;
+   }
+
+   private Socket connect() throws IOException {
+      Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+      socket.setTcpNoDelay(true);
+      return socket;
+   }
+
+   /**
+    * Ask the daemon to perform a repackaging.
+    *
+    * @param dir the directory against which the relative paths of the arguments are resolved
+    * @param args the command line arguments
+    * @param errors the list which receives the error lines
+    * @return true if the repackaging could be performed without errors
+    * @throws ConnectException if no daemon is listening
+    * @throws IOException
+    */
+   public boolean repackage(File dir, String[] args, List<String> errors) throws IOException {
+      try (Socket socket = connect()) {
+         DataOutputStream out = openRequest(socket, RepackagerDaemon.REQUEST_REPACKAGE);
+         out.writeUTF(dir.getAbsolutePath());
+         out.writeInt(args.length);
+         for (String arg : args) {
+            out.writeUTF(arg);
+         }
+         out.flush();
+         return readResponse(socket, errors);
+      }
+   }
+
+   /**
+    * Ask the daemon to stop.
+    *
+    * @throws ConnectException if no daemon is listening
+    * @throws IOException
+    */
+   public void stop() throws IOException {
+      try (Socket socket = connect()) {
+         DataOutputStream out = openRequest(socket, RepackagerDaemon.REQUEST_STOP);
+         out.flush();
+         readResponse(socket, null);
+      }
+   }
+
+   private static boolean readResponse(Socket socket, List<String> errors) throws IOException {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      boolean success = in.readBoolean();
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+         String error = in.readUTF();
+         if (errors != null) {
+            errors.add(error);
+         }
+      }
+      return success;
+   }
+}
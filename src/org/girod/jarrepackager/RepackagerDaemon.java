@@ -0,0 +1,469 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.girod.jarrepackager.gui.ErrorLogger;
+import org.girod.jarrepackager.parser.ConfigurationCache;
+import org.girod.jarrepackager.parser.PackagerError;
+import org.girod.jarrepackager.zip.ZipArchivePool;
+import org.mdiutil.util.LauncherUtils;
+
+/**
+ * A resident repackager, which performs the repackagings requested by {@link RepackagerClient} clients. The daemon
+ * avoids to pay the startup of the JVM and the loading of the classes for each repackaging, and keeps its caches
+ * between the repackagings.
+ *
+ * <h1>Protocol</h1>
+ * The daemon only listens on the loopback address. Each connection carries one request:
+ * <ul>
+ * <li>The client sends {@link #MAGIC}, the secret of the daemon, then the request type ({@link #REQUEST_REPACKAGE} or
+ * {@link #REQUEST_STOP})</li>
+ * <li>For a repackaging, the client then sends the path of its working directory, the number of arguments and the
+ * command line arguments</li>
+ * <li>The daemon answers true if the request could be performed, then the number of error lines and the error lines</li>
+ * </ul>
+ *
+ * <h1>Security</h1>
+ * Other users of the machine can also connect to the loopback address, so the daemon only accepts the requests which
+ * carry its secret. The secret is drawn when the daemon starts, and is written with the port of the daemon in a token
+ * file which is only readable by the user (see {@link RepackagerClient#getDefaultTokenFile()}). The requests can not
+ * read the standard input or write on the standard output of the daemon, and can not load transformers jar files in
+ * the daemon.
+ *
+ * <h1>Resident caches</h1>
+ * The daemon keeps:
+ * <ul>
+ * <li>A shared {@link ZipArchivePool}, so that the central directory of an input file is only parsed again when the
+ * file has changed. The input files which have changed are closed after each request, as soon as no other request
+ * uses them</li>
+ * <li>A resident {@link ConfigurationCache} for each cache directory, so that an unchanged properties file is not parsed
+ * again</li>
+ * </ul>
+ *
+ * @since 0.2
+ */
+public class RepackagerDaemon implements Closeable {
+   /**
+    * The default port of the daemon.
+    */
+   public static final int DEFAULT_PORT = 47310;
+   /**
+    * The first int of each request.
+    */
+   public static final int MAGIC = 0x4A524450;
+   /**
+    * The type of the requests which perform a repackaging.
+    */
+   public static final short REQUEST_REPACKAGE = 1;
+   /**
+    * The type of the requests which stop the daemon.
+    */
+   public static final short REQUEST_STOP = 2;
+   /**
+    * The maximum time in milliseconds to wait for the content of a request.
+    */
+   public static final int READ_TIMEOUT = 10000;
+   /**
+    * The maximum number of requests handled at the same time.
+    */
+   public static final int MAX_REQUESTS = 4;
+   /**
+    * The maximum number of requests waiting to be handled. The connections accepted beyond this number are closed.
+    */
+   public static final int MAX_PENDING_REQUESTS = 16;
+   private static final int SECRET_LENGTH = 32;
+   private final int port;
+   private final ZipArchivePool archivePool;
+   private File tokenFile = RepackagerClient.getDefaultTokenFile();
+   private String secret = null;
+   private final Map<File, ConfigurationCache> configurationCaches = new HashMap<>();
+   private final CountDownLatch terminated = new CountDownLatch(1);
+   private ServerSocket serverSocket = null;
+   private ThreadPoolExecutor executor = null;
+   private boolean closed = false;
+
+   /**
+    * Constructor.
+    *
+    * @param port the port, or 0 to use any free port
+    * @param maxOpenInputs the maximum number of input files kept opened
+    */
+   public RepackagerDaemon(int port, int maxOpenInputs) {
+      this.port = port;
+      this.archivePool = new ZipArchivePool(maxOpenInputs);
+      archivePool.setShared(true);
+   }
+
+   /**
+    * Return the port on which the daemon listens.
+    *
+    * @return the port
+    */
+   public int getPort() {
+      return serverSocket != null ? serverSocket.getLocalPort() : port;
+   }
+
+   /**
+    * Set the token file in which the port and the secret of the daemon are written when it starts. The default is the
+    * token file of the user (see {@link RepackagerClient#getDefaultTokenFile()}).
+    *
+    * @param tokenFile the token file
+    */
+   public void setTokenFile(File tokenFile) {
+      this.tokenFile = tokenFile;
+   }
+
+   /**
+    * Return the token file in which the port and the secret of the daemon are written when it starts.
+    *
+    * @return the token file
+    */
+   public File getTokenFile() {
+      return tokenFile;
+   }
+
+   /**
+    * Return the pool of the input files shared by all the repackagings.
+    *
+    * @return the pool
+    */
+   public ZipArchivePool getArchivePool() {
+      return archivePool;
+   }
+
+   /**
+    * Start to listen for requests. This method returns immediately.
+    *
+    * @throws IOException if the port could not be bound
+    */
+   public void start() throws IOException {
+      serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+      byte[] bytes = new byte[SECRET_LENGTH];
+      new SecureRandom().nextBytes(bytes);
+      secret = IncrementalState.toHex(bytes);
+      try {
+         writeTokenFile();
+      } catch (IOException ex) {
+         serverSocket.close();
+         throw ex;
+      }
+      executor = new ThreadPoolExecutor(MAX_REQUESTS, MAX_REQUESTS, 60, TimeUnit.SECONDS,
+         new ArrayBlockingQueue<Runnable>(MAX_PENDING_REQUESTS), new ThreadFactory() {
+         @Override
+         public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "JarRepackager daemon");
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+      executor.allowCoreThreadTimeOut(true);
+      Thread acceptThread = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            accept();
+         }
+      }, "JarRepackager daemon listener");
+      acceptThread.setDaemon(true);
+      acceptThread.start();
+   }
+
+   /**
+    * Write the port and the secret of the daemon in the token file. The file is created again, so that only the user
+    * can read it.
+    */
+   private void writeTokenFile() throws IOException {
+      Path path = tokenFile.getAbsoluteFile().toPath();
+      boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+      Path parent = path.getParent();
+      if (!Files.isDirectory(parent)) {
+         if (posix) {
+            Files.createDirectories(parent, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+         } else {
+            Files.createDirectories(parent);
+         }
+      }
+      Files.deleteIfExists(path);
+      if (posix) {
+         Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+      } else {
+         Files.createFile(path);
+         File file = path.toFile();
+         file.setReadable(false, false);
+         file.setReadable(true, true);
+         file.setWritable(false, false);
+         file.setWritable(true, true);
+      }
+      String content = getPort() + "\n" + secret + "\n";
+      Files.write(path, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+   }
+
+   /**
+    * Wait until the daemon is stopped.
+    *
+    * @throws InterruptedException
+    */
+   public void awaitTermination() throws InterruptedException {
+      terminated.await();
+   }
+
+   private void accept() {
+      try {
+         while (!serverSocket.isClosed()) {
+            final Socket socket = serverSocket.accept();
+            try {
+               socket.setSoTimeout(READ_TIMEOUT);
+               executor.execute(new Runnable() {
+                  @Override
+                  public void run() {
+                     handle(socket);
+                  }
+               });
+            } catch (IOException | RejectedExecutionException ex) {
+               // too many pending requests, or the daemon is stopping
+               socket.close();
+            }
+         }
+      } catch (SocketException ex) {
+         // the server socket has been closed
+      } catch (IOException ex) {
+         System.err.println(ex.getMessage());
+      }
+   }
+
+   private void handle(Socket socket) {
+      boolean stop = false;
+      try (Socket s = socket) {
+         DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+         if (in.readInt() != MAGIC) {
+            return;
+         }
+         byte[] token = in.readUTF().getBytes(StandardCharsets.UTF_8);
+         if (!MessageDigest.isEqual(token, secret.getBytes(StandardCharsets.UTF_8))) {
+            writeResponse(out, false, Collections.singletonList(new PackagerError("Invalid daemon secret")));
+            return;
+         }
+         short type = in.readShort();
+         if (type == REQUEST_STOP) {
+            stop = true;
+            writeResponse(out, true, null);
+         } else if (type == REQUEST_REPACKAGE) {
+            File dir = new File(in.readUTF());
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i++) {
+               args[i] = in.readUTF();
+            }
+            JarRepackager repackager = new JarRepackager();
+            boolean success = repackage(repackager, dir, args);
+            writeResponse(out, success, repackager.getErrors());
+         }
+      } catch (IOException ex) {
+         System.err.println(ex.getMessage());
+      }
+      if (stop) {
+         // the daemon is stopped in another thread, because it waits for the termination of the running requests
+         Thread stopThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+               try {
+                  close();
+               } catch (IOException ex) {
+                  System.err.println(ex.getMessage());
+               }
+            }
+         }, "JarRepackager daemon stop");
+         stopThread.start();
+      }
+   }
+
+   private boolean repackage(JarRepackager repackager, File dir, String[] args) {
+      Map<String, String> props = LauncherUtils.getLaunchProperties(args);
+      String rejected = getRejectedArgument(props);
+      if (rejected != null) {
+         repackager.getErrors().add(new PackagerError(rejected));
+         return false;
+      }
+      try {
+         repackager.configure(dir, props);
+         if (!repackager.hasCommand()) {
+            repackager.getErrors().add(new PackagerError("No input files, output file or properties file"));
+            return false;
+         }
+         repackager.setArchivePool(archivePool);
+         File cacheDir = repackager.getConfigurationCacheDirectory();
+         if (cacheDir != null) {
+            repackager.setConfigurationCache(getConfigurationCache(cacheDir));
+         }
+         return repackager.execute();
+      } finally {
+         repackager.closeTransformers();
+         try {
+            // the input files which have been modified are closed when no other request uses them
+            archivePool.closeModifiedArchives();
+         } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+         }
+      }
+   }
+
+   /**
+    * Return the error for the first argument which is not allowed in a request, or null if all the arguments are
+    * allowed.
+    *
+    * @param props the arguments
+    * @return the error, or null
+    */
+   private static String getRejectedArgument(Map<String, String> props) {
+      for (Map.Entry<String, String> entry : props.entrySet()) {
+         switch (entry.getKey()) {
+            case "inputFiles":
+            case "input":
+            case "outputFile":
+            case "output":
+               if (entry.getValue().equals("-")) {
+                  return "The standard input and output can not be used in a daemon request";
+               }
+               break;
+            case "transformers":
+               if (!entry.getValue().equals("false")) {
+                  return "Transformers jar files can not be loaded in a daemon request";
+               }
+               break;
+         }
+      }
+      return null;
+   }
+
+   private synchronized ConfigurationCache getConfigurationCache(File cacheDir) {
+      File key = cacheDir.getAbsoluteFile();
+      ConfigurationCache cache = configurationCaches.get(key);
+      if (cache == null) {
+         cache = new ConfigurationCache(key);
+         cache.setResident(true);
+         configurationCaches.put(key, cache);
+      }
+      return cache;
+   }
+
+   /**
+    * Delete the token file, unless it has been written by another daemon since.
+    */
+   private void deleteTokenFile() {
+      try {
+         List<String> lines = Files.readAllLines(tokenFile.toPath(), StandardCharsets.UTF_8);
+         if (lines.size() >= 2 && lines.get(1).trim().equals(secret)) {
+            Files.delete(tokenFile.toPath());
+         }
+      } catch (IOException ex) {
+         // the token file has already been deleted
+      }
+   }
+
+   private static void writeResponse(DataOutputStream out, boolean success, List<PackagerError> errors) throws IOException {
+      out.writeBoolean(success);
+      if (errors == null) {
+         out.writeInt(0);
+      } else {
+         out.writeInt(errors.size());
+         for (PackagerError error : errors) {
+            out.writeUTF(ErrorLogger.getErrorLine(error));
+         }
+      }
+      out.flush();
+   }
+
+   /**
+    * Stop the daemon and close all the input files kept opened. No new request is accepted, and the requests which
+    * are already running are finished before the input files are closed.
+    *
+    * @throws IOException
+    */
+   @Override
+   public synchronized void close() throws IOException {
+      if (closed) {
+         return;
+      }
+      closed = true;
+      try {
+         if (serverSocket != null) {
+            serverSocket.close();
+            deleteTokenFile();
+         }
+         if (executor != null) {
+            executor.shutdown();
+            try {
+               while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                  // the running requests are still writing their outputs
+               }
+            } catch (InterruptedException ex) {
+               // the input files are not closed, because they may still be read by the running requests
+               executor.shutdownNow();
+               Thread.currentThread().interrupt();
+               throw new InterruptedIOException("Interrupted while waiting for the running requests");
+            }
+         }
+         archivePool.close();
+      } finally {
+         terminated.countDown();
+      }
+   }
+}
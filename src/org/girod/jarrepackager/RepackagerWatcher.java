@@ -0,0 +1,259 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.girod.jarrepackager.gui.ErrorLogger;
+import org.girod.jarrepackager.model.OutputModel;
+import org.girod.jarrepackager.parser.PackagerError;
+import org.girod.jarrepackager.zip.ZipArchivePool;
+
+/**
+ * Performs a repackaging again each time one of its input files or its properties file is modified.
+ *
+ * <h1>Watched files</h1>
+ * The directories of the input files and of the properties file are watched with a {@link WatchService}. A jar file
+ * created in one of these directories also triggers a repackaging if there is a properties file, because it may match
+ * one of its patterns. The output files and the temporary files written next to them are ignored.
+ *
+ * <h1>Repackagings</h1>
+ * The events are debounced: the repackaging is only performed when no event has been received during
+ * {@link #getDebounce()} milliseconds, so that a jar file which is written in several steps only triggers one
+ * repackaging. The repackagings always use the incremental mode, so that the output file is not written again if no
+ * watched file has really changed, and it is replaced atomically. The input files are kept opened in a shared
+ * {@link ZipArchivePool} between the repackagings, and only the modified input files are opened again. A directory
+ * which can not be watched is reported, and the watch goes on with the other directories.
+ *
+ * @since 0.2
+ */
+public class RepackagerWatcher implements Closeable {
+   /**
+    * The default debounce delay in milliseconds.
+    */
+   public static final long DEFAULT_DEBOUNCE = 200;
+   private static final String EXT_JAR = ".jar";
+   private final JarRepackager settings;
+   private final ZipArchivePool archivePool;
+   private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+   private final Set<File> watchedFiles = new HashSet<>();
+   private final AtomicInteger repackagingsCount = new AtomicInteger();
+   private long debounce = DEFAULT_DEBOUNCE;
+   private final Set<File> outputFiles = new HashSet<>();
+   private volatile WatchService watchService = null;
+   private volatile boolean closed = false;
+
+   /**
+    * Constructor.
+    *
+    * @param settings the repackager whose input files, output file, properties file and settings are used
+    */
+   public RepackagerWatcher(JarRepackager settings) {
+      this.settings = settings;
+      this.archivePool = new ZipArchivePool(settings.getMaxOpenInputs());
+      archivePool.setShared(true);
+   }
+
+   /**
+    * Set the debounce delay.
+    *
+    * @param debounce the delay in milliseconds
+    */
+   public void setDebounce(long debounce) {
+      this.debounce = Math.max(0, debounce);
+   }
+
+   /**
+    * Return the debounce delay.
+    *
+    * @return the delay in milliseconds
+    */
+   public long getDebounce() {
+      return debounce;
+   }
+
+   /**
+    * Return the number of repackagings performed since the start of the watch.
+    *
+    * @return the number of repackagings
+    */
+   public int getRepackagingsCount() {
+      return repackagingsCount.get();
+   }
+
+   /**
+    * Perform the repackaging, then perform it again each time the watched files are modified. This method only returns
+    * when the watcher is closed.
+    *
+    * @throws IOException
+    */
+   public void watch() throws IOException {
+      watchService = FileSystems.getDefault().newWatchService();
+      try {
+         repackage();
+         while (!closed) {
+            boolean changed = processEvents(watchService.take());
+            while (true) {
+               WatchKey key = watchService.poll(debounce, TimeUnit.MILLISECONDS);
+               if (key == null) {
+                  break;
+               }
+               changed = processEvents(key) || changed;
+            }
+            if (changed && !closed) {
+               repackage();
+            }
+         }
+      } catch (ClosedWatchServiceException ex) {
+         // the watcher has been closed
+      } catch (InterruptedException ex) {
+         Thread.currentThread().interrupt();
+      } finally {
+         watchService.close();
+         archivePool.close();
+      }
+   }
+
+   private boolean processEvents(WatchKey key) {
+      boolean changed = false;
+      Path dir = watchedDirectories.get(key);
+      for (WatchEvent<?> event : key.pollEvents()) {
+         if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            changed = true;
+         } else if (dir != null && isWatched(dir.resolve((Path) event.context()).toFile().getAbsoluteFile())) {
+            changed = true;
+         }
+      }
+      if (!key.reset()) {
+         watchedDirectories.remove(key);
+      }
+      return changed;
+   }
+
+   private boolean isWatched(File file) {
+      if (watchedFiles.contains(file)) {
+         return true;
+      }
+      for (File outputFile : outputFiles) {
+         if (file.getParentFile().equals(outputFile.getParentFile()) && file.getName().startsWith(outputFile.getName())) {
+            // an output file, its state file, or its temporary file
+            return false;
+         }
+      }
+      return settings.getPropertiesFile() != null && file.getName().endsWith(EXT_JAR);
+   }
+
+   private void repackage() {
+      long start = System.currentTimeMillis();
+      JarRepackager repackager = new JarRepackager();
+      repackager.copySettings(settings);
+      repackager.setIncremental(true);
+      repackager.setArchivePool(archivePool);
+      repackager.setInputFiles(settings.getInputFiles());
+      repackager.setOutputFile(settings.getOutputFile());
+      repackager.setPropertiesFile(settings.getPropertiesFile());
+      try {
+         repackager.repackage();
+      } catch (IOException ex) {
+         repackager.getErrors().add(new PackagerError(ex));
+      }
+      if (!repackager.getErrors().isEmpty()) {
+         new ErrorLogger().printErrors(repackager.getErrors());
+      }
+      System.out.println("Repackaging performed in " + (System.currentTimeMillis() - start) + " ms, watching for changes");
+      try {
+         archivePool.closeModifiedArchives();
+      } catch (IOException ex) {
+         System.err.println(ex.getMessage());
+      }
+      register(repackager);
+      repackagingsCount.incrementAndGet();
+   }
+
+   private void register(JarRepackager repackager) {
+      watchedFiles.clear();
+      outputFiles.clear();
+      for (OutputModel output : repackager.getOutputModels()) {
+         outputFiles.add(output.getOutputFile().getAbsoluteFile());
+      }
+      File propertiesFile = repackager.getPropertiesFile();
+      if (propertiesFile != null) {
+         register(propertiesFile.getAbsoluteFile());
+      }
+      File[] inputFiles = repackager.getInputFiles();
+      for (int i = 0; inputFiles != null && i < inputFiles.length; i++) {
+         register(inputFiles[i].getAbsoluteFile());
+      }
+   }
+
+   private void register(File file) {
+      watchedFiles.add(file);
+      Path dir = file.getParentFile().toPath();
+      if (!watchedDirectories.containsValue(dir) && file.getParentFile().isDirectory()) {
+         try {
+            WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+               StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirectories.put(key, dir);
+         } catch (IOException ex) {
+            // the directory is registered again after the next repackaging
+            System.err.println("Directory " + dir + " can not be watched: " + ex.getMessage());
+         }
+      }
+   }
+
+   /**
+    * Stop the watch.
+    *
+    * @throws IOException
+    */
+   @Override
+   public void close() throws IOException {
+      closed = true;
+      if (watchService != null) {
+         watchService.close();
+      }
+   }
+}
@@ -1,63 +1,105 @@
-/*
-Copyright (c) 2023 Herve Girod
-All rights reserved.
-
-Redistribution and use in source and binary forms, with or without
-modification, are permitted provided that the following conditions are met:
-
-1. Redistributions of source code must retain the above copyright notice, this
-   list of conditions and the following disclaimer.
-2. Redistributions in binary form must reproduce the above copyright notice,
-   this list of conditions and the following disclaimer in the documentation
-   and/or other materials provided with the distribution.
-
-THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
-ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
-WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
-DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
-ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
-(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
-LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
-ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
-(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
-SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
-
-The views and conclusions contained in the software and documentation are those
-of the authors and should not be interpreted as representing official policies,
-either expressed or implied, of the FreeBSD Project.
-
-Alternatively if you have any questions about this project, you can visit
-the project website at the project page on https://github.com/hervegirod/jarrepackager
- */
-package org.girod.jarrepackager.model;
-
-import java.util.jar.JarEntry;
-
-/**
- * Represents a jar entry.
- *
- * @since 0.1
- */
-public abstract class AbstractJarEntry {
-   private final JarEntry entry;
-
-   public AbstractJarEntry(JarEntry entry) {
-      this.entry = entry;
-   }
-
-   /**
-    * Return the entry path.
-    *
-    * @return the path
-    */
-   public abstract String getPath();
-
-   /**
-    * Return the associated jar entry.
-    *
-    * @return the jar entry
-    */
-   public JarEntry getEntry() {
-      return entry;
-   }
-}
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.model;
+
+import org.girod.jarrepackager.zip.ZipArchive;
+
+/**
+ * Represents a jar entry.
+ *
+ * @since 0.1
+ */
+public abstract class AbstractJarEntry {
+   /**
+    * The node of the entry in the trie of the paths.
+    */
+   protected final PathNode node;
+   private final int index;
+
+   /**
+    * Constructor.
+    *
+    * @param index the index of the entry in the input jar file
+    * @param node the node of the entry in the trie of the paths
+    */
+   public AbstractJarEntry(int index, PathNode node) {
+      this.index = index;
+      this.node = node;
+   }
+
+   /**
+    * Return the node of the entry in the trie of the paths.
+    *
+    * @return the node
+    * @since 0.2
+    */
+   public PathNode getNode() {
+      return node;
+   }
+
+   /**
+    * Return the entry path.
+    *
+    * @return the path
+    */
+   public String getPath() {
+      return node.getPath();
+   }
+
+   /**
+    * Append the entry path to a buffer.
+    *
+    * @param buf the buffer
+    * @since 0.2
+    */
+   public void appendPath(StringBuilder buf) {
+      node.appendPath(buf);
+   }
+
+   /**
+    * Return the input jar file of the entry.
+    *
+    * @return the jar file
+    * @since 0.2
+    */
+   public abstract ZipArchive getArchive();
+
+   /**
+    * Return the index of the associated entry in the input jar file.
+    *
+    * @return the index of the entry
+    * @since 0.2
+    */
+   public int getIndex() {
+      return index;
+   }
+}
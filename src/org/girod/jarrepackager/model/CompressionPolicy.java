@@ -0,0 +1,354 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import org.girod.jarrepackager.zip.CompressibilityDetector;
+import org.girod.jarrepackager.zip.ZipConstants;
+import org.girod.jarrepackager.zip.ZipContainerWriter;
+
+/**
+ * The compression policy of the entries of the output file.
+ *
+ * <h1>Rules</h1>
+ * Each rule associates a glob pattern on the path of the entries with a compression method ({@link ZipConstants#STORED},
+ * {@link ZipConstants#DEFLATED} or {@link ZipContainerWriter#AUTO}) and a deflate level. The patterns use the syntax of
+ * the {@link EntryFilter}. The first rule which matches the path of an entry is applied. The entries which are matched
+ * by a rule are encoded again if their method or level differ from the method of the entry in its input file.
+ *
+ * <h1>Incompressible content</h1>
+ * If the detection of incompressible content is enabled (which is the case by default), the entries which are not
+ * matched by a rule are encoded with the {@link ZipContainerWriter#AUTO} method: the entries whose content is already
+ * compressed (see {@link CompressibilityDetector}) are stored rather than deflated. In the raw copy mode, the deflated
+ * entries of the input files are only encoded again if deflating them saved almost nothing.
+ *
+ * <h1>Class files</h1>
+ * The class files can be stored rather than deflated, which makes the output file larger, but avoids to inflate them
+ * when they are loaded.
+ *
+ * @since 0.2
+ */
+public class CompressionPolicy {
+   /**
+    * The value returned by {@link #parseMethod(String)} for an unknown method name.
+    */
+   public static final int UNDEFINED = -2;
+   /**
+    * The minimum ratio between the compressed size and the size of a deflated entry for which the entry is sampled
+    * again for incompressible content.
+    */
+   public static final double INCOMPRESSIBLE_RATIO = 0.97d;
+   private static final Rule CLASS_RULE = new Rule("**/*.class", ZipConstants.STORED, Deflater.DEFAULT_COMPRESSION);
+   private final List<Rule> rules = new ArrayList<>();
+   private final List<EntryFilter.Selector> selectors = new ArrayList<>();
+   private final EntryFilter patterns = new EntryFilter();
+   private EntryFilter.Selector patternsSelector = null;
+   private boolean detectIncompressible = true;
+   private boolean storeClasses = false;
+
+   public CompressionPolicy() {
+   }
+
+   /**
+    * Return the compression method corresponding to a name: "stored", "deflated" or "auto".
+    *
+    * @param name the name
+    * @return the method, or {@link #UNDEFINED} if the name is unknown
+    */
+   public static int parseMethod(String name) {
+      switch (name.trim().toLowerCase(Locale.ROOT)) {
+         case "stored":
+            return ZipConstants.STORED;
+         case "deflated":
+            return ZipConstants.DEFLATED;
+         case "auto":
+            return ZipContainerWriter.AUTO;
+         default:
+            return UNDEFINED;
+      }
+   }
+
+   /**
+    * Return the name of a compression method.
+    *
+    * @param method the method
+    * @return the name
+    */
+   public static String getMethodName(int method) {
+      switch (method) {
+         case ZipConstants.STORED:
+            return "stored";
+         case ZipContainerWriter.AUTO:
+            return "auto";
+         default:
+            return "deflated";
+      }
+   }
+
+   /**
+    * Add a rule.
+    *
+    * @param pattern the glob pattern
+    * @param method the method: {@link ZipConstants#STORED}, {@link ZipConstants#DEFLATED} or
+    * {@link ZipContainerWriter#AUTO}
+    * @param level the deflate level, or {@link Deflater#DEFAULT_COMPRESSION}
+    * @return false if the pattern, the method or the level is invalid
+    */
+   public synchronized boolean addRule(String pattern, int method, int level) {
+      if (method != ZipConstants.STORED && method != ZipConstants.DEFLATED && method != ZipContainerWriter.AUTO) {
+         return false;
+      } else if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+         return false;
+      }
+      EntryFilter filter = new EntryFilter();
+      if (!filter.addInclude(pattern)) {
+         return false;
+      }
+      patterns.addInclude(pattern);
+      rules.add(new Rule(pattern, method, level));
+      selectors.add(filter.getSelector(null));
+      patternsSelector = null;
+      return true;
+   }
+
+   /**
+    * Return the rules, in their order of declaration.
+    *
+    * @return the rules
+    */
+   public List<Rule> getRules() {
+      return rules;
+   }
+
+   /**
+    * Set if the incompressible content of the new entries is detected.
+    *
+    * @param detectIncompressible true if the incompressible content is detected
+    */
+   public void setDetectIncompressible(boolean detectIncompressible) {
+      this.detectIncompressible = detectIncompressible;
+   }
+
+   /**
+    * Return true if the incompressible content of the new entries is detected.
+    *
+    * @return true if the incompressible content is detected
+    */
+   public boolean isDetectingIncompressible() {
+      return detectIncompressible;
+   }
+
+   /**
+    * Set if the class files are stored. The rules have precedence on this setting.
+    *
+    * @param storeClasses true if the class files are stored
+    */
+   public void setStoreClasses(boolean storeClasses) {
+      this.storeClasses = storeClasses;
+   }
+
+   /**
+    * Return true if the class files are stored.
+    *
+    * @return true if the class files are stored
+    */
+   public boolean isStoringClasses() {
+      return storeClasses;
+   }
+
+   /**
+    * Return true if the policy has no rules and does not detect incompressible content, in which case all the new
+    * entries are deflated with the default level.
+    *
+    * @return true if the policy has no effect
+    */
+   public boolean isDefault() {
+      return rules.isEmpty() && !storeClasses && !detectIncompressible;
+   }
+
+   /**
+    * Return a description of the policy, used in the fingerprint of the settings of the incremental mode.
+    *
+    * @return the description
+    */
+   public String getDescription() {
+      StringBuilder buf = new StringBuilder();
+      for (Rule rule : rules) {
+         buf.append("compression=").append(rule.pattern).append(':').append(getMethodName(rule.method));
+         if (rule.level != Deflater.DEFAULT_COMPRESSION) {
+            buf.append(':').append(rule.level);
+         }
+         buf.append('\n');
+      }
+      buf.append("detectIncompressible=").append(detectIncompressible).append('\n');
+      buf.append("storeClasses=").append(storeClasses).append('\n');
+      return buf.toString();
+   }
+
+   /**
+    * Return the rule which applies to an entry.
+    *
+    * @param path the path of the entry
+    * @return the rule, or null if no rule applies to the entry
+    */
+   public Rule getRule(CharSequence path) {
+      if (!rules.isEmpty()) {
+         EntryFilter.Selector selector = patternsSelector;
+         if (selector == null) {
+            selector = patterns.getSelector(null);
+            patternsSelector = selector;
+         }
+         if (selector.accept(path)) {
+            for (int i = 0; i < rules.size(); i++) {
+               if (selectors.get(i).accept(path)) {
+                  return rules.get(i);
+               }
+            }
+         }
+      }
+      if (storeClasses && endsWith(path, ".class")) {
+         return CLASS_RULE;
+      }
+      return null;
+   }
+
+   private static boolean endsWith(CharSequence path, String suffix) {
+      int offset = path.length() - suffix.length();
+      if (offset < 0) {
+         return false;
+      }
+      for (int i = 0; i < suffix.length(); i++) {
+         if (path.charAt(offset + i) != suffix.charAt(i)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Return the method of a new entry.
+    *
+    * @param path the path of the entry
+    * @return the method
+    */
+   public int getMethod(CharSequence path) {
+      Rule rule = getRule(path);
+      if (rule != null) {
+         return rule.method;
+      } else {
+         return detectIncompressible ? ZipContainerWriter.AUTO : ZipConstants.DEFLATED;
+      }
+   }
+
+   /**
+    * Return the deflate level of a new entry.
+    *
+    * @param path the path of the entry
+    * @return the level, or {@link Deflater#DEFAULT_COMPRESSION}
+    */
+   public int getLevel(CharSequence path) {
+      Rule rule = getRule(path);
+      return rule != null ? rule.level : Deflater.DEFAULT_COMPRESSION;
+   }
+
+   /**
+    * Return true if an entry of an input file must be encoded again rather than copied as is.
+    *
+    * @param path the path of the entry
+    * @param method the method of the entry in its input file
+    * @param size the uncompressed size of the entry
+    * @param compressedSize the compressed size of the entry
+    * @return true if the entry must be encoded again
+    */
+   public boolean isEncoded(CharSequence path, int method, long size, long compressedSize) {
+      Rule rule = getRule(path);
+      if (rule != null) {
+         if (rule.method == ZipContainerWriter.AUTO) {
+            return method == ZipConstants.DEFLATED && isPoorlyDeflated(size, compressedSize);
+         } else if (rule.method != method) {
+            return true;
+         } else {
+            return rule.method == ZipConstants.DEFLATED && rule.level != Deflater.DEFAULT_COMPRESSION;
+         }
+      }
+      return detectIncompressible && method == ZipConstants.DEFLATED && isPoorlyDeflated(size, compressedSize);
+   }
+
+   private static boolean isPoorlyDeflated(long size, long compressedSize) {
+      return size >= CompressibilityDetector.MIN_ENTROPY_SAMPLE && compressedSize >= size * INCOMPRESSIBLE_RATIO;
+   }
+
+   /**
+    * A compression rule.
+    */
+   public static class Rule {
+      private final String pattern;
+      private final int method;
+      private final int level;
+
+      private Rule(String pattern, int method, int level) {
+         this.pattern = pattern;
+         this.method = method;
+         this.level = level;
+      }
+
+      /**
+       * Return the glob pattern.
+       *
+       * @return the pattern
+       */
+      public String getPattern() {
+         return pattern;
+      }
+
+      /**
+       * Return the compression method.
+       *
+       * @return the method
+       */
+      public int getMethod() {
+         return method;
+      }
+
+      /**
+       * Return the deflate level.
+       *
+       * @return the level, or {@link Deflater#DEFAULT_COMPRESSION}
+       */
+      public int getLevel() {
+         return level;
+      }
+   }
+}
@@ -0,0 +1,247 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipException;
+import org.girod.jarrepackager.zip.ZipArchive;
+import org.girod.jarrepackager.zip.ZipArchivePool;
+
+/**
+ * Resolves the conflicts between entries of the input files which have the same path.
+ *
+ * <h1>Policies</h1>
+ * <ul>
+ * <li>{@link #FIRST_WINS}: the entry of the first input file is kept</li>
+ * <li>{@link #LAST_WINS}: the entry of the last input file is kept</li>
+ * <li>{@link #FAIL}: the analysis fails as soon as the conflict is found</li>
+ * <li>{@link #KEEP_IF_IDENTICAL}: the entry of the first input file is kept if the two entries have the same content,
+ * else the analysis fails</li>
+ * </ul>
+ * The policy for the content of the "META-INF/" directory is separate from the policy for the other entries, because
+ * most jar files have files such as licenses or notices at the same path in this directory.
+ *
+ * <h1>Identical entries</h1>
+ * Two entries which have a different CRC or size in the central directory of their jar file are different, so their
+ * content is only compared if these two values are the same.
+ *
+ * @since 0.2
+ */
+public class ConflictResolver {
+   /**
+    * The policy where the entry of the first input file is kept.
+    */
+   public static final short FIRST_WINS = 0;
+   /**
+    * The policy where the entry of the last input file is kept.
+    */
+   public static final short LAST_WINS = 1;
+   /**
+    * The policy where the analysis fails.
+    */
+   public static final short FAIL = 2;
+   /**
+    * The policy where the entry of the first input file is kept if the entries are identical, else the analysis fails.
+    */
+   public static final short KEEP_IF_IDENTICAL = 3;
+   private static final String MANIFEST_DIR = "META-INF/";
+   private static final int BUFFER_SIZE = 8192;
+   private short policy = FAIL;
+   private short manifestPolicy = FIRST_WINS;
+
+   public ConflictResolver() {
+   }
+
+   /**
+    * Constructor.
+    *
+    * @param policy the policy for the entries outside of the "META-INF/" directory
+    * @param manifestPolicy the policy for the content of the "META-INF/" directory
+    */
+   public ConflictResolver(short policy, short manifestPolicy) {
+      this.policy = policy;
+      this.manifestPolicy = manifestPolicy;
+   }
+
+   /**
+    * Return the policy associated with a name. The recognized names are "firstWins", "lastWins", "fail", and
+    * "keepIfIdentical".
+    *
+    * @param name the name
+    * @return the policy, or -1 if the name is not recognized
+    */
+   public static short parsePolicy(String name) {
+      switch (name.trim()) {
+         case "firstWins":
+            return FIRST_WINS;
+         case "lastWins":
+            return LAST_WINS;
+         case "fail":
+            return FAIL;
+         case "keepIfIdentical":
+            return KEEP_IF_IDENTICAL;
+         default:
+            return -1;
+      }
+   }
+
+   /**
+    * Return the policy for the entries outside of the "META-INF/" directory.
+    *
+    * @return the policy
+    */
+   public short getPolicy() {
+      return policy;
+   }
+
+   /**
+    * Return the policy for the content of the "META-INF/" directory.
+    *
+    * @return the policy
+    */
+   public short getManifestPolicy() {
+      return manifestPolicy;
+   }
+
+   /**
+    * Return the policy which applies to a path.
+    *
+    * @param path the path
+    * @return the policy
+    */
+   public short getPolicy(String path) {
+      return path.startsWith(MANIFEST_DIR) ? manifestPolicy : policy;
+   }
+
+   /**
+    * Resolve a conflict between an entry and an entry previously found at the same path.
+    *
+    * @param path the path
+    * @param existing the entry previously found
+    * @param entry the entry
+    * @return true if the entry must replace the entry previously found, false if the entry must be discarded
+    * @throws ZipException if the policy does not allow the conflict
+    * @throws IOException if the content of the entries could not be compared
+    */
+   public boolean resolve(String path, AbstractJarEntry existing, AbstractJarEntry entry) throws IOException {
+      switch (getPolicy(path)) {
+         case FIRST_WINS:
+            return false;
+         case LAST_WINS:
+            return true;
+         case KEEP_IF_IDENTICAL:
+            if (isIdentical(existing.getArchive(), existing.getIndex(), entry.getArchive(), entry.getIndex())) {
+               return false;
+            }
+            throw new ZipException("different entries: " + path + " in " + getFileName(existing) + " and " + getFileName(entry));
+         default:
+            throw new ZipException("duplicate entry: " + path + " in " + getFileName(existing) + " and " + getFileName(entry));
+      }
+   }
+
+   private static String getFileName(AbstractJarEntry entry) {
+      return entry.getArchive().getFile().getName();
+   }
+
+   /**
+    * Return true if two entries have the same content.
+    *
+    * @param archive1 the jar file of the first entry
+    * @param index1 the index of the first entry
+    * @param archive2 the jar file of the second entry
+    * @param index2 the index of the second entry
+    * @return true if the two entries have the same content
+    * @throws IOException
+    */
+   public static boolean isIdentical(ZipArchive archive1, int index1, ZipArchive archive2, int index2) throws IOException {
+      if (archive1.getCrc(index1) != archive2.getCrc(index2) || archive1.getSize(index1) != archive2.getSize(index2)) {
+         return false;
+      } else if (archive1 == archive2 && index1 == index2) {
+         return true;
+      }
+      byte[] buf1 = new byte[BUFFER_SIZE];
+      byte[] buf2 = new byte[BUFFER_SIZE];
+      // the containers must not be evicted while their content is read
+      acquire(archive1);
+      try {
+         acquire(archive2);
+         try (InputStream in1 = archive1.getInputStream(index1); InputStream in2 = archive2.getInputStream(index2)) {
+            while (true) {
+               int len1 = readFully(in1, buf1);
+               int len2 = readFully(in2, buf2);
+               if (len1 != len2) {
+                  return false;
+               }
+               for (int i = 0; i < len1; i++) {
+                  if (buf1[i] != buf2[i]) {
+                     return false;
+                  }
+               }
+               if (len1 < BUFFER_SIZE) {
+                  return true;
+               }
+            }
+         } finally {
+            release(archive2);
+         }
+      } finally {
+         release(archive1);
+      }
+   }
+
+   private static void acquire(ZipArchive archive) throws IOException {
+      ZipArchivePool pool = archive.getPool();
+      if (pool != null) {
+         pool.acquire(archive);
+      }
+   }
+
+   private static void release(ZipArchive archive) {
+      ZipArchivePool pool = archive.getPool();
+      if (pool != null) {
+         pool.release(archive);
+      }
+   }
+
+   private static int readFully(InputStream in, byte[] buf) throws IOException {
+      int offset = 0;
+      while (offset < buf.length) {
+         int len = in.read(buf, offset, buf.length - offset);
+         if (len == -1) {
+            break;
+         }
+         offset += len;
+      }
+      return offset;
+   }
+}
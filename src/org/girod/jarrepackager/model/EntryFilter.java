@@ -0,0 +1,534 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.model;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.girod.jarrepackager.model.GlobPattern.Token;
+
+/**
+ * Filters the entries of the input files with include and exclude glob patterns on their paths. The rules can be
+ * global, or only apply to the entries of one input file.
+ *
+ * <h1>Glob syntax</h1>
+ * The patterns use the same syntax as the patterns of the input files, and are parsed by {@link GlobPattern}.
+ *
+ * <h1>Selection</h1>
+ * An entry of an input file is rejected if it is matched by an exclude rule which applies to this file. If there is at
+ * least one include rule which applies to this file, the entry is also rejected if it is not matched by one of these
+ * include rules.
+ *
+ * <h1>Automaton</h1>
+ * All the patterns are compiled into one nondeterministic automaton, which is converted lazily into a deterministic
+ * automaton shared by all the input files: each path is evaluated in one pass over its characters, whatever the number
+ * of rules, and the evaluation stops as soon as no pattern can match. The states of the deterministic automaton are
+ * only created when a path reaches them, and are then reused for all the following paths.
+ *
+ * @since 0.2
+ */
+public class EntryFilter {
+   private final List<Rule> rules = new ArrayList<>();
+   private final Map<String, Integer> patternIds = new HashMap<>();
+   private final List<Node> patternStarts = new ArrayList<>();
+   private final List<Node> nodes = new ArrayList<>();
+   private final Scope globalScope = new Scope();
+   private final Map<File, Scope> inputScopes = new HashMap<>();
+   private Automaton automaton = null;
+
+   public EntryFilter() {
+   }
+
+   /**
+    * Add a rule.
+    *
+    * @param input the input file to which the rule applies, or null for a global rule
+    * @param include true for an include rule, false for an exclude rule
+    * @param pattern the glob pattern
+    * @return false if the pattern is invalid
+    */
+   public synchronized boolean addRule(File input, boolean include, String pattern) {
+      Integer id = patternIds.get(pattern);
+      if (id == null) {
+         Node start = compile(pattern, patternStarts.size());
+         if (start == null) {
+            return false;
+         }
+         id = patternStarts.size();
+         patternIds.put(pattern, id);
+         patternStarts.add(start);
+      }
+      File key = input != null ? input.getAbsoluteFile() : null;
+      Scope scope = globalScope;
+      if (key != null) {
+         scope = inputScopes.get(key);
+         if (scope == null) {
+            scope = new Scope();
+            inputScopes.put(key, scope);
+         }
+      }
+      (include ? scope.includes : scope.excludes).set(id);
+      rules.add(new Rule(key, include, pattern));
+      automaton = null;
+      return true;
+   }
+
+   /**
+    * Return true if a glob pattern is valid.
+    *
+    * @param pattern the glob pattern
+    * @return true if the pattern is valid
+    */
+   public static boolean isValid(String pattern) {
+      return GlobPattern.isValid(pattern);
+   }
+
+   /**
+    * Add a global include rule.
+    *
+    * @param pattern the glob pattern
+    * @return false if the pattern is invalid
+    */
+   public boolean addInclude(String pattern) {
+      return addRule(null, true, pattern);
+   }
+
+   /**
+    * Add a global exclude rule.
+    *
+    * @param pattern the glob pattern
+    * @return false if the pattern is invalid
+    */
+   public boolean addExclude(String pattern) {
+      return addRule(null, false, pattern);
+   }
+
+   /**
+    * Return the rules, in their order of declaration.
+    *
+    * @return the rules
+    */
+   public List<Rule> getRules() {
+      return rules;
+   }
+
+   /**
+    * Return true if there are no rules.
+    *
+    * @return true if all the entries are accepted
+    */
+   public boolean isEmpty() {
+      return rules.isEmpty();
+   }
+
+   /**
+    * Return a description of the rules, used in the fingerprint of the settings of the incremental mode.
+    *
+    * @return the description
+    */
+   public String getDescription() {
+      StringBuilder buf = new StringBuilder();
+      for (Rule rule : rules) {
+         buf.append(rule.include ? "includeEntries=" : "excludeEntries=");
+         if (rule.input != null) {
+            buf.append(rule.input.getPath()).append(':');
+         }
+         buf.append(rule.pattern).append('\n');
+      }
+      return buf.toString();
+   }
+
+   /**
+    * Return the selector of the entries of an input file. A selector can be used concurrently by several threads.
+    *
+    * @param input the input file, or null to only apply the global rules
+    * @return the selector
+    */
+   public synchronized Selector getSelector(File input) {
+      if (automaton == null) {
+         automaton = new Automaton(nodes.toArray(new Node[nodes.size()]), patternStarts);
+      }
+      Scope scope = input != null ? inputScopes.get(input.getAbsoluteFile()) : null;
+      BitSet includes = (BitSet) globalScope.includes.clone();
+      BitSet excludes = (BitSet) globalScope.excludes.clone();
+      if (scope != null) {
+         includes.or(scope.includes);
+         excludes.or(scope.excludes);
+      }
+      return new Selector(automaton, includes, excludes);
+   }
+
+   /**
+    * Return true if an entry is accepted by the global rules.
+    *
+    * @param path the path of the entry
+    * @return true if the entry is accepted
+    */
+   public boolean accept(CharSequence path) {
+      return getSelector(null).accept(path);
+   }
+
+   private Node compile(String pattern, int id) {
+      List<Token> tokens = GlobPattern.parse(pattern);
+      if (tokens == null) {
+         return null;
+      }
+      Node match = createNode(Node.MATCH, null);
+      match.pattern = id;
+      return build(tokens, match);
+   }
+
+   private Node createNode(short type, Node next) {
+      Node node = new Node(nodes.size(), type, next);
+      nodes.add(node);
+      return node;
+   }
+
+   private Node build(List<Token> tokens, Node next) {
+      for (int i = tokens.size() - 1; i >= 0; i--) {
+         next = build(tokens.get(i), next);
+      }
+      return next;
+   }
+
+   private Node build(Token token, Node next) {
+      switch (token.getType()) {
+         case Token.LITERAL: {
+            Node node = createNode(Node.CHAR, next);
+            node.c = token.getChar();
+            return node;
+         }
+         case Token.SEGMENT_CHAR:
+            return createNode(Node.SEGMENT_CHAR, next);
+         case Token.CLASS: {
+            Node node = createNode(Node.CLASS, next);
+            node.ranges = token.getRanges();
+            node.negate = token.isNegated();
+            return node;
+         }
+         case Token.STAR:
+         case Token.ANY_SEQUENCE: {
+            Node split = createNode(Node.EPSILON, next);
+            split.alt = createNode(token.getType() == Token.STAR ? Node.SEGMENT_CHAR : Node.ANY_CHAR, split);
+            return split;
+         }
+         case Token.DIRECTORIES: {
+            // any number of directories: (segment-char* '/')*
+            Node split = createNode(Node.EPSILON, next);
+            Node slash = createNode(Node.CHAR, split);
+            slash.c = '/';
+            Node segment = createNode(Node.EPSILON, slash);
+            segment.alt = createNode(Node.SEGMENT_CHAR, segment);
+            split.alt = segment;
+            return split;
+         }
+         default: {
+            Node start = null;
+            for (List<Token> alternative : token.getAlternatives()) {
+               Node node = build(alternative, next);
+               if (start == null) {
+                  start = node;
+               } else {
+                  Node split = createNode(Node.EPSILON, start);
+                  split.alt = node;
+                  start = split;
+               }
+            }
+            return start != null ? start : next;
+         }
+      }
+   }
+
+   /**
+    * A rule of the filter.
+    */
+   public static class Rule {
+      private final File input;
+      private final boolean include;
+      private final String pattern;
+
+      private Rule(File input, boolean include, String pattern) {
+         this.input = input;
+         this.include = include;
+         this.pattern = pattern;
+      }
+
+      /**
+       * Return the input file to which the rule applies.
+       *
+       * @return the input file, or null for a global rule
+       */
+      public File getInput() {
+         return input;
+      }
+
+      /**
+       * Return true for an include rule.
+       *
+       * @return true for an include rule, false for an exclude rule
+       */
+      public boolean isInclude() {
+         return include;
+      }
+
+      /**
+       * Return the glob pattern.
+       *
+       * @return the pattern
+       */
+      public String getPattern() {
+         return pattern;
+      }
+   }
+
+   /**
+    * Selects the entries of one input file.
+    */
+   public static class Selector {
+      private static final byte UNKNOWN = 0;
+      private static final byte ACCEPTED = 1;
+      private static final byte REJECTED = 2;
+      private final Automaton automaton;
+      private final BitSet includes;
+      private final BitSet excludes;
+      private final boolean acceptAll;
+      private byte[] decisions = new byte[64];
+
+      private Selector(Automaton automaton, BitSet includes, BitSet excludes) {
+         this.automaton = automaton;
+         this.includes = includes;
+         this.excludes = excludes;
+         this.acceptAll = includes.isEmpty() && excludes.isEmpty();
+      }
+
+      /**
+       * Return true if an entry is accepted.
+       *
+       * @param path the path of the entry
+       * @return true if the entry is accepted
+       */
+      public boolean accept(CharSequence path) {
+         if (acceptAll) {
+            return true;
+         }
+         State state = automaton.start;
+         int length = path.length();
+         for (int i = 0; i < length && state != automaton.dead; i++) {
+            state = automaton.next(state, path.charAt(i));
+         }
+         // the decisions cache may be updated concurrently: a lost update only means that the decision is computed again
+         byte[] cache = decisions;
+         if (state.id >= cache.length) {
+            cache = Arrays.copyOf(cache, Math.max(cache.length * 2, state.id + 1));
+            decisions = cache;
+         }
+         byte decision = cache[state.id];
+         if (decision == UNKNOWN) {
+            boolean accepted = !state.matched.intersects(excludes) && (includes.isEmpty() || state.matched.intersects(includes));
+            decision = accepted ? ACCEPTED : REJECTED;
+            cache[state.id] = decision;
+         }
+         return decision == ACCEPTED;
+      }
+   }
+
+   /**
+    * The include and exclude patterns of the global rules or of the rules of one input file.
+    */
+   private static class Scope {
+      private final BitSet includes = new BitSet();
+      private final BitSet excludes = new BitSet();
+   }
+
+   /**
+    * The deterministic automaton, built lazily from the nondeterministic automaton of all the patterns.
+    */
+   private static class Automaton {
+      private final Node[] nodes;
+      private final Map<BitSet, State> states = new HashMap<>();
+      private final State start;
+      private final State dead;
+
+      private Automaton(Node[] nodes, List<Node> patternStarts) {
+         this.nodes = nodes;
+         dead = getState(new BitSet());
+         BitSet reached = new BitSet();
+         BitSet visited = new BitSet();
+         for (Node node : patternStarts) {
+            closure(node, reached, visited);
+         }
+         start = getState(reached);
+      }
+
+      private State getState(BitSet reached) {
+         State state = states.get(reached);
+         if (state == null) {
+            state = new State(states.size(), reached, nodes);
+            states.put(reached, state);
+         }
+         return state;
+      }
+
+      private State next(State state, char c) {
+         if (c < State.ASCII) {
+            State next = state.ascii[c];
+            if (next != null) {
+               return next;
+            }
+         }
+         synchronized (this) {
+            State next = c < State.ASCII ? state.ascii[c] : state.others.get(c);
+            if (next == null) {
+               BitSet reached = new BitSet();
+               BitSet visited = new BitSet();
+               for (Node node : state.nodes) {
+                  if (node.accept(c)) {
+                     closure(node.next, reached, visited);
+                  }
+               }
+               next = getState(reached);
+               if (c < State.ASCII) {
+                  state.ascii[c] = next;
+               } else {
+                  state.others.put(c, next);
+               }
+            }
+            return next;
+         }
+      }
+
+      /**
+       * Add the nodes which consume a character or match a pattern, reachable from a node without consuming a character.
+       */
+      private static void closure(Node node, BitSet reached, BitSet visited) {
+         Deque<Node> stack = new ArrayDeque<>();
+         stack.push(node);
+         while (!stack.isEmpty()) {
+            Node current = stack.pop();
+            if (visited.get(current.id)) {
+               continue;
+            }
+            visited.set(current.id);
+            if (current.type == Node.EPSILON) {
+               stack.push(current.next);
+               if (current.alt != null) {
+                  stack.push(current.alt);
+               }
+            } else {
+               reached.set(current.id);
+            }
+         }
+      }
+   }
+
+   /**
+    * A state of the deterministic automaton: the nodes of the nondeterministic automaton which are reached, and the
+    * patterns which are matched in this state.
+    */
+   private static class State {
+      private static final int ASCII = 128;
+      private final int id;
+      private final Node[] nodes;
+      private final BitSet matched = new BitSet();
+      private final State[] ascii = new State[ASCII];
+      private final Map<Character, State> others = new HashMap<>();
+
+      private State(int id, BitSet reached, Node[] allNodes) {
+         this.id = id;
+         List<Node> list = new ArrayList<>();
+         for (int i = reached.nextSetBit(0); i >= 0; i = reached.nextSetBit(i + 1)) {
+            Node node = allNodes[i];
+            if (node.type == Node.MATCH) {
+               matched.set(node.pattern);
+            } else {
+               list.add(node);
+            }
+         }
+         this.nodes = list.toArray(new Node[list.size()]);
+      }
+   }
+
+   /**
+    * A node of the nondeterministic automaton.
+    */
+   private static class Node {
+      private static final short EPSILON = 0;
+      private static final short CHAR = 1;
+      private static final short SEGMENT_CHAR = 2;
+      private static final short ANY_CHAR = 3;
+      private static final short CLASS = 4;
+      private static final short MATCH = 5;
+      private final int id;
+      private final short type;
+      private Node next;
+      private Node alt = null;
+      private char c = 0;
+      private char[] ranges = null;
+      private boolean negate = false;
+      private int pattern = -1;
+
+      private Node(int id, short type, Node next) {
+         this.id = id;
+         this.type = type;
+         this.next = next;
+      }
+
+      private boolean accept(char ch) {
+         switch (type) {
+            case CHAR:
+               return ch == c;
+            case SEGMENT_CHAR:
+               return ch != '/';
+            case ANY_CHAR:
+               return true;
+            case CLASS:
+               if (ch == '/') {
+                  return false;
+               }
+               for (int i = 0; i < ranges.length; i += 2) {
+                  if (ch >= ranges[i] && ch <= ranges[i + 1]) {
+                     return !negate;
+                  }
+               }
+               return negate;
+            default:
+               return false;
+         }
+      }
+   }
+}
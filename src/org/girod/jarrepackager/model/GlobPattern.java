@@ -0,0 +1,274 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A glob pattern split in tokens. The patterns of the input files and of the entries of the input files are both
+ * parsed by this class, and each engine compiles the tokens in its own form.
+ *
+ * <h1>Glob syntax</h1>
+ * The patterns use '/' as the separator, and support the following constructs:
+ * <ul>
+ * <li><code>*</code> matches any sequence of characters in a path segment</li>
+ * <li><code>?</code> matches one character in a path segment</li>
+ * <li><code>**</code> as a whole segment matches any number of directories, and at the end of the pattern any
+ * sequence of characters</li>
+ * <li><code>[abc]</code>, <code>[a-z]</code> and <code>[!abc]</code> match one character of a class</li>
+ * <li><code>{a,b}</code> matches one of the alternatives</li>
+ * <li><code>\</code> escapes the next character</li>
+ * </ul>
+ * The <code>*</code>, <code>?</code> and the character classes never match a '/'.
+ *
+ * @since 0.2
+ */
+public class GlobPattern {
+   private final String glob;
+   private final int length;
+   private int pos = 0;
+
+   private GlobPattern(String glob) {
+      this.glob = glob;
+      this.length = glob.length();
+   }
+
+   /**
+    * Split a glob pattern in tokens.
+    *
+    * @param glob the glob pattern
+    * @return the tokens, or null if the pattern is invalid
+    */
+   public static List<Token> parse(String glob) {
+      GlobPattern parser = new GlobPattern(glob);
+      List<Token> tokens = parser.parseSequence(false);
+      return tokens != null && parser.pos == parser.length ? tokens : null;
+   }
+
+   /**
+    * Return true if a glob pattern is valid.
+    *
+    * @param glob the glob pattern
+    * @return true if the pattern is valid
+    */
+   public static boolean isValid(String glob) {
+      return parse(glob) != null;
+   }
+
+   private static Token literal(char c) {
+      Token token = new Token(Token.LITERAL);
+      token.c = c;
+      return token;
+   }
+
+   /**
+    * Parse a sequence of tokens, until the end of the pattern, or until the end of an alternative.
+    *
+    * @return the tokens, or null if the pattern is invalid
+    */
+   private List<Token> parseSequence(boolean inBraces) {
+      List<Token> tokens = new ArrayList<>();
+      while (pos < length) {
+         char c = glob.charAt(pos);
+         if (inBraces && (c == ',' || c == '}')) {
+            return tokens;
+         }
+         switch (c) {
+            case '*':
+               if (pos + 1 < length && glob.charAt(pos + 1) == '*') {
+                  boolean segmentStart = pos == 0 || glob.charAt(pos - 1) == '/';
+                  pos += 2;
+                  if (segmentStart && pos < length && glob.charAt(pos) == '/') {
+                     tokens.add(new Token(Token.DIRECTORIES));
+                     pos++;
+                  } else if (segmentStart && pos == length) {
+                     tokens.add(new Token(Token.ANY_SEQUENCE));
+                  } else {
+                     tokens.add(new Token(Token.STAR));
+                  }
+               } else {
+                  tokens.add(new Token(Token.STAR));
+                  pos++;
+               }
+               break;
+            case '?':
+               tokens.add(new Token(Token.SEGMENT_CHAR));
+               pos++;
+               break;
+            case '[': {
+               int end = glob.indexOf(']', pos + 2);
+               if (end == -1) {
+                  return null;
+               }
+               Token token = new Token(Token.CLASS);
+               int start = pos + 1;
+               if (glob.charAt(start) == '!' || glob.charAt(start) == '^') {
+                  token.negate = true;
+                  start++;
+               }
+               StringBuilder ranges = new StringBuilder();
+               for (int i = start; i < end; i++) {
+                  char first = glob.charAt(i);
+                  if (i + 2 < end && glob.charAt(i + 1) == '-') {
+                     ranges.append(first).append(glob.charAt(i + 2));
+                     i += 2;
+                  } else {
+                     ranges.append(first).append(first);
+                  }
+               }
+               token.ranges = ranges.toString().toCharArray();
+               tokens.add(token);
+               pos = end + 1;
+               break;
+            }
+            case '{': {
+               pos++;
+               Token token = new Token(Token.ALTERNATIVES);
+               token.alternatives = new ArrayList<>();
+               while (true) {
+                  List<Token> alternative = parseSequence(true);
+                  if (alternative == null || pos >= length) {
+                     return null;
+                  }
+                  token.alternatives.add(alternative);
+                  if (glob.charAt(pos++) == '}') {
+                     break;
+                  }
+               }
+               tokens.add(token);
+               break;
+            }
+            case '\\':
+               if (pos + 1 == length) {
+                  return null;
+               }
+               tokens.add(literal(glob.charAt(pos + 1)));
+               pos += 2;
+               break;
+            default:
+               tokens.add(literal(c));
+               pos++;
+         }
+      }
+      return tokens;
+   }
+
+   /**
+    * An element of a glob pattern.
+    */
+   public static class Token {
+      /**
+       * A literal character.
+       */
+      public static final short LITERAL = 0;
+      /**
+       * Any character except '/' (<code>?</code>).
+       */
+      public static final short SEGMENT_CHAR = 1;
+      /**
+       * A character of a class, except '/'.
+       */
+      public static final short CLASS = 2;
+      /**
+       * Any sequence of characters without '/' (<code>*</code>).
+       */
+      public static final short STAR = 3;
+      /**
+       * Any sequence of characters (<code>**</code> at the end of the pattern).
+       */
+      public static final short ANY_SEQUENCE = 4;
+      /**
+       * Any number of directories, each followed by its '/' (<code>**&#47;</code>).
+       */
+      public static final short DIRECTORIES = 5;
+      /**
+       * One of several sequences of tokens (<code>{a,b}</code>).
+       */
+      public static final short ALTERNATIVES = 6;
+      private final short type;
+      private char c = 0;
+      private char[] ranges = null;
+      private boolean negate = false;
+      private List<List<Token>> alternatives = null;
+
+      private Token(short type) {
+         this.type = type;
+      }
+
+      /**
+       * Return the type of the token.
+       *
+       * @return the type
+       */
+      public short getType() {
+         return type;
+      }
+
+      /**
+       * Return the character of a {@link #LITERAL} token.
+       *
+       * @return the character
+       */
+      public char getChar() {
+         return c;
+      }
+
+      /**
+       * Return the ranges of a {@link #CLASS} token, as pairs of first and last characters.
+       *
+       * @return the ranges
+       */
+      public char[] getRanges() {
+         return ranges;
+      }
+
+      /**
+       * Return true if a {@link #CLASS} token matches the characters which are not in its ranges.
+       *
+       * @return true if the class is negated
+       */
+      public boolean isNegated() {
+         return negate;
+      }
+
+      /**
+       * Return the alternatives of an {@link #ALTERNATIVES} token.
+       *
+       * @return the alternatives
+       */
+      public List<List<Token>> getAlternatives() {
+         return Collections.unmodifiableList(alternatives);
+      }
+   }
+}
@@ -1,219 +1,421 @@
-/*
-Copyright (c) 2023 Herve Girod
-All rights reserved.
-
-Redistribution and use in source and binary forms, with or without
-modification, are permitted provided that the following conditions are met:
-
-1. Redistributions of source code must retain the above copyright notice, this
-   list of conditions and the following disclaimer.
-2. Redistributions in binary form must reproduce the above copyright notice,
-   this list of conditions and the following disclaimer in the documentation
-   and/or other materials provided with the distribution.
-
-THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
-ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
-WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
-DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
-ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
-(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
-LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
-ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
-(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
-SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
-
-The views and conclusions contained in the software and documentation are those
-of the authors and should not be interpreted as representing official policies,
-either expressed or implied, of the FreeBSD Project.
-
-Alternatively if you have any questions about this project, you can visit
-the project website at the project page on https://github.com/hervegirod/jarrepackager
- */
-package org.girod.jarrepackager.model;
-
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.StringTokenizer;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-
-/**
- * The model representing the input jar files and their Jar entries.
- *
- * @since 0.1
- */
-public class JarCollectionModel {
-   private final static String MANIFEST = "META-INF/MANIFEST.MF";
-   private final static String MANIFEST_DIR = "META-INF/";
-   private ManifestModel manifestModel = new ManifestModel();
-   private final List<JarRootDirectory> jarRootDirectories = new ArrayList<>();
-   private final List<AbstractJarFileDirectory> jarDirectories = new ArrayList<>();
-   private final Map<String, AbstractJarFileDirectory> paths = new HashMap<>();
-   private final Map<String, ManifestJarEntry> manifestContent = new HashMap<>();
-   private final Map<String, String> manifestMainAttrs = new HashMap<>();
-   private JarFile jarFile = null;
-   private JarRootDirectory rootDirectory = null;
-
-   public JarCollectionModel() {
-   }
-
-   public void setManifestModel(ManifestModel manifestModel) {
-      this.manifestModel = manifestModel;
-   }
-
-   public ManifestModel getManifestModel() {
-      return manifestModel;
-   }
-
-   /**
-    * Return the list of root directories.
-    *
-    * @return the list of root directories
-    */
-   public List<JarRootDirectory> getRootJarDirectories() {
-      return jarRootDirectories;
-   }
-
-   /**
-    * Return the list of all directories.
-    *
-    * @return the list of all directories
-    */
-   public List<AbstractJarFileDirectory> getJarDirectories() {
-      return jarDirectories;
-   }
-
-   private boolean isManifest(String path) {
-      return path.equals(MANIFEST);
-   }
-
-   private boolean isInManifest(String path) {
-      return path.startsWith(MANIFEST_DIR);
-   }
-
-   /**
-    * Add an attribute to be put in the Manifest.
-    *
-    * @param key the attribute key
-    * @param value the attribute value
-    */
-   public void addMainManifestAttribute(String key, String value) {
-      if (!manifestMainAttrs.containsKey(key)) {
-         manifestMainAttrs.put(key, value);
-      }
-   }
-
-   /**
-    * Return the map of attributes to be put in the Manifest.
-    *
-    * @return the attributes
-    */
-   public Map<String, String> getManifestAttributes() {
-      return manifestMainAttrs;
-   }
-
-   /**
-    * Return the content of the "MANIFEST/" directory.
-    *
-    * @return the content
-    */
-   public Map<String, ManifestJarEntry> getManifestContent() {
-      return manifestContent;
-   }
-
-   /**
-    * Return true if the "MANIFEST/" directory has content files.
-    *
-    * @return true if the "MANIFEST/" directory has content files
-    */
-   public boolean hasManifestContent() {
-      return !manifestContent.isEmpty();
-   }
-
-   /**
-    * Add an entry in the "MANIFEST/" directory.
-    *
-    * @param fileEntry the entry
-    */
-   public void addManifestContent(ManifestJarEntry fileEntry) {
-      String path = fileEntry.getPath();
-      if (!manifestContent.containsKey(path)) {
-         manifestContent.put(path, fileEntry);
-      }
-   }
-
-   /**
-    * Set the current Jar file during the input files reading.
-    *
-    * @param jarFile the Jar file
-    */
-   public void setJarFile(JarFile jarFile) {
-      this.jarFile = jarFile;
-      this.rootDirectory = null;
-      this.paths.clear();
-   }
-
-   /**
-    * Add a Jar entry found in the input files.
-    *
-    * @param entry the entry
-    */
-   public void addJarEntry(JarEntry entry) {
-      String path = entry.getName();
-      if (path.endsWith("/")) {
-         return;
-      } else if (isManifest(path)) {
-         return;
-      }
-      boolean isInManifest = false;
-      AbstractJarEntry fileEntry;
-      if (isInManifest(path)) {
-         isInManifest = true;
-         fileEntry = new ManifestJarEntry(entry);
-      } else {
-         fileEntry = new JarFileEntry(entry);
-      }
-      List<String> decodedPath = decodePath(path);
-      AbstractJarFileDirectory dir = null;
-      for (int i = 0; i < decodedPath.size() - 1; i++) {
-         String subpath = decodedPath.get(i);
-         if (dir == null) {
-            rootDirectory = new JarRootDirectory(this, jarFile, subpath);
-            dir = rootDirectory;
-            jarRootDirectories.add((JarRootDirectory) dir);
-         } else if (!isInManifest) {
-            dir = new JarFileDirectory(dir, subpath);
-         }
-         if (isInManifest) {
-            ManifestJarEntry manifestEntry = (ManifestJarEntry) fileEntry;
-            manifestEntry.setParent(rootDirectory);
-            addManifestContent(manifestEntry);
-         } else {
-            String completePath = dir.getPath();
-            if (paths.containsKey(completePath)) {
-               dir = paths.get(completePath);
-            } else {
-               jarDirectories.add(dir);
-               paths.put(completePath, dir);
-            }
-            if (i == decodedPath.size() - 2) {
-               JarFileEntry _jarfileEntry = (JarFileEntry) fileEntry;
-               _jarfileEntry.setName(decodedPath.get(decodedPath.size() - 1));
-               dir.addChildEntry(_jarfileEntry);
-            }
-         }
-      }
-   }
-
-   private List<String> decodePath(String path) {
-      List<String> list = new ArrayList<>();
-      StringTokenizer tok = new StringTokenizer(path, "/");
-      while (tok.hasMoreTokens()) {
-         String tk = tok.nextToken();
-         list.add(tk);
-      }
-      return list;
-   }
-}
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.jar.Manifest;
+import org.girod.jarrepackager.zip.ZipArchive;
+
+/**
+ * The model representing the input jar files and their Jar entries.
+ *
+ * <h1>Partial models</h1>
+ * The model is not synchronized. To analyze several input jar files concurrently, each jar file can be analyzed in its
+ * own partial model, and the partial models can then be merged in the order of the input files with
+ * {@link #merge(JarCollectionModel)}. The result is the same as if the jar files had been added sequentially in this
+ * order.
+ *
+ * <h1>Paths</h1>
+ * The paths of the directories and entries are stored in a trie of {@link PathNode} shared by the model and its partial
+ * models, so that each path segment is stored once for all the input files, and full paths are only built when needed.
+ *
+ * <h1>Conflicts</h1>
+ * The entries which have the same path are detected when they are added in the model or when a partial model is merged,
+ * and the conflict is resolved by the {@link ConflictResolver} of the model. The entries which are discarded by the
+ * resolution are removed from the model, so that each path is written only once.
+ *
+ * @since 0.1
+ */
+public class JarCollectionModel {
+   private final static String MANIFEST = "META-INF/MANIFEST.MF";
+   private final static String MANIFEST_DIR = "META-INF/";
+   private ManifestModel manifestModel = new ManifestModel();
+   private final List<ZipArchive> archives = new ArrayList<>();
+   private final List<JarRootDirectory> jarRootDirectories = new ArrayList<>();
+   private final List<AbstractJarFileDirectory> jarDirectories = new ArrayList<>();
+   private final PathNode pathRoot;
+   private final Map<PathNode, AbstractJarFileDirectory> paths = new HashMap<>();
+   private final Map<PathNode, JarRootDirectory> roots = new HashMap<>();
+   private final Map<String, ManifestJarEntry> manifestContent = new LinkedHashMap<>();
+   private final Map<PathNode, AbstractJarEntry> entries = new LinkedHashMap<>();
+   private ConflictResolver conflictResolver = new ConflictResolver();
+   private final Map<String, String> manifestMainAttrs = new HashMap<>();
+   private ZipArchive archive = null;
+   private int manifestsCount = 0;
+
+   public JarCollectionModel() {
+      this(new PathNode());
+   }
+
+   private JarCollectionModel(PathNode pathRoot) {
+      this.pathRoot = pathRoot;
+   }
+
+   /**
+    * Return the root of the trie of the paths of the entries. The trie is shared by this model and its partial models.
+    *
+    * @return the root of the trie
+    * @since 0.2
+    */
+   public PathNode getPathRoot() {
+      return pathRoot;
+   }
+
+   public void setManifestModel(ManifestModel manifestModel) {
+      this.manifestModel = manifestModel;
+   }
+
+   public ManifestModel getManifestModel() {
+      return manifestModel;
+   }
+
+   /**
+    * Set the resolver for the conflicts between entries which have the same path.
+    *
+    * @param conflictResolver the resolver
+    * @since 0.2
+    */
+   public void setConflictResolver(ConflictResolver conflictResolver) {
+      this.conflictResolver = conflictResolver;
+   }
+
+   /**
+    * Return the resolver for the conflicts between entries which have the same path.
+    *
+    * @return the resolver
+    * @since 0.2
+    */
+   public ConflictResolver getConflictResolver() {
+      return conflictResolver;
+   }
+
+   /**
+    * Return the input Jar files, in the order in which they have been added.
+    *
+    * @return the Jar files
+    * @since 0.2
+    */
+   public List<ZipArchive> getArchives() {
+      return archives;
+   }
+
+   /**
+    * Return the list of root directories.
+    *
+    * @return the list of root directories
+    */
+   public List<JarRootDirectory> getRootJarDirectories() {
+      return jarRootDirectories;
+   }
+
+   /**
+    * Return the list of all directories.
+    *
+    * @return the list of all directories
+    */
+   public List<AbstractJarFileDirectory> getJarDirectories() {
+      return jarDirectories;
+   }
+
+   private boolean isManifest(String path) {
+      return path.equals(MANIFEST);
+   }
+
+   private boolean isInManifest(String path) {
+      return path.startsWith(MANIFEST_DIR);
+   }
+
+   /**
+    * Add an attribute to be put in the Manifest.
+    *
+    * @param key the attribute key
+    * @param value the attribute value
+    */
+   public void addMainManifestAttribute(String key, String value) {
+      if (!manifestMainAttrs.containsKey(key)) {
+         manifestMainAttrs.put(key, value);
+      }
+   }
+
+   /**
+    * Return the number of manifests of the input files which have been parsed. Each manifest is only parsed once.
+    *
+    * @return the number of manifests
+    * @since 0.2
+    */
+   public int getManifestsCount() {
+      return manifestsCount;
+   }
+
+   /**
+    * Return the map of attributes to be put in the Manifest.
+    *
+    * @return the attributes
+    */
+   public Map<String, String> getManifestAttributes() {
+      return manifestMainAttrs;
+   }
+
+   /**
+    * Return the content of the "MANIFEST/" directory.
+    *
+    * @return the content
+    */
+   public Map<String, ManifestJarEntry> getManifestContent() {
+      return manifestContent;
+   }
+
+   /**
+    * Return true if the "MANIFEST/" directory has content files.
+    *
+    * @return true if the "MANIFEST/" directory has content files
+    */
+   public boolean hasManifestContent() {
+      return !manifestContent.isEmpty();
+   }
+
+   /**
+    * Add an entry in the "MANIFEST/" directory.
+    *
+    * @param fileEntry the entry
+    */
+   public void addManifestContent(ManifestJarEntry fileEntry) {
+      String path = fileEntry.getPath();
+      if (!manifestContent.containsKey(path)) {
+         manifestContent.put(path, fileEntry);
+      }
+   }
+
+   /**
+    * Resolve the conflict between an entry and the entry previously found at the same path, if there is one. If the
+    * previous entry is replaced, it is removed from the model.
+    *
+    * @param entry the entry
+    * @return true if the entry must be added, false if it must be discarded
+    */
+   private boolean resolveConflict(AbstractJarEntry entry) throws IOException {
+      AbstractJarEntry existing = entries.get(entry.getNode());
+      if (existing == null) {
+         return true;
+      } else if (conflictResolver.resolve(entry.getPath(), existing, entry)) {
+         if (existing instanceof JarFileEntry) {
+            JarFileEntry fileEntry = (JarFileEntry) existing;
+            fileEntry.getParent().removeChildEntry(fileEntry);
+         } else {
+            manifestContent.remove(existing.getPath());
+         }
+         return true;
+      } else {
+         return false;
+      }
+   }
+
+   /**
+    * Create an empty partial model which shares the trie of the paths, the manifest model, and the conflict resolver
+    * of this model. Only the partial models created by this method can be merged in this model.
+    *
+    * @return the partial model
+    * @since 0.2
+    */
+   public JarCollectionModel createPartialModel() {
+      JarCollectionModel partialModel = new JarCollectionModel(pathRoot);
+      partialModel.setManifestModel(manifestModel);
+      partialModel.setConflictResolver(conflictResolver);
+      return partialModel;
+   }
+
+   /**
+    * Merge a partial model in this model. The root directories and directories of the partial model are appended after
+    * the ones of this model, and the manifest attributes of this model take precedence over the ones of the partial
+    * model. The conflicts between the entries of the two models are resolved as if the entries of the partial model had
+    * been added after the entries of this model.
+    *
+    * @param partialModel the partial model, created by {@link #createPartialModel()}
+    * @throws IOException if the resolution of a conflict failed
+    * @since 0.2
+    */
+   public void merge(JarCollectionModel partialModel) throws IOException {
+      manifestsCount += partialModel.manifestsCount;
+      archives.addAll(partialModel.archives);
+      jarRootDirectories.addAll(partialModel.jarRootDirectories);
+      jarDirectories.addAll(partialModel.jarDirectories);
+      Iterator<AbstractJarEntry> it = partialModel.entries.values().iterator();
+      while (it.hasNext()) {
+         AbstractJarEntry jarEntry = it.next();
+         if (resolveConflict(jarEntry)) {
+            entries.put(jarEntry.getNode(), jarEntry);
+            if (jarEntry instanceof ManifestJarEntry) {
+               manifestContent.put(jarEntry.getPath(), (ManifestJarEntry) jarEntry);
+            }
+         } else if (jarEntry instanceof JarFileEntry) {
+            JarFileEntry fileEntry = (JarFileEntry) jarEntry;
+            fileEntry.getParent().removeChildEntry(fileEntry);
+         }
+      }
+      Iterator<Entry<String, String>> it2 = partialModel.manifestMainAttrs.entrySet().iterator();
+      while (it2.hasNext()) {
+         Entry<String, String> entry = it2.next();
+         addMainManifestAttribute(entry.getKey(), entry.getValue());
+      }
+   }
+
+   /**
+    * Set the current Jar file during the input files reading. The manifest of the Jar file is parsed, and its main
+    * attributes are added to the attributes to be put in the Manifest.
+    *
+    * @param archive the Jar file
+    */
+   public void setArchive(ZipArchive archive) {
+      this.archive = archive;
+      this.archives.add(archive);
+      this.paths.clear();
+      this.roots.clear();
+      try {
+         Manifest manifest = archive.getManifest();
+         if (manifest != null) {
+            manifestsCount++;
+            Iterator<Entry<Object, Object>> it = manifest.getMainAttributes().entrySet().iterator();
+            while (it.hasNext()) {
+               Entry<Object, Object> entry = it.next();
+               addMainManifestAttribute(entry.getKey().toString(), entry.getValue().toString());
+            }
+         }
+      } catch (IOException ex) {
+      }
+   }
+
+   private JarRootDirectory getRootDirectory(PathNode node) {
+      JarRootDirectory rootDirectory = roots.get(node);
+      if (rootDirectory == null) {
+         rootDirectory = new JarRootDirectory(archive, node);
+         jarRootDirectories.add(rootDirectory);
+         roots.put(node, rootDirectory);
+      }
+      return rootDirectory;
+   }
+
+   /**
+    * Return true if a path is a top-level entry, which is not in any directory. Top-level entries, such as
+    * "module-info.class" or "LICENSE", are not kept in the output, because each input file has its own.
+    *
+    * @param path the path of the entry
+    * @return true if the path is a top-level entry
+    * @since 0.2
+    */
+   public static boolean isTopLevelEntry(String path) {
+      int last = path.lastIndexOf('/');
+      for (int i = 0; i < last; i++) {
+         if (path.charAt(i) != '/') {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Add a Jar entry found in the input files. Top-level entries are skipped (see {@link #isTopLevelEntry(String)}).
+    *
+    * <h1>Algorithm</h1>
+    * The path of the entry is scanned for "/" separators, and each segment is looked up in the trie of the paths
+    * without creating a String if the segment was already found. A directory is only created the first time its node is
+    * found for the current Jar file, and there is only one root directory for each top-level directory of the current Jar
+    * file.
+    *
+    * @param index the index of the entry in the current Jar file
+    * @param path the path of the entry, already decoded by the caller from the central directory
+    * @throws IOException if the resolution of a conflict with a previous entry failed
+    */
+   public void addJarEntry(int index, String path) throws IOException {
+      if (path.endsWith("/")) {
+         return;
+      } else if (isManifest(path) || isTopLevelEntry(path)) {
+         return;
+      }
+      boolean isInManifest = isInManifest(path);
+      PathNode node = pathRoot;
+      JarRootDirectory rootDirectory = null;
+      AbstractJarFileDirectory dir = null;
+      int start = 0;
+      int end;
+      while ((end = path.indexOf('/', start)) != -1) {
+         if (end > start) {
+            node = node.getChild(path, start, end);
+            if (dir == null) {
+               rootDirectory = getRootDirectory(node);
+               dir = isInManifest ? rootDirectory : addDirectory(rootDirectory);
+            } else if (!isInManifest) {
+               AbstractJarFileDirectory childDir = paths.get(node);
+               dir = childDir != null ? childDir : addDirectory(new JarFileDirectory(dir, node));
+            }
+         }
+         start = end + 1;
+      }
+      if (dir == null) {
+         return;
+      }
+      node = node.getChild(path, start, path.length());
+      if (isInManifest) {
+         ManifestJarEntry manifestEntry = new ManifestJarEntry(index, node);
+         manifestEntry.setParent(rootDirectory);
+         if (resolveConflict(manifestEntry)) {
+            entries.put(node, manifestEntry);
+            manifestContent.put(manifestEntry.getPath(), manifestEntry);
+         }
+      } else {
+         JarFileEntry fileEntry = new JarFileEntry(index, node);
+         fileEntry.setParent(dir);
+         if (resolveConflict(fileEntry)) {
+            entries.put(node, fileEntry);
+            dir.addChildEntry(fileEntry);
+         }
+      }
+   }
+
+   private AbstractJarFileDirectory addDirectory(AbstractJarFileDirectory dir) {
+      PathNode node = dir.getNode();
+      AbstractJarFileDirectory existingDir = paths.get(node);
+      if (existingDir != null) {
+         return existingDir;
+      } else {
+         jarDirectories.add(dir);
+         paths.put(node, dir);
+         return dir;
+      }
+   }
+}
@@ -1,77 +1,81 @@
-/*
-Copyright (c) 2023 Herve Girod
-All rights reserved.
-
-Redistribution and use in source and binary forms, with or without
-modification, are permitted provided that the following conditions are met:
-
-1. Redistributions of source code must retain the above copyright notice, this
-   list of conditions and the following disclaimer.
-2. Redistributions in binary form must reproduce the above copyright notice,
-   this list of conditions and the following disclaimer in the documentation
-   and/or other materials provided with the distribution.
-
-THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
-ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
-WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
-DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
-ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
-(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
-LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
-ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
-(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
-SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
-
-The views and conclusions contained in the software and documentation are those
-of the authors and should not be interpreted as representing official policies,
-either expressed or implied, of the FreeBSD Project.
-
-Alternatively if you have any questions about this project, you can visit
-the project website at the project page on https://github.com/hervegirod/jarrepackager
- */
-package org.girod.jarrepackager.model;
-
-import java.util.jar.JarEntry;
-
-/**
- * Represents a jar entry used in the MANIFEST.MF directory.
- *
- * @since 0.1
- */
-public class ManifestJarEntry extends AbstractJarEntry {
-   private final String path;
-   private JarRootDirectory parent;
-
-   public ManifestJarEntry(JarEntry entry) {
-      super(entry);
-      this.path = entry.getName();
-   }
-
-   /**
-    * Set the parent root directory.
-    *
-    * @param parent the directory
-    */
-   public void setParent(JarRootDirectory parent) {
-      this.parent = parent;
-   }
-
-   /**
-    * Return the parent root directory.
-    *
-    * @return the directory
-    */
-   public JarRootDirectory getParent() {
-      return parent;
-   }
-
-   /**
-    * Return the path of the directory.
-    *
-    * @return the path
-    */
-   @Override
-   public String getPath() {
-      return path;
-   }
-}
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.model;
+
+import org.girod.jarrepackager.zip.ZipArchive;
+
+/**
+ * Represents a jar entry used in the MANIFEST.MF directory.
+ *
+ * @since 0.1
+ */
+public class ManifestJarEntry extends AbstractJarEntry {
+   private JarRootDirectory parent;
+
+   /**
+    * Constructor.
+    *
+    * @param index the index of the entry in the input jar file
+    * @param node the node of the entry in the trie of the paths
+    */
+   public ManifestJarEntry(int index, PathNode node) {
+      super(index, node);
+   }
+
+   /**
+    * Set the parent root directory.
+    *
+    * @param parent the directory
+    */
+   public void setParent(JarRootDirectory parent) {
+      this.parent = parent;
+   }
+
+   /**
+    * Return the parent root directory.
+    *
+    * @return the directory
+    */
+   public JarRootDirectory getParent() {
+      return parent;
+   }
+
+   /**
+    * Return the input jar file of the entry.
+    *
+    * @return the jar file
+    */
+   @Override
+   public ZipArchive getArchive() {
+      return parent.getArchive();
+   }
+}
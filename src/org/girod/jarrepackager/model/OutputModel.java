@@ -0,0 +1,253 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A model for one output jar file of a repackaging. All the output files of a repackaging are written from the same
+ * model of the input files, but each output file can have its own filters and manifest properties.
+ *
+ * <h1>Filters</h1>
+ * The filters are glob patterns on the paths of the entries in the output file (for example
+ * "META-INF/native/**"). If there is at least one included pattern, only the entries matched by an included pattern are
+ * written. The entries matched by an excluded pattern are never written. The manifest of the output file is always
+ * written.
+ *
+ * <h1>Manifest</h1>
+ * The new properties and the existing properties types of the output file override the ones of the
+ * {@link ManifestModel} of the repackaging.
+ *
+ * @since 0.2
+ */
+public class OutputModel {
+   private final File outputFile;
+   private final List<String> includes = new ArrayList<>();
+   private final List<String> excludes = new ArrayList<>();
+   private final EntryFilter filter = new EntryFilter();
+   private EntryFilter.Selector selector = null;
+   private short manifestDefaultType = -1;
+   private final Map<String, String> newProperties = new HashMap<>();
+   private final Map<String, Short> existingPropertiesTypes = new HashMap<>();
+
+   /**
+    * Constructor.
+    *
+    * @param outputFile the output file
+    */
+   public OutputModel(File outputFile) {
+      this.outputFile = outputFile;
+   }
+
+   /**
+    * Return the output file.
+    *
+    * @return the output file
+    */
+   public File getOutputFile() {
+      return outputFile;
+   }
+
+   /**
+    * Return true if this output has no filters and does not override the manifest.
+    *
+    * @return true if all the entries are written with the manifest of the repackaging
+    */
+   public boolean isDefault() {
+      return includes.isEmpty() && excludes.isEmpty() && manifestDefaultType == -1 && newProperties.isEmpty()
+         && existingPropertiesTypes.isEmpty();
+   }
+
+   /**
+    * Add a pattern of entries to include.
+    *
+    * @param glob the pattern
+    * @return false if the pattern is invalid
+    */
+   public boolean addInclude(String glob) {
+      if (!filter.addInclude(glob)) {
+         return false;
+      }
+      includes.add(glob);
+      selector = null;
+      return true;
+   }
+
+   /**
+    * Add a pattern of entries to exclude.
+    *
+    * @param glob the pattern
+    * @return false if the pattern is invalid
+    */
+   public boolean addExclude(String glob) {
+      if (!filter.addExclude(glob)) {
+         return false;
+      }
+      excludes.add(glob);
+      selector = null;
+      return true;
+   }
+
+   /**
+    * Return the patterns of included entries.
+    *
+    * @return the patterns
+    */
+   public List<String> getIncludes() {
+      return includes;
+   }
+
+   /**
+    * Return the patterns of excluded entries.
+    *
+    * @return the patterns
+    */
+   public List<String> getExcludes() {
+      return excludes;
+   }
+
+   /**
+    * Return true if an entry must be written in the output file.
+    *
+    * @param path the path of the entry
+    * @return true if the entry must be written
+    */
+   public boolean accept(CharSequence path) {
+      EntryFilter.Selector current = selector;
+      if (current == null) {
+         current = filter.getSelector(null);
+         selector = current;
+      }
+      return current.accept(path);
+   }
+
+   /**
+    * Set the default keep or skip type for the main manifest entries of this output.
+    *
+    * @param manifestDefaultType the default type, or -1 to use the type of the repackaging
+    */
+   public void setManifestDefaultType(short manifestDefaultType) {
+      this.manifestDefaultType = manifestDefaultType;
+   }
+
+   /**
+    * Return the default keep or skip type for the main manifest entries of this output.
+    *
+    * @return the default type, or -1 to use the type of the repackaging
+    */
+   public short getManifestDefaultType() {
+      return manifestDefaultType;
+   }
+
+   /**
+    * Add a new property which must be added to the manifest of this output.
+    *
+    * @param key the property key
+    * @param value the property value
+    */
+   public void addNewProperty(String key, String value) {
+      newProperties.put(key, value);
+   }
+
+   /**
+    * Return the new properties which must be added to the manifest of this output.
+    *
+    * @return the properties
+    */
+   public Map<String, String> getNewProperties() {
+      return newProperties;
+   }
+
+   /**
+    * Specify for an existing property if this property must be skipped or kept in the manifest of this output.
+    *
+    * @param key the property key
+    * @param type the keep or skip type
+    */
+   public void addExistingPropertyType(String key, short type) {
+      existingPropertiesTypes.put(key, type);
+   }
+
+   /**
+    * Return the specific existing properties skipped or kept types of this output.
+    *
+    * @return the map
+    */
+   public Map<String, Short> getExistingPropertyTypes() {
+      return existingPropertiesTypes;
+   }
+
+   /**
+    * Create the manifest model of this output, from the manifest model of the repackaging.
+    *
+    * @param manifestModel the manifest model of the repackaging
+    * @return the manifest model of this output
+    */
+   public ManifestModel createManifestModel(ManifestModel manifestModel) {
+      ManifestModel model = new ManifestModel();
+      model.setDefaultType(manifestDefaultType != -1 ? manifestDefaultType : manifestModel.getDefaultType());
+      model.getNewProperties().putAll(manifestModel.getNewProperties());
+      model.getNewProperties().putAll(newProperties);
+      model.getExistingPropertyTypes().putAll(manifestModel.getExistingPropertyTypes());
+      model.getExistingPropertyTypes().putAll(existingPropertiesTypes);
+      return model;
+   }
+
+   /**
+    * Return a description of the filters and of the manifest properties of this output, used in the fingerprint of the
+    * settings of the incremental mode.
+    *
+    * @return the description
+    */
+   public String getDescription() {
+      StringBuilder buf = new StringBuilder();
+      for (String glob : includes) {
+         buf.append("include=").append(glob).append('\n');
+      }
+      for (String glob : excludes) {
+         buf.append("exclude=").append(glob).append('\n');
+      }
+      buf.append("outputManifest=").append(manifestDefaultType).append('\n');
+      for (Map.Entry<String, String> entry : new TreeMap<>(newProperties).entrySet()) {
+         buf.append("outputNewProperty=").append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+      }
+      for (Map.Entry<String, Short> entry : new TreeMap<>(existingPropertiesTypes).entrySet()) {
+         buf.append("outputExistingProperty=").append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+      }
+      return buf.toString();
+   }
+}
@@ -0,0 +1,198 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.model;
+
+/**
+ * A node in the trie of the paths of the entries of the input files. Each path segment is stored once in the trie,
+ * whatever the number of input files which have entries below this path, and the full paths are only built when they
+ * are needed.
+ *
+ * <h1>Concurrency</h1>
+ * The trie can be shared by several threads: the children of a node are looked up and created under the lock of the
+ * node.
+ *
+ * @since 0.2
+ */
+public class PathNode {
+   private static final int INITIAL_CAPACITY = 4;
+   private final PathNode parent;
+   private final String name;
+   private PathNode[] children = null;
+   private int childrenCount = 0;
+
+   /**
+    * Create the root of a trie.
+    */
+   public PathNode() {
+      this(null, "");
+   }
+
+   private PathNode(PathNode parent, String name) {
+      this.parent = parent;
+      this.name = name;
+   }
+
+   /**
+    * Return the parent node.
+    *
+    * @return the parent node, or null for the root of the trie
+    */
+   public PathNode getParent() {
+      return parent;
+   }
+
+   /**
+    * Return the name of the path segment of this node.
+    *
+    * @return the name
+    */
+   public String getName() {
+      return name;
+   }
+
+   /**
+    * Return true if this node is the root of the trie.
+    *
+    * @return true if this node is the root of the trie
+    */
+   public boolean isRoot() {
+      return parent == null;
+   }
+
+   private static int hash(CharSequence seq, int start, int end) {
+      int h = 0;
+      for (int i = start; i < end; i++) {
+         h = 31 * h + seq.charAt(i);
+      }
+      return h ^ (h >>> 16);
+   }
+
+   private boolean matches(CharSequence seq, int start, int end) {
+      if (name.length() != end - start) {
+         return false;
+      }
+      for (int i = start; i < end; i++) {
+         if (name.charAt(i - start) != seq.charAt(i)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Return the child node for a path segment, creating it if it does not exist yet.
+    *
+    * @param name the name of the path segment
+    * @return the child node
+    */
+   public PathNode getChild(String name) {
+      return getChild(name, 0, name.length());
+   }
+
+   /**
+    * Return the child node for a path segment, creating it if it does not exist yet. The segment is a region of a
+    * sequence of chars, so no String is created if the child node already exists.
+    *
+    * @param seq the sequence of chars
+    * @param start the start index of the path segment in the sequence (inclusive)
+    * @param end the end index of the path segment in the sequence (exclusive)
+    * @return the child node
+    */
+   public synchronized PathNode getChild(CharSequence seq, int start, int end) {
+      if (children == null) {
+         children = new PathNode[INITIAL_CAPACITY];
+      }
+      int mask = children.length - 1;
+      int slot = hash(seq, start, end) & mask;
+      while (true) {
+         PathNode child = children[slot];
+         if (child == null) {
+            child = new PathNode(this, seq.subSequence(start, end).toString());
+            children[slot] = child;
+            childrenCount++;
+            if (childrenCount * 2 > children.length) {
+               rehash();
+            }
+            return child;
+         } else if (child.matches(seq, start, end)) {
+            return child;
+         }
+         slot = (slot + 1) & mask;
+      }
+   }
+
+   private void rehash() {
+      PathNode[] oldChildren = children;
+      children = new PathNode[oldChildren.length * 2];
+      int mask = children.length - 1;
+      for (int i = 0; i < oldChildren.length; i++) {
+         PathNode child = oldChildren[i];
+         if (child != null) {
+            int slot = hash(child.name, 0, child.name.length()) & mask;
+            while (children[slot] != null) {
+               slot = (slot + 1) & mask;
+            }
+            children[slot] = child;
+         }
+      }
+   }
+
+   /**
+    * Append the full path of this node to a buffer. The path does not start with a "/" character.
+    *
+    * @param buf the buffer
+    */
+   public void appendPath(StringBuilder buf) {
+      if (parent != null && !parent.isRoot()) {
+         parent.appendPath(buf);
+         buf.append('/');
+      }
+      buf.append(name);
+   }
+
+   /**
+    * Return the full path of this node. The path is built each time this method is called, use
+    * {@link #appendPath(java.lang.StringBuilder)} with a reused buffer to avoid creating a String.
+    *
+    * @return the path
+    */
+   public String getPath() {
+      StringBuilder buf = new StringBuilder();
+      appendPath(buf);
+      return buf.toString();
+   }
+
+   @Override
+   public String toString() {
+      return getPath();
+   }
+}
@@ -0,0 +1,268 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps only the input files and the native libraries of some platforms. A platform is declared by a classifier
+ * "os-arch" (for example "linux-x86_64"), or only by an operating system (for example "linux") for all its
+ * architectures. The names of the operating systems and of the architectures are the ones of the classifiers of the
+ * Maven artifacts: {@link #LINUX}, {@link #OSX}, {@link #WINDOWS}, and for example "x86_64" or "aarch_64". The usual
+ * aliases ("macos", "amd64", "arm64", "aarch64"...) are accepted.
+ *
+ * <h1>Input files</h1>
+ * The platform of an input file is detected from the classifier at the end of its name (for example
+ * "netty-transport-native-epoll-4.1.89.Final-linux-x86_64.jar"). An input file without a classifier is always kept.
+ *
+ * <h1>Native libraries</h1>
+ * The platform of an entry under "META-INF/native/" is detected from its path: the operating system from the extension
+ * of the library (".so", ".jnilib" or ".dylib", ".dll") or from an operating system name in the path, and the
+ * architecture from an architecture name in the path (for example "libnetty_transport_native_epoll_aarch_64.so"). The
+ * entries whose platform can not be detected are always kept.
+ *
+ * @since 0.2
+ */
+public class PlatformFilter {
+   /**
+    * The Linux operating system.
+    */
+   public static final String LINUX = "linux";
+   /**
+    * The macOS operating system.
+    */
+   public static final String OSX = "osx";
+   /**
+    * The Windows operating system.
+    */
+   public static final String WINDOWS = "windows";
+   private static final String NATIVE_DIR = "META-INF/native/";
+   private static final String OS_REGEX = "linux|osx|macos|darwin|windows|win";
+   private static final String ARCH_REGEX = "x86_64|amd64|x64|aarch_64|aarch64|arm64|x86_32|i386|i686|x86|ppcle_64|ppc64le|s390_64|s390x|riscv64|loongarch_64";
+   private static final Pattern FILE_CLASSIFIER = Pattern.compile(".*-(" + OS_REGEX + ")-(" + ARCH_REGEX + ")\\.jar", Pattern.CASE_INSENSITIVE);
+   private static final Pattern OS_TOKEN = Pattern.compile("(?<![a-z])(" + OS_REGEX + ")(?![a-z])");
+   private static final Pattern ARCH_TOKEN = Pattern.compile("(?<![a-z0-9])(" + ARCH_REGEX + ")(?![a-z0-9])");
+   private final List<String> classifiers = new ArrayList<>();
+   private final List<String[]> platforms = new ArrayList<>();
+
+   public PlatformFilter() {
+   }
+
+   /**
+    * Add a platform to keep.
+    *
+    * @param classifier the classifier of the platform, "os-arch" or "os"
+    * @return false if the classifier is not a known platform
+    */
+   public boolean addPlatform(String classifier) {
+      String value = classifier.trim().toLowerCase(Locale.ROOT);
+      int index = value.indexOf('-');
+      String os = normalizeOs(index == -1 ? value : value.substring(0, index));
+      String arch = index == -1 ? null : normalizeArch(value.substring(index + 1));
+      if (os == null || (index != -1 && arch == null)) {
+         return false;
+      }
+      classifiers.add(arch == null ? os : os + "-" + arch);
+      platforms.add(new String[] { os, arch });
+      return true;
+   }
+
+   /**
+    * Return the classifiers of the platforms to keep, normalized.
+    *
+    * @return the classifiers
+    */
+   public List<String> getPlatforms() {
+      return classifiers;
+   }
+
+   /**
+    * Return the normalized name of an operating system.
+    *
+    * @param os the name
+    * @return the normalized name, or null if the operating system is unknown
+    */
+   public static String normalizeOs(String os) {
+      switch (os.toLowerCase(Locale.ROOT)) {
+         case "linux":
+            return LINUX;
+         case "osx":
+         case "macos":
+         case "darwin":
+            return OSX;
+         case "windows":
+         case "win":
+            return WINDOWS;
+         default:
+            return null;
+      }
+   }
+
+   /**
+    * Return the normalized name of an architecture.
+    *
+    * @param arch the name
+    * @return the normalized name, or null if the architecture is unknown
+    */
+   public static String normalizeArch(String arch) {
+      switch (arch.toLowerCase(Locale.ROOT)) {
+         case "x86_64":
+         case "amd64":
+         case "x64":
+            return "x86_64";
+         case "aarch_64":
+         case "aarch64":
+         case "arm64":
+            return "aarch_64";
+         case "x86_32":
+         case "x86":
+         case "i386":
+         case "i686":
+            return "x86_32";
+         case "ppcle_64":
+         case "ppc64le":
+            return "ppcle_64";
+         case "s390_64":
+         case "s390x":
+            return "s390_64";
+         case "riscv64":
+            return "riscv64";
+         case "loongarch_64":
+            return "loongarch_64";
+         default:
+            return null;
+      }
+   }
+
+   /**
+    * Return the platform of an input file, detected from the classifier at the end of its name.
+    *
+    * @param file the file
+    * @return the operating system and the architecture, or null if the file has no platform classifier
+    */
+   public static String[] detectFilePlatform(File file) {
+      Matcher matcher = FILE_CLASSIFIER.matcher(file.getName());
+      if (!matcher.matches()) {
+         return null;
+      }
+      return new String[] { normalizeOs(matcher.group(1)), normalizeArch(matcher.group(2)) };
+   }
+
+   /**
+    * Return the platform of a native library entry, detected from its path.
+    *
+    * @param path the path of the entry
+    * @return the operating system and the architecture, each of them may be null if it can not be detected, or null if
+    * the entry is not a native library
+    */
+   public static String[] detectEntryPlatform(String path) {
+      if (!path.startsWith(NATIVE_DIR) || path.endsWith("/")) {
+         return null;
+      }
+      String value = path.substring(NATIVE_DIR.length()).toLowerCase(Locale.ROOT);
+      String os = null;
+      if (value.endsWith(".so")) {
+         os = LINUX;
+      } else if (value.endsWith(".jnilib") || value.endsWith(".dylib")) {
+         os = OSX;
+      } else if (value.endsWith(".dll")) {
+         os = WINDOWS;
+      } else {
+         Matcher matcher = OS_TOKEN.matcher(value.replace('_', '-'));
+         if (matcher.find()) {
+            os = normalizeOs(matcher.group(1));
+         }
+      }
+      String arch = null;
+      // the underscores of the architecture names are kept, the other ones separate the tokens
+      Matcher matcher = ARCH_TOKEN.matcher(value.replaceAll("_(?!(64|32)(?![0-9]))", "-"));
+      if (matcher.find()) {
+         arch = normalizeArch(matcher.group(1));
+      }
+      return new String[] { os, arch };
+   }
+
+   private boolean accept(String os, String arch) {
+      if (os == null && arch == null) {
+         return true;
+      }
+      for (String[] platform : platforms) {
+         if ((os == null || platform[0].equals(os)) && (arch == null || platform[1] == null || platform[1].equals(arch))) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Return true if an input file must be kept.
+    *
+    * @param file the file
+    * @return true if the file has no platform classifier or if its platform is kept
+    */
+   public boolean accept(File file) {
+      String[] platform = detectFilePlatform(file);
+      return platform == null || accept(platform[0], platform[1]);
+   }
+
+   /**
+    * Return true if an entry must be kept.
+    *
+    * @param path the path of the entry
+    * @return true if the entry is not a native library, or if its platform is unknown or kept
+    */
+   public boolean accept(String path) {
+      String[] platform = detectEntryPlatform(path);
+      return platform == null || accept(platform[0], platform[1]);
+   }
+
+   /**
+    * Return the input files which must be kept.
+    *
+    * @param files the input files
+    * @return the kept input files
+    */
+   public File[] filter(File[] files) {
+      List<File> list = new ArrayList<>(files.length);
+      for (File file : files) {
+         if (accept(file)) {
+            list.add(file);
+         }
+      }
+      return list.size() == files.length ? files : list.toArray(new File[list.size()]);
+   }
+}
@@ -0,0 +1,282 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.parser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.girod.jarrepackager.JarRepackager;
+import org.girod.jarrepackager.model.CompressionPolicy;
+import org.girod.jarrepackager.model.EntryFilter;
+import org.girod.jarrepackager.model.ManifestModel;
+import org.girod.jarrepackager.model.OutputModel;
+import org.girod.jarrepackager.model.PlatformFilter;
+
+/**
+ * The result of the parsing of a properties file: the manifest model, the resolved input files, the output file and the
+ * general settings declared in the file. It also contains the last modification times of the directories which have
+ * been scanned to resolve the input files, which allow to check if the resolved input files are still valid.
+ *
+ * @since 0.2
+ */
+public class CompiledConfiguration {
+   private final ManifestModel manifestModel;
+   private File[] inputFiles = new File[0];
+   private File outputFile = null;
+   private final List<OutputModel> outputModels = new ArrayList<>();
+   private final List<String> platforms = new ArrayList<>();
+   private EntryFilter entryFilter = null;
+   private CompressionPolicy compressionPolicy = null;
+   private short conflictPolicy = -1;
+   private short manifestConflictPolicy = -1;
+   private short debug = -1;
+   private final Map<String, Long> scannedDirectories = new TreeMap<>();
+
+   /**
+    * Constructor.
+    *
+    * @param manifestModel the manifest model
+    */
+   public CompiledConfiguration(ManifestModel manifestModel) {
+      this.manifestModel = manifestModel;
+   }
+
+   /**
+    * Return the manifest model.
+    *
+    * @return the manifest model
+    */
+   public ManifestModel getManifestModel() {
+      return manifestModel;
+   }
+
+   /**
+    * Set the resolved input files.
+    *
+    * @param inputFiles the input files
+    */
+   public void setInputFiles(File[] inputFiles) {
+      this.inputFiles = inputFiles;
+   }
+
+   /**
+    * Return the resolved input files.
+    *
+    * @return the input files
+    */
+   public File[] getInputFiles() {
+      return inputFiles;
+   }
+
+   /**
+    * Set the output file.
+    *
+    * @param outputFile the output file, or null if it is not declared
+    */
+   public void setOutputFile(File outputFile) {
+      this.outputFile = outputFile;
+   }
+
+   /**
+    * Return the output file.
+    *
+    * @return the output file, or null if it is not declared
+    */
+   public File getOutputFile() {
+      return outputFile;
+   }
+
+   /**
+    * Return the models of the output files, in their declaration order.
+    *
+    * @return the models
+    */
+   public List<OutputModel> getOutputModels() {
+      return outputModels;
+   }
+
+   /**
+    * Return the classifiers of the platforms to keep.
+    *
+    * @return the classifiers, empty if all the platforms are kept
+    */
+   public List<String> getPlatforms() {
+      return platforms;
+   }
+
+   /**
+    * Set the filter of the entries of the input files.
+    *
+    * @param entryFilter the filter, or null if no entries rules are declared
+    */
+   public void setEntryFilter(EntryFilter entryFilter) {
+      this.entryFilter = entryFilter;
+   }
+
+   /**
+    * Return the filter of the entries of the input files.
+    *
+    * @return the filter, or null if no entries rules are declared
+    */
+   public EntryFilter getEntryFilter() {
+      return entryFilter;
+   }
+
+   /**
+    * Set the compression policy of the entries of the output file.
+    *
+    * @param compressionPolicy the policy, or null if no compression is declared
+    */
+   public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+      this.compressionPolicy = compressionPolicy;
+   }
+
+   /**
+    * Return the compression policy of the entries of the output file.
+    *
+    * @return the policy, or null if no compression is declared
+    */
+   public CompressionPolicy getCompressionPolicy() {
+      return compressionPolicy;
+   }
+
+   /**
+    * Set the conflicts policies.
+    *
+    * @param conflictPolicy the policy, or -1 if it is not declared
+    * @param manifestConflictPolicy the policy for the "META-INF/" directory, or -1 if it is not declared
+    */
+   public void setConflictPolicies(short conflictPolicy, short manifestConflictPolicy) {
+      this.conflictPolicy = conflictPolicy;
+      this.manifestConflictPolicy = manifestConflictPolicy;
+   }
+
+   /**
+    * Return the conflicts policy.
+    *
+    * @return the policy, or -1 if it is not declared
+    */
+   public short getConflictPolicy() {
+      return conflictPolicy;
+   }
+
+   /**
+    * Return the conflicts policy for the "META-INF/" directory.
+    *
+    * @return the policy, or -1 if it is not declared
+    */
+   public short getManifestConflictPolicy() {
+      return manifestConflictPolicy;
+   }
+
+   /**
+    * Set the debug property.
+    *
+    * @param debug 1 for true, 0 for false, or -1 if it is not declared
+    */
+   public void setDebug(short debug) {
+      this.debug = debug;
+   }
+
+   /**
+    * Return the debug property.
+    *
+    * @return 1 for true, 0 for false, or -1 if it is not declared
+    */
+   public short getDebug() {
+      return debug;
+   }
+
+   /**
+    * Return the last modification times of the directories scanned to resolve the input files.
+    *
+    * @return the last modification times, for the absolute path of each directory
+    */
+   public Map<String, Long> getScannedDirectories() {
+      return scannedDirectories;
+   }
+
+   /**
+    * Return true if none of the scanned directories has been modified since the configuration has been compiled.
+    *
+    * @return true if the resolved input files are still valid
+    */
+   public boolean isUpToDate() {
+      for (Map.Entry<String, Long> entry : scannedDirectories.entrySet()) {
+         if (new File(entry.getKey()).lastModified() != entry.getValue()) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Apply the configuration to a repackager, as the parsing of the properties file would do.
+    *
+    * @param repackager the repackager
+    */
+   public void apply(JarRepackager repackager) {
+      if (debug != -1) {
+         repackager.setDebug(debug == 1);
+      }
+      if (conflictPolicy != -1) {
+         repackager.setConflictPolicy(conflictPolicy);
+      }
+      if (manifestConflictPolicy != -1) {
+         repackager.setManifestConflictPolicy(manifestConflictPolicy);
+      }
+      if (inputFiles.length != 0) {
+         repackager.setInputFiles(inputFiles);
+      }
+      if (outputFile != null) {
+         repackager.setOutputFile(outputFile);
+      }
+      if (!outputModels.isEmpty()) {
+         repackager.setOutputModels(outputModels);
+      }
+      if (!platforms.isEmpty()) {
+         PlatformFilter platformFilter = new PlatformFilter();
+         for (String platform : platforms) {
+            platformFilter.addPlatform(platform);
+         }
+         repackager.setPlatformFilter(platformFilter);
+      }
+      if (entryFilter != null) {
+         repackager.setEntryFilter(entryFilter);
+      }
+      if (compressionPolicy != null) {
+         repackager.setCompressionPolicy(compressionPolicy);
+      }
+   }
+}
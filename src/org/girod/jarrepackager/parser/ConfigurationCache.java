@@ -0,0 +1,366 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.girod.jarrepackager.IncrementalState;
+import org.girod.jarrepackager.model.CompressionPolicy;
+import org.girod.jarrepackager.model.EntryFilter;
+import org.girod.jarrepackager.model.ManifestModel;
+import org.girod.jarrepackager.model.OutputModel;
+
+/**
+ * A cache of compiled configurations. The cache avoids to parse and validate the properties files and to resolve their
+ * input files again when they have not changed.
+ *
+ * <h1>Cache entries</h1>
+ * Each compiled configuration is stored in a binary file of the cache directory, whose name is the SHA-256 hash of the
+ * content of the properties file and of the path of its directory. A cache entry is only used if none of the
+ * directories scanned to resolve the input files has been modified since the entry has been written. The
+ * configurations whose parsing emitted warnings or errors are not cached, so that they are reported each time.
+ *
+ * <h1>Resident cache</h1>
+ * A resident cache also keeps the compiled configurations in memory, so that a long running process such as the
+ * {@link org.girod.jarrepackager.RepackagerDaemon} does not read them again from the cache directory. The entries
+ * kept in memory are checked against the scanned directories like the entries of the cache directory.
+ *
+ * @since 0.2
+ */
+public class ConfigurationCache {
+   /**
+    * The extension of the cache files.
+    */
+   public static final String CACHE_EXTENSION = ".cfg";
+   private static final int MAGIC = 0x4A524346;
+   private static final int VERSION = 5;
+   private final File cacheDir;
+   private final Map<String, CompiledConfiguration> residentConfigurations = new ConcurrentHashMap<>();
+   private boolean resident = false;
+
+   /**
+    * Constructor.
+    *
+    * @param cacheDir the cache directory
+    */
+   public ConfigurationCache(File cacheDir) {
+      this.cacheDir = cacheDir;
+   }
+
+   /**
+    * Return the default cache directory, which is the ".jarrepackager/cache" directory of the user home directory.
+    *
+    * @return the default cache directory
+    */
+   public static File getDefaultCacheDirectory() {
+      return new File(new File(System.getProperty("user.home"), ".jarrepackager"), "cache");
+   }
+
+   /**
+    * Set if the compiled configurations are also kept in memory.
+    *
+    * @param resident true if the compiled configurations are kept in memory
+    */
+   public void setResident(boolean resident) {
+      this.resident = resident;
+      if (!resident) {
+         residentConfigurations.clear();
+      }
+   }
+
+   /**
+    * Return true if the compiled configurations are also kept in memory.
+    *
+    * @return true if the compiled configurations are kept in memory
+    */
+   public boolean isResident() {
+      return resident;
+   }
+
+   /**
+    * Return the cache directory.
+    *
+    * @return the cache directory
+    */
+   public File getCacheDirectory() {
+      return cacheDir;
+   }
+
+   private File getCacheFile(File propertiesFile) throws IOException {
+      MessageDigest digest = IncrementalState.createDigest();
+      digest.update(Files.readAllBytes(propertiesFile.toPath()));
+      File dir = propertiesFile.getAbsoluteFile().getParentFile();
+      digest.update(dir.getPath().getBytes(StandardCharsets.UTF_8));
+      return new File(cacheDir, IncrementalState.toHex(digest.digest()) + CACHE_EXTENSION);
+   }
+
+   /**
+    * Return the compiled configuration of a properties file.
+    *
+    * @param propertiesFile the properties file
+    * @return the configuration, or null if there is no valid configuration for this file in the cache
+    */
+   public CompiledConfiguration get(File propertiesFile) {
+      try {
+         File cacheFile = getCacheFile(propertiesFile);
+         if (resident) {
+            CompiledConfiguration configuration = residentConfigurations.get(cacheFile.getName());
+            if (configuration != null && configuration.isUpToDate()) {
+               return configuration;
+            }
+         }
+         if (!cacheFile.isFile()) {
+            return null;
+         }
+         CompiledConfiguration configuration = read(cacheFile);
+         if (configuration == null || !configuration.isUpToDate()) {
+            return null;
+         }
+         if (resident) {
+            residentConfigurations.put(cacheFile.getName(), configuration);
+         }
+         return configuration;
+      } catch (IOException ex) {
+         return null;
+      }
+   }
+
+   /**
+    * Store the compiled configuration of a properties file.
+    *
+    * @param propertiesFile the properties file
+    * @param configuration the configuration
+    * @throws IOException
+    */
+   public void put(File propertiesFile, CompiledConfiguration configuration) throws IOException {
+      File cacheFile = getCacheFile(propertiesFile);
+      if (resident) {
+         residentConfigurations.put(cacheFile.getName(), configuration);
+      }
+      cacheDir.mkdirs();
+      // the entry is written in a temporary file then moved, so that concurrent runs never read a partial entry
+      File tmpFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheDir);
+      try {
+         write(tmpFile, configuration);
+         Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+         tmpFile.delete();
+      }
+   }
+
+   private static CompiledConfiguration read(File cacheFile) throws IOException {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+         if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            return null;
+         }
+         ManifestModel manifestModel = new ManifestModel();
+         manifestModel.setDefaultType(in.readShort());
+         int count = in.readInt();
+         for (int i = 0; i < count; i++) {
+            manifestModel.addNewProperty(in.readUTF(), in.readUTF());
+         }
+         count = in.readInt();
+         for (int i = 0; i < count; i++) {
+            manifestModel.addExistingPropertyType(in.readUTF(), in.readShort());
+         }
+         CompiledConfiguration configuration = new CompiledConfiguration(manifestModel);
+         File[] inputFiles = new File[in.readInt()];
+         for (int i = 0; i < inputFiles.length; i++) {
+            inputFiles[i] = new File(in.readUTF());
+         }
+         configuration.setInputFiles(inputFiles);
+         if (in.readBoolean()) {
+            configuration.setOutputFile(new File(in.readUTF()));
+         }
+         count = in.readInt();
+         for (int i = 0; i < count; i++) {
+            configuration.getOutputModels().add(readOutputModel(in));
+         }
+         count = in.readInt();
+         for (int i = 0; i < count; i++) {
+            configuration.getPlatforms().add(in.readUTF());
+         }
+         count = in.readInt();
+         if (count != 0) {
+            EntryFilter entryFilter = new EntryFilter();
+            for (int i = 0; i < count; i++) {
+               boolean include = in.readBoolean();
+               String pattern = in.readUTF();
+               String input = in.readUTF();
+               entryFilter.addRule(input.isEmpty() ? null : new File(input), include, pattern);
+            }
+            configuration.setEntryFilter(entryFilter);
+         }
+         if (in.readBoolean()) {
+            CompressionPolicy compressionPolicy = new CompressionPolicy();
+            compressionPolicy.setDetectIncompressible(in.readBoolean());
+            compressionPolicy.setStoreClasses(in.readBoolean());
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+               compressionPolicy.addRule(in.readUTF(), in.readInt(), in.readInt());
+            }
+            configuration.setCompressionPolicy(compressionPolicy);
+         }
+         configuration.setConflictPolicies(in.readShort(), in.readShort());
+         configuration.setDebug(in.readShort());
+         count = in.readInt();
+         for (int i = 0; i < count; i++) {
+            configuration.getScannedDirectories().put(in.readUTF(), in.readLong());
+         }
+         return configuration;
+      }
+   }
+
+   private static void write(File cacheFile, CompiledConfiguration configuration) throws IOException {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile)))) {
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         ManifestModel manifestModel = configuration.getManifestModel();
+         out.writeShort(manifestModel.getDefaultType());
+         out.writeInt(manifestModel.getNewProperties().size());
+         for (Map.Entry<String, String> entry : manifestModel.getNewProperties().entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+         }
+         out.writeInt(manifestModel.getExistingPropertyTypes().size());
+         for (Map.Entry<String, Short> entry : manifestModel.getExistingPropertyTypes().entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeShort(entry.getValue());
+         }
+         File[] inputFiles = configuration.getInputFiles();
+         out.writeInt(inputFiles.length);
+         for (int i = 0; i < inputFiles.length; i++) {
+            out.writeUTF(inputFiles[i].getAbsolutePath());
+         }
+         File outputFile = configuration.getOutputFile();
+         out.writeBoolean(outputFile != null);
+         if (outputFile != null) {
+            out.writeUTF(outputFile.getAbsolutePath());
+         }
+         out.writeInt(configuration.getOutputModels().size());
+         for (OutputModel outputModel : configuration.getOutputModels()) {
+            writeOutputModel(out, outputModel);
+         }
+         out.writeInt(configuration.getPlatforms().size());
+         for (String platform : configuration.getPlatforms()) {
+            out.writeUTF(platform);
+         }
+         EntryFilter entryFilter = configuration.getEntryFilter();
+         List<EntryFilter.Rule> rules = entryFilter != null ? entryFilter.getRules() : Collections.<EntryFilter.Rule>emptyList();
+         out.writeInt(rules.size());
+         for (EntryFilter.Rule rule : rules) {
+            out.writeBoolean(rule.isInclude());
+            out.writeUTF(rule.getPattern());
+            out.writeUTF(rule.getInput() != null ? rule.getInput().getAbsolutePath() : "");
+         }
+         CompressionPolicy compressionPolicy = configuration.getCompressionPolicy();
+         out.writeBoolean(compressionPolicy != null);
+         if (compressionPolicy != null) {
+            out.writeBoolean(compressionPolicy.isDetectingIncompressible());
+            out.writeBoolean(compressionPolicy.isStoringClasses());
+            out.writeInt(compressionPolicy.getRules().size());
+            for (CompressionPolicy.Rule rule : compressionPolicy.getRules()) {
+               out.writeUTF(rule.getPattern());
+               out.writeInt(rule.getMethod());
+               out.writeInt(rule.getLevel());
+            }
+         }
+         out.writeShort(configuration.getConflictPolicy());
+         out.writeShort(configuration.getManifestConflictPolicy());
+         out.writeShort(configuration.getDebug());
+         out.writeInt(configuration.getScannedDirectories().size());
+         for (Map.Entry<String, Long> entry : configuration.getScannedDirectories().entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+         }
+      }
+   }
+
+   private static OutputModel readOutputModel(DataInputStream in) throws IOException {
+      OutputModel outputModel = new OutputModel(new File(in.readUTF()));
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+         outputModel.addInclude(in.readUTF());
+      }
+      count = in.readInt();
+      for (int i = 0; i < count; i++) {
+         outputModel.addExclude(in.readUTF());
+      }
+      outputModel.setManifestDefaultType(in.readShort());
+      count = in.readInt();
+      for (int i = 0; i < count; i++) {
+         outputModel.addNewProperty(in.readUTF(), in.readUTF());
+      }
+      count = in.readInt();
+      for (int i = 0; i < count; i++) {
+         outputModel.addExistingPropertyType(in.readUTF(), in.readShort());
+      }
+      return outputModel;
+   }
+
+   private static void writeOutputModel(DataOutputStream out, OutputModel outputModel) throws IOException {
+      out.writeUTF(outputModel.getOutputFile().getAbsolutePath());
+      out.writeInt(outputModel.getIncludes().size());
+      for (String glob : outputModel.getIncludes()) {
+         out.writeUTF(glob);
+      }
+      out.writeInt(outputModel.getExcludes().size());
+      for (String glob : outputModel.getExcludes()) {
+         out.writeUTF(glob);
+      }
+      out.writeShort(outputModel.getManifestDefaultType());
+      out.writeInt(outputModel.getNewProperties().size());
+      for (Map.Entry<String, String> entry : outputModel.getNewProperties().entrySet()) {
+         out.writeUTF(entry.getKey());
+         out.writeUTF(entry.getValue());
+      }
+      out.writeInt(outputModel.getExistingPropertyTypes().size());
+      for (Map.Entry<String, Short> entry : outputModel.getExistingPropertyTypes().entrySet()) {
+         out.writeUTF(entry.getKey());
+         out.writeShort(entry.getValue());
+      }
+   }
+}
@@ -0,0 +1,461 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.parser;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.girod.jarrepackager.model.GlobPattern;
+import org.girod.jarrepackager.model.GlobPattern.Token;
+import org.mdiutil.io.FileUtilities;
+
+/**
+ * Resolves the input files declared in a configuration, as explicit files or as glob patterns.
+ *
+ * <h1>Glob syntax</h1>
+ * The patterns are relative to the directory of the configuration, unless they are absolute, and are parsed by
+ * {@link GlobPattern}. Only the files with the "jar" extension are matched. The files matched by an exclusion pattern are never added. The
+ * symbolic links to directories are not followed under the base directories of the patterns.
+ *
+ * <h1>Resolution</h1>
+ * All the patterns are compiled in one regular expression, and the directories are walked only once, in parallel. A
+ * directory is only walked if a pattern can match a path under this directory. The files are returned in the order of
+ * declaration of their pattern, and in the order of their paths for the same pattern. The last modification times of
+ * the walked directories are recorded (see {@link #getScannedDirectories()}), so that the result of the resolution can be
+ * reused as long as these directories have not changed.
+ *
+ * @since 0.2
+ */
+public class GlobMatcher {
+   private final File dir;
+   private final List<Object> slots = new ArrayList<>();
+   private final List<String> includes = new ArrayList<>();
+   private final List<String> includeRegexes = new ArrayList<>();
+   private final List<String> excludeRegexes = new ArrayList<>();
+   private final Set<String> roots = new LinkedHashSet<>();
+   private final Map<String, Long> scannedDirectories = new ConcurrentHashMap<>();
+   private boolean[] matchedIncludes = null;
+   private final Map<File, Integer> declarations = new HashMap<>();
+
+   /**
+    * Constructor.
+    *
+    * @param dir the directory of the configuration
+    */
+   public GlobMatcher(File dir) {
+      this.dir = dir;
+   }
+
+   /**
+    * Return true if a file declaration is a glob pattern.
+    *
+    * @param value the file declaration
+    * @return true if the declaration is a glob pattern
+    */
+   public static boolean isGlob(String value) {
+      return getFirstWildcard(value) != -1;
+   }
+
+   private static int getFirstWildcard(String glob) {
+      for (int i = 0; i < glob.length(); i++) {
+         switch (glob.charAt(i)) {
+            case '*':
+            case '?':
+            case '[':
+            case '{':
+            case '\\':
+               return i;
+         }
+      }
+      return -1;
+   }
+
+   /**
+    * Add an explicit file. The file will be returned at its place in the order of declaration.
+    *
+    * @param file the file
+    */
+   public void addFile(File file) {
+      file = normalize(file);
+      slots.add(file);
+      File parent = file.getParentFile();
+      if (parent != null) {
+         scannedDirectories.put(toSlashPath(parent), parent.lastModified());
+      }
+   }
+
+   /**
+    * Add a pattern of files to include.
+    *
+    * @param glob the pattern
+    * @return false if the pattern is invalid
+    */
+   public boolean addInclude(String glob) {
+      String regex = toPathRegex(glob, true);
+      if (regex == null) {
+         return false;
+      }
+      slots.add(includes.size());
+      includes.add(glob);
+      includeRegexes.add(regex);
+      return true;
+   }
+
+   /**
+    * Add a pattern of files to exclude.
+    *
+    * @param glob the pattern
+    * @return false if the pattern is invalid
+    */
+   public boolean addExclude(String glob) {
+      String regex = toPathRegex(glob, false);
+      if (regex == null) {
+         return false;
+      }
+      excludeRegexes.add(regex);
+      return true;
+   }
+
+   /**
+    * Return the number of declarations of explicit files and include patterns. The index of the next declaration is the
+    * current number of declarations.
+    *
+    * @return the number of declarations
+    */
+   public int getDeclarationsCount() {
+      return slots.size();
+   }
+
+   /**
+    * Return the index of the declaration which resolved a file. If a file is resolved by several declarations, the first
+    * declaration is returned.
+    *
+    * @param file the file
+    * @return the index of the declaration, or -1 if the file has not been resolved
+    */
+   public int getDeclarationIndex(File file) {
+      Integer index = declarations.get(normalize(file));
+      return index != null ? index : -1;
+   }
+
+   private static File normalize(File file) {
+      return file.toPath().toAbsolutePath().normalize().toFile();
+   }
+
+   private static String toSlashPath(File file) {
+      return file.getPath().replace(File.separatorChar, '/');
+   }
+
+   /**
+    * Return the regular expression matching the absolute paths matched by a pattern.
+    */
+   private String toPathRegex(String glob, boolean include) {
+      int wildcard = getFirstWildcard(glob);
+      int separator = wildcard == -1 ? glob.lastIndexOf('/') : glob.lastIndexOf('/', wildcard);
+      File base = dir;
+      if (separator != -1) {
+         String prefix = separator == 0 ? "/" : glob.substring(0, separator);
+         base = new File(prefix).isAbsolute() ? new File(prefix) : new File(dir, prefix);
+      }
+      String regex = toRegex(glob.substring(separator + 1));
+      if (regex == null) {
+         return null;
+      }
+      String basePath = toSlashPath(normalize(base));
+      if (include) {
+         roots.add(basePath);
+      }
+      return Pattern.quote(basePath) + (basePath.endsWith("/") ? "" : "/") + regex;
+   }
+
+   /**
+    * Convert a glob pattern to a regular expression.
+    *
+    * @param glob the glob pattern
+    * @return the regular expression, or null if the pattern is invalid
+    */
+   static String toRegex(String glob) {
+      List<Token> tokens = GlobPattern.parse(glob);
+      if (tokens == null) {
+         return null;
+      }
+      StringBuilder buf = new StringBuilder();
+      appendRegex(buf, tokens);
+      return buf.toString();
+   }
+
+   private static void appendRegex(StringBuilder buf, List<Token> tokens) {
+      for (Token token : tokens) {
+         switch (token.getType()) {
+            case Token.LITERAL:
+               appendLiteral(buf, token.getChar());
+               break;
+            case Token.SEGMENT_CHAR:
+               buf.append("[^/]");
+               break;
+            case Token.CLASS:
+               char[] ranges = token.getRanges();
+               buf.append(token.isNegated() ? "[^" : "[");
+               for (int i = 0; i < ranges.length; i += 2) {
+                  appendLiteral(buf, ranges[i]);
+                  if (ranges[i + 1] != ranges[i]) {
+                     buf.append('-');
+                     appendLiteral(buf, ranges[i + 1]);
+                  }
+               }
+               buf.append("&&[^/]]");
+               break;
+            case Token.STAR:
+               buf.append("[^/]*");
+               break;
+            case Token.ANY_SEQUENCE:
+               buf.append(".*");
+               break;
+            case Token.DIRECTORIES:
+               buf.append("(?:[^/]*/)*");
+               break;
+            default:
+               buf.append("(?:");
+               boolean first = true;
+               for (List<Token> alternative : token.getAlternatives()) {
+                  if (!first) {
+                     buf.append('|');
+                  }
+                  appendRegex(buf, alternative);
+                  first = false;
+               }
+               buf.append(')');
+         }
+      }
+   }
+
+   private static void appendLiteral(StringBuilder buf, char c) {
+      // a backslash before an ASCII character which is not a letter or a digit always quotes it
+      if (c < 128 && !Character.isLetterOrDigit(c)) {
+         buf.append('\\');
+      }
+      buf.append(c);
+   }
+
+   /**
+    * Return the patterns which did not match any file during the last resolution.
+    *
+    * @return the patterns
+    */
+   public List<String> getUnmatchedPatterns() {
+      List<String> unmatched = new ArrayList<>();
+      if (matchedIncludes != null) {
+         for (int i = 0; i < includes.size(); i++) {
+            if (!matchedIncludes[i]) {
+               unmatched.add(includes.get(i));
+            }
+         }
+      }
+      return unmatched;
+   }
+
+   /**
+    * Return the last modification times of the directories which have been walked during the last resolution, and of the
+    * directories of the explicit files. The time of a base directory which does not exist is 0.
+    *
+    * @return the last modification times, for the absolute path of each directory
+    */
+   public Map<String, Long> getScannedDirectories() {
+      return new TreeMap<>(scannedDirectories);
+   }
+
+   /**
+    * Resolve the files. The directories under the base directories of the patterns are walked once.
+    *
+    * @return the files
+    */
+   public List<File> resolve() {
+      matchedIncludes = new boolean[includes.size()];
+      final Queue<Match> matches = new ConcurrentLinkedQueue<>();
+      if (!includes.isEmpty()) {
+         // the exclusions come first, so that a path matched by an exclusion is never reported as included
+         StringBuilder regex = new StringBuilder();
+         for (String exclude : excludeRegexes) {
+            regex.append(regex.length() == 0 ? "(" : "|(").append(exclude).append(')');
+         }
+         for (String include : includeRegexes) {
+            regex.append(regex.length() == 0 ? "(" : "|(").append(include).append(')');
+         }
+         Pattern pattern = Pattern.compile(regex.toString());
+         final List<WalkTask> tasks = new ArrayList<>();
+         for (String root : roots) {
+            if (!isUnder(root)) {
+               File rootDir = new File(root);
+               if (rootDir.isDirectory()) {
+                  tasks.add(new WalkTask(pattern, matches, rootDir, root));
+               } else {
+                  scannedDirectories.put(root, rootDir.lastModified());
+               }
+            }
+         }
+         ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+               invokeAll(tasks);
+            }
+         });
+      }
+      List<Match> sorted = new ArrayList<>(matches);
+      Collections.sort(sorted, new Comparator<Match>() {
+         @Override
+         public int compare(Match m1, Match m2) {
+            if (m1.include != m2.include) {
+               return m1.include < m2.include ? -1 : 1;
+            }
+            return m1.path.compareTo(m2.path);
+         }
+      });
+      Set<File> files = new LinkedHashSet<>();
+      declarations.clear();
+      int matchIndex = 0;
+      for (int i = 0; i < slots.size(); i++) {
+         Object slot = slots.get(i);
+         if (slot instanceof File) {
+            addResolvedFile(files, (File) slot, i);
+         } else {
+            int include = (Integer) slot;
+            while (matchIndex < sorted.size() && sorted.get(matchIndex).include == include) {
+               addResolvedFile(files, sorted.get(matchIndex).file, i);
+               matchedIncludes[include] = true;
+               matchIndex++;
+            }
+         }
+      }
+      return new ArrayList<>(files);
+   }
+
+   private void addResolvedFile(Set<File> files, File file, int declaration) {
+      if (files.add(file)) {
+         declarations.put(normalize(file), declaration);
+      }
+   }
+
+   /**
+    * Return true if a root directory is under another root directory, in which case it is walked with this other
+    * directory.
+    */
+   private boolean isUnder(String root) {
+      for (String other : roots) {
+         if (!other.equals(root) && root.startsWith(other.endsWith("/") ? other : other + "/")) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * A file matched by an include pattern.
+    */
+   private static class Match {
+      private final int include;
+      private final String path;
+      private final File file;
+
+      private Match(int include, String path, File file) {
+         this.include = include;
+         this.path = path;
+         this.file = file;
+      }
+   }
+
+   /**
+    * The walk of one directory. The sub-directories are walked by forked tasks.
+    */
+   private class WalkTask extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+      private final Pattern pattern;
+      private final Queue<Match> matches;
+      private final File directory;
+      private final String path;
+
+      private WalkTask(Pattern pattern, Queue<Match> matches, File directory, String path) {
+         this.pattern = pattern;
+         this.matches = matches;
+         this.directory = directory;
+         this.path = path.endsWith("/") ? path : path + "/";
+      }
+
+      @Override
+      protected void compute() {
+         scannedDirectories.put(toSlashPath(directory), directory.lastModified());
+         File[] children = directory.listFiles();
+         if (children == null) {
+            return;
+         }
+         Matcher matcher = pattern.matcher("");
+         List<WalkTask> tasks = new ArrayList<>();
+         for (File child : children) {
+            String childPath = path + child.getName();
+            if (child.isDirectory()) {
+               // the directory is walked only if a pattern may match a path under it
+               matcher.reset(childPath + "/");
+               if ((matcher.matches() || matcher.hitEnd()) && !Files.isSymbolicLink(child.toPath())) {
+                  tasks.add(new WalkTask(pattern, matches, child, childPath));
+               }
+            } else if (FileUtilities.getFileExtension(child).equals("jar")) {
+               matcher.reset(childPath);
+               if (matcher.matches()) {
+                  int group = 1;
+                  while (matcher.start(group) == -1) {
+                     group++;
+                  }
+                  int include = group - 1 - excludeRegexes.size();
+                  if (include >= 0) {
+                     matches.add(new Match(include, childPath, child));
+                  }
+               }
+            }
+         }
+         invokeAll(tasks);
+      }
+   }
+}
@@ -1,305 +1,519 @@
-/*
-Copyright (c) 2023 Herve Girod
-All rights reserved.
-
-Redistribution and use in source and binary forms, with or without
-modification, are permitted provided that the following conditions are met:
-
-1. Redistributions of source code must retain the above copyright notice, this
-   list of conditions and the following disclaimer.
-2. Redistributions in binary form must reproduce the above copyright notice,
-   this list of conditions and the following disclaimer in the documentation
-   and/or other materials provided with the distribution.
-
-THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
-ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
-WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
-DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
-ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
-(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
-LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
-ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
-(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
-SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
-
-The views and conclusions contained in the software and documentation are those
-of the authors and should not be interpreted as representing official policies,
-either expressed or implied, of the FreeBSD Project.
-
-Alternatively if you have any questions about this project, you can visit
-the project website at the project page on https://github.com/hervegirod/jarrepackager
- */
-package org.girod.jarrepackager.parser;
-
-import java.io.File;
-import java.io.FileFilter;
-import java.net.URL;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import org.girod.jarrepackager.JarRepackager;
-import org.girod.jarrepackager.model.ManifestModel;
-import org.mdiutil.swing.ExtensionFileFilter;
-import org.mdiutil.xml.ResolverSAXHandler;
-import org.mdiutil.xml.XMLSAXParser;
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXParseException;
-
-/**
- * This class is used to parse a properties file.
- *
- * @since 0.1
- */
-public class PropertiesParser extends ResolverSAXHandler {
-   private static final ExtensionFileFilter JAR_FILEFILTER;
-
-   static {
-      String[] ext = { "jar" };
-      JAR_FILEFILTER = new ExtensionFileFilter(ext, "Jar Files");
-   }
-   private static final Pattern WILCARD_PAT = Pattern.compile("([^*]*)\\*([^*/]+)");
-   private final JarRepackager repackager;
-   private File dir = null;
-   private boolean debug = false;
-   private final ManifestModel manifestModel = new ManifestModel();
-   private final List<File> inputFiles = new ArrayList<>();
-   private File outputFile = null;
-   private boolean inManifest = false;
-
-   public PropertiesParser(JarRepackager repackager) {
-      this.repackager = repackager;
-      this.debug = repackager.isDebugging();
-   }
-
-   /**
-    * Parse the properties file and return the model of the manifest.
-    *
-    * @param propertiesFile the properties file
-    * @return the manifest model
-    */
-   public ManifestModel parse(File propertiesFile) {
-      this.dir = propertiesFile.getParentFile();
-      return parse(dir, propertiesFile);
-   }
-
-   /**
-    * Parse the properties file and return the model of the manifest.
-    *
-    * @param dir the parent directory
-    * @param propertiesFile the properties file
-    * @return the manifest model
-    */
-   public ManifestModel parse(File dir, File propertiesFile) {
-      this.dir = dir;
-      URL schemaURL = PropertiesParser.class.getResource("properties.xsd");
-      XMLSAXParser parser = new XMLSAXParser("Properties Parser");
-      parser.setValidating(true);
-      parser.showExceptions(false);
-      parser.showWarnings(false);
-      parser.setSchema(schemaURL);
-      parser.setHandler(this);
-      parser.parse(propertiesFile);
-      if (hasParserExceptions()) {
-         Iterator<ExceptionResult> it = getExceptionResults().iterator();
-         while (it.hasNext()) {
-            repackager.getErrors().add(new PackagerError(it.next()));
-         }
-      }
-      return manifestModel;
-   }
-
-   @Override
-   public void startElement(String uri, String localname, String qname, Attributes attr) {
-      switch (localname) {
-         case "debug":
-            parseDebug(attr);
-            break;
-         case "manifest":
-            inManifest = true;
-            parseManifest(attr);
-            break;
-         case "existingProperty":
-            if (inManifest) {
-               parseManifestProperty(attr);
-            }
-            break;
-         case "newProperty":
-            if (inManifest) {
-               parseManifestNewProperty(attr);
-            }
-            break;
-         case "file":
-            parseInputFile(attr);
-            break;
-         case "output":
-            parseOutputFile(attr);
-            break;
-      }
-   }
-
-   @Override
-   public void endElement(String uri, String localname, String qname) {
-      switch (localname) {
-         case "manifest":
-            inManifest = false;
-            break;
-         case "properties":
-            applyGeneralParameters();
-            break;
-      }
-   }
-
-   private void addWarning(String message) {
-      this.warning(new SAXParseException(message, locator));
-   }
-
-   private void parseInputFile(Attributes attr) {
-      for (int i = 0; i < attr.getLength(); i++) {
-         String key = attr.getLocalName(i);
-         String value = attr.getValue(i);
-         if (key.equals("url")) {
-            if (!value.contains("*")) {
-               File file = ParserUtils.parseFileValue(dir, value, "jar");
-               if (file != null && file.exists() && file.isFile()) {
-                  inputFiles.add(file);
-               } else {
-                  addWarning("Input File of URL " + value + " not found or is not a File");
-               }
-            } else {
-               boolean isParsable = parseWilcardFiles(value);
-               if (!isParsable) {
-                  addWarning("Input File of URL " + value + " has an invalid pattern");
-               }
-            }
-         }
-      }
-   }
-
-   private boolean parseWilcardFiles(String value) {
-      Matcher m = WILCARD_PAT.matcher(value);
-      if (!m.matches()) {
-         return false;
-      }
-      File currentDir = dir;
-      String g1 = m.group(1);
-      value = value.replaceAll("\\.", "\\\\.");
-      String regex = value.replaceAll("\\*", ".*");
-      if (g1.contains("/")) {
-         String filePath = g1;
-         int index = g1.lastIndexOf('/');
-         String subdirpath = g1.substring(0, index);
-         currentDir = new File(currentDir, subdirpath);
-         if (!currentDir.exists() || !currentDir.isDirectory()) {
-            addWarning("Directory for " + value + " does not exist or is not a directory");
-            return false;
-         }
-         if (index > g1.length() + 1) {
-            filePath = g1.substring(index + 1);
-         }
-         if (filePath != null) {
-            regex = filePath + regex;
-         }
-      }
-      File[] files = currentDir.listFiles((FileFilter) JAR_FILEFILTER);
-      if (files != null && files.length > 0) {
-         for (int i = 0; i < files.length; i++) {
-            File file = files[i];
-            String name = file.getName();
-            Pattern p = Pattern.compile(regex);
-            m = p.matcher(name);
-            if (m.matches()) {
-               inputFiles.add(file);
-               if (debug) {
-                  System.out.println("File " + file.getAbsolutePath() + " added");
-               }
-            }
-         }
-      }
-      return true;
-   }
-
-   private void parseOutputFile(Attributes attr) {
-      for (int i = 0; i < attr.getLength(); i++) {
-         String key = attr.getLocalName(i);
-         String value = attr.getValue(i);
-         if (key.equals("url")) {
-            outputFile = ParserUtils.parseFileValue(dir, value, "jar");
-            if (outputFile != null && outputFile.exists() && outputFile.isFile()) {
-               repackager.setOutputFile(outputFile);
-            } else {
-               addWarning("OutputFile of URL " + value + " not found or is not a File");
-            }
-         }
-      }
-   }
-
-   private void parseManifest(Attributes attr) {
-      for (int i = 0; i < attr.getLength(); i++) {
-         String key = attr.getLocalName(i);
-         String value = attr.getValue(i);
-         if (key.equals("keep")) {
-            if (value.equals("skip")) {
-               manifestModel.setDefaultType(ManifestModel.SKIP);
-            }
-         }
-      }
-   }
-
-   private void parseManifestNewProperty(Attributes attr) {
-      String key = null;
-      String value = null;
-
-      for (int i = 0; i < attr.getLength(); i++) {
-         String _key = attr.getLocalName(i);
-         String _value = attr.getValue(i);
-         if (_key.equals("key")) {
-            key = _value;
-         } else if (_key.equals("value")) {
-            value = _value;
-         }
-      }
-      if (key != null && value != null) {
-         manifestModel.addNewProperty(key, value);
-      }
-   }
-
-   private void parseManifestProperty(Attributes attr) {
-      String key = null;
-      short type = -1;
-      for (int i = 0; i < attr.getLength(); i++) {
-         String _key = attr.getLocalName(i);
-         String value = attr.getValue(i);
-         if (_key.equals("key")) {
-            key = value;
-         } else if (_key.equals("keep")) {
-            type = value.equals("keep") ? ManifestModel.KEEP : ManifestModel.SKIP;
-         }
-      }
-      if (key != null && type != -1) {
-         manifestModel.addExistingPropertyType(key, type);
-      }
-   }
-
-   private void parseDebug(Attributes attr) {
-      for (int i = 0; i < attr.getLength(); i++) {
-         String key = attr.getLocalName(i);
-         String value = attr.getValue(i);
-         if (key.equals("value")) {
-            debug = value.equals("true");
-            repackager.setDebug(debug);
-         }
-      }
-   }
-
-   private void applyGeneralParameters() {
-      if (!inputFiles.isEmpty()) {
-         File[] files = inputFiles.toArray(new File[inputFiles.size()]);
-         repackager.setInputFiles(files);
-      }
-      if (outputFile != null) {
-         repackager.setOutputFile(outputFile);
-      }
-   }
-}
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.parser;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.Deflater;
+import org.girod.jarrepackager.JarRepackager;
+import org.girod.jarrepackager.model.CompressionPolicy;
+import org.girod.jarrepackager.model.ConflictResolver;
+import org.girod.jarrepackager.model.EntryFilter;
+import org.girod.jarrepackager.model.ManifestModel;
+import org.girod.jarrepackager.model.OutputModel;
+import org.girod.jarrepackager.model.PlatformFilter;
+import org.mdiutil.xml.ResolverSAXHandler;
+import org.mdiutil.xml.XMLSAXParser;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXParseException;
+
+/**
+ * This class is used to parse a properties file.
+ *
+ * @since 0.1
+ */
+public class PropertiesParser extends ResolverSAXHandler {
+   private final JarRepackager repackager;
+   private File dir = null;
+   private boolean debug = false;
+   private final ManifestModel manifestModel = new ManifestModel();
+   private final CompiledConfiguration configuration = new CompiledConfiguration(manifestModel);
+   private GlobMatcher inputFiles = null;
+   private File outputFile = null;
+   private final List<OutputModel> outputModels = new ArrayList<>();
+   private OutputModel currentOutput = null;
+   private PlatformFilter platformFilter = null;
+   private final List<EntryRule> entryRules = new ArrayList<>();
+   private CompressionPolicy compressionPolicy = null;
+   private int currentDeclaration = -1;
+   private boolean inEntries = false;
+   private boolean inOutput = false;
+   private boolean inManifest = false;
+
+   public PropertiesParser(JarRepackager repackager) {
+      this.repackager = repackager;
+      this.debug = repackager.isDebugging();
+   }
+
+   /**
+    * Parse the properties file and return the model of the manifest.
+    *
+    * @param propertiesFile the properties file
+    * @return the manifest model
+    */
+   public ManifestModel parse(File propertiesFile) {
+      this.dir = propertiesFile.getParentFile();
+      return parse(dir, propertiesFile);
+   }
+
+   /**
+    * Parse the properties file and return the model of the manifest.
+    *
+    * @param dir the parent directory
+    * @param propertiesFile the properties file
+    * @return the manifest model
+    */
+   public ManifestModel parse(File dir, File propertiesFile) {
+      this.dir = dir;
+      this.inputFiles = new GlobMatcher(dir);
+      URL schemaURL = PropertiesParser.class.getResource("properties.xsd");
+      XMLSAXParser parser = new XMLSAXParser("Properties Parser");
+      parser.setValidating(true);
+      parser.showExceptions(false);
+      parser.showWarnings(false);
+      parser.setSchema(schemaURL);
+      parser.setHandler(this);
+      parser.parse(propertiesFile);
+      if (hasParserExceptions()) {
+         Iterator<ExceptionResult> it = getExceptionResults().iterator();
+         while (it.hasNext()) {
+            repackager.getErrors().add(new PackagerError(it.next()));
+         }
+      }
+      return manifestModel;
+   }
+
+   /**
+    * Return the result of the last parsing, which can be stored in a {@link ConfigurationCache}.
+    *
+    * @return the compiled configuration
+    * @since 0.2
+    */
+   public CompiledConfiguration getConfiguration() {
+      return configuration;
+   }
+
+   @Override
+   public void startElement(String uri, String localname, String qname, Attributes attr) {
+      switch (localname) {
+         case "debug":
+            parseDebug(attr);
+            break;
+         case "manifest":
+            inManifest = true;
+            if (!inOutput || currentOutput != null) {
+               parseManifest(attr);
+            }
+            break;
+         case "existingProperty":
+            if (inManifest && (!inOutput || currentOutput != null)) {
+               parseManifestProperty(attr);
+            }
+            break;
+         case "newProperty":
+            if (inManifest && (!inOutput || currentOutput != null)) {
+               parseManifestNewProperty(attr);
+            }
+            break;
+         case "file":
+            parseInputFile(attr);
+            break;
+         case "entries":
+            inEntries = true;
+            break;
+         case "exclude":
+            if (inOutput) {
+               parseOutputFilter(attr, false);
+            } else if (inEntries) {
+               parseEntryRule(attr, -1, false);
+            } else if (currentDeclaration != -1) {
+               parseEntryRule(attr, currentDeclaration, false);
+            } else {
+               parseExcludedFiles(attr);
+            }
+            break;
+         case "include":
+            if (inOutput) {
+               parseOutputFilter(attr, true);
+            } else if (inEntries) {
+               parseEntryRule(attr, -1, true);
+            } else if (currentDeclaration != -1) {
+               parseEntryRule(attr, currentDeclaration, true);
+            }
+            break;
+         case "output":
+            inOutput = true;
+            parseOutputFile(attr);
+            break;
+         case "conflicts":
+            parseConflicts(attr);
+            break;
+         case "platform":
+            parsePlatform(attr);
+            break;
+         case "compression":
+            parseCompression(attr);
+            break;
+         case "rule":
+            parseCompressionRule(attr);
+            break;
+      }
+   }
+
+   @Override
+   public void endElement(String uri, String localname, String qname) {
+      switch (localname) {
+         case "manifest":
+            inManifest = false;
+            break;
+         case "file":
+            currentDeclaration = -1;
+            break;
+         case "entries":
+            inEntries = false;
+            break;
+         case "output":
+            inOutput = false;
+            currentOutput = null;
+            break;
+         case "properties":
+            applyGeneralParameters();
+            break;
+      }
+   }
+
+   private void addWarning(String message) {
+      this.warning(new SAXParseException(message, locator));
+   }
+
+   private void parseInputFile(Attributes attr) {
+      int declaration = inputFiles.getDeclarationsCount();
+      for (int i = 0; i < attr.getLength(); i++) {
+         String key = attr.getLocalName(i);
+         String value = attr.getValue(i);
+         if (key.equals("url")) {
+            if (!GlobMatcher.isGlob(value)) {
+               // the file may not exist yet if it is the output of another configuration of a batch
+               File file = ParserUtils.parseFileValue(dir, value, "jar");
+               if (file != null) {
+                  inputFiles.addFile(file);
+               } else {
+                  addWarning("Input File of URL " + value + " is not a File");
+               }
+            } else if (!inputFiles.addInclude(value)) {
+               addWarning("Input File of URL " + value + " has an invalid pattern");
+            }
+         }
+      }
+      // the entries rules of this declaration only apply if the declaration has been added
+      if (inputFiles.getDeclarationsCount() > declaration) {
+         currentDeclaration = declaration;
+      }
+   }
+
+   private void parseEntryRule(Attributes attr, int declaration, boolean include) {
+      for (int i = 0; i < attr.getLength(); i++) {
+         String key = attr.getLocalName(i);
+         String value = attr.getValue(i);
+         if (key.equals("path")) {
+            if (EntryFilter.isValid(value)) {
+               entryRules.add(new EntryRule(declaration, include, value));
+            } else {
+               addWarning("Entries of path " + value + " have an invalid pattern");
+            }
+         }
+      }
+   }
+
+   private void parseExcludedFiles(Attributes attr) {
+      for (int i = 0; i < attr.getLength(); i++) {
+         String key = attr.getLocalName(i);
+         String value = attr.getValue(i);
+         if (key.equals("url") && !inputFiles.addExclude(value)) {
+            addWarning("Excluded Files of URL " + value + " have an invalid pattern");
+         }
+      }
+   }
+
+   private void parseOutputFile(Attributes attr) {
+      for (int i = 0; i < attr.getLength(); i++) {
+         String key = attr.getLocalName(i);
+         String value = attr.getValue(i);
+         if (key.equals("url")) {
+            File file = ParserUtils.parseFileValue(dir, value, "jar");
+            if (file != null) {
+               // the first output is the main output of the repackaging
+               if (outputFile == null) {
+                  outputFile = file;
+                  repackager.setOutputFile(outputFile);
+                  configuration.setOutputFile(outputFile);
+               }
+               currentOutput = new OutputModel(file);
+               outputModels.add(currentOutput);
+            } else {
+               addWarning("OutputFile of URL " + value + " is not a File");
+            }
+         }
+      }
+   }
+
+   private void parseOutputFilter(Attributes attr, boolean include) {
+      if (currentOutput == null) {
+         return;
+      }
+      for (int i = 0; i < attr.getLength(); i++) {
+         String key = attr.getLocalName(i);
+         String value = attr.getValue(i);
+         if (key.equals("path")) {
+            boolean valid = include ? currentOutput.addInclude(value) : currentOutput.addExclude(value);
+            if (!valid) {
+               addWarning("Output entries of path " + value + " have an invalid pattern");
+            }
+         }
+      }
+   }
+
+   private void parsePlatform(Attributes attr) {
+      String os = null;
+      String arch = null;
+      for (int i = 0; i < attr.getLength(); i++) {
+         String key = attr.getLocalName(i);
+         String value = attr.getValue(i);
+         if (key.equals("os")) {
+            os = value;
+         } else if (key.equals("arch")) {
+            arch = value;
+         }
+      }
+      if (os != null) {
+         if (platformFilter == null) {
+            platformFilter = new PlatformFilter();
+         }
+         String classifier = arch == null ? os : os + "-" + arch;
+         if (!platformFilter.addPlatform(classifier)) {
+            addWarning("Platform " + classifier + " is unknown");
+         }
+      }
+   }
+
+   private void parseCompression(Attributes attr) {
+      compressionPolicy = new CompressionPolicy();
+      for (int i = 0; i < attr.getLength(); i++) {
+         String key = attr.getLocalName(i);
+         String value = attr.getValue(i);
+         if (key.equals("detectIncompressible")) {
+            compressionPolicy.setDetectIncompressible(value.equals("true"));
+         } else if (key.equals("storeClasses")) {
+            compressionPolicy.setStoreClasses(value.equals("true"));
+         }
+      }
+   }
+
+   private void parseCompressionRule(Attributes attr) {
+      if (compressionPolicy == null) {
+         return;
+      }
+      String path = null;
+      int method = CompressionPolicy.UNDEFINED;
+      int level = Deflater.DEFAULT_COMPRESSION;
+      for (int i = 0; i < attr.getLength(); i++) {
+         String key = attr.getLocalName(i);
+         String value = attr.getValue(i);
+         if (key.equals("path")) {
+            path = value;
+         } else if (key.equals("method")) {
+            method = CompressionPolicy.parseMethod(value);
+         } else if (key.equals("level")) {
+            try {
+               level = Integer.parseInt(value.trim());
+            } catch (NumberFormatException ex) {
+               addWarning("Compression level " + value + " is invalid");
+            }
+         }
+      }
+      if (path != null && (method == CompressionPolicy.UNDEFINED || !compressionPolicy.addRule(path, method, level))) {
+         addWarning("Compression rule of path " + path + " is invalid");
+      }
+   }
+
+   private void parseConflicts(Attributes attr) {
+      for (int i = 0; i < attr.getLength(); i++) {
+         String key = attr.getLocalName(i);
+         short policy = ConflictResolver.parsePolicy(attr.getValue(i));
+         if (policy != -1) {
+            if (key.equals("policy")) {
+               repackager.setConflictPolicy(policy);
+               configuration.setConflictPolicies(policy, configuration.getManifestConflictPolicy());
+            } else if (key.equals("manifestPolicy")) {
+               repackager.setManifestConflictPolicy(policy);
+               configuration.setConflictPolicies(configuration.getConflictPolicy(), policy);
+            }
+         }
+      }
+   }
+
+   private void parseManifest(Attributes attr) {
+      for (int i = 0; i < attr.getLength(); i++) {
+         String key = attr.getLocalName(i);
+         String value = attr.getValue(i);
+         if (key.equals("keep")) {
+            if (currentOutput != null) {
+               currentOutput.setManifestDefaultType(value.equals("skip") ? ManifestModel.SKIP : ManifestModel.KEEP);
+            } else if (value.equals("skip")) {
+               manifestModel.setDefaultType(ManifestModel.SKIP);
+            }
+         }
+      }
+   }
+
+   private void parseManifestNewProperty(Attributes attr) {
+      String key = null;
+      String value = null;
+
+      for (int i = 0; i < attr.getLength(); i++) {
+         String _key = attr.getLocalName(i);
+         String _value = attr.getValue(i);
+         if (_key.equals("key")) {
+            key = _value;
+         } else if (_key.equals("value")) {
+            value = _value;
+         }
+      }
+      if (key != null && value != null) {
+         if (currentOutput != null) {
+            currentOutput.addNewProperty(key, value);
+         } else {
+            manifestModel.addNewProperty(key, value);
+         }
+      }
+   }
+
+   private void parseManifestProperty(Attributes attr) {
+      String key = null;
+      short type = -1;
+      for (int i = 0; i < attr.getLength(); i++) {
+         String _key = attr.getLocalName(i);
+         String value = attr.getValue(i);
+         if (_key.equals("key")) {
+            key = value;
+         } else if (_key.equals("keep")) {
+            type = value.equals("keep") ? ManifestModel.KEEP : ManifestModel.SKIP;
+         }
+      }
+      if (key != null && type != -1) {
+         if (currentOutput != null) {
+            currentOutput.addExistingPropertyType(key, type);
+         } else {
+            manifestModel.addExistingPropertyType(key, type);
+         }
+      }
+   }
+
+   private void parseDebug(Attributes attr) {
+      for (int i = 0; i < attr.getLength(); i++) {
+         String key = attr.getLocalName(i);
+         String value = attr.getValue(i);
+         if (key.equals("value")) {
+            debug = value.equals("true");
+            repackager.setDebug(debug);
+            configuration.setDebug((short) (debug ? 1 : 0));
+         }
+      }
+   }
+
+   private void applyGeneralParameters() {
+      List<File> files = inputFiles.resolve();
+      for (String glob : inputFiles.getUnmatchedPatterns()) {
+         addWarning("Input File of URL " + glob + " does not match any file");
+      }
+      if (debug) {
+         for (File file : files) {
+            repackager.getMessageStream().println("File " + file.getAbsolutePath() + " added");
+         }
+      }
+      configuration.setInputFiles(files.toArray(new File[files.size()]));
+      configuration.getScannedDirectories().putAll(inputFiles.getScannedDirectories());
+      if (!files.isEmpty()) {
+         repackager.setInputFiles(configuration.getInputFiles());
+      }
+      if (outputFile != null) {
+         repackager.setOutputFile(outputFile);
+      }
+      configuration.getOutputModels().addAll(outputModels);
+      if (platformFilter != null && !platformFilter.getPlatforms().isEmpty()) {
+         configuration.getPlatforms().addAll(platformFilter.getPlatforms());
+         repackager.setPlatformFilter(platformFilter);
+      }
+      if (!outputModels.isEmpty()) {
+         repackager.setOutputModels(outputModels);
+      }
+      if (!entryRules.isEmpty()) {
+         EntryFilter entryFilter = new EntryFilter();
+         for (EntryRule rule : entryRules) {
+            if (rule.declaration == -1) {
+               entryFilter.addRule(null, rule.include, rule.pattern);
+            } else {
+               // the rules of an input declaration apply to all the files resolved by this declaration
+               for (File file : files) {
+                  if (inputFiles.getDeclarationIndex(file) == rule.declaration) {
+                     entryFilter.addRule(file, rule.include, rule.pattern);
+                  }
+               }
+            }
+         }
+         configuration.setEntryFilter(entryFilter);
+         repackager.setEntryFilter(entryFilter);
+      }
+      if (compressionPolicy != null) {
+         configuration.setCompressionPolicy(compressionPolicy);
+         repackager.setCompressionPolicy(compressionPolicy);
+      }
+   }
+
+   /**
+    * An include or exclude rule on the entries, global or declared for the input files of one declaration.
+    */
+   private static class EntryRule {
+      private final int declaration;
+      private final boolean include;
+      private final String pattern;
+
+      private EntryRule(int declaration, boolean include, String pattern) {
+         this.declaration = declaration;
+         this.include = include;
+         this.pattern = pattern;
+      }
+   }
+}
@@ -0,0 +1,79 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.transform;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A transformer of the content of some entries of the output file. The transformers are discovered with a
+ * {@link java.util.ServiceLoader}: a transformer is declared in a
+ * "META-INF/services/org.girod.jarrepackager.transform.EntryTransformer" file of its jar file.
+ *
+ * <h1>Claimed entries</h1>
+ * A transformer declares the glob patterns of the paths of the entries it claims (see {@link #getPaths()}). The patterns
+ * of all the transformers are compiled in one automaton, so the entries which are not claimed by any transformer are
+ * still copied without being inflated and deflated again.
+ *
+ * <h1>Streaming</h1>
+ * The content of a claimed entry is transformed as a stream: the transformer returns a stream which reads the original
+ * content and returns the transformed content, which is deflated chunk by chunk. The transformed stream can be read
+ * by another thread than the one which writes the entries, and several entries can be transformed concurrently.
+ *
+ * @since 0.2
+ */
+public interface EntryTransformer {
+   /**
+    * Return the name of the transformer. The name is part of the settings of the incremental mode, so it should change
+    * if the result of the transformer changes.
+    *
+    * @return the name
+    */
+   public String getName();
+
+   /**
+    * Return the glob patterns of the paths of the entries claimed by this transformer.
+    *
+    * @return the patterns
+    */
+   public String[] getPaths();
+
+   /**
+    * Transform the content of a claimed entry.
+    *
+    * @param path the path of the entry
+    * @param in the original content of the entry
+    * @return the transformed content
+    * @throws IOException
+    */
+   public InputStream transform(String path, InputStream in) throws IOException;
+}
@@ -0,0 +1,166 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.transform;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceLoader;
+import org.girod.jarrepackager.model.EntryFilter;
+
+/**
+ * The transformers applied to the entries of an output file. The paths of the entries are first checked against the
+ * patterns of all the transformers, compiled in one {@link EntryFilter}, so the entries which are not claimed by any
+ * transformer only need one pass over their path.
+ *
+ * @since 0.2
+ */
+public class EntryTransformers {
+   private final List<EntryTransformer> transformers = new ArrayList<>();
+   private final List<EntryFilter.Selector> selectors = new ArrayList<>();
+   private final EntryFilter claims = new EntryFilter();
+   private EntryFilter.Selector claimsSelector = null;
+
+   public EntryTransformers() {
+   }
+
+   /**
+    * Discover the transformers declared as services in a class loader.
+    *
+    * @param loader the class loader
+    * @return the transformers
+    */
+   public static EntryTransformers load(ClassLoader loader) {
+      EntryTransformers transformers = new EntryTransformers();
+      Iterator<EntryTransformer> it = ServiceLoader.load(EntryTransformer.class, loader).iterator();
+      while (it.hasNext()) {
+         transformers.addTransformer(it.next());
+      }
+      return transformers;
+   }
+
+   /**
+    * Add a transformer. The transformers are applied in their order of addition.
+    *
+    * @param transformer the transformer
+    * @return false if one of the patterns of the transformer is invalid
+    */
+   public synchronized boolean addTransformer(EntryTransformer transformer) {
+      String[] paths = transformer.getPaths();
+      for (String pattern : paths) {
+         if (!EntryFilter.isValid(pattern)) {
+            return false;
+         }
+      }
+      EntryFilter filter = new EntryFilter();
+      for (String pattern : paths) {
+         filter.addInclude(pattern);
+         claims.addInclude(pattern);
+      }
+      if (filter.isEmpty()) {
+         // a transformer which claims no entries is never applied
+         return true;
+      }
+      transformers.add(transformer);
+      selectors.add(filter.getSelector(null));
+      claimsSelector = null;
+      return true;
+   }
+
+   /**
+    * Return the transformers.
+    *
+    * @return the transformers
+    */
+   public List<EntryTransformer> getTransformers() {
+      return transformers;
+   }
+
+   /**
+    * Return true if there are no transformers.
+    *
+    * @return true if there are no transformers
+    */
+   public boolean isEmpty() {
+      return transformers.isEmpty();
+   }
+
+   /**
+    * Return a description of the transformers, used in the fingerprint of the settings of the incremental mode.
+    *
+    * @return the description
+    */
+   public String getDescription() {
+      StringBuilder buf = new StringBuilder();
+      for (EntryTransformer transformer : transformers) {
+         buf.append("transformer=").append(transformer.getName()).append('\n');
+      }
+      return buf.toString();
+   }
+
+   /**
+    * Return true if an entry is claimed by at least one transformer.
+    *
+    * @param path the path of the entry
+    * @return true if the entry is claimed
+    */
+   public boolean claims(CharSequence path) {
+      if (transformers.isEmpty()) {
+         return false;
+      }
+      EntryFilter.Selector selector = claimsSelector;
+      if (selector == null) {
+         selector = claims.getSelector(null);
+         claimsSelector = selector;
+      }
+      return selector.accept(path);
+   }
+
+   /**
+    * Apply the transformers which claim an entry to its content.
+    *
+    * @param path the path of the entry
+    * @param in the original content of the entry
+    * @return the transformed content
+    * @throws IOException
+    */
+   public InputStream transform(String path, InputStream in) throws IOException {
+      for (int i = 0; i < transformers.size(); i++) {
+         if (selectors.get(i).accept(path)) {
+            in = transformers.get(i).transform(path, in);
+         }
+      }
+      return in;
+   }
+}
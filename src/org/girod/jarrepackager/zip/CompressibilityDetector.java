@@ -0,0 +1,150 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.zip;
+
+/**
+ * Detects the content which is already compressed, and which would only waste CPU time if it was deflated again.
+ *
+ * <h1>Magic numbers</h1>
+ * The content is incompressible if it starts with the magic number of a compressed format: zip containers (including
+ * nested jar files), gzip, bzip2, xz, zstd, 7z and lz4 streams, PNG, JPEG, GIF and WebP images, WOFF fonts, and the
+ * usual audio and video containers.
+ *
+ * <h1>Entropy</h1>
+ * Otherwise, the Shannon entropy of the bytes of the sample is computed. Compressed or encrypted content has an entropy
+ * close to 8 bits per byte, so the content is incompressible if the entropy of the sample is above
+ * {@link #MAX_ENTROPY}. The entropy is only used for samples of at least {@link #MIN_ENTROPY_SAMPLE} bytes, because
+ * the entropy of a small sample is not significant.
+ *
+ * @since 0.2
+ */
+public class CompressibilityDetector {
+   /**
+    * The entropy, in bits per byte, above which a sample is considered as incompressible.
+    */
+   public static final double MAX_ENTROPY = 7.5;
+   /**
+    * The minimum size of a sample for which the entropy is computed.
+    */
+   public static final int MIN_ENTROPY_SAMPLE = 512;
+   /**
+    * The maximum number of bytes of a sample used to compute the entropy.
+    */
+   private static final int MAX_ENTROPY_SAMPLE = 16 * 1024;
+   private static final byte[][] MAGIC_NUMBERS = {
+      // zip containers, including jar files
+      { 'P', 'K', 3, 4 }, { 'P', 'K', 5, 6 }, { 'P', 'K', 7, 8 },
+      // gzip, bzip2, xz, zstd, 7z, lz4
+      { 0x1F, (byte) 0x8B }, { 'B', 'Z', 'h' }, { (byte) 0xFD, '7', 'z', 'X', 'Z', 0 }, { 0x28, (byte) 0xB5, 0x2F, (byte) 0xFD },
+      { '7', 'z', (byte) 0xBC, (byte) 0xAF, 0x27, 0x1C }, { 0x04, 0x22, 0x4D, 0x18 },
+      // PNG, JPEG, GIF
+      { (byte) 0x89, 'P', 'N', 'G' }, { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF }, { 'G', 'I', 'F', '8' },
+      // WOFF fonts
+      { 'w', 'O', 'F', 'F' }, { 'w', 'O', 'F', '2' },
+      // MP3, Ogg, FLAC
+      { 'I', 'D', '3' }, { 'O', 'g', 'g', 'S' }, { 'f', 'L', 'a', 'C' } };
+
+   private CompressibilityDetector() {
+   }
+
+   /**
+    * Return true if a sample of the beginning of a content shows that this content is incompressible.
+    *
+    * @param buf the buffer containing the sample
+    * @param off the offset of the sample in the buffer
+    * @param len the length of the sample
+    * @return true if the content is incompressible
+    */
+   public static boolean isIncompressible(byte[] buf, int off, int len) {
+      return hasCompressedMagicNumber(buf, off, len) || (len >= MIN_ENTROPY_SAMPLE && getEntropy(buf, off, len) > MAX_ENTROPY);
+   }
+
+   /**
+    * Return true if a content starts with the magic number of a compressed format.
+    *
+    * @param buf the buffer containing the beginning of the content
+    * @param off the offset of the content in the buffer
+    * @param len the length of the content in the buffer
+    * @return true if the content starts with the magic number of a compressed format
+    */
+   public static boolean hasCompressedMagicNumber(byte[] buf, int off, int len) {
+      for (byte[] magic : MAGIC_NUMBERS) {
+         if (startsWith(buf, off, len, 0, magic)) {
+            return true;
+         }
+      }
+      // WebP images and MP4 or QuickTime containers have their signature after a size field
+      if (startsWith(buf, off, len, 0, new byte[] { 'R', 'I', 'F', 'F' }) && startsWith(buf, off, len, 8, new byte[] { 'W', 'E', 'B', 'P' })) {
+         return true;
+      }
+      return startsWith(buf, off, len, 4, new byte[] { 'f', 't', 'y', 'p' });
+   }
+
+   private static boolean startsWith(byte[] buf, int off, int len, int position, byte[] magic) {
+      if (len < position + magic.length) {
+         return false;
+      }
+      for (int i = 0; i < magic.length; i++) {
+         if (buf[off + position + i] != magic[i]) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Return the Shannon entropy of a sample, in bits per byte.
+    *
+    * @param buf the buffer containing the sample
+    * @param off the offset of the sample in the buffer
+    * @param len the length of the sample
+    * @return the entropy, between 0 and 8
+    */
+   public static double getEntropy(byte[] buf, int off, int len) {
+      len = Math.min(len, MAX_ENTROPY_SAMPLE);
+      if (len == 0) {
+         return 0;
+      }
+      int[] counts = new int[256];
+      for (int i = off; i < off + len; i++) {
+         counts[buf[i] & 0xFF]++;
+      }
+      double entropy = 0;
+      for (int i = 0; i < counts.length; i++) {
+         if (counts[i] != 0) {
+            double p = (double) counts[i] / len;
+            entropy -= p * Math.log(p);
+         }
+      }
+      return entropy / Math.log(2);
+   }
+}
@@ -0,0 +1,933 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * A zip container opened for reading.
+ *
+ * <h1>Index</h1>
+ * The container is memory-mapped, and only its end of central directory record and its central directory are parsed.
+ * The index of the container only keeps the position of each central directory header in the mapping, so the name,
+ * CRC, sizes and timestamp of an entry are decoded on demand, without allocating any object per entry.
+ *
+ * <h1>Data access</h1>
+ * The compressed data of each entry can be accessed directly as a region of the mapping (see {@link #getRawData(int)}),
+ * which allows to copy it without inflating and deflating it again. The containers larger than 2 GB are not mapped as a
+ * whole, the regions of their entries are mapped separately when they are accessed.
+ *
+ * <h1>Zip64</h1>
+ * The Zip64 end of central directory record and the Zip64 extended information extra fields are used when the number
+ * of entries, the sizes or the offsets of the container do not fit in the fields of the standard records.
+ *
+ * <h1>Sources</h1>
+ * A container is usually read from a file of the default file system. It can also be read from a {@link Path} of
+ * another file system, or from a content already in memory (see {@link #ZipArchive(String, ByteBuffer)} and
+ * {@link #read(String, InputStream)}). The containers which are not files of the default file system are copied in
+ * memory, and their {@link #getFile()} is a virtual file which only identifies them.
+ *
+ * <h1>Eviction</h1>
+ * A container opened by a {@link ZipArchivePool} may be evicted by the pool: its mapping is released (and its channel
+ * is closed for the containers larger than 2 GB), but its index is kept. The container is mapped again the next time
+ * one of its entries is accessed. The accessors of the entries throw an {@link UncheckedIOException} if the container
+ * can not be mapped again.
+ *
+ * @since 0.2
+ */
+public class ZipArchive implements Closeable {
+   private static final int BUFFER_SIZE = 64 * 1024;
+   /**
+    * The maximum size of the regions mapped to read the data of an entry.
+    */
+   private static final int MAX_REGION_SIZE = 1 << 30;
+   /**
+    * The positions of the fields of a central directory header which may be stored in the Zip64 extra field, in the
+    * order of the extra field.
+    */
+   private static final int[] ZIP64_FIELDS = { 24, 20, 42 };
+   private final File file;
+   private final ByteBuffer content;
+   private final Object lock = new Object();
+   private volatile FileChannel channel = null;
+   private volatile ByteBuffer mapping = null;
+   private volatile ByteBuffer cen = null;
+   private boolean large = false;
+   private boolean closed = false;
+   private long cenOffset = 0;
+   private long cenSize = 0;
+   private int[] cenPositions = null;
+   private ZipArchivePool pool = null;
+   /**
+    * The number of users which prevent the pool from evicting the container. Guarded by the pool.
+    */
+   int pins = 0;
+   /**
+    * The number of sessions of the pool which reference the container. Guarded by the pool.
+    */
+   int users = 0;
+   /**
+    * True if the container has been replaced in its shared pool, and must be closed when it is not used anymore.
+    * Guarded by the pool.
+    */
+   boolean retired = false;
+   private Map<String, Integer> namesIndex = null;
+   private Manifest manifest = null;
+   private boolean manifestParsed = false;
+
+   /**
+    * Constructor.
+    *
+    * @param file the zip file
+    * @throws IOException
+    */
+   public ZipArchive(File file) throws IOException {
+      this.file = file;
+      this.content = null;
+      long length = map();
+      readCentralDirectory(length);
+   }
+
+   /**
+    * Constructor. A path of the default file system is mapped as a file, a path of another file system is copied in
+    * memory.
+    *
+    * @param path the path of the zip container
+    * @throws IOException
+    */
+   public ZipArchive(Path path) throws IOException {
+      this.file = path.getFileSystem() == FileSystems.getDefault() ? path.toFile() : new File(path.toString());
+      this.content = path.getFileSystem() == FileSystems.getDefault() ? null : readContent(path);
+      long length = map();
+      readCentralDirectory(length);
+   }
+
+   /**
+    * Constructor for a container in memory. The content is not copied, so it must not be modified while the container
+    * is used.
+    *
+    * @param name the name of the container, used as the path of its virtual file
+    * @param content the content of the container
+    * @throws IOException
+    */
+   public ZipArchive(String name, ByteBuffer content) throws IOException {
+      this.file = new File(name);
+      this.content = content.slice().asReadOnlyBuffer();
+      long length = map();
+      readCentralDirectory(length);
+   }
+
+   /**
+    * Constructor for a container in memory. The content is not copied, so it must not be modified while the container
+    * is used.
+    *
+    * @param name the name of the container, used as the path of its virtual file
+    * @param content the content of the container
+    * @throws IOException
+    */
+   public ZipArchive(String name, byte[] content) throws IOException {
+      this(name, ByteBuffer.wrap(content));
+   }
+
+   /**
+    * Read a container from a stream, for example the standard input. The stream is read until its end, but it is not
+    * closed.
+    *
+    * @param name the name of the container, used as the path of its virtual file
+    * @param in the stream
+    * @return the container
+    * @throws IOException
+    */
+   public static ZipArchive read(String name, InputStream in) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+      byte[] buf = new byte[BUFFER_SIZE];
+      int len;
+      while ((len = in.read(buf)) != -1) {
+         out.write(buf, 0, len);
+      }
+      return new ZipArchive(name, out.toByteArray());
+   }
+
+   private static ByteBuffer readContent(Path path) throws IOException {
+      try (SeekableByteChannel in = Files.newByteChannel(path, StandardOpenOption.READ)) {
+         long size = in.size();
+         if (size > Integer.MAX_VALUE) {
+            throw new ZipException(path + " is too large to be read in memory");
+         }
+         ByteBuffer buf = ByteBuffer.allocate((int) size);
+         while (buf.hasRemaining() && in.read(buf) != -1) {
+         }
+         buf.flip();
+         return buf.asReadOnlyBuffer();
+      }
+   }
+
+   /**
+    * Return true if the container is in memory rather than mapped from a file.
+    *
+    * @return true if the container is in memory
+    */
+   public boolean isInMemory() {
+      return content != null;
+   }
+
+   /**
+    * Map the container, or open its channel if it is larger than 2 GB.
+    *
+    * @return the length of the container
+    */
+   private long map() throws IOException {
+      if (content != null) {
+         mapping = content.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+         return content.capacity();
+      }
+      FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      boolean keepChannel = false;
+      try {
+         long length = fileChannel.size();
+         if (length <= Integer.MAX_VALUE) {
+            mapping = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+         } else {
+            large = true;
+            keepChannel = true;
+            channel = fileChannel;
+         }
+         return length;
+      } finally {
+         if (!keepChannel) {
+            // the mapping stays valid after the channel has been closed
+            fileChannel.close();
+         }
+      }
+   }
+
+   /**
+    * Set the pool which opened this container.
+    *
+    * @param pool the pool
+    */
+   void setPool(ZipArchivePool pool) {
+      this.pool = pool;
+   }
+
+   /**
+    * Return the pool which opened or registered this container.
+    *
+    * @return the pool, or null if the container is not in a pool
+    */
+   public ZipArchivePool getPool() {
+      return pool;
+   }
+
+   /**
+    * Return true if the container is currently mapped.
+    *
+    * @return true if the container is currently mapped
+    */
+   public boolean isMapped() {
+      return cen != null;
+   }
+
+   /**
+    * Map the container again if it has been evicted.
+    *
+    * @throws IOException if the container has been closed or can not be mapped again
+    */
+   public void ensureMapped() throws IOException {
+      if (cen == null) {
+         remap();
+      }
+   }
+
+   private ByteBuffer remap() throws IOException {
+      ByteBuffer buf;
+      synchronized (lock) {
+         if (closed) {
+            throw new IOException(file.getName() + " has been closed");
+         }
+         buf = cen;
+         if (buf != null) {
+            return buf;
+         }
+         map();
+         buf = getRegion(cenOffset, cenSize);
+         cen = buf;
+      }
+      // the pool must not be notified with the lock held, because it may evict other containers
+      if (pool != null) {
+         pool.mapped(this);
+      }
+      return buf;
+   }
+
+   /**
+    * Release the mapping of the container, but keep its index. The container will be mapped again the next time one of
+    * its entries is accessed. The buffers previously returned by this container stay valid.
+    */
+   void evict() {
+      synchronized (lock) {
+         cen = null;
+         mapping = null;
+         if (channel != null) {
+            try {
+               channel.close();
+            } catch (IOException ex) {
+            }
+            channel = null;
+         }
+      }
+   }
+
+   private ByteBuffer getCen() {
+      ByteBuffer buf = cen;
+      if (buf == null) {
+         try {
+            buf = remap();
+         } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+         }
+      }
+      return buf;
+   }
+
+   /**
+    * Return the zip file. For a container in memory, the file is virtual and only identifies the container.
+    *
+    * @return the file
+    */
+   public File getFile() {
+      return file;
+   }
+
+   /**
+    * Return the number of entries in the central directory.
+    *
+    * @return the number of entries
+    */
+   public int size() {
+      return cenPositions.length;
+   }
+
+   private ByteBuffer getRegion(long position, long length) throws IOException {
+      if (length > Integer.MAX_VALUE) {
+         throw new ZipException("Region too large in " + file.getName());
+      }
+      ByteBuffer region = null;
+      if (!large) {
+         ByteBuffer map = mapping;
+         while (map == null) {
+            remap();
+            map = mapping;
+         }
+         if (position < 0 || position + length > map.capacity()) {
+            throw new ZipException("Invalid region in " + file.getName());
+         }
+         region = map.duplicate();
+         region.position((int) position);
+         region.limit((int) (position + length));
+         region = region.slice();
+      } else {
+         while (region == null) {
+            FileChannel ch = channel;
+            if (ch == null) {
+               remap();
+            } else {
+               try {
+                  region = ch.map(FileChannel.MapMode.READ_ONLY, position, length);
+               } catch (ClosedChannelException ex) {
+                  // the container has been evicted concurrently
+               }
+            }
+         }
+      }
+      return region.order(ByteOrder.LITTLE_ENDIAN);
+   }
+
+   private void readCentralDirectory(long length) throws IOException {
+      if (length < ZipConstants.ENDHDR) {
+         throw new ZipException("Not a zip file: " + file.getName());
+      }
+      int tailLength = (int) Math.min(length, ZipConstants.ENDHDR + ZipConstants.MAX_COMMENT);
+      long tailStart = length - tailLength;
+      ByteBuffer tail = getRegion(tailStart, tailLength);
+      int endPos = -1;
+      for (int i = tailLength - ZipConstants.ENDHDR; i >= 0; i--) {
+         if (tail.getInt(i) == ZipConstants.ENDSIG) {
+            endPos = i;
+            break;
+         }
+      }
+      if (endPos == -1) {
+         throw new ZipException("End of central directory not found in " + file.getName());
+      }
+      long count = tail.getShort(endPos + 10) & 0xFFFF;
+      long cenSize = tail.getInt(endPos + 12) & 0xFFFFFFFFL;
+      long cenOffset = tail.getInt(endPos + 16) & 0xFFFFFFFFL;
+      long endOffset = tailStart + endPos;
+      if ((count == ZipConstants.ZIP64_MAGICCOUNT || cenSize == ZipConstants.ZIP64_MAGICVAL
+         || cenOffset == ZipConstants.ZIP64_MAGICVAL) && endOffset >= ZipConstants.ZIP64_LOCHDR) {
+         // the real values are in the Zip64 end of central directory record, if the locator of this record is present
+         ByteBuffer locator = getRegion(endOffset - ZipConstants.ZIP64_LOCHDR, ZipConstants.ZIP64_LOCHDR);
+         if (locator.getInt(0) == ZipConstants.ZIP64_LOCSIG) {
+            long zip64EndOffset = locator.getLong(8);
+            if (zip64EndOffset < 0 || zip64EndOffset + ZipConstants.ZIP64_ENDHDR > endOffset - ZipConstants.ZIP64_LOCHDR) {
+               throw new ZipException("Invalid Zip64 end of central directory locator in " + file.getName());
+            }
+            ByteBuffer zip64End = getRegion(zip64EndOffset, ZipConstants.ZIP64_ENDHDR);
+            if (zip64End.getInt(0) != ZipConstants.ZIP64_ENDSIG) {
+               throw new ZipException("Zip64 end of central directory not found in " + file.getName());
+            }
+            count = zip64End.getLong(32);
+            cenSize = zip64End.getLong(40);
+            cenOffset = zip64End.getLong(48);
+            endOffset = zip64EndOffset;
+         }
+      }
+      if (count < 0 || count > Integer.MAX_VALUE || cenSize < 0 || cenOffset < 0 || cenOffset + cenSize > endOffset) {
+         throw new ZipException("Invalid central directory in " + file.getName());
+      }
+      this.cenOffset = cenOffset;
+      this.cenSize = cenSize;
+      ByteBuffer cen = getRegion(cenOffset, cenSize);
+      this.cen = cen;
+      cenPositions = new int[(int) count];
+      int pos = 0;
+      for (int i = 0; i < count; i++) {
+         if (pos + ZipConstants.CENHDR > cenSize || cen.getInt(pos) != ZipConstants.CENSIG) {
+            throw new ZipException("Invalid central directory header in " + file.getName());
+         }
+         cenPositions[i] = pos;
+         int nameLength = cen.getShort(pos + 28) & 0xFFFF;
+         int extraLength = cen.getShort(pos + 30) & 0xFFFF;
+         int commentLength = cen.getShort(pos + 32) & 0xFFFF;
+         pos += ZipConstants.CENHDR + nameLength + extraLength + commentLength;
+      }
+   }
+
+   /**
+    * Return the name of an entry.
+    *
+    * @param index the index of the entry
+    * @return the name
+    */
+   public String getName(int index) {
+      ByteBuffer cen = getCen();
+      int pos = cenPositions[index];
+      int nameLength = cen.getShort(pos + 28) & 0xFFFF;
+      byte[] nameBytes = new byte[nameLength];
+      int start = pos + ZipConstants.CENHDR;
+      // absolute reads, so that no view of the central directory is allocated for each name
+      for (int i = 0; i < nameLength; i++) {
+         nameBytes[i] = cen.get(start + i);
+      }
+      return new String(nameBytes, StandardCharsets.UTF_8);
+   }
+
+   /**
+    * Return the general purpose flags of an entry.
+    *
+    * @param index the index of the entry
+    * @return the flags
+    */
+   public int getFlags(int index) {
+      return getCen().getShort(cenPositions[index] + 8) & 0xFFFF;
+   }
+
+   /**
+    * Return true if an entry is encrypted. The encrypted entries can neither be read nor copied.
+    *
+    * @param index the index of the entry
+    * @return true if the entry is encrypted
+    */
+   public boolean isEncrypted(int index) {
+      return (getFlags(index) & ZipConstants.FLAG_ENCRYPTED) != 0;
+   }
+
+   /**
+    * Throw an exception if an entry is encrypted.
+    *
+    * @param index the index of the entry
+    * @throws ZipException if the entry is encrypted
+    */
+   void checkNotEncrypted(int index) throws ZipException {
+      if (isEncrypted(index)) {
+         throw new ZipException("Encrypted entry " + getName(index) + " in " + file.getName() + " is not supported");
+      }
+   }
+
+   /**
+    * Return the compression method of an entry.
+    *
+    * @param index the index of the entry
+    * @return the compression method
+    */
+   public int getMethod(int index) {
+      return getCen().getShort(cenPositions[index] + 10) & 0xFFFF;
+   }
+
+   /**
+    * Return the last modification time and date of an entry, in MS-DOS format.
+    *
+    * @param index the index of the entry
+    * @return the MS-DOS time and date
+    */
+   public long getDosTime(int index) {
+      return getCen().getInt(cenPositions[index] + 12) & 0xFFFFFFFFL;
+   }
+
+   /**
+    * Return the CRC-32 of the uncompressed data of an entry.
+    *
+    * @param index the index of the entry
+    * @return the CRC-32
+    */
+   public long getCrc(int index) {
+      return getCen().getInt(cenPositions[index] + 16) & 0xFFFFFFFFL;
+   }
+
+   /**
+    * Return the compressed size of an entry.
+    *
+    * @param index the index of the entry
+    * @return the compressed size
+    */
+   public long getCompressedSize(int index) {
+      return getZip64Field(index, 20);
+   }
+
+   /**
+    * Return the uncompressed size of an entry.
+    *
+    * @param index the index of the entry
+    * @return the uncompressed size
+    */
+   public long getSize(int index) {
+      return getZip64Field(index, 24);
+   }
+
+   /**
+    * Return the value of a size or offset field of the central directory header of an entry. If the field is saturated,
+    * the value is read in the Zip64 extended information extra field, which contains the saturated fields in the
+    * order: uncompressed size, compressed size, offset of the local header.
+    */
+   private long getZip64Field(int index, int field) {
+      ByteBuffer cen = getCen();
+      int pos = cenPositions[index];
+      long value = cen.getInt(pos + field) & 0xFFFFFFFFL;
+      if (value != ZipConstants.ZIP64_MAGICVAL) {
+         return value;
+      }
+      int extraPos = pos + ZipConstants.CENHDR + (cen.getShort(pos + 28) & 0xFFFF);
+      int extraEnd = extraPos + (cen.getShort(pos + 30) & 0xFFFF);
+      while (extraPos + 4 <= extraEnd) {
+         int id = cen.getShort(extraPos) & 0xFFFF;
+         int length = cen.getShort(extraPos + 2) & 0xFFFF;
+         if (id == ZipConstants.ZIP64_EXTID) {
+            int valuePos = extraPos + 4;
+            for (int previous : ZIP64_FIELDS) {
+               if (previous == field) {
+                  break;
+               } else if ((cen.getInt(pos + previous) & 0xFFFFFFFFL) == ZipConstants.ZIP64_MAGICVAL) {
+                  valuePos += 8;
+               }
+            }
+            if (valuePos + 8 <= extraPos + 4 + length) {
+               return cen.getLong(valuePos);
+            }
+            break;
+         }
+         extraPos += 4 + length;
+      }
+      throw new UncheckedIOException(new ZipException("Invalid Zip64 extra field for " + getName(index) + " in " + file.getName()));
+   }
+
+   /**
+    * Return the offset of the local file header of an entry.
+    *
+    * @param index the index of the entry
+    * @return the offset
+    */
+   public long getLocalHeaderOffset(int index) {
+      return getZip64Field(index, 42);
+   }
+
+   /**
+    * Return the index of the entry of a specified name.
+    *
+    * @param name the entry name
+    * @return the index of the entry, or -1 if there is no entry for this name
+    */
+   public synchronized int getEntryIndex(String name) {
+      if (namesIndex == null) {
+         namesIndex = new HashMap<>();
+         for (int i = 0; i < cenPositions.length; i++) {
+            namesIndex.put(getName(i), i);
+         }
+      }
+      Integer index = namesIndex.get(name);
+      return index == null ? -1 : index;
+   }
+
+   /**
+    * Return the index of the entry of a specified name, without building the index of the names if it does not exist
+    * yet. The name is compared with the encoded names of the central directory, so no String is created.
+    *
+    * @param name the entry name
+    * @return the index of the entry, or -1 if there is no entry for this name
+    */
+   private int findEntry(String name) {
+      if (namesIndex != null) {
+         return getEntryIndex(name);
+      }
+      byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+      ByteBuffer cen = getCen();
+      for (int i = 0; i < cenPositions.length; i++) {
+         int pos = cenPositions[i];
+         if ((cen.getShort(pos + 28) & 0xFFFF) == nameBytes.length) {
+            int namePos = pos + ZipConstants.CENHDR;
+            boolean found = true;
+            for (int j = 0; j < nameBytes.length; j++) {
+               if (cen.get(namePos + j) != nameBytes[j]) {
+                  found = false;
+                  break;
+               }
+            }
+            if (found) {
+               return i;
+            }
+         }
+      }
+      return -1;
+   }
+
+   /**
+    * Return the offset of the compressed data of an entry.
+    *
+    * @param index the index of the entry
+    * @return the offset of the data
+    * @throws IOException
+    */
+   public long getDataOffset(int index) throws IOException {
+      long offset = getLocalHeaderOffset(index);
+      ByteBuffer loc = getRegion(offset, ZipConstants.LOCHDR);
+      if (loc.getInt(0) != ZipConstants.LOCSIG) {
+         throw new ZipException("Invalid local header for " + getName(index) + " in " + file.getName());
+      }
+      int nameLength = loc.getShort(26) & 0xFFFF;
+      int extraLength = loc.getShort(28) & 0xFFFF;
+      return offset + ZipConstants.LOCHDR + nameLength + extraLength;
+   }
+
+   /**
+    * Return the compressed data of an entry, as they are stored in the container. The returned buffer is a read-only
+    * view on the mapping of the container, no data is copied. The data of the entries whose compressed size is larger
+    * than 2 GB must be accessed by parts (see {@link #getRawData(int, long, int)}).
+    *
+    * @param index the index of the entry
+    * @return the compressed data
+    * @throws IOException
+    */
+   public ByteBuffer getRawData(int index) throws IOException {
+      return getRegion(getDataOffset(index), getCompressedSize(index));
+   }
+
+   /**
+    * Return a part of the compressed data of an entry, as they are stored in the container. This method allows to access
+    * the data of the entries whose compressed size is larger than 2 GB.
+    *
+    * @param index the index of the entry
+    * @param position the position of the part in the compressed data
+    * @param length the length of the part
+    * @return the part of the compressed data
+    * @throws IOException
+    */
+   public ByteBuffer getRawData(int index, long position, int length) throws IOException {
+      if (position < 0 || length < 0 || position + length > getCompressedSize(index)) {
+         throw new ZipException("Invalid region for " + getName(index) + " in " + file.getName());
+      }
+      return getRegion(getDataOffset(index) + position, length);
+   }
+
+   /**
+    * Copy the compressed data of an entry, as they are stored in the container.
+    *
+    * @param index the index of the entry
+    * @param out the output stream
+    * @throws IOException
+    */
+   public void copyRawData(int index, OutputStream out) throws IOException {
+      try (InputStream in = getRawInputStream(index)) {
+         byte[] buf = new byte[(int) Math.min(BUFFER_SIZE, Math.max(getCompressedSize(index), 1))];
+         int len;
+         while ((len = in.read(buf)) > 0) {
+            out.write(buf, 0, len);
+         }
+      }
+   }
+
+   private InputStream getRawInputStream(int index) throws IOException {
+      long compressedSize = getCompressedSize(index);
+      if (compressedSize <= MAX_REGION_SIZE) {
+         return new ByteBufferInputStream(getRawData(index));
+      } else {
+         return new RegionsInputStream(index, compressedSize);
+      }
+   }
+
+   /**
+    * Return the uncompressed content of an entry.
+    *
+    * @param index the index of the entry
+    * @return the input stream
+    * @throws IOException
+    */
+   public InputStream getInputStream(int index) throws IOException {
+      checkNotEncrypted(index);
+      int method = getMethod(index);
+      switch (method) {
+         case ZipConstants.STORED:
+            return getRawInputStream(index);
+         case ZipConstants.DEFLATED:
+            return new ArchiveInflaterInputStream(getRawInputStream(index), getSize(index));
+         default:
+            throw new ZipException("Unsupported compression method " + method + " for " + getName(index) + " in " + file.getName());
+      }
+   }
+
+   /**
+    * Return the manifest of the container. The manifest is parsed only the first time this method is called.
+    *
+    * @return the manifest, or null if the container has no manifest
+    * @throws IOException
+    */
+   public synchronized Manifest getManifest() throws IOException {
+      if (!manifestParsed) {
+         int index = findEntry(JarFile.MANIFEST_NAME);
+         if (index != -1) {
+            try (InputStream in = getInputStream(index)) {
+               manifest = new Manifest(in);
+            }
+         }
+         manifestParsed = true;
+      }
+      return manifest;
+   }
+
+   /**
+    * Close the archive. The archive can not be accessed anymore after it has been closed.
+    *
+    * @throws IOException
+    */
+   @Override
+   public void close() throws IOException {
+      synchronized (lock) {
+         if (closed) {
+            return;
+         }
+         closed = true;
+      }
+      evict();
+      if (pool != null) {
+         pool.closed(this);
+      }
+   }
+
+   /**
+    * An InputStream reading the remaining content of a ByteBuffer.
+    */
+   private static class ByteBufferInputStream extends InputStream {
+      private final ByteBuffer buf;
+
+      private ByteBufferInputStream(ByteBuffer buf) {
+         this.buf = buf;
+      }
+
+      @Override
+      public int read() {
+         return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) {
+         if (len == 0) {
+            return 0;
+         } else if (!buf.hasRemaining()) {
+            return -1;
+         }
+         len = Math.min(len, buf.remaining());
+         buf.get(b, off, len);
+         return len;
+      }
+
+      @Override
+      public long skip(long n) {
+         int skipped = (int) Math.min(Math.max(n, 0), buf.remaining());
+         buf.position(buf.position() + skipped);
+         return skipped;
+      }
+
+      @Override
+      public int available() {
+         return buf.remaining();
+      }
+   }
+
+   /**
+    * An InputStream reading the compressed data of an entry which is too large to be mapped as one region. The data are
+    * read region by region.
+    */
+   private class RegionsInputStream extends InputStream {
+      private final int index;
+      private final long length;
+      private long position = 0;
+      private ByteBuffer region = null;
+
+      private RegionsInputStream(int index, long length) {
+         this.index = index;
+         this.length = length;
+      }
+
+      private boolean nextRegion() throws IOException {
+         if (region != null && region.hasRemaining()) {
+            return true;
+         } else if (position >= length) {
+            return false;
+         }
+         int regionLength = (int) Math.min(MAX_REGION_SIZE, length - position);
+         region = getRawData(index, position, regionLength);
+         position += regionLength;
+         return true;
+      }
+
+      @Override
+      public int read() throws IOException {
+         return nextRegion() ? region.get() & 0xFF : -1;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+         if (len == 0) {
+            return 0;
+         } else if (!nextRegion()) {
+            return -1;
+         }
+         len = Math.min(len, region.remaining());
+         region.get(b, off, len);
+         return len;
+      }
+
+      @Override
+      public int available() {
+         return region == null ? 0 : region.remaining();
+      }
+   }
+
+   /**
+    * An InflaterInputStream which releases its Inflater when closed, and which provides the dummy byte needed at the end
+    * of the compressed data by the Inflater in nowrap mode.
+    */
+   private static class ArchiveInflaterInputStream extends InflaterInputStream {
+      private final long size;
+      private long read = 0;
+      private boolean eof = false;
+      private boolean closed = false;
+
+      private ArchiveInflaterInputStream(InputStream in, long size) {
+         super(in, new Inflater(true), (int) Math.max(1, Math.min(BUFFER_SIZE, size)));
+         this.size = size;
+      }
+
+      @Override
+      protected void fill() throws IOException {
+         if (eof) {
+            throw new ZipException("Unexpected end of compressed data");
+         }
+         len = in.read(buf, 0, buf.length);
+         if (len == -1) {
+            buf[0] = 0;
+            len = 1;
+            eof = true;
+         }
+         inf.setInput(buf, 0, len);
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+         int count = super.read(b, off, len);
+         if (count > 0) {
+            read += count;
+         }
+         return count;
+      }
+
+      @Override
+      public int available() throws IOException {
+         if (closed) {
+            return 0;
+         }
+         long avail = size - read;
+         return avail > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) Math.max(0, avail);
+      }
+
+      @Override
+      public void close() throws IOException {
+         if (!closed) {
+            closed = true;
+            inf.end();
+            super.close();
+         }
+      }
+   }
+}
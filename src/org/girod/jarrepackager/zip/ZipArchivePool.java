@@ -0,0 +1,534 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.zip;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A pool of zip containers which bounds the number of containers mapped at the same time.
+ *
+ * <h1>Eviction</h1>
+ * When more than {@link #getMaxMappedArchives()} containers are mapped, the least recently used containers which are
+ * not pinned with {@link #acquire(ZipArchive)} are evicted: their mapping is released, but they keep their index and
+ * are mapped again the next time they are accessed. If all the mapped containers are pinned, the maximum is exceeded
+ * until some of them are released.
+ *
+ * <h1>Sharing</h1>
+ * If the pool is shared (see {@link #setShared(boolean)}), opening a file which has already been opened in the pool
+ * returns the same container, as long as the size and the last modification time of the file have not changed. The
+ * central directory of each file is then parsed only once for all the users of the pool.
+ *
+ * <h1>Sessions</h1>
+ * Each user of a shared pool opens its containers in its own session (see {@link #openSession()}). The containers
+ * opened in a session are referenced until the session is closed. When the file of a shared container has been
+ * modified, the container is replaced for the next users, and it is closed when the last session which references it
+ * is closed and it is not pinned anymore. The sessions of several users can be used concurrently.
+ *
+ * <h1>Registered containers</h1>
+ * A container opened outside of the pool, for example a container in memory, can be registered in the pool (see
+ * {@link #register(ZipArchive)}). Opening the file of a registered container returns this container. The registered
+ * containers are identified by the instance of their {@link ZipArchive#getFile() file} rather than by its path, because
+ * the virtual file of a container in memory may have the same path as another virtual file or as a real file.
+ *
+ * <h1>Closing</h1>
+ * All the containers opened by the pool or registered in the pool are closed when the pool is closed.
+ *
+ * @since 0.2
+ */
+public class ZipArchivePool implements Closeable {
+   /**
+    * The default maximum number of containers mapped at the same time.
+    */
+   public static final int DEFAULT_MAX_MAPPED_ARCHIVES = 256;
+   private final int maxMappedArchives;
+   private final List<ZipArchive> archives = new ArrayList<>();
+   // in access order, from the least recently used to the most recently used
+   private final LinkedHashMap<ZipArchive, Boolean> mappedArchives = new LinkedHashMap<>(16, 0.75f, true);
+   private final Map<File, SharedArchive> sharedArchives = new HashMap<>();
+   // keyed by the instance of the file of each container
+   private final Map<File, ZipArchive> registeredArchives = new IdentityHashMap<>();
+   private boolean shared = false;
+   private int mappingsCount = 0;
+   private int openedArchivesCount = 0;
+   private boolean closed = false;
+
+   public ZipArchivePool() {
+      this(DEFAULT_MAX_MAPPED_ARCHIVES);
+   }
+
+   /**
+    * Constructor.
+    *
+    * @param maxMappedArchives the maximum number of containers mapped at the same time
+    */
+   public ZipArchivePool(int maxMappedArchives) {
+      this.maxMappedArchives = Math.max(maxMappedArchives, 1);
+   }
+
+   /**
+    * Return the maximum number of containers mapped at the same time.
+    *
+    * @return the maximum number of containers
+    */
+   public int getMaxMappedArchives() {
+      return maxMappedArchives;
+   }
+
+   /**
+    * Set if the containers are shared. If true, opening a file already opened in the pool returns the same container if
+    * the file has not changed.
+    *
+    * @param shared true if the containers are shared
+    */
+   public synchronized void setShared(boolean shared) {
+      this.shared = shared;
+   }
+
+   /**
+    * Return true if the containers are shared.
+    *
+    * @return true if the containers are shared
+    */
+   public synchronized boolean isShared() {
+      return shared;
+   }
+
+   /**
+    * Return the number of containers which have been opened by the pool, that is the number of central directories
+    * which have been parsed.
+    *
+    * @return the number of opened containers
+    */
+   public synchronized int getOpenedArchivesCount() {
+      return openedArchivesCount;
+   }
+
+   /**
+    * Return the number of containers currently mapped.
+    *
+    * @return the number of containers
+    */
+   public synchronized int getMappedArchivesCount() {
+      return mappedArchives.size();
+   }
+
+   /**
+    * Return the number of times a container of the pool has been mapped, including the first time.
+    *
+    * @return the number of mappings
+    */
+   public synchronized int getMappingsCount() {
+      return mappingsCount;
+   }
+
+   /**
+    * Open a zip container in the pool.
+    *
+    * @param file the zip file
+    * @return the container
+    * @throws IOException
+    */
+   public ZipArchive open(File file) throws IOException {
+      return open(file, null);
+   }
+
+   /**
+    * Open a zip container in the pool, and reference it in a session.
+    *
+    * @param file the zip file
+    * @param session the session, or null
+    * @return the container
+    * @throws IOException
+    */
+   private ZipArchive open(File file, Session session) throws IOException {
+      File key = file.getAbsoluteFile();
+      synchronized (this) {
+         ZipArchive registered = registeredArchives.get(file);
+         if (registered != null) {
+            return reference(registered, session);
+         }
+         if (shared) {
+            SharedArchive sharedArchive = sharedArchives.get(key);
+            if (sharedArchive != null && sharedArchive.isValid(file)) {
+               return reference(sharedArchive.archive, session);
+            }
+         }
+      }
+      long length = file.length();
+      long lastModified = file.lastModified();
+      ZipArchive archive = new ZipArchive(file);
+      List<ZipArchive> toClose = new ArrayList<>();
+      synchronized (this) {
+         if (closed) {
+            archive.close();
+            throw new IOException("The pool has been closed");
+         }
+         if (shared) {
+            // another user may have opened the same file concurrently
+            SharedArchive sharedArchive = sharedArchives.get(key);
+            if (sharedArchive != null && sharedArchive.isValid(file)) {
+               archive.close();
+               return reference(sharedArchive.archive, session);
+            } else if (sharedArchive != null) {
+               retire(sharedArchive.archive, toClose);
+            }
+            sharedArchives.put(key, new SharedArchive(archive, length, lastModified));
+         }
+         openedArchivesCount++;
+         archive.setPool(this);
+         archives.add(archive);
+         reference(archive, session);
+      }
+      for (ZipArchive retired : toClose) {
+         retired.close();
+      }
+      mapped(archive);
+      return archive;
+   }
+
+   /**
+    * Reference a container in a session. A container is only referenced once by each session.
+    *
+    * @param archive the container
+    * @param session the session, or null
+    * @return the container
+    */
+   private ZipArchive reference(ZipArchive archive, Session session) {
+      if (session != null && session.referenced.add(archive)) {
+         archive.users++;
+      }
+      return archive;
+   }
+
+   /**
+    * Retire a shared container which has been replaced or whose file has been modified. The container is closed as soon
+    * as it is not referenced by a session and not pinned anymore.
+    *
+    * @param archive the container
+    * @param toClose the list which receives the container if it can be closed immediately
+    */
+   private void retire(ZipArchive archive, List<ZipArchive> toClose) {
+      archive.retired = true;
+      if (archive.users == 0 && archive.pins == 0) {
+         toClose.add(archive);
+      }
+   }
+
+   /**
+    * Open a session of the pool. The containers opened in the session are referenced until the session is closed, so
+    * that a shared container is not closed while a session may still use it. Closing the session does not close the
+    * containers, except the retired shared containers which are not used anymore.
+    *
+    * @return the session
+    * @since 0.2
+    */
+   public ZipArchivePool openSession() {
+      return new Session(this);
+   }
+
+   /**
+    * Register a container opened outside of the pool. The container will be returned when the same instance as its file
+    * (see {@link ZipArchive#getFile()}) is opened in the pool, and closed when the pool is closed.
+    *
+    * @param archive the container
+    * @throws IOException if the pool has been closed, or if another container with the same instance of file has
+    * already been registered
+    */
+   public void register(ZipArchive archive) throws IOException {
+      synchronized (this) {
+         if (closed) {
+            throw new IOException("The pool has been closed");
+         }
+         ZipArchive registered = registeredArchives.get(archive.getFile());
+         if (registered == archive) {
+            return;
+         } else if (registered != null) {
+            throw new IOException("Another container of " + archive.getFile().getPath() + " has already been registered");
+         }
+         registeredArchives.put(archive.getFile(), archive);
+         openedArchivesCount++;
+         archive.setPool(this);
+         archives.add(archive);
+      }
+      mapped(archive);
+   }
+
+   /**
+    * Pin a container, so that it can not be evicted until it is released, and map it again if it has been evicted.
+    *
+    * @param archive the container
+    * @throws IOException if the container can not be mapped again
+    */
+   public void acquire(ZipArchive archive) throws IOException {
+      synchronized (this) {
+         archive.pins++;
+         // update the access order
+         mappedArchives.get(archive);
+      }
+      archive.ensureMapped();
+   }
+
+   /**
+    * Release a container pinned with {@link #acquire(ZipArchive)}.
+    *
+    * @param archive the container
+    */
+   public void release(ZipArchive archive) {
+      boolean close;
+      synchronized (this) {
+         if (archive.pins > 0) {
+            archive.pins--;
+         }
+         close = archive.retired && archive.users == 0 && archive.pins == 0;
+         evict(null);
+      }
+      if (close) {
+         try {
+            archive.close();
+         } catch (IOException ex) {
+            // the container is released anyway
+         }
+      }
+   }
+
+   /**
+    * Release the containers referenced by a session.
+    *
+    * @param session the session
+    */
+   private void closeSession(Session session) throws IOException {
+      List<ZipArchive> toClose = new ArrayList<>();
+      synchronized (this) {
+         for (ZipArchive archive : session.referenced) {
+            archive.users--;
+            if (archive.retired && archive.users == 0 && archive.pins == 0) {
+               toClose.add(archive);
+            }
+         }
+         session.referenced.clear();
+      }
+      for (ZipArchive archive : toClose) {
+         archive.close();
+      }
+   }
+
+   /**
+    * Called by a container of the pool when it has been mapped.
+    *
+    * @param archive the container
+    */
+   synchronized void mapped(ZipArchive archive) {
+      if (archive.isMapped()) {
+         mappingsCount++;
+         mappedArchives.put(archive, Boolean.TRUE);
+         evict(archive);
+      }
+   }
+
+   /**
+    * Called by a container of the pool when it has been closed.
+    *
+    * @param archive the container
+    */
+   synchronized void closed(ZipArchive archive) {
+      mappedArchives.remove(archive);
+      archives.remove(archive);
+      File key = archive.getFile().getAbsoluteFile();
+      SharedArchive sharedArchive = sharedArchives.get(key);
+      if (sharedArchive != null && sharedArchive.archive == archive) {
+         sharedArchives.remove(key);
+      }
+      if (registeredArchives.get(archive.getFile()) == archive) {
+         registeredArchives.remove(archive.getFile());
+      }
+   }
+
+   private void evict(ZipArchive except) {
+      Iterator<ZipArchive> it = mappedArchives.keySet().iterator();
+      while (mappedArchives.size() > maxMappedArchives && it.hasNext()) {
+         ZipArchive archive = it.next();
+         if (archive.pins == 0 && archive != except) {
+            it.remove();
+            archive.evict();
+         }
+      }
+   }
+
+   /**
+    * Retire the shared containers whose file has been modified since they have been opened. The retired containers
+    * which are not referenced by a session and not pinned are closed immediately, the others are closed when they are
+    * not used anymore. This method can be called while the pool is used, for example after each repackaging.
+    *
+    * @throws IOException
+    */
+   public void closeModifiedArchives() throws IOException {
+      List<ZipArchive> toClose = new ArrayList<>();
+      synchronized (this) {
+         if (!shared) {
+            return;
+         }
+         Iterator<SharedArchive> it = sharedArchives.values().iterator();
+         while (it.hasNext()) {
+            SharedArchive sharedArchive = it.next();
+            if (!sharedArchive.isValid(sharedArchive.archive.getFile())) {
+               it.remove();
+               retire(sharedArchive.archive, toClose);
+            }
+         }
+      }
+      for (ZipArchive archive : toClose) {
+         archive.close();
+      }
+   }
+
+   /**
+    * Close all the containers opened by the pool.
+    *
+    * @throws IOException
+    */
+   @Override
+   public void close() throws IOException {
+      List<ZipArchive> toClose;
+      synchronized (this) {
+         closed = true;
+         toClose = new ArrayList<>(archives);
+      }
+      for (ZipArchive archive : toClose) {
+         archive.close();
+      }
+   }
+
+   /**
+    * A session of a pool, which references the containers opened by one user of the pool. All the other methods are
+    * delegated to the pool.
+    */
+   private static class Session extends ZipArchivePool {
+      private final ZipArchivePool parent;
+      private final Set<ZipArchive> referenced = Collections.newSetFromMap(new IdentityHashMap<ZipArchive, Boolean>());
+
+      private Session(ZipArchivePool parent) {
+         super(parent.getMaxMappedArchives());
+         this.parent = parent;
+      }
+
+      @Override
+      public ZipArchive open(File file) throws IOException {
+         return parent.open(file, this);
+      }
+
+      @Override
+      public void register(ZipArchive archive) throws IOException {
+         parent.register(archive);
+      }
+
+      @Override
+      public void acquire(ZipArchive archive) throws IOException {
+         parent.acquire(archive);
+      }
+
+      @Override
+      public void release(ZipArchive archive) {
+         parent.release(archive);
+      }
+
+      @Override
+      public boolean isShared() {
+         return parent.isShared();
+      }
+
+      @Override
+      public int getOpenedArchivesCount() {
+         return parent.getOpenedArchivesCount();
+      }
+
+      @Override
+      public int getMappedArchivesCount() {
+         return parent.getMappedArchivesCount();
+      }
+
+      @Override
+      public int getMappingsCount() {
+         return parent.getMappingsCount();
+      }
+
+      @Override
+      public ZipArchivePool openSession() {
+         return parent.openSession();
+      }
+
+      @Override
+      public void closeModifiedArchives() throws IOException {
+         parent.closeModifiedArchives();
+      }
+
+      /**
+       * Release the containers referenced by the session. The containers are not closed, except the retired shared
+       * containers which are not used anymore.
+       *
+       * @throws IOException
+       */
+      @Override
+      public void close() throws IOException {
+         parent.closeSession(this);
+      }
+   }
+
+   /**
+    * A container shared by the users of the pool, with the state of its file when it was opened.
+    */
+   private static class SharedArchive {
+      private final ZipArchive archive;
+      private final long length;
+      private final long lastModified;
+
+      private SharedArchive(ZipArchive archive, long length, long lastModified) {
+         this.archive = archive;
+         this.length = length;
+         this.lastModified = lastModified;
+      }
+
+      private boolean isValid(File file) {
+         return file.length() == length && file.lastModified() == lastModified;
+      }
+   }
+}
@@ -0,0 +1,140 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.zip;
+
+/**
+ * The constants of the zip container format used by the zip readers and writers.
+ *
+ * @since 0.2
+ */
+public final class ZipConstants {
+   /**
+    * The local file header signature.
+    */
+   public static final int LOCSIG = 0x04034b50;
+   /**
+    * The central directory file header signature.
+    */
+   public static final int CENSIG = 0x02014b50;
+   /**
+    * The end of central directory record signature.
+    */
+   public static final int ENDSIG = 0x06054b50;
+   /**
+    * The data descriptor signature.
+    */
+   public static final int EXTSIG = 0x08074b50;
+   /**
+    * The Zip64 end of central directory record signature.
+    */
+   public static final int ZIP64_ENDSIG = 0x06064b50;
+   /**
+    * The Zip64 end of central directory locator signature.
+    */
+   public static final int ZIP64_LOCSIG = 0x07064b50;
+   /**
+    * The size of the fixed part of a local file header.
+    */
+   public static final int LOCHDR = 30;
+   /**
+    * The size of the fixed part of a central directory file header.
+    */
+   public static final int CENHDR = 46;
+   /**
+    * The size of the fixed part of the end of central directory record.
+    */
+   public static final int ENDHDR = 22;
+   /**
+    * The size of the Zip64 end of central directory record.
+    */
+   public static final int ZIP64_ENDHDR = 56;
+   /**
+    * The size of the Zip64 end of central directory locator.
+    */
+   public static final int ZIP64_LOCHDR = 20;
+   /**
+    * The size of a data descriptor with Zip64 sizes.
+    */
+   public static final int ZIP64_EXTHDR = 24;
+   /**
+    * The header id of the Zip64 extended information extra field.
+    */
+   public static final int ZIP64_EXTID = 0x0001;
+   /**
+    * The value of the sizes and offsets which are stored in the Zip64 extended information extra field.
+    */
+   public static final long ZIP64_MAGICVAL = 0xFFFFFFFFL;
+   /**
+    * The value of the number of entries in the end of central directory record if the number of entries is stored in
+    * the Zip64 end of central directory record.
+    */
+   public static final int ZIP64_MAGICCOUNT = 0xFFFF;
+   /**
+    * The maximum length of the zip file comment.
+    */
+   public static final int MAX_COMMENT = 0xFFFF;
+   /**
+    * The STORED compression method.
+    */
+   public static final int STORED = 0;
+   /**
+    * The DEFLATED compression method.
+    */
+   public static final int DEFLATED = 8;
+   /**
+    * The general purpose flag specifying that the entry is encrypted.
+    */
+   public static final int FLAG_ENCRYPTED = 0x01;
+   /**
+    * The general purpose flag specifying that the sizes and the CRC are in a data descriptor after the data.
+    */
+   public static final int FLAG_DATA_DESCRIPTOR = 0x08;
+   /**
+    * The general purpose flag specifying that the entry name is encoded in UTF-8.
+    */
+   public static final int FLAG_UTF8 = 0x800;
+   /**
+    * The version needed to extract STORED entries.
+    */
+   public static final int VERSION_STORED = 10;
+   /**
+    * The version needed to extract DEFLATED entries.
+    */
+   public static final int VERSION_DEFLATED = 20;
+   /**
+    * The version needed to extract entries which use the Zip64 extensions.
+    */
+   public static final int VERSION_ZIP64 = 45;
+
+   private ZipConstants() {
+   }
+}
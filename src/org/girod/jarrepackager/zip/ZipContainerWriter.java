@@ -0,0 +1,1030 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+
+package org.girod.jarrepackager.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * A writer for zip containers. Contrary to the {@link java.util.zip.ZipOutputStream}, this writer allows to copy the
+ * compressed data of an entry of another zip container without inflating and deflating them again.
+ *
+ * <h1>Parallel compression</h1>
+ * The entries which must be compressed can be deflated on a pool of worker threads (see
+ * {@link #setCompressionThreads(int)}). The entries are always written in the order in which they were declared, by the
+ * thread which declared them, so the resulting container is identical to the one produced with only one thread. The
+ * number of uncompressed bytes of the entries which are compressed but not yet written is bounded by
+ * {@link #setMaxInFlightBytes(long)}.
+ *
+ * <h1>Entry names</h1>
+ * The names of the entries are encoded during the call which declares the entry, so the same {@link StringBuilder} can
+ * be reused to build the names of all the entries.
+ *
+ * <h1>Output channel</h1>
+ * The headers and the data are accumulated in a large write buffer (a direct buffer if the container is written to a
+ * {@link FileChannel}), the compressed data of the copied entries being written directly from the mapping of their
+ * source container when they do not fit in this buffer. When the container is written to a {@link FileChannel}, the
+ * entries which are deflated by the calling thread are streamed to the container: the space of their local header is
+ * reserved, and the header is written at its reserved offset when the CRC and the sizes of the entry are known. The
+ * central directory is written in one gathered write at the end of the container.
+ *
+ * <h1>Compression method</h1>
+ * The new entries are deflated by default. They can also be stored, or deflated with another level (see
+ * {@link #writeEntry(CharSequence, long, long, ZipEntrySource, int, int)}). With the {@link #AUTO} method, the beginning
+ * of the content of the entry is sampled, and the entry is stored if the {@link CompressibilityDetector} detects that it
+ * is already compressed.
+ *
+ * <h1>Zip64</h1>
+ * The Zip64 extensions are used automatically for the entries whose sizes or offset do not fit in 32 bits, and for the
+ * container if it has more than 65535 entries or if its central directory starts after 4 GB. The local header of an
+ * entry which is streamed to a {@link FileChannel} contains a Zip64 extra field if its declared size does not fit in
+ * 32 bits. If the size of the entry was unknown and does not fit in 32 bits, its sizes are written in a data
+ * descriptor after its data.
+ *
+ * @since 0.2
+ */
+public class ZipContainerWriter implements Closeable {
+   /**
+    * The default maximum number of bytes of the entries which are compressed but not yet written.
+    */
+   public static final long DEFAULT_MAX_INFLIGHT_BYTES = 64L * 1024 * 1024;
+   /**
+    * The size of the write buffer.
+    */
+   public static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+   /**
+    * The method of the entries which are deflated, unless the beginning of their content shows that they are
+    * incompressible, in which case they are stored.
+    */
+   public static final int AUTO = -1;
+   private static final int BUFFER_SIZE = 64 * 1024;
+   private static final int MAX_REGION_SIZE = 1 << 30;
+   private static final int CENTRAL_CHUNK_SIZE = 8 * 1024 * 1024;
+   private final WritableByteChannel channel;
+   private final FileChannel fileChannel;
+   private final ByteBuffer buffer;
+   private long channelStart = 0;
+   private final List<CentralEntry> centralEntries = new ArrayList<>();
+   private final ZipNameSet names = new ZipNameSet();
+   private final Deque<PendingEntry> pendingEntries = new ArrayDeque<>();
+   private int compressionThreads = 1;
+   private long maxInFlightBytes = DEFAULT_MAX_INFLIGHT_BYTES;
+   private long inFlightBytes = 0;
+   private ExecutorService executor = null;
+   private boolean sharedExecutor = false;
+   private long offset = 0;
+   private boolean finished = false;
+   private boolean closeChannel = true;
+   private long fixedDosTime = -1;
+
+   /**
+    * Constructor.
+    *
+    * @param out the output stream
+    */
+   public ZipContainerWriter(OutputStream out) {
+      this(Channels.newChannel(out));
+   }
+
+   /**
+    * Constructor. The channel is written sequentially, even if it is a {@link FileChannel}, so it can be a pipe or the
+    * channel of the standard output.
+    *
+    * @param channel the channel
+    */
+   public ZipContainerWriter(WritableByteChannel channel) {
+      this.channel = channel;
+      this.fileChannel = null;
+      this.buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+   }
+
+   /**
+    * Constructor. The container is written from the current position of the channel, which must be writable.
+    *
+    * @param channel the file channel
+    * @throws IOException
+    */
+   public ZipContainerWriter(FileChannel channel) throws IOException {
+      this.channel = channel;
+      this.fileChannel = channel;
+      this.buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      this.channelStart = channel.position();
+   }
+
+   /**
+    * Constructor. The file is created if it does not exist, and truncated if it exists.
+    *
+    * @param file the file
+    * @throws IOException
+    */
+   public ZipContainerWriter(File file) throws IOException {
+      this(FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+         StandardOpenOption.WRITE));
+   }
+
+   /**
+    * Set if the underlying channel is closed when the container is closed. If false, closing the container only
+    * finishes it, so that the caller can continue to use its channel.
+    *
+    * @param closeChannel true to close the channel (the default)
+    */
+   public void setCloseChannel(boolean closeChannel) {
+      this.closeChannel = closeChannel;
+   }
+
+   /**
+    * Set a fixed last modification time and date for all the entries, including the copied entries, for example to
+    * produce reproducible containers.
+    *
+    * @param fixedDosTime the time and date in MS-DOS format, or -1 to keep the time and date of each entry
+    */
+   public void setFixedDosTime(long fixedDosTime) {
+      this.fixedDosTime = fixedDosTime;
+   }
+
+   /**
+    * Return the fixed last modification time and date of the entries.
+    *
+    * @return the time and date in MS-DOS format, or -1 if the time and date of each entry are kept
+    */
+   public long getFixedDosTime() {
+      return fixedDosTime;
+   }
+
+   /**
+    * Set the number of threads used to compress the entries. With only one thread, the entries are compressed by the
+    * thread which declares them.
+    *
+    * @param compressionThreads the number of threads
+    */
+   public void setCompressionThreads(int compressionThreads) {
+      this.compressionThreads = Math.max(1, compressionThreads);
+   }
+
+   /**
+    * Return the number of threads used to compress the entries.
+    *
+    * @return the number of threads
+    */
+   public int getCompressionThreads() {
+      return compressionThreads;
+   }
+
+   /**
+    * Set the executor used to compress the entries if there is more than one compression thread, so that it can be
+    * shared by several writers. The executor is not shut down by the writer.
+    *
+    * @param executor the executor, or null to create an executor of {@link #getCompressionThreads()} threads
+    */
+   public void setCompressionExecutor(ExecutorService executor) {
+      this.executor = executor;
+      this.sharedExecutor = executor != null;
+   }
+
+   /**
+    * Set the maximum number of uncompressed bytes of the entries which are compressed but not yet written.
+    *
+    * @param maxInFlightBytes the maximum number of bytes
+    */
+   public void setMaxInFlightBytes(long maxInFlightBytes) {
+      this.maxInFlightBytes = Math.max(1, maxInFlightBytes);
+   }
+
+   /**
+    * Return the maximum number of uncompressed bytes of the entries which are compressed but not yet written.
+    *
+    * @return the maximum number of bytes
+    */
+   public long getMaxInFlightBytes() {
+      return maxInFlightBytes;
+   }
+
+   /**
+    * Convert a Java time to a MS-DOS time and date.
+    *
+    * @param time the Java time
+    * @return the MS-DOS time and date
+    */
+   public static long toDosTime(long time) {
+      return toDosTime(time, TimeZone.getDefault());
+   }
+
+   /**
+    * Convert a Java time to a MS-DOS time and date in a time zone.
+    *
+    * @param time the Java time
+    * @param zone the time zone
+    * @return the MS-DOS time and date
+    */
+   public static long toDosTime(long time, TimeZone zone) {
+      Calendar cal = Calendar.getInstance(zone);
+      cal.setTimeInMillis(time);
+      int year = cal.get(Calendar.YEAR);
+      if (year < 1980) {
+         return (1 << 21) | (1 << 16);
+      }
+      return ((year - 1980) << 25 | (cal.get(Calendar.MONTH) + 1) << 21 | cal.get(Calendar.DAY_OF_MONTH) << 16
+         | cal.get(Calendar.HOUR_OF_DAY) << 11 | cal.get(Calendar.MINUTE) << 5 | cal.get(Calendar.SECOND) >> 1) & 0xFFFFFFFFL;
+   }
+
+   /**
+    * Encode a name in UTF-8. If the name is not a String, no intermediate String is created.
+    *
+    * @param name the name
+    * @return the encoded name
+    */
+   static byte[] encodeUTF8(CharSequence name) {
+      if (name instanceof String) {
+         return ((String) name).getBytes(StandardCharsets.UTF_8);
+      }
+      int length = name.length();
+      int size = 0;
+      for (int i = 0; i < length; i++) {
+         char c = name.charAt(i);
+         if (c < 0x80) {
+            size++;
+         } else if (c < 0x800) {
+            size += 2;
+         } else if (!Character.isSurrogate(c)) {
+            size += 3;
+         } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(name.charAt(i + 1))) {
+            size += 4;
+            i++;
+         } else {
+            // unpaired surrogates are replaced by '?', as String.getBytes does
+            size++;
+         }
+      }
+      byte[] bytes = new byte[size];
+      int pos = 0;
+      for (int i = 0; i < length; i++) {
+         char c = name.charAt(i);
+         if (c < 0x80) {
+            bytes[pos++] = (byte) c;
+         } else if (c < 0x800) {
+            bytes[pos++] = (byte) (0xC0 | (c >> 6));
+            bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+         } else if (!Character.isSurrogate(c)) {
+            bytes[pos++] = (byte) (0xE0 | (c >> 12));
+            bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+         } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(name.charAt(i + 1))) {
+            int codePoint = Character.toCodePoint(c, name.charAt(++i));
+            bytes[pos++] = (byte) (0xF0 | (codePoint >> 18));
+            bytes[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            bytes[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            bytes[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+         } else {
+            bytes[pos++] = '?';
+         }
+      }
+      return bytes;
+   }
+
+   private byte[] encodeName(CharSequence name) throws ZipException {
+      byte[] nameBytes = encodeUTF8(name);
+      if (!names.add(nameBytes)) {
+         throw new ZipException("duplicate entry: " + name);
+      }
+      return nameBytes;
+   }
+
+   /**
+    * Return true if an entry of a specified name has already been declared in this container.
+    *
+    * @param name the entry name
+    * @return true if the entry has already been declared
+    */
+   public boolean containsEntry(String name) {
+      return names.contains(name);
+   }
+
+   /**
+    * Write all the entries which have been declared but not yet written. This method must be called before closing a
+    * source container of the declared entries.
+    *
+    * @throws IOException
+    */
+   public void flush() throws IOException {
+      writePendingEntries();
+      flushBuffer();
+   }
+
+   private static int getFlags(CharSequence name, byte[] nameBytes) {
+      return nameBytes.length != name.length() ? ZipConstants.FLAG_UTF8 : 0;
+   }
+
+   /**
+    * Copy an entry of another zip container, without recompressing it. Encrypted entries are rejected, because their
+    * encryption header would not be described by the flags of the copy.
+    *
+    * @param name the name of the entry in this container
+    * @param archive the source container
+    * @param index the index of the source entry in the source container
+    * @throws IOException
+    */
+   public void writeRawEntry(CharSequence name, ZipArchive archive, int index) throws IOException {
+      archive.checkNotEncrypted(index);
+      byte[] nameBytes = encodeName(name);
+      PendingEntry pending = new PendingEntry(nameBytes, getFlags(name, nameBytes), archive.getDosTime(index), 0);
+      pending.archive = archive;
+      pending.rawIndex = index;
+      if (pendingEntries.isEmpty()) {
+         writePendingEntry(pending);
+      } else {
+         pendingEntries.add(pending);
+      }
+   }
+
+   /**
+    * Write a new entry, deflating its content. The content is deflated by the calling thread.
+    *
+    * @param name the name of the entry
+    * @param dosTime the last modification time and date of the entry, in MS-DOS format
+    * @param in the uncompressed content of the entry
+    * @throws IOException
+    */
+   public void writeEntry(CharSequence name, long dosTime, InputStream in) throws IOException {
+      byte[] nameBytes = encodeName(name);
+      if (fileChannel != null) {
+         writePendingEntries();
+         streamEntry(nameBytes, getFlags(name, nameBytes), dosTime, -1, in, ZipConstants.DEFLATED, Deflater.DEFAULT_COMPRESSION);
+         return;
+      }
+      PendingEntry pending = new PendingEntry(nameBytes, getFlags(name, nameBytes), dosTime, 0);
+      pending.data = encode(in, ZipConstants.DEFLATED, Deflater.DEFAULT_COMPRESSION);
+      if (pendingEntries.isEmpty()) {
+         writePendingEntry(pending);
+      } else {
+         pendingEntries.add(pending);
+      }
+   }
+
+   /**
+    * Write a new entry, deflating its content. The content may be deflated by one of the compression threads, but the
+    * entry will be written at its place in the order of declaration of the entries.
+    *
+    * @param name the name of the entry
+    * @param dosTime the last modification time and date of the entry, in MS-DOS format
+    * @param size the uncompressed size of the entry, or an estimate of this size, or -1 if it is unknown
+    * @param source the source of the uncompressed content of the entry
+    * @throws IOException
+    */
+   public void writeEntry(CharSequence name, long dosTime, long size, ZipEntrySource source) throws IOException {
+      writeEntry(name, dosTime, size, source, ZipConstants.DEFLATED, Deflater.DEFAULT_COMPRESSION);
+   }
+
+   /**
+    * Write a new entry with a compression method. The content may be encoded by one of the compression threads, but
+    * the entry will be written at its place in the order of declaration of the entries.
+    *
+    * @param name the name of the entry
+    * @param dosTime the last modification time and date of the entry, in MS-DOS format
+    * @param size the uncompressed size of the entry, or an estimate of this size, or -1 if it is unknown
+    * @param source the source of the uncompressed content of the entry
+    * @param method the method: {@link ZipConstants#STORED}, {@link ZipConstants#DEFLATED} or {@link #AUTO}
+    * @param level the deflate level, or {@link Deflater#DEFAULT_COMPRESSION}
+    * @throws IOException
+    */
+   public void writeEntry(CharSequence name, long dosTime, long size, final ZipEntrySource source, final int method, final int level) throws IOException {
+      byte[] nameBytes = encodeName(name);
+      long cost = size >= 0 ? size : BUFFER_SIZE;
+      PendingEntry pending = new PendingEntry(nameBytes, getFlags(name, nameBytes), dosTime, cost);
+      if (fileChannel != null && size > maxInFlightBytes) {
+         // an entry which is too large to be kept in memory is streamed to the container
+         writePendingEntries();
+         try (InputStream in = source.openStream()) {
+            streamEntry(nameBytes, pending.flags, dosTime, size, in, method, level);
+         }
+         return;
+      }
+      if (compressionThreads == 1) {
+         try (InputStream in = source.openStream()) {
+            if (fileChannel != null && pendingEntries.isEmpty()) {
+               streamEntry(nameBytes, pending.flags, dosTime, size, in, method, level);
+               return;
+            }
+            pending.data = encode(in, method, level);
+         }
+         if (pendingEntries.isEmpty()) {
+            writePendingEntry(pending);
+         } else {
+            pendingEntries.add(pending);
+         }
+         return;
+      }
+      if (executor == null) {
+         executor = Executors.newFixedThreadPool(compressionThreads);
+      }
+      pending.future = executor.submit(new Callable<DeflatedData>() {
+         @Override
+         public DeflatedData call() throws Exception {
+            try (InputStream in = source.openStream()) {
+               return encode(in, method, level);
+            }
+         }
+      });
+      pendingEntries.add(pending);
+      inFlightBytes += cost;
+      while (inFlightBytes > maxInFlightBytes && !pendingEntries.isEmpty()) {
+         writePendingEntry(pendingEntries.poll());
+      }
+      // write the entries which are already available without waiting
+      while (!pendingEntries.isEmpty() && pendingEntries.peek().isDone()) {
+         writePendingEntry(pendingEntries.poll());
+      }
+   }
+
+   /**
+    * Read a chunk of a stream, until the buffer is full or the end of the stream is reached.
+    *
+    * @return the number of bytes read
+    */
+   private static int readChunk(InputStream in, byte[] buf) throws IOException {
+      int count = 0;
+      int len;
+      while (count < buf.length && (len = in.read(buf, count, buf.length - count)) > 0) {
+         count += len;
+      }
+      return count;
+   }
+
+   /**
+    * Return the method of an entry, sampling the first chunk of its content for the {@link #AUTO} method.
+    */
+   private static int resolveMethod(int method, byte[] chunk, int len) {
+      if (method != AUTO) {
+         return method;
+      }
+      return CompressibilityDetector.isIncompressible(chunk, 0, len) ? ZipConstants.STORED : ZipConstants.DEFLATED;
+   }
+
+   private static DeflatedData encode(InputStream in, int method, int level) throws IOException {
+      CRC32 crc = new CRC32();
+      CompressedBuffer compressed = new CompressedBuffer();
+      byte[] buf = new byte[BUFFER_SIZE];
+      int len = readChunk(in, buf);
+      method = resolveMethod(method, buf, len);
+      long size = 0;
+      if (method == ZipConstants.STORED) {
+         while (len > 0) {
+            crc.update(buf, 0, len);
+            compressed.write(buf, 0, len);
+            size += len;
+            len = in.read(buf);
+         }
+         return new DeflatedData(ZipConstants.STORED, compressed, crc.getValue(), size);
+      }
+      Deflater deflater = new Deflater(level, true);
+      try (DeflaterOutputStream dout = new DeflaterOutputStream(compressed, deflater, BUFFER_SIZE)) {
+         while (len > 0) {
+            crc.update(buf, 0, len);
+            dout.write(buf, 0, len);
+            size += len;
+            len = in.read(buf);
+         }
+      } finally {
+         deflater.end();
+      }
+      return new DeflatedData(ZipConstants.DEFLATED, compressed, crc.getValue(), size);
+   }
+
+   /**
+    * Deflate an entry directly in the container. The space of the local header is reserved before the compressed data,
+    * and the header is written at its offset when the CRC and the sizes of the entry are known.
+    */
+   private void streamEntry(byte[] name, int flags, long dosTime, long expectedSize, InputStream in, int method, int level) throws IOException {
+      long headerOffset = offset;
+      boolean localZip64 = expectedSize >= ZipConstants.ZIP64_MAGICVAL;
+      int headerLength = getLocalHeaderLength(name, localZip64);
+      reserve(headerLength);
+      CRC32 crc = new CRC32();
+      byte[] inBuf = new byte[BUFFER_SIZE];
+      int len = readChunk(in, inBuf);
+      method = resolveMethod(method, inBuf, len);
+      long size = 0;
+      if (method == ZipConstants.STORED) {
+         while (len > 0) {
+            crc.update(inBuf, 0, len);
+            put(inBuf, 0, len);
+            size += len;
+            len = in.read(inBuf);
+         }
+      } else {
+         Deflater deflater = new Deflater(level, true);
+         byte[] outBuf = new byte[BUFFER_SIZE];
+         try {
+            while (len > 0) {
+               crc.update(inBuf, 0, len);
+               deflater.setInput(inBuf, 0, len);
+               while (!deflater.needsInput()) {
+                  put(outBuf, 0, deflater.deflate(outBuf));
+               }
+               size += len;
+               len = in.read(inBuf);
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+               put(outBuf, 0, deflater.deflate(outBuf));
+            }
+         } finally {
+            deflater.end();
+         }
+      }
+      long compressedSize = offset - headerOffset - headerLength;
+      if (!localZip64 && (size >= ZipConstants.ZIP64_MAGICVAL || compressedSize >= ZipConstants.ZIP64_MAGICVAL)) {
+         // there is no room for the Zip64 sizes in the local header
+         flags |= ZipConstants.FLAG_DATA_DESCRIPTOR;
+      }
+      CentralEntry cen = new CentralEntry(name, flags, method, getEntryTime(dosTime), crc.getValue(), compressedSize, size,
+         headerOffset);
+      cen.localZip64 = localZip64;
+      ByteBuffer header = ByteBuffer.allocate(headerLength).order(ByteOrder.LITTLE_ENDIAN);
+      putLocalHeader(header, cen);
+      header.flip();
+      writeAt(header, headerOffset);
+      if ((flags & ZipConstants.FLAG_DATA_DESCRIPTOR) != 0) {
+         ensureCapacity(ZipConstants.ZIP64_EXTHDR);
+         buffer.putInt(ZipConstants.EXTSIG);
+         buffer.putInt((int) cen.crc);
+         buffer.putLong(cen.compressedSize);
+         buffer.putLong(cen.size);
+         offset += ZipConstants.ZIP64_EXTHDR;
+      }
+      centralEntries.add(cen);
+   }
+
+   private long getEntryTime(long dosTime) {
+      return fixedDosTime != -1 ? fixedDosTime : dosTime;
+   }
+
+   private void writePendingEntry(PendingEntry pending) throws IOException {
+      inFlightBytes -= pending.cost;
+      CentralEntry cen;
+      if (pending.archive != null) {
+         ZipArchive archive = pending.archive;
+         int index = pending.rawIndex;
+         cen = new CentralEntry(pending.name, pending.flags, archive.getMethod(index), getEntryTime(pending.dosTime),
+            archive.getCrc(index), archive.getCompressedSize(index), archive.getSize(index), offset);
+         writeLocalHeader(cen);
+         if (cen.compressedSize <= MAX_REGION_SIZE) {
+            put(archive.getRawData(index));
+         } else {
+            for (long position = 0; position < cen.compressedSize; position += MAX_REGION_SIZE) {
+               put(archive.getRawData(index, position, (int) Math.min(MAX_REGION_SIZE, cen.compressedSize - position)));
+            }
+         }
+      } else {
+         DeflatedData data = pending.getData();
+         cen = new CentralEntry(pending.name, pending.flags, data.method, getEntryTime(pending.dosTime),
+            data.crc, data.compressed.size(), data.size, offset);
+         writeLocalHeader(cen);
+         put(data.compressed.toByteBuffer());
+      }
+      centralEntries.add(cen);
+   }
+
+   private void writePendingEntries() throws IOException {
+      while (!pendingEntries.isEmpty()) {
+         writePendingEntry(pendingEntries.poll());
+      }
+   }
+
+   private void writeFully(ByteBuffer src) throws IOException {
+      while (src.hasRemaining()) {
+         channel.write(src);
+      }
+   }
+
+   private void flushBuffer() throws IOException {
+      buffer.flip();
+      writeFully(buffer);
+      buffer.clear();
+   }
+
+   private void ensureCapacity(int length) throws IOException {
+      if (buffer.remaining() < length) {
+         flushBuffer();
+      }
+   }
+
+   private void reserve(int length) throws IOException {
+      ensureCapacity(length);
+      buffer.position(buffer.position() + length);
+      offset += length;
+   }
+
+   private void put(byte[] bytes, int off, int len) throws IOException {
+      put(ByteBuffer.wrap(bytes, off, len));
+   }
+
+   /**
+    * Write bytes at the current offset. The bytes which do not fit in the write buffer are written directly.
+    */
+   private void put(ByteBuffer src) throws IOException {
+      int length = src.remaining();
+      if (length > buffer.remaining()) {
+         flushBuffer();
+         if (length > buffer.remaining()) {
+            writeFully(src);
+            offset += length;
+            return;
+         }
+      }
+      buffer.put(src);
+      offset += length;
+   }
+
+   /**
+    * Write bytes at an offset which has been reserved before. If the reserved space has not been flushed yet, the bytes
+    * are written in the write buffer, else they are written at their position in the file.
+    */
+   private void writeAt(ByteBuffer src, long position) throws IOException {
+      long bufferOffset = offset - buffer.position();
+      if (position >= bufferOffset) {
+         ByteBuffer dst = buffer.duplicate();
+         dst.position((int) (position - bufferOffset));
+         dst.put(src);
+      } else {
+         long filePosition = channelStart + position;
+         while (src.hasRemaining()) {
+            filePosition += fileChannel.write(src, filePosition);
+         }
+      }
+   }
+
+   private static int getLocalHeaderLength(byte[] name, boolean zip64) {
+      return ZipConstants.LOCHDR + name.length + (zip64 ? 20 : 0);
+   }
+
+   private static void putLocalHeader(ByteBuffer buf, CentralEntry cen) {
+      buf.putInt(ZipConstants.LOCSIG);
+      buf.putShort((short) cen.getVersionNeeded());
+      buf.putShort((short) cen.flags);
+      buf.putShort((short) cen.method);
+      buf.putInt((int) cen.dosTime);
+      if ((cen.flags & ZipConstants.FLAG_DATA_DESCRIPTOR) != 0) {
+         buf.putInt(0);
+         buf.putInt(0);
+         buf.putInt(0);
+      } else if (cen.localZip64) {
+         buf.putInt((int) cen.crc);
+         buf.putInt((int) ZipConstants.ZIP64_MAGICVAL);
+         buf.putInt((int) ZipConstants.ZIP64_MAGICVAL);
+      } else {
+         buf.putInt((int) cen.crc);
+         buf.putInt((int) cen.compressedSize);
+         buf.putInt((int) cen.size);
+      }
+      buf.putShort((short) cen.name.length);
+      buf.putShort((short) (cen.localZip64 ? 20 : 0));
+      buf.put(cen.name);
+      if (cen.localZip64) {
+         buf.putShort((short) ZipConstants.ZIP64_EXTID);
+         buf.putShort((short) 16);
+         buf.putLong(cen.size);
+         buf.putLong(cen.compressedSize);
+      }
+   }
+
+   private void writeLocalHeader(CentralEntry cen) throws IOException {
+      cen.localZip64 = cen.size >= ZipConstants.ZIP64_MAGICVAL || cen.compressedSize >= ZipConstants.ZIP64_MAGICVAL;
+      int length = getLocalHeaderLength(cen.name, cen.localZip64);
+      ensureCapacity(length);
+      putLocalHeader(buffer, cen);
+      offset += length;
+   }
+
+   private static void putCentralHeader(ByteBuffer buf, CentralEntry cen) {
+      boolean zip64Size = cen.size >= ZipConstants.ZIP64_MAGICVAL;
+      boolean zip64CompressedSize = cen.compressedSize >= ZipConstants.ZIP64_MAGICVAL;
+      boolean zip64Offset = cen.offset >= ZipConstants.ZIP64_MAGICVAL;
+      buf.putInt(ZipConstants.CENSIG);
+      buf.putShort((short) cen.getVersionNeeded());
+      buf.putShort((short) cen.getVersionNeeded());
+      buf.putShort((short) cen.flags);
+      buf.putShort((short) cen.method);
+      buf.putInt((int) cen.dosTime);
+      buf.putInt((int) cen.crc);
+      buf.putInt((int) (zip64CompressedSize ? ZipConstants.ZIP64_MAGICVAL : cen.compressedSize));
+      buf.putInt((int) (zip64Size ? ZipConstants.ZIP64_MAGICVAL : cen.size));
+      buf.putShort((short) cen.name.length);
+      buf.putShort((short) cen.getCentralExtraLength());
+      buf.putShort((short) 0);
+      buf.putShort((short) 0);
+      buf.putShort((short) 0);
+      buf.putInt(0);
+      buf.putInt((int) (zip64Offset ? ZipConstants.ZIP64_MAGICVAL : cen.offset));
+      buf.put(cen.name);
+      if (cen.getCentralExtraLength() > 0) {
+         buf.putShort((short) ZipConstants.ZIP64_EXTID);
+         buf.putShort((short) (cen.getCentralExtraLength() - 4));
+         if (zip64Size) {
+            buf.putLong(cen.size);
+         }
+         if (zip64CompressedSize) {
+            buf.putLong(cen.compressedSize);
+         }
+         if (zip64Offset) {
+            buf.putLong(cen.offset);
+         }
+      }
+   }
+
+   /**
+    * Write the central directory. No entries can be added after this method has been called.
+    *
+    * @throws IOException
+    */
+   public void finish() throws IOException {
+      if (finished) {
+         return;
+      }
+      finished = true;
+      writePendingEntries();
+      long count = centralEntries.size();
+      long cenOffset = offset;
+      long cenSize = 0;
+      for (CentralEntry cen : centralEntries) {
+         cenSize += cen.getCentralHeaderLength();
+      }
+      // the remaining content of the write buffer, the central directory and its end records are written at once
+      List<ByteBuffer> buffers = new ArrayList<>();
+      buffer.flip();
+      buffers.add(buffer);
+      ByteBuffer central = null;
+      long remaining = cenSize;
+      for (CentralEntry cen : centralEntries) {
+         int length = cen.getCentralHeaderLength();
+         if (central == null || central.remaining() < length) {
+            if (central != null) {
+               central.flip();
+               buffers.add(central);
+            }
+            central = ByteBuffer.allocate((int) Math.max(length, Math.min(CENTRAL_CHUNK_SIZE, remaining)));
+            central.order(ByteOrder.LITTLE_ENDIAN);
+         }
+         putCentralHeader(central, cen);
+         remaining -= length;
+      }
+      if (central != null) {
+         central.flip();
+         buffers.add(central);
+      }
+      boolean zip64 = count >= ZipConstants.ZIP64_MAGICCOUNT || cenSize >= ZipConstants.ZIP64_MAGICVAL
+         || cenOffset >= ZipConstants.ZIP64_MAGICVAL;
+      ByteBuffer end = ByteBuffer.allocate((zip64 ? ZipConstants.ZIP64_ENDHDR + ZipConstants.ZIP64_LOCHDR : 0)
+         + ZipConstants.ENDHDR).order(ByteOrder.LITTLE_ENDIAN);
+      if (zip64) {
+         end.putInt(ZipConstants.ZIP64_ENDSIG);
+         end.putLong(ZipConstants.ZIP64_ENDHDR - 12);
+         end.putShort((short) ZipConstants.VERSION_ZIP64);
+         end.putShort((short) ZipConstants.VERSION_ZIP64);
+         end.putInt(0);
+         end.putInt(0);
+         end.putLong(count);
+         end.putLong(count);
+         end.putLong(cenSize);
+         end.putLong(cenOffset);
+         end.putInt(ZipConstants.ZIP64_LOCSIG);
+         end.putInt(0);
+         end.putLong(cenOffset + cenSize);
+         end.putInt(1);
+      }
+      end.putInt(ZipConstants.ENDSIG);
+      end.putShort((short) 0);
+      end.putShort((short) 0);
+      end.putShort((short) Math.min(count, ZipConstants.ZIP64_MAGICCOUNT));
+      end.putShort((short) Math.min(count, ZipConstants.ZIP64_MAGICCOUNT));
+      end.putInt((int) Math.min(cenSize, ZipConstants.ZIP64_MAGICVAL));
+      end.putInt((int) Math.min(cenOffset, ZipConstants.ZIP64_MAGICVAL));
+      end.putShort((short) 0);
+      end.flip();
+      buffers.add(end);
+      ByteBuffer[] gathered = buffers.toArray(new ByteBuffer[buffers.size()]);
+      if (channel instanceof GatheringByteChannel) {
+         GatheringByteChannel gathering = (GatheringByteChannel) channel;
+         while (end.hasRemaining()) {
+            gathering.write(gathered);
+         }
+      } else {
+         for (ByteBuffer buf : gathered) {
+            writeFully(buf);
+         }
+      }
+      buffer.clear();
+      offset += cenSize + end.capacity();
+   }
+
+   /**
+    * Finish the container and close the underlying channel.
+    *
+    * @throws IOException
+    */
+   @Override
+   public void close() throws IOException {
+      try {
+         finish();
+      } finally {
+         if (sharedExecutor) {
+            // the entries of this container which are still compressed must not be left in the shared executor
+            for (PendingEntry pending : pendingEntries) {
+               if (pending.future != null) {
+                  pending.future.cancel(true);
+               }
+            }
+         } else if (executor != null) {
+            executor.shutdownNow();
+         }
+         if (closeChannel) {
+            channel.close();
+         }
+      }
+   }
+
+   /**
+    * A byte array output stream whose content can be wrapped without copying it.
+    */
+   private static class CompressedBuffer extends ByteArrayOutputStream {
+      private CompressedBuffer() {
+         super(BUFFER_SIZE);
+      }
+
+      private ByteBuffer toByteBuffer() {
+         return ByteBuffer.wrap(buf, 0, count);
+      }
+   }
+
+   /**
+    * The compressed content of an entry.
+    */
+   private static class DeflatedData {
+      private final int method;
+      private final CompressedBuffer compressed;
+      private final long crc;
+      private final long size;
+
+      private DeflatedData(int method, CompressedBuffer compressed, long crc, long size) {
+         this.method = method;
+         this.compressed = compressed;
+         this.crc = crc;
+         this.size = size;
+      }
+   }
+
+   /**
+    * An entry which has been declared but not yet written.
+    */
+   private static class PendingEntry {
+      private final byte[] name;
+      private final int flags;
+      private final long dosTime;
+      private final long cost;
+      private ZipArchive archive = null;
+      private int rawIndex = -1;
+      private DeflatedData data = null;
+      private Future<DeflatedData> future = null;
+
+      private PendingEntry(byte[] name, int flags, long dosTime, long cost) {
+         this.name = name;
+         this.flags = flags;
+         this.dosTime = dosTime;
+         this.cost = cost;
+      }
+
+      private boolean isDone() {
+         return future == null || future.isDone();
+      }
+
+      private DeflatedData getData() throws IOException {
+         if (future == null) {
+            return data;
+         }
+         try {
+            return future.get();
+         } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Compression interrupted", ex);
+         } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+               throw (IOException) cause;
+            } else {
+               throw new IOException(cause);
+            }
+         }
+      }
+   }
+
+   /**
+    * The description of an entry which must be written in the central directory.
+    */
+   private static class CentralEntry {
+      private final byte[] name;
+      private final int flags;
+      private boolean localZip64 = false;
+      private final int method;
+      private final long dosTime;
+      private final long crc;
+      private final long compressedSize;
+      private final long size;
+      private final long offset;
+
+      private CentralEntry(byte[] name, int flags, int method, long dosTime, long crc, long compressedSize, long size, long offset) {
+         this.name = name;
+         this.flags = flags;
+         this.method = method;
+         this.dosTime = dosTime;
+         this.crc = crc;
+         this.compressedSize = compressedSize;
+         this.size = size;
+         this.offset = offset;
+      }
+
+      private boolean isZip64() {
+         return localZip64 || getCentralExtraLength() > 0;
+      }
+
+      private int getVersionNeeded() {
+         if (isZip64()) {
+            return ZipConstants.VERSION_ZIP64;
+         }
+         return method == ZipConstants.STORED ? ZipConstants.VERSION_STORED : ZipConstants.VERSION_DEFLATED;
+      }
+
+      private int getCentralExtraLength() {
+         int length = 0;
+         if (size >= ZipConstants.ZIP64_MAGICVAL) {
+            length += 8;
+         }
+         if (compressedSize >= ZipConstants.ZIP64_MAGICVAL) {
+            length += 8;
+         }
+         if (offset >= ZipConstants.ZIP64_MAGICVAL) {
+            length += 8;
+         }
+         return length == 0 ? 0 : length + 4;
+      }
+
+      private int getCentralHeaderLength() {
+         return ZipConstants.CENHDR + name.length + getCentralExtraLength();
+      }
+   }
+}
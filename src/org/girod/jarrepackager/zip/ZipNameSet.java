@@ -0,0 +1,132 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.zip;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A compact set of entry names. The names are kept as the UTF-8 encoded arrays of bytes which are also used to write
+ * the central directory, and are indexed in an open addressing table of ints, so that no String or map entry is retained
+ * per name.
+ *
+ * @since 0.2
+ */
+public class ZipNameSet {
+   private static final int INITIAL_CAPACITY = 1024;
+   private byte[][] names = new byte[INITIAL_CAPACITY][];
+   private int[] table = new int[INITIAL_CAPACITY * 2];
+   private int size = 0;
+
+   public ZipNameSet() {
+   }
+
+   /**
+    * Return the number of names in the set.
+    *
+    * @return the number of names
+    */
+   public int size() {
+      return size;
+   }
+
+   private static int hash(byte[] name) {
+      int h = Arrays.hashCode(name);
+      return h ^ (h >>> 16);
+   }
+
+   private int find(byte[] name) {
+      int mask = table.length - 1;
+      int slot = hash(name) & mask;
+      while (true) {
+         int index = table[slot];
+         if (index == 0 || Arrays.equals(names[index - 1], name)) {
+            return slot;
+         }
+         slot = (slot + 1) & mask;
+      }
+   }
+
+   /**
+    * Return true if the set contains a name.
+    *
+    * @param name the name
+    * @return true if the set contains the name
+    */
+   public boolean contains(String name) {
+      return contains(name.getBytes(StandardCharsets.UTF_8));
+   }
+
+   /**
+    * Return true if the set contains an UTF-8 encoded name.
+    *
+    * @param name the encoded name
+    * @return true if the set contains the name
+    */
+   public boolean contains(byte[] name) {
+      return table[find(name)] != 0;
+   }
+
+   /**
+    * Add an UTF-8 encoded name in the set.
+    *
+    * @param name the encoded name
+    * @return true if the name was not already in the set
+    */
+   public boolean add(byte[] name) {
+      int slot = find(name);
+      if (table[slot] != 0) {
+         return false;
+      }
+      if (size == names.length) {
+         names = Arrays.copyOf(names, size * 2);
+      }
+      names[size++] = name;
+      table[slot] = size;
+      if (size * 2 > table.length) {
+         rehash();
+      }
+      return true;
+   }
+
+   private void rehash() {
+      table = new int[table.length * 2];
+      int mask = table.length - 1;
+      for (int i = 0; i < size; i++) {
+         int slot = hash(names[i]) & mask;
+         while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+         }
+         table[slot] = i + 1;
+      }
+   }
+}
@@ -0,0 +1,217 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipException;
+import org.girod.jarrepackager.model.AbstractJarFileDirectory;
+import org.girod.jarrepackager.model.ConflictResolver;
+import org.girod.jarrepackager.model.JarCollectionModel;
+import org.girod.jarrepackager.model.JarFileEntry;
+import org.girod.jarrepackager.model.JarRootDirectory;
+import org.girod.jarrepackager.model.ManifestModel;
+import org.girod.jarrepackager.parser.PropertiesParser;
+import org.girod.jarrepackager.zip.ZipArchive;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @since 0.2
+ */
+public class JarPackagerReaderTest {
+   private static File nettyDir = null;
+   private static File[] inputFiles = null;
+   private static ManifestModel manifestModel = null;
+
+   public JarPackagerReaderTest() {
+   }
+
+   @BeforeClass
+   public static void setUpClass() {
+      File dir = new File(System.getProperty("user.dir"));
+      dir = new File(dir, "samples/netty");
+      nettyDir = dir;
+      URL url = JarPackagerReaderTest.class.getResource("parser/configNetty.xml");
+      JarRepackager repackager = new JarRepackager();
+      PropertiesParser parser = new PropertiesParser(repackager);
+      manifestModel = parser.parse(dir, new File(url.getFile()));
+      inputFiles = repackager.getInputFiles();
+   }
+
+   @AfterClass
+   public static void tearDownClass() {
+   }
+
+   @Before
+   public void setUp() {
+   }
+
+   @After
+   public void tearDown() {
+   }
+
+   private JarCollectionModel analyze(int threads) throws IOException {
+      JarPackagerReader reader = new JarPackagerReader(inputFiles);
+      reader.setManifestModel(manifestModel);
+      reader.setAnalysisThreads(threads);
+      return reader.analyze();
+   }
+
+   private JarCollectionModel analyze(File[] files, short policy, short manifestPolicy) throws IOException {
+      JarPackagerReader reader = new JarPackagerReader(files);
+      reader.setConflictResolver(new ConflictResolver(policy, manifestPolicy));
+      reader.setAnalysisThreads(2);
+      return reader.analyze();
+   }
+
+   private void assertArchive(String message, JarCollectionModel model, ZipArchive archive) {
+      for (AbstractJarFileDirectory dir : model.getJarDirectories()) {
+         for (JarFileEntry entry : dir.getEntries()) {
+            assertSame(message, archive, entry.getArchive());
+         }
+      }
+   }
+
+   private List<String> getPaths(JarCollectionModel model) {
+      List<String> paths = new ArrayList<>();
+      for (AbstractJarFileDirectory dir : model.getJarDirectories()) {
+         for (JarFileEntry entry : dir.getEntries()) {
+            paths.add(entry.getPath());
+         }
+      }
+      return paths;
+   }
+
+   /**
+    * Test of analyze method, of class JarPackagerReader, with several analysis threads.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testAnalyzeParallel() throws IOException {
+      System.out.println("JarPackagerReaderTest: testAnalyzeParallel");
+      JarCollectionModel sequentialModel = analyze(1);
+      JarCollectionModel parallelModel = analyze(4);
+      assertEquals("Root directories", sequentialModel.getRootJarDirectories().size(), parallelModel.getRootJarDirectories().size());
+      assertEquals("Directories", sequentialModel.getJarDirectories().size(), parallelModel.getJarDirectories().size());
+      assertEquals("Entries", getPaths(sequentialModel), getPaths(parallelModel));
+      assertEquals("Manifest content", sequentialModel.getManifestContent().keySet(), parallelModel.getManifestContent().keySet());
+      assertEquals("Manifest attributes", sequentialModel.getManifestAttributes(), parallelModel.getManifestAttributes());
+   }
+
+   /**
+    * Test of analyze method, of class JarPackagerReader, with entries which have the same path.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testAnalyzeConflicts() throws IOException {
+      System.out.println("JarPackagerReaderTest: testAnalyzeConflicts");
+      File common = new File(nettyDir, "netty-common-4.1.89.Final.jar");
+      File buffer = new File(nettyDir, "netty-buffer-4.1.89.Final.jar");
+      File[] sameFiles = { common, common };
+      int count = getPaths(analyze(new File[] { common }, ConflictResolver.FAIL, ConflictResolver.FIRST_WINS)).size();
+
+      try {
+         analyze(sameFiles, ConflictResolver.FAIL, ConflictResolver.FIRST_WINS);
+         fail("The analysis should fail on the first duplicate entry");
+      } catch (ZipException ex) {
+      }
+
+      JarCollectionModel model = analyze(sameFiles, ConflictResolver.FIRST_WINS, ConflictResolver.FIRST_WINS);
+      assertEquals("Entries with firstWins", count, getPaths(model).size());
+      assertArchive("Entries of the first file with firstWins", model, model.getRootJarDirectories().get(0).getArchive());
+
+      model = analyze(sameFiles, ConflictResolver.LAST_WINS, ConflictResolver.LAST_WINS);
+      assertEquals("Entries with lastWins", count, getPaths(model).size());
+      List<JarRootDirectory> roots = model.getRootJarDirectories();
+      assertArchive("Entries of the last file with lastWins", model, roots.get(roots.size() - 1).getArchive());
+
+      model = analyze(sameFiles, ConflictResolver.KEEP_IF_IDENTICAL, ConflictResolver.KEEP_IF_IDENTICAL);
+      assertEquals("Entries with keepIfIdentical", count, getPaths(model).size());
+
+      // the META-INF/io.netty.versions.properties entries of these files are different
+      try {
+         analyze(new File[] { common, buffer }, ConflictResolver.FAIL, ConflictResolver.KEEP_IF_IDENTICAL);
+         fail("The analysis should fail on different entries");
+      } catch (ZipException ex) {
+      }
+   }
+
+   /**
+    * Test of analyze method, of class JarPackagerReader, for the number of root directories and parsed manifests.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testAnalyzeRoots() throws IOException {
+      System.out.println("JarPackagerReaderTest: testAnalyzeRoots");
+      int rootsCount = 0;
+      int manifestsCount = 0;
+      for (File file : inputFiles) {
+         try (JarFile jarFile = new JarFile(file)) {
+            if (jarFile.getManifest() != null) {
+               manifestsCount++;
+            }
+            Set<String> topLevelDirs = new HashSet<>();
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+               String name = entries.nextElement().getName();
+               int index = name.indexOf('/');
+               if (index > 0 && !name.endsWith("/") && !name.equals(JarFile.MANIFEST_NAME)) {
+                  topLevelDirs.add(name.substring(0, index));
+               }
+            }
+            rootsCount += topLevelDirs.size();
+         }
+      }
+      JarCollectionModel model = analyze(4);
+      assertEquals("Root directories", rootsCount, model.getRootJarDirectories().size());
+      assertEquals("Parsed manifests", manifestsCount, model.getManifestsCount());
+   }
+}
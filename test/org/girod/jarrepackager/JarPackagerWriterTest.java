@@ -0,0 +1,444 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.girod.jarrepackager.model.JarCollectionModel;
+import org.girod.jarrepackager.model.ManifestModel;
+import org.girod.jarrepackager.parser.PropertiesParser;
+import org.girod.jarrepackager.zip.ZipArchive;
+import org.girod.jarrepackager.zip.ZipArchivePool;
+import org.girod.jarrepackager.zip.ZipContainerWriter;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @since 0.2
+ */
+public class JarPackagerWriterTest {
+   private static File[] inputFiles = null;
+   private static ManifestModel manifestModel = null;
+
+   public JarPackagerWriterTest() {
+   }
+
+   @BeforeClass
+   public static void setUpClass() {
+      File dir = new File(System.getProperty("user.dir"));
+      dir = new File(dir, "samples/netty");
+      URL url = JarPackagerWriterTest.class.getResource("parser/configNetty.xml");
+      JarRepackager repackager = new JarRepackager();
+      PropertiesParser parser = new PropertiesParser(repackager);
+      manifestModel = parser.parse(dir, new File(url.getFile()));
+      inputFiles = repackager.getInputFiles();
+   }
+
+   @AfterClass
+   public static void tearDownClass() {
+   }
+
+   @Before
+   public void setUp() {
+   }
+
+   @After
+   public void tearDown() {
+   }
+
+   private File repackage(boolean rawCopy) throws IOException {
+      return repackage(rawCopy, 1, ZipContainerWriter.DEFAULT_MAX_INFLIGHT_BYTES);
+   }
+
+   private File repackage(boolean rawCopy, int threads, long maxInFlightBytes) throws IOException {
+      try (JarPackagerReader reader = new JarPackagerReader(inputFiles)) {
+         reader.setManifestModel(manifestModel);
+         JarCollectionModel jarModel = reader.analyze();
+         File outputFile = File.createTempFile("jarrepackager", ".jar");
+         outputFile.deleteOnExit();
+         JarPackagerWriter writer = new JarPackagerWriter(jarModel, outputFile);
+         writer.setRawCopy(rawCopy);
+         writer.setCompressionThreads(threads);
+         writer.setMaxInFlightBytes(maxInFlightBytes);
+         writer.write();
+         return outputFile;
+      }
+   }
+
+   private Map<String, ZipEntry> getInputEntries() throws IOException {
+      Map<String, ZipEntry> entries = new HashMap<>();
+      for (int i = 0; i < inputFiles.length; i++) {
+         try (JarFile jarFile = new JarFile(inputFiles[i])) {
+            Enumeration<JarEntry> en = jarFile.entries();
+            while (en.hasMoreElements()) {
+               JarEntry entry = en.nextElement();
+               if (!entry.isDirectory() && !entry.getName().equals(JarFile.MANIFEST_NAME) && !entries.containsKey(entry.getName())) {
+                  entries.put(entry.getName(), entry);
+               }
+            }
+         }
+      }
+      return entries;
+   }
+
+   private void checkOutput(File outputFile, boolean rawCopy) throws IOException {
+      Map<String, ZipEntry> inputEntries = getInputEntries();
+      try (JarFile jarFile = new JarFile(outputFile)) {
+         assertNotNull("Manifest should exist", jarFile.getManifest());
+         assertEquals("Implementation-Title", "Netty/All-in-One", jarFile.getManifest().getMainAttributes().getValue("Implementation-Title"));
+         int count = 0;
+         Enumeration<JarEntry> en = jarFile.entries();
+         while (en.hasMoreElements()) {
+            JarEntry entry = en.nextElement();
+            if (entry.getName().equals(JarFile.MANIFEST_NAME)) {
+               continue;
+            }
+            count++;
+            ZipEntry inEntry = inputEntries.get(entry.getName());
+            assertNotNull("Entry " + entry.getName() + " should exist in the inputs", inEntry);
+            assertEquals("CRC of " + entry.getName(), inEntry.getCrc(), entry.getCrc());
+            assertEquals("Size of " + entry.getName(), inEntry.getSize(), entry.getSize());
+            if (rawCopy) {
+               assertEquals("Compressed size of " + entry.getName(), inEntry.getCompressedSize(), entry.getCompressedSize());
+               assertEquals("Time of " + entry.getName(), inEntry.getTime(), entry.getTime());
+            }
+         }
+         assertEquals("Output entries", inputEntries.size(), count);
+      }
+   }
+
+   /**
+    * Test of write method, of class JarPackagerWriter, with the raw copy mode.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testWriteRawCopy() throws IOException {
+      System.out.println("JarPackagerWriterTest: testWriteRawCopy");
+      File outputFile = repackage(true);
+      checkOutput(outputFile, true);
+      outputFile.delete();
+   }
+
+   /**
+    * Test of write method, of class JarPackagerWriter, without the raw copy mode.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testWriteRecompress() throws IOException {
+      System.out.println("JarPackagerWriterTest: testWriteRecompress");
+      File outputFile = repackage(false);
+      checkOutput(outputFile, false);
+      outputFile.delete();
+   }
+
+   /**
+    * Test of write method, of class JarPackagerWriter, with several compression threads.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testWriteParallel() throws IOException {
+      System.out.println("JarPackagerWriterTest: testWriteParallel");
+      File sequentialFile = repackage(false, 1, 1024 * 1024);
+      File parallelFile = repackage(false, 4, 256 * 1024);
+      checkOutput(parallelFile, false);
+      try (ZipArchive sequential = new ZipArchive(sequentialFile); ZipArchive parallel = new ZipArchive(parallelFile)) {
+         assertEquals("Entries", sequential.size(), parallel.size());
+         for (int i = 0; i < sequential.size(); i++) {
+            String name = sequential.getName(i);
+            assertEquals("Entry name", name, parallel.getName(i));
+            assertEquals("Offset of " + name, sequential.getLocalHeaderOffset(i), parallel.getLocalHeaderOffset(i));
+            assertEquals("CRC of " + name, sequential.getCrc(i), parallel.getCrc(i));
+            if (!name.equals(JarFile.MANIFEST_NAME)) {
+               assertArrayEquals("Content of " + name, getRawData(sequential, i), getRawData(parallel, i));
+            }
+         }
+      }
+      sequentialFile.delete();
+      parallelFile.delete();
+   }
+
+   /**
+    * Test of write method, of class JarPackagerWriter, with a bounded pool of input files.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testWriteWithArchivePool() throws IOException {
+      System.out.println("JarPackagerWriterTest: testWriteWithArchivePool");
+      File outputFile = File.createTempFile("jarrepackager", ".jar");
+      outputFile.deleteOnExit();
+      ZipArchivePool pool = new ZipArchivePool(4);
+      try {
+         JarPackagerReader reader = new JarPackagerReader(inputFiles);
+         reader.setManifestModel(manifestModel);
+         reader.setAnalysisThreads(4);
+         reader.setArchivePool(pool);
+         JarCollectionModel jarModel = reader.analyze();
+         assertTrue("Mapped input files after the analysis", pool.getMappedArchivesCount() <= 4);
+         int mappings = pool.getMappingsCount();
+         assertEquals("Mappings during the analysis", inputFiles.length, mappings);
+
+         JarPackagerWriter writer = new JarPackagerWriter(jarModel, outputFile);
+         writer.setArchivePool(pool);
+         writer.write();
+         assertTrue("Mapped input files after the writing", pool.getMappedArchivesCount() <= 4);
+         assertTrue("Each input file should be mapped at most once during the writing", pool.getMappingsCount() - mappings <= inputFiles.length);
+      } finally {
+         pool.close();
+      }
+      assertEquals("Mapped input files after closing the pool", 0, pool.getMappedArchivesCount());
+      checkOutput(outputFile, true);
+      outputFile.delete();
+   }
+
+   /**
+    * Test of the sessions of a shared ZipArchivePool, with an input file modified while it is used by a session.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testArchivePoolSessions() throws IOException {
+      System.out.println("JarPackagerWriterTest: testArchivePoolSessions");
+      File file = File.createTempFile("jarrepackager", ".jar");
+      file.deleteOnExit();
+      Files.copy(inputFiles[0].toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      try (ZipArchivePool pool = new ZipArchivePool(4)) {
+         pool.setShared(true);
+         ZipArchivePool session1 = pool.openSession();
+         ZipArchive archive1 = session1.open(file);
+         try (ZipArchivePool session2 = pool.openSession()) {
+            assertSame("An unchanged file should be shared", archive1, session2.open(file));
+         }
+
+         Files.copy(inputFiles[1].toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+         pool.closeModifiedArchives();
+         try (ZipArchivePool session2 = pool.openSession()) {
+            assertNotSame("A modified file should be opened again", archive1, session2.open(file));
+         }
+         // the replaced container is still referenced by the first session
+         pool.acquire(archive1);
+         try {
+            readAll(archive1);
+         } finally {
+            pool.release(archive1);
+         }
+
+         session1.close();
+         try {
+            readAll(archive1);
+            fail("The replaced container should be closed with the last session which references it");
+         } catch (IOException | UncheckedIOException ex) {
+         }
+         assertEquals("Mapped input files", 1, pool.getMappedArchivesCount());
+      }
+      file.delete();
+   }
+
+   private static void readAll(ZipArchive archive) throws IOException {
+      byte[] buf = new byte[4096];
+      for (int i = 0; i < archive.size(); i++) {
+         try (InputStream in = archive.getInputStream(i)) {
+            while (in.read(buf) > 0) {
+            }
+         }
+      }
+   }
+
+   /**
+    * Test of write method, of class JarPackagerWriter, with more than 65535 entries. If the
+    * <code>jarrepackager.largeTests</code> property is set to true, the test also repackages an entry larger than 4 GB.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testWriteZip64() throws IOException {
+      System.out.println("JarPackagerWriterTest: testWriteZip64");
+      int entriesPerInput = 35000;
+      File input1 = createInput("a", entriesPerInput, 0);
+      File input2 = createInput("b", entriesPerInput, 0);
+      File outputFile = File.createTempFile("jarrepackager", ".jar");
+      outputFile.deleteOnExit();
+      repackage(new File[] { input1, input2 }, outputFile, true);
+      try (ZipFile zipFile = new ZipFile(outputFile)) {
+         assertEquals("Output entries", 2 * entriesPerInput + 1, zipFile.size());
+         assertEquals("Content of the last entry", "b" + (entriesPerInput - 1), readEntry(zipFile, "b/d34/e" + (entriesPerInput - 1)));
+      }
+      try (ZipArchive archive = new ZipArchive(outputFile)) {
+         assertEquals("Entries read with the Zip64 end of central directory", 2 * entriesPerInput + 1, archive.size());
+      }
+      input1.delete();
+      input2.delete();
+      outputFile.delete();
+
+      if (Boolean.getBoolean("jarrepackager.largeTests")) {
+         long size = 0x100000000L + 1024;
+         File input = createInput("c", 10, size);
+         for (boolean rawCopy : new boolean[] { true, false }) {
+            outputFile = File.createTempFile("jarrepackager", ".jar");
+            outputFile.deleteOnExit();
+            repackage(new File[] { input }, outputFile, rawCopy);
+            try (ZipFile zipFile = new ZipFile(outputFile)) {
+               assertEquals("Output entries", 12, zipFile.size());
+               assertEquals("Size of the large entry", size, zipFile.getEntry("c/large").getSize());
+               assertEquals("Content of an entry after the large entry", "c9", readEntry(zipFile, "c/d0/e9"));
+            }
+            outputFile.delete();
+         }
+         input.delete();
+      }
+   }
+
+   /**
+    * Test of write method, of class JarPackagerWriter, with encrypted entries, which must be rejected both by the raw
+    * copy and by the recompression.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testWriteEncrypted() throws IOException {
+      System.out.println("JarPackagerWriterTest: testWriteEncrypted");
+      File input = createInput("a", 3, 0);
+      byte[] bytes = Files.readAllBytes(input.toPath());
+      // set the encryption flag in the local and central headers
+      for (int i = 0; i + 8 < bytes.length; i++) {
+         if (bytes[i] == 'P' && bytes[i + 1] == 'K' && bytes[i + 2] == 3 && bytes[i + 3] == 4) {
+            bytes[i + 6] |= 1;
+         } else if (bytes[i] == 'P' && bytes[i + 1] == 'K' && bytes[i + 2] == 1 && bytes[i + 3] == 2) {
+            bytes[i + 8] |= 1;
+         }
+      }
+      Files.write(input.toPath(), bytes);
+      for (boolean rawCopy : new boolean[] { true, false }) {
+         File outputFile = File.createTempFile("jarrepackager", ".jar");
+         outputFile.deleteOnExit();
+         try {
+            repackage(new File[] { input }, outputFile, rawCopy);
+            fail("Encrypted entries must be rejected");
+         } catch (IOException ex) {
+            assertTrue("Error on the encrypted entry", ex.getMessage().startsWith("Encrypted entry"));
+         }
+         outputFile.delete();
+      }
+      input.delete();
+   }
+
+   private void repackage(File[] inputs, File outputFile, boolean rawCopy) throws IOException {
+      try (JarPackagerReader reader = new JarPackagerReader(inputs)) {
+         reader.setManifestModel(new ManifestModel());
+         JarCollectionModel jarModel = reader.analyze();
+         JarPackagerWriter writer = new JarPackagerWriter(jarModel, outputFile);
+         writer.setRawCopy(rawCopy);
+         writer.write();
+      }
+   }
+
+   /**
+    * Create an input file with small entries, and optionally a stored entry filled with zeros.
+    */
+   private File createInput(String root, int entries, long largeSize) throws IOException {
+      File file = File.createTempFile("jarrepackager", ".zip");
+      file.deleteOnExit();
+      try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+         byte[] buf = new byte[1024 * 1024];
+         if (largeSize > 0) {
+            CRC32 crc = new CRC32();
+            for (long remaining = largeSize; remaining > 0; remaining -= buf.length) {
+               crc.update(buf, 0, (int) Math.min(buf.length, remaining));
+            }
+            ZipEntry entry = new ZipEntry(root + "/large");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(largeSize);
+            entry.setCompressedSize(largeSize);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            for (long remaining = largeSize; remaining > 0; remaining -= buf.length) {
+               out.write(buf, 0, (int) Math.min(buf.length, remaining));
+            }
+            out.closeEntry();
+         }
+         for (int i = 0; i < entries; i++) {
+            out.putNextEntry(new ZipEntry(root + "/d" + (i / 1000) + "/e" + i));
+            out.write((root + i).getBytes("UTF-8"));
+            out.closeEntry();
+         }
+      }
+      return file;
+   }
+
+   private String readEntry(ZipFile zipFile, String name) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (InputStream in = zipFile.getInputStream(zipFile.getEntry(name))) {
+         byte[] buf = new byte[1024];
+         int len;
+         while ((len = in.read(buf)) > 0) {
+            out.write(buf, 0, len);
+         }
+      }
+      return out.toString("UTF-8");
+   }
+
+   private byte[] getRawData(ZipArchive archive, int index) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      archive.copyRawData(index, out);
+      return out.toByteArray();
+   }
+}
@@ -0,0 +1,808 @@
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.girod.jarrepackager.model.CompressionPolicy;
+import org.girod.jarrepackager.model.ConflictResolver;
+import org.girod.jarrepackager.model.EntryFilter;
+import org.girod.jarrepackager.model.PlatformFilter;
+import org.girod.jarrepackager.transform.EntryTransformer;
+import org.girod.jarrepackager.transform.EntryTransformers;
+import org.girod.jarrepackager.zip.CompressibilityDetector;
+import org.girod.jarrepackager.zip.ZipArchive;
+import org.girod.jarrepackager.zip.ZipConstants;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @since 0.2
+ */
+public class JarRepackagerTest {
+   private static File nettyDir = null;
+   private File dir = null;
+
+   public JarRepackagerTest() {
+   }
+
+   @BeforeClass
+   public static void setUpClass() {
+      nettyDir = new File(System.getProperty("user.dir"), "samples/netty");
+   }
+
+   @AfterClass
+   public static void tearDownClass() {
+   }
+
+   @Before
+   public void setUp() throws IOException {
+      dir = Files.createTempDirectory("jarrepackager").toFile();
+   }
+
+   @After
+   public void tearDown() {
+      File[] files = dir.listFiles();
+      if (files != null) {
+         for (File file : files) {
+            file.delete();
+         }
+      }
+      dir.delete();
+   }
+
+   private File copy(String name, String targetName) throws IOException {
+      File file = new File(dir, targetName);
+      Files.copy(new File(nettyDir, name).toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      return file;
+   }
+
+   private JarRepackager createRepackager(File[] inputFiles, File outputFile) {
+      JarRepackager repackager = new JarRepackager();
+      repackager.setInputFiles(inputFiles);
+      repackager.setOutputFile(outputFile);
+      repackager.setIncremental(true);
+      return repackager;
+   }
+
+   private int countEntries(File outputFile) throws IOException {
+      try (JarFile jarFile = new JarFile(outputFile)) {
+         return jarFile.size();
+      }
+   }
+
+   private Set<String> getFileEntries(File outputFile) throws IOException {
+      Set<String> names = new TreeSet<>();
+      try (JarFile jarFile = new JarFile(outputFile)) {
+         Enumeration<JarEntry> entries = jarFile.entries();
+         while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            if (!entry.isDirectory()) {
+               names.add(entry.getName());
+            }
+         }
+      }
+      return names;
+   }
+
+   /**
+    * Test of repackage method, of class JarRepackager, with the streaming mode.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testRepackageStreaming() throws IOException {
+      System.out.println("JarRepackagerTest: testRepackageStreaming");
+      File[] inputFiles = { new File(nettyDir, "netty-common-4.1.89.Final.jar"), new File(nettyDir, "netty-buffer-4.1.89.Final.jar"),
+         new File(nettyDir, "netty-codec-dns-4.1.89.Final.jar") };
+      File treeFile = new File(dir, "tree.jar");
+      JarRepackager repackager = createRepackager(inputFiles, treeFile);
+      repackager.setIncremental(false);
+      assertTrue("Repackaging", repackager.repackage());
+
+      File streamFile = new File(dir, "stream.jar");
+      repackager = createRepackager(inputFiles, streamFile);
+      repackager.setIncremental(false);
+      repackager.setStreaming(true);
+      assertTrue("Streaming repackaging", repackager.repackage());
+
+      assertEquals("Entries of the streaming output", getFileEntries(treeFile), getFileEntries(streamFile));
+      try (JarFile jarFile = new JarFile(streamFile)) {
+         assertNotNull("Manifest of the streaming output", jarFile.getManifest());
+      }
+   }
+
+   /**
+    * Test of repackage method, of class JarRepackager, with the streaming mode and an input with top-level entries.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testRepackageStreamingTopLevel() throws IOException {
+      System.out.println("JarRepackagerTest: testRepackageStreamingTopLevel");
+      File topLevel = new File(dir, "toplevel.jar");
+      try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(topLevel))) {
+         String[] names = { "module-info.class", "LICENSE", "org/test/Test.class" };
+         for (int i = 0; i < names.length; i++) {
+            out.putNextEntry(new ZipEntry(names[i]));
+            out.write(names[i].getBytes("UTF-8"));
+            out.closeEntry();
+         }
+      }
+      File[] inputFiles = { topLevel, new File(nettyDir, "netty-buffer-4.1.89.Final.jar") };
+      File treeFile = new File(dir, "tree.jar");
+      JarRepackager repackager = createRepackager(inputFiles, treeFile);
+      repackager.setIncremental(false);
+      assertTrue("Repackaging", repackager.repackage());
+
+      File streamFile = new File(dir, "stream.jar");
+      repackager = createRepackager(inputFiles, streamFile);
+      repackager.setIncremental(false);
+      repackager.setStreaming(true);
+      assertTrue("Streaming repackaging", repackager.repackage());
+
+      Set<String> entries = getFileEntries(treeFile);
+      assertTrue("Nested entry of the input", entries.contains("org/test/Test.class"));
+      assertFalse("Top-level entry of the input", entries.contains("LICENSE"));
+      assertEquals("Entries of the streaming output", entries, getFileEntries(streamFile));
+   }
+
+   /**
+    * Test of repackage method, of class JarRepackager, with the incremental mode.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testRepackageIncremental() throws IOException {
+      System.out.println("JarRepackagerTest: testRepackageIncremental");
+      File common = copy("netty-common-4.1.89.Final.jar", "common.jar");
+      File buffer = copy("netty-buffer-4.1.89.Final.jar", "buffer.jar");
+      File codec = copy("netty-codec-dns-4.1.89.Final.jar", "codec.jar");
+      File[] inputFiles = { common, buffer, codec };
+      File outputFile = new File(dir, "output.jar");
+
+      assertTrue("First repackaging", createRepackager(inputFiles, outputFile).repackage());
+      assertTrue("State file should exist", IncrementalState.getStateFile(outputFile).exists());
+      long lastModified = outputFile.lastModified();
+      int count = countEntries(outputFile);
+
+      // no input has changed
+      assertTrue("No-op repackaging", createRepackager(inputFiles, outputFile).repackage());
+      assertEquals("Output should not be written again", lastModified, outputFile.lastModified());
+
+      // one input has been touched but its content is the same
+      assertTrue(codec.setLastModified(codec.lastModified() - 10000));
+      assertTrue("Touched input repackaging", createRepackager(inputFiles, outputFile).repackage());
+      assertEquals("Output should not be written again", lastModified, outputFile.lastModified());
+
+      // one input has changed
+      copy("netty-codec-http-4.1.89.Final.jar", "codec.jar");
+      assertTrue("Changed input repackaging", createRepackager(inputFiles, outputFile).repackage());
+      IncrementalState state = IncrementalState.read(IncrementalState.getStateFile(outputFile));
+      assertNotNull("State should be readable", state);
+      try (JarFile jarFile = new JarFile(outputFile)) {
+         assertNotNull("Entry of the unchanged input", jarFile.getEntry("io/netty/buffer/ByteBuf.class"));
+         assertNotNull("Entry of the changed input", jarFile.getEntry("io/netty/handler/codec/http/HttpRequest.class"));
+         assertTrue("Entries of the previous input should be removed", jarFile.getEntry("io/netty/handler/codec/dns/DnsRecord.class") == null);
+      }
+      assertTrue("Output should have changed", countEntries(outputFile) != count);
+   }
+
+   private File writeConfiguration(String name, String output, String... inputs) throws IOException {
+      StringBuilder buf = new StringBuilder();
+      buf.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<properties>\n   <inputs>\n");
+      for (String input : inputs) {
+         buf.append("      <file url=\"").append(input).append("\" />\n");
+      }
+      buf.append("   </inputs>\n   <output url=\"").append(output).append("\" />\n</properties>\n");
+      File file = new File(dir, name);
+      Files.write(file.toPath(), buf.toString().getBytes("UTF-8"));
+      return file;
+   }
+
+   /**
+    * Test of the BatchRepackager class, with a repackaging using the output of another repackaging.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testRepackageBatch() throws IOException {
+      System.out.println("JarRepackagerTest: testRepackageBatch");
+      File common = copy("netty-common-4.1.89.Final.jar", "common.jar");
+      File buffer = copy("netty-buffer-4.1.89.Final.jar", "buffer.jar");
+      File codec = copy("netty-codec-dns-4.1.89.Final.jar", "codec.jar");
+      File configA = writeConfiguration("a.xml", "ab.jar", "common.jar", "buffer.jar");
+      File configB = writeConfiguration("b.xml", "all.jar", "ab.jar", "codec.jar");
+      File configC = writeConfiguration("c.xml", "cd.jar", "common.jar", "codec.jar");
+
+      JarRepackager settings = new JarRepackager();
+      settings.setConfigurationCacheDirectory(null);
+      BatchRepackager batch = new BatchRepackager(settings);
+      batch.addPropertiesFile(configB);
+      batch.addPropertiesFile(configA);
+      batch.addPropertiesFile(configC);
+      boolean success = batch.repackage();
+      assertTrue("Batch should succeed: " + settings.getErrors().size() + " errors", success);
+
+      Set<String> expected = getFileEntries(common);
+      expected.addAll(getFileEntries(buffer));
+      expected.addAll(getFileEntries(codec));
+      assertEquals("Entries of all.jar", expected, getFileEntries(new File(dir, "all.jar")));
+      assertTrue("cd.jar should exist", new File(dir, "cd.jar").isFile());
+      assertEquals("Each input file should be opened once", 4, batch.getArchivePool().getOpenedArchivesCount());
+   }
+
+   /**
+    * Test of the RepackagerDaemon and RepackagerClient classes.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testDaemon() throws IOException {
+      System.out.println("JarRepackagerTest: testDaemon");
+      File common = copy("netty-common-4.1.89.Final.jar", "common.jar");
+      File buffer = copy("netty-buffer-4.1.89.Final.jar", "buffer.jar");
+      writeConfiguration("a.xml", "ab.jar", "common.jar", "buffer.jar");
+      File cacheDir = new File(dir, "cache");
+      String[] args = { "properties=a.xml", "configCacheDir=" + cacheDir.getPath() };
+
+      File tokenFile = new File(dir, "daemon.token");
+
+      try (RepackagerDaemon daemon = new RepackagerDaemon(0, 16)) {
+         daemon.setTokenFile(tokenFile);
+         daemon.start();
+         assertTrue("Token file should exist", tokenFile.isFile());
+         if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            assertEquals("Permissions of the token file", "rw-------",
+               PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.toPath())));
+         }
+         RepackagerClient client = RepackagerClient.readTokenFile(tokenFile);
+         assertEquals("Port of the token file", daemon.getPort(), client.getPort());
+         List<String> errors = new ArrayList<>();
+         assertTrue("First request should succeed", client.repackage(dir, args, errors));
+         assertTrue("First request should not have errors", errors.isEmpty());
+         File outputFile = new File(dir, "ab.jar");
+         Set<String> expected = getFileEntries(common);
+         expected.addAll(getFileEntries(buffer));
+         assertEquals("Entries of ab.jar", expected, getFileEntries(outputFile));
+
+         outputFile.delete();
+         assertTrue("Second request should succeed", client.repackage(dir, args, errors));
+         assertTrue("Second request should not have errors", errors.isEmpty());
+         assertTrue("ab.jar should be written again", outputFile.isFile());
+         assertEquals("Input files should be kept opened between requests", 2, daemon.getArchivePool().getOpenedArchivesCount());
+
+         copy("netty-codec-dns-4.1.89.Final.jar", "common.jar");
+         assertTrue("Request with a modified input should succeed", client.repackage(dir, args, errors));
+         assertEquals("The modified input should be opened again", 3, daemon.getArchivePool().getOpenedArchivesCount());
+         assertEquals("The previous container of the modified input should be closed", 2, daemon.getArchivePool().getMappedArchivesCount());
+
+         assertFalse("Request without properties should fail", client.repackage(dir, new String[] { "debug=true" }, errors));
+         assertEquals("Request without properties should have one error", 1, errors.size());
+
+         errors.clear();
+         RepackagerClient intruder = new RepackagerClient(daemon.getPort(), "0123456789abcdef");
+         assertFalse("Request with another secret should fail", intruder.repackage(dir, args, errors));
+         assertEquals("Request with another secret should have one error", 1, errors.size());
+
+         errors.clear();
+         assertFalse("Request on the standard output should fail", client.repackage(dir, new String[] { "input=common.jar", "output=-" }, errors));
+         assertEquals("Request on the standard output should have one error", 1, errors.size());
+
+         errors.clear();
+         assertFalse("Request with transformers should fail", client.repackage(dir, new String[] { "properties=a.xml", "transformers=t.jar" }, errors));
+         assertEquals("Request with transformers should have one error", 1, errors.size());
+      } finally {
+         File[] files = cacheDir.listFiles();
+         if (files != null) {
+            for (File file : files) {
+               file.delete();
+            }
+         }
+         cacheDir.delete();
+      }
+      assertFalse("Token file should be deleted when the daemon stops", tokenFile.exists());
+   }
+
+   /**
+    * Test of the RepackagerWatcher class.
+    *
+    * @throws Exception
+    */
+   @Test
+   public void testWatch() throws Exception {
+      System.out.println("JarRepackagerTest: testWatch");
+      File[] inputFiles = { copy("netty-common-4.1.89.Final.jar", "common.jar"), copy("netty-codec-dns-4.1.89.Final.jar", "codec.jar") };
+      File outputFile = new File(dir, "output.jar");
+      JarRepackager settings = createRepackager(inputFiles, outputFile);
+      final RepackagerWatcher watcher = new RepackagerWatcher(settings);
+      watcher.setDebounce(50);
+      Thread thread = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               watcher.watch();
+            } catch (IOException ex) {
+            }
+         }
+      });
+      thread.start();
+      try {
+         waitForRepackagings(watcher, 1);
+         try (JarFile jarFile = new JarFile(outputFile)) {
+            assertNotNull("Entry of the first input", jarFile.getEntry("io/netty/handler/codec/dns/DnsRecord.class"));
+         }
+         // make sure that the modification time of the input changes
+         Thread.sleep(1000);
+         copy("netty-codec-http-4.1.89.Final.jar", "codec.jar");
+         waitForRepackagings(watcher, 2);
+         try (JarFile jarFile = new JarFile(outputFile)) {
+            assertNotNull("Entry of the modified input", jarFile.getEntry("io/netty/handler/codec/http/HttpRequest.class"));
+            assertTrue("Entries of the previous input should be removed", jarFile.getEntry("io/netty/handler/codec/dns/DnsRecord.class") == null);
+         }
+      } finally {
+         watcher.close();
+         thread.join(10000);
+      }
+      assertFalse("Watcher should be stopped", thread.isAlive());
+   }
+
+   private void waitForRepackagings(RepackagerWatcher watcher, int count) throws InterruptedException {
+      long end = System.currentTimeMillis() + 20000;
+      while (watcher.getRepackagingsCount() < count && System.currentTimeMillis() < end) {
+         Thread.sleep(20);
+      }
+      assertEquals("Number of repackagings", count, watcher.getRepackagingsCount());
+   }
+
+   /**
+    * Test of repackage method, of class JarRepackager, with several output files.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testRepackageMultipleOutputs() throws IOException {
+      System.out.println("JarRepackagerTest: testRepackageMultipleOutputs");
+      File common = copy("netty-common-4.1.89.Final.jar", "common.jar");
+      File buffer = copy("netty-buffer-4.1.89.Final.jar", "buffer.jar");
+      String content = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<properties>\n"
+         + "   <manifest>\n      <newProperty key=\"Implementation-Title\" value=\"all\" />\n   </manifest>\n"
+         + "   <inputs>\n      <file url=\"common.jar\" />\n      <file url=\"buffer.jar\" />\n   </inputs>\n"
+         + "   <output url=\"all.jar\" />\n"
+         + "   <output url=\"nobuffer.jar\">\n      <exclude path=\"io/netty/buffer/**\" />\n"
+         + "      <manifest>\n         <newProperty key=\"Implementation-Title\" value=\"nobuffer\" />\n      </manifest>\n"
+         + "   </output>\n"
+         + "   <output url=\"util.jar\">\n      <include path=\"io/netty/util/*.class\" />\n   </output>\n"
+         + "</properties>\n";
+      File config = new File(dir, "config.xml");
+      Files.write(config.toPath(), content.getBytes("UTF-8"));
+
+      JarRepackager repackager = new JarRepackager();
+      repackager.setConfigurationCacheDirectory(null);
+      repackager.setIncremental(true);
+      repackager.setPropertiesFile(config);
+      assertTrue("Repackaging should succeed", repackager.repackage());
+
+      Set<String> all = getFileEntries(common);
+      all.addAll(getFileEntries(buffer));
+      assertEquals("Entries of all.jar", all, getFileEntries(new File(dir, "all.jar")));
+      assertTrue("The manifest is always written", getFileEntries(new File(dir, "util.jar")).contains(JarFile.MANIFEST_NAME));
+      Set<String> noBuffer = getFileEntries(new File(dir, "nobuffer.jar"));
+      Set<String> util = getFileEntries(new File(dir, "util.jar"));
+      all.remove(JarFile.MANIFEST_NAME);
+      for (String name : all) {
+         boolean isBuffer = name.startsWith("io/netty/buffer/");
+         boolean isUtil = name.startsWith("io/netty/util/") && name.indexOf('/', 14) == -1 && name.endsWith(".class");
+         assertEquals("Entry " + name + " of nobuffer.jar", !isBuffer, noBuffer.contains(name));
+         assertEquals("Entry " + name + " of util.jar", isUtil, util.contains(name));
+      }
+      try (JarFile jarFile = new JarFile(new File(dir, "all.jar"))) {
+         assertEquals("Title of all.jar", "all", jarFile.getManifest().getMainAttributes().getValue("Implementation-Title"));
+      }
+      try (JarFile jarFile = new JarFile(new File(dir, "nobuffer.jar"))) {
+         assertEquals("Title of nobuffer.jar", "nobuffer", jarFile.getManifest().getMainAttributes().getValue("Implementation-Title"));
+      }
+
+      long lastModified = new File(dir, "util.jar").lastModified();
+      repackager = new JarRepackager();
+      repackager.setConfigurationCacheDirectory(null);
+      repackager.setIncremental(true);
+      repackager.setPropertiesFile(config);
+      assertTrue("Second repackaging should succeed", repackager.repackage());
+      assertEquals("util.jar should be up to date", lastModified, new File(dir, "util.jar").lastModified());
+   }
+
+   /**
+    * Test of repackage method, of class JarRepackager, with a platform filter.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testRepackagePlatforms() throws IOException {
+      System.out.println("JarRepackagerTest: testRepackagePlatforms");
+      File[] inputFiles = { copy("netty-transport-native-unix-common-4.1.89.Final.jar", "netty-transport-native-unix-common-4.1.89.Final.jar"),
+         copy("netty-transport-native-epoll-4.1.89.Final-linux-x86_64.jar", "netty-transport-native-epoll-4.1.89.Final-linux-x86_64.jar"),
+         copy("netty-transport-native-kqueue-4.1.89.Final-osx-x86_64.jar", "netty-transport-native-kqueue-4.1.89.Final-osx-x86_64.jar"),
+         // no classifier in the name, the platform of the native library is detected from its path
+         copy("netty-transport-native-epoll-4.1.89.Final-linux-aarch_64.jar", "epoll-arm.jar") };
+      File outputFile = new File(dir, "output.jar");
+      JarRepackager repackager = createRepackager(inputFiles, outputFile);
+      PlatformFilter platformFilter = new PlatformFilter();
+      assertTrue("Platform should be valid", platformFilter.addPlatform("linux-amd64"));
+      assertFalse("Platform should be invalid", platformFilter.addPlatform("beos-x86_64"));
+      repackager.setPlatformFilter(platformFilter);
+      assertTrue("Repackaging should succeed", repackager.repackage());
+
+      Set<String> names = getFileEntries(outputFile);
+      assertTrue("Library of the platform", names.contains("META-INF/native/libnetty_transport_native_epoll_x86_64.so"));
+      assertFalse("Library of another architecture", names.contains("META-INF/native/libnetty_transport_native_epoll_aarch_64.so"));
+      assertFalse("Library of another os", names.contains("META-INF/native/libnetty_transport_native_kqueue_x86_64.jnilib"));
+      assertFalse("Input file of another os", names.contains("META-INF/maven/io.netty/netty-transport-native-kqueue/pom.xml"));
+      assertTrue("Classes without platform", names.contains("io/netty/channel/unix/Socket.class"));
+   }
+
+   /**
+    * Test of repackage method, of class JarRepackager, with include and exclude rules on the entries.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testRepackageEntryFilters() throws IOException {
+      System.out.println("JarRepackagerTest: testRepackageEntryFilters");
+      File common = copy("netty-common-4.1.89.Final.jar", "common.jar");
+      File buffer = copy("netty-buffer-4.1.89.Final.jar", "buffer.jar");
+      String content = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<properties>\n"
+         + "   <inputs>\n      <file url=\"common.jar\">\n         <include path=\"io/netty/util/{concurrent,internal}/**\" />\n"
+         + "         <exclude path=\"**/*Test?.class\" />\n      </file>\n      <file url=\"buffer.jar\" />\n   </inputs>\n"
+         + "   <entries>\n      <exclude path=\"META-INF/maven/**\" />\n   </entries>\n"
+         + "   <output url=\"output.jar\" />\n"
+         + "</properties>\n";
+      File config = new File(dir, "config.xml");
+      Files.write(config.toPath(), content.getBytes("UTF-8"));
+
+      JarRepackager repackager = new JarRepackager();
+      repackager.setConfigurationCacheDirectory(null);
+      repackager.setPropertiesFile(config);
+      assertTrue("Repackaging should succeed", repackager.repackage());
+
+      Set<String> names = getFileEntries(new File(dir, "output.jar"));
+      Set<String> bufferNames = getFileEntries(buffer);
+      for (String name : getFileEntries(common)) {
+         if (bufferNames.contains(name)) {
+            continue;
+         }
+         boolean included = name.startsWith("io/netty/util/concurrent/") || name.startsWith("io/netty/util/internal/");
+         assertEquals("Entry " + name + " of common.jar", included || name.equals(JarFile.MANIFEST_NAME), names.contains(name));
+      }
+      for (String name : bufferNames) {
+         assertEquals("Entry " + name + " of buffer.jar", !name.startsWith("META-INF/maven/"), names.contains(name));
+      }
+
+      EntryFilter filter = new EntryFilter();
+      assertTrue("Pattern should be valid", filter.addExclude("org/*/[!a-c]?.{class,txt}"));
+      assertFalse("Pattern should be invalid", filter.addExclude("org/{a,b"));
+      assertFalse("Entry should be excluded", filter.accept("org/x/dz.class"));
+      assertTrue("Entry should be accepted", filter.accept("org/x/az.class"));
+      assertTrue("Entry should be accepted", filter.accept("org/x/y/dz.class"));
+   }
+
+   /**
+    * Test of repackage method, of class JarRepackager, with a transformer of the content of some entries.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testRepackageTransformers() throws IOException {
+      System.out.println("JarRepackagerTest: testRepackageTransformers");
+      File[] inputFiles = { copy("netty-common-4.1.89.Final.jar", "common.jar") };
+      File outputFile = new File(dir, "output.jar");
+      JarRepackager repackager = createRepackager(inputFiles, outputFile);
+      EntryTransformers transformers = new EntryTransformers();
+      assertTrue("Transformer should be valid", transformers.addTransformer(new EntryTransformer() {
+         @Override
+         public String getName() {
+            return "upperCase";
+         }
+
+         @Override
+         public String[] getPaths() {
+            return new String[] { "META-INF/*.properties" };
+         }
+
+         @Override
+         public InputStream transform(String path, InputStream in) throws IOException {
+            return new FilterInputStream(in) {
+               @Override
+               public int read() throws IOException {
+                  int c = super.read();
+                  return c == -1 ? c : Character.toUpperCase(c);
+               }
+
+               @Override
+               public int read(byte[] b, int off, int len) throws IOException {
+                  int count = super.read(b, off, len);
+                  for (int i = off; i < off + count; i++) {
+                     b[i] = (byte) Character.toUpperCase(b[i]);
+                  }
+                  return count;
+               }
+            };
+         }
+      }));
+      repackager.setTransformers(transformers);
+      assertTrue("Repackaging should succeed", repackager.repackage());
+
+      String path = "META-INF/io.netty.versions.properties";
+      try (JarFile input = new JarFile(inputFiles[0]); JarFile output = new JarFile(outputFile)) {
+         String expected = new String(readAll(input, path), "ISO-8859-1").toUpperCase();
+         assertEquals("Transformed entry", expected, new String(readAll(output, path), "ISO-8859-1"));
+         String classPath = "io/netty/util/AsciiString.class";
+         assertEquals("Copied entry", input.getEntry(classPath).getCompressedSize(), output.getEntry(classPath).getCompressedSize());
+      }
+   }
+
+   /**
+    * Test of repackage method, of class JarRepackager, with a compression policy.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testRepackageCompressionPolicy() throws IOException {
+      System.out.println("JarRepackagerTest: testRepackageCompressionPolicy");
+      File[] inputFiles = { copy("netty-common-4.1.89.Final.jar", "common.jar") };
+      File outputFile = new File(dir, "output.jar");
+      JarRepackager repackager = createRepackager(inputFiles, outputFile);
+      CompressionPolicy policy = new CompressionPolicy();
+      policy.setStoreClasses(true);
+      assertTrue("Rule should be valid", policy.addRule("io/netty/util/internal/**", ZipConstants.DEFLATED, Deflater.BEST_COMPRESSION));
+      repackager.setCompressionPolicy(policy);
+      assertTrue("Repackaging should succeed", repackager.repackage());
+
+      try (JarFile input = new JarFile(inputFiles[0]); JarFile output = new JarFile(outputFile)) {
+         String classPath = "io/netty/util/AsciiString.class";
+         assertEquals("Stored class", ZipEntry.STORED, output.getEntry(classPath).getMethod());
+         assertArrayEquals("Stored class content", readAll(input, classPath), readAll(output, classPath));
+         String internalPath = "io/netty/util/internal/StringUtil.class";
+         assertEquals("Deflated class", ZipEntry.DEFLATED, output.getEntry(internalPath).getMethod());
+         assertArrayEquals("Deflated class content", readAll(input, internalPath), readAll(output, internalPath));
+      }
+
+      byte[] random = new byte[4096];
+      new Random(1).nextBytes(random);
+      assertTrue("Random content is incompressible", CompressibilityDetector.isIncompressible(random, 0, random.length));
+      byte[] png = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 0 };
+      assertTrue("PNG content is incompressible", CompressibilityDetector.isIncompressible(png, 0, png.length));
+      byte[] text = new byte[4096];
+      Arrays.fill(text, (byte) 'a');
+      assertFalse("Text content is compressible", CompressibilityDetector.isIncompressible(text, 0, text.length));
+   }
+
+   /**
+    * Test of repackage method, of class JarRepackager, with an auto-tuning of the compression.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testRepackageAutoTune() throws IOException {
+      System.out.println("JarRepackagerTest: testRepackageAutoTune");
+      assertEquals("Time budget", 5000d, CompressionTuner.parse("5s").getTargetValue(), 0d);
+      assertEquals("Time factor", CompressionTuner.TIME_FACTOR, CompressionTuner.parse("2x").getTarget());
+      assertTrue("Invalid target", CompressionTuner.parse("fast") == null);
+
+      File[] inputFiles = { copy("netty-common-4.1.89.Final.jar", "common.jar") };
+      File outputFile = new File(dir, "output.jar");
+      // without time, the entries are copied as they are
+      JarRepackager repackager = createRepackager(inputFiles, outputFile);
+      repackager.setCompressionTuner(CompressionTuner.parse("0"));
+      assertTrue("Repackaging should succeed", repackager.repackage());
+      String classPath = "io/netty/util/AsciiString.class";
+      try (JarFile input = new JarFile(inputFiles[0]); JarFile output = new JarFile(outputFile)) {
+         assertEquals("Copied entry", input.getEntry(classPath).getCompressedSize(), output.getEntry(classPath).getCompressedSize());
+      }
+
+      repackager = createRepackager(inputFiles, outputFile);
+      repackager.setRawCopy(false);
+      repackager.setCompressionTuner(CompressionTuner.parse("3x"));
+      assertTrue("Repackaging should succeed", repackager.repackage());
+      try (JarFile input = new JarFile(inputFiles[0]); JarFile output = new JarFile(outputFile)) {
+         assertArrayEquals("Tuned entry content", readAll(input, classPath), readAll(output, classPath));
+      }
+   }
+
+   /**
+    * Test of repackage method, of class JarRepackager, in the reproducible mode.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testRepackageReproducible() throws IOException {
+      System.out.println("JarRepackagerTest: testRepackageReproducible");
+      File[] inputFiles = { copy("netty-common-4.1.89.Final.jar", "common.jar") };
+      File outputFile = new File(dir, "output.jar");
+      JarRepackager repackager = createRepackager(inputFiles, outputFile);
+      repackager.setIncremental(false);
+      repackager.setReproducible(true);
+      repackager.setCompressionThreads(1);
+      assertTrue("Repackaging should succeed", repackager.repackage());
+      byte[] first = Files.readAllBytes(outputFile.toPath());
+      String hashLine = new String(Files.readAllBytes(new File(dir, "output.jar.sha256").toPath()), "UTF-8");
+
+      // another number of compression threads gives the same bytes
+      repackager = createRepackager(inputFiles, outputFile);
+      repackager.setIncremental(false);
+      repackager.setReproducible(true);
+      repackager.setCompressionThreads(4);
+      assertTrue("Repackaging should succeed", repackager.repackage());
+      assertArrayEquals("Reproducible output", first, Files.readAllBytes(outputFile.toPath()));
+      assertEquals("Recorded hash", hashLine, new String(Files.readAllBytes(new File(dir, "output.jar.sha256").toPath()), "UTF-8"));
+      assertTrue("Recorded hash format", hashLine.matches("[0-9a-f]{64}  output\\.jar\n"));
+
+      try (JarFile output = new JarFile(outputFile)) {
+         assertNotNull("Manifest", output.getManifest());
+         String previous = null;
+         Enumeration<JarEntry> entries = output.entries();
+         while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            assertEquals("Fixed time of " + entry.getName(), JarPackagerWriter.REPRODUCIBLE_DOS_TIME, toDosTime(entry));
+            if (previous != null && !previous.equals(JarFile.MANIFEST_NAME)
+               && previous.startsWith("META-INF/") == entry.getName().startsWith("META-INF/")) {
+               assertTrue("Sorted entries", previous.compareTo(entry.getName()) < 0);
+            }
+            previous = entry.getName();
+         }
+      }
+   }
+
+   private static long toDosTime(ZipEntry entry) {
+      Calendar cal = Calendar.getInstance();
+      cal.setTimeInMillis(entry.getTime());
+      return (cal.get(Calendar.YEAR) - 1980) << 25 | (cal.get(Calendar.MONTH) + 1) << 21 | cal.get(Calendar.DAY_OF_MONTH) << 16
+         | cal.get(Calendar.HOUR_OF_DAY) << 11 | cal.get(Calendar.MINUTE) << 5 | cal.get(Calendar.SECOND) >> 1;
+   }
+
+   /**
+    * Test of repackage method, of class JarRepackager, with inputs in memory and on another file system, and an output
+    * stream.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testRepackageInMemory() throws IOException {
+      System.out.println("JarRepackagerTest: testRepackageInMemory");
+      File common = copy("netty-common-4.1.89.Final.jar", "common.jar");
+      File buffer = copy("netty-buffer-4.1.89.Final.jar", "buffer.jar");
+      File container = new File(dir, "container.zip");
+      try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(container))) {
+         out.putNextEntry(new ZipEntry("buffer.jar"));
+         Files.copy(buffer.toPath(), out);
+         out.closeEntry();
+      }
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      try (FileSystem fileSystem = FileSystems.newFileSystem(container.toPath(), (ClassLoader) null)) {
+         JarRepackager repackager = new JarRepackager();
+         repackager.addInputArchive(new ZipArchive("common.jar", Files.readAllBytes(common.toPath())));
+         repackager.addInput(fileSystem.getPath("/buffer.jar"));
+         repackager.setOutputStream(output);
+         repackager.setIncremental(true);
+         repackager.setConflictPolicy(ConflictResolver.FIRST_WINS);
+         assertTrue("Repackaging should succeed", repackager.repackage());
+         assertTrue("The input containers should be closed", repackager.getInputArchives().isEmpty());
+      }
+
+      File outputFile = new File(dir, "output.jar");
+      Files.write(outputFile.toPath(), output.toByteArray());
+      Set<String> expected = getFileEntries(common);
+      expected.addAll(getFileEntries(buffer));
+      assertEquals("Entries of the output", expected, getFileEntries(outputFile));
+   }
+
+   /**
+    * Test of repackage method, of class JarRepackager, with two inputs which have the same path on two other file
+    * systems.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testRepackageSamePathOnTwoFileSystems() throws IOException {
+      System.out.println("JarRepackagerTest: testRepackageSamePathOnTwoFileSystems");
+      File common = copy("netty-common-4.1.89.Final.jar", "common.jar");
+      File buffer = copy("netty-buffer-4.1.89.Final.jar", "buffer.jar");
+      File container1 = new File(dir, "container1.zip");
+      File container2 = new File(dir, "container2.zip");
+      File[] inputs = { common, buffer };
+      File[] containers = { container1, container2 };
+      for (int i = 0; i < containers.length; i++) {
+         try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(containers[i]))) {
+            out.putNextEntry(new ZipEntry("lib.jar"));
+            Files.copy(inputs[i].toPath(), out);
+            out.closeEntry();
+         }
+      }
+      File outputFile = new File(dir, "output.jar");
+      try (FileSystem fileSystem1 = FileSystems.newFileSystem(container1.toPath(), (ClassLoader) null);
+         FileSystem fileSystem2 = FileSystems.newFileSystem(container2.toPath(), (ClassLoader) null)) {
+         JarRepackager repackager = new JarRepackager();
+         repackager.addInput(fileSystem1.getPath("/lib.jar"));
+         repackager.addInput(fileSystem2.getPath("/lib.jar"));
+         repackager.setOutputFile(outputFile);
+         repackager.setConflictPolicy(ConflictResolver.FIRST_WINS);
+         assertTrue("Repackaging should succeed", repackager.repackage());
+      }
+
+      Set<String> expected = getFileEntries(common);
+      expected.addAll(getFileEntries(buffer));
+      assertEquals("Entries of the output", expected, getFileEntries(outputFile));
+   }
+
+   private static byte[] readAll(JarFile jarFile, String path) throws IOException {
+      try (InputStream in = jarFile.getInputStream(jarFile.getEntry(path))) {
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         byte[] buf = new byte[4096];
+         int len;
+         while ((len = in.read(buf)) > 0) {
+            out.write(buf, 0, len);
+         }
+         return out.toByteArray();
+      }
+   }
+}
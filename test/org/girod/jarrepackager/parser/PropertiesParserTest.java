@@ -1,100 +1,244 @@
-/*
-Copyright (c) 2023 Herve Girod
-All rights reserved.
-
-Redistribution and use in source and binary forms, with or without
-modification, are permitted provided that the following conditions are met:
-
-1. Redistributions of source code must retain the above copyright notice, this
-   list of conditions and the following disclaimer.
-2. Redistributions in binary form must reproduce the above copyright notice,
-   this list of conditions and the following disclaimer in the documentation
-   and/or other materials provided with the distribution.
-
-THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
-ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
-WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
-DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
-ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
-(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
-LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
-ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
-(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
-SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
-
-The views and conclusions contained in the software and documentation are those
-of the authors and should not be interpreted as representing official policies,
-either expressed or implied, of the FreeBSD Project.
-
-Alternatively if you have any questions about this project, you can visit
-the project website at the project page on https://github.com/hervegirod/jarrepackager
- */
-package org.girod.jarrepackager.parser;
-
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertNotNull;
-import static org.junit.Assert.assertNull;
-import static org.junit.Assert.assertTrue;
-import java.io.File;
-import java.net.URL;
-import org.girod.jarrepackager.JarRepackager;
-import org.girod.jarrepackager.model.ManifestModel;
-import org.junit.After;
-import org.junit.AfterClass;
-import org.junit.Before;
-import org.junit.BeforeClass;
-import org.junit.Test;
-
-/**
- *
- * @since 0.1
- */
-public class PropertiesParserTest {
-
-   public PropertiesParserTest() {
-   }
-
-   @BeforeClass
-   public static void setUpClass() {
-   }
-
-   @AfterClass
-   public static void tearDownClass() {
-   }
-
-   @Before
-   public void setUp() {
-   }
-
-   @After
-   public void tearDown() {
-   }
-
-   /**
-    * Test of parse method, of class PropertiesParser.
-    */
-   @Test
-   public void testParse() {
-      System.out.println("PropertiesParserTest: testParse");
-      File dir = new File(System.getProperty("user.dir"));
-      dir = new File(dir, "samples/netty");
-      URL url = PropertiesParserTest.class.getResource("configNetty.xml");
-      JarRepackager repackager = new JarRepackager();
-      PropertiesParser parser = new PropertiesParser(repackager);
-      ManifestModel model = parser.parse(dir, new File(url.getFile()));
-      assertNotNull("ManifestModel should not be null", model);
-      assertFalse("PropertiesParser should not have any exception", parser.hasParserExceptions());
-      assertTrue("PropertiesParser should not have any exception", repackager.getErrors().isEmpty());
-
-      File[] files = repackager.getInputFiles();
-      assertNotNull("input files should not be null", files);
-      assertEquals("input files", 33, files.length);
-
-      File file = repackager.getOutputFile();
-      assertNull("output file should be null", file);
-
-      assertEquals("existing manifest property types", 4, model.getExistingPropertyTypes().size());
-      assertEquals("new manifest property types", 2, model.getNewProperties().size());
-   }
-}
+/*
+Copyright (c) 2023 Herve Girod
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+
+Alternatively if you have any questions about this project, you can visit
+the project website at the project page on https://github.com/hervegirod/jarrepackager
+ */
+package org.girod.jarrepackager.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.regex.Pattern;
+import org.girod.jarrepackager.JarRepackager;
+import org.girod.jarrepackager.model.ConflictResolver;
+import org.girod.jarrepackager.model.EntryFilter;
+import org.girod.jarrepackager.model.ManifestModel;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @since 0.1
+ */
+public class PropertiesParserTest {
+
+   public PropertiesParserTest() {
+   }
+
+   @BeforeClass
+   public static void setUpClass() {
+   }
+
+   @AfterClass
+   public static void tearDownClass() {
+   }
+
+   @Before
+   public void setUp() {
+   }
+
+   @After
+   public void tearDown() {
+   }
+
+   /**
+    * Test of parse method, of class PropertiesParser.
+    */
+   @Test
+   public void testParse() {
+      System.out.println("PropertiesParserTest: testParse");
+      File dir = new File(System.getProperty("user.dir"));
+      dir = new File(dir, "samples/netty");
+      URL url = PropertiesParserTest.class.getResource("configNetty.xml");
+      JarRepackager repackager = new JarRepackager();
+      PropertiesParser parser = new PropertiesParser(repackager);
+      ManifestModel model = parser.parse(dir, new File(url.getFile()));
+      assertNotNull("ManifestModel should not be null", model);
+      assertFalse("PropertiesParser should not have any exception", parser.hasParserExceptions());
+      assertTrue("PropertiesParser should not have any exception", repackager.getErrors().isEmpty());
+
+      File[] files = repackager.getInputFiles();
+      assertNotNull("input files should not be null", files);
+      assertEquals("input files", 33, files.length);
+
+      File file = repackager.getOutputFile();
+      assertNull("output file should be null", file);
+
+      assertEquals("existing manifest property types", 4, model.getExistingPropertyTypes().size());
+      assertEquals("new manifest property types", 2, model.getNewProperties().size());
+   }
+
+   /**
+    * Test of parse method, of class PropertiesParser, with glob patterns and exclusions.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testParseGlobs() throws IOException {
+      System.out.println("PropertiesParserTest: testParseGlobs");
+      File dir = Files.createTempDirectory("jarrepackager").toFile();
+      try {
+         String[] paths = { "lib/a/x-1.jar", "lib/a/b/y.jar", "lib/c/z-sources.jar", "lib/c/readme.txt", "lib/d/w.jar",
+            "other/q.jar", "other/r.jar" };
+         for (String path : paths) {
+            File file = new File(dir, path);
+            file.getParentFile().mkdirs();
+            file.createNewFile();
+         }
+         String config = "<properties>\n"
+            + "   <inputs>\n"
+            + "      <file url=\"other/[!q]*.jar\" />\n"
+            + "      <file url=\"lib/**/*.jar\" />\n"
+            + "      <file url=\"{lib,other}/?/*.jar\" />\n"
+            + "      <file url=\"none/*.jar\" />\n"
+            + "      <exclude url=\"**/*-sources.jar\" />\n"
+            + "      <exclude url=\"lib/d/**\" />\n"
+            + "   </inputs>\n"
+            + "</properties>\n";
+         File configFile = new File(dir, "config.xml");
+         Files.write(configFile.toPath(), config.getBytes(StandardCharsets.UTF_8));
+         JarRepackager repackager = new JarRepackager();
+         PropertiesParser parser = new PropertiesParser(repackager);
+         parser.parse(dir, configFile);
+         assertTrue("PropertiesParser should have a warning for the pattern without any file", parser.hasParserExceptions());
+
+         File[] files = repackager.getInputFiles();
+         assertNotNull("input files should not be null", files);
+         assertEquals("input files", 3, files.length);
+         assertEquals("first input file", new File(dir, "other/r.jar").getCanonicalFile(), files[0].getCanonicalFile());
+         assertEquals("second input file", new File(dir, "lib/a/b/y.jar").getCanonicalFile(), files[1].getCanonicalFile());
+         assertEquals("third input file", new File(dir, "lib/a/x-1.jar").getCanonicalFile(), files[2].getCanonicalFile());
+      } finally {
+         deleteTree(dir);
+      }
+   }
+
+   /**
+    * Test that the glob patterns of the input files and of the entry filters match the same paths.
+    */
+   @Test
+   public void testGlobEngines() {
+      System.out.println("PropertiesParserTest: testGlobEngines");
+      String[] globs = { "a/*.class", "a/**/b", "**", "a/**", "[!a-c]x", "[a-]x", "[]]x", "{a,b/c}*", "{a,}x", "a}b",
+         "a,b", "\\*x", "a.b+c(d)", "[.^]x", "**b/c" };
+      String[] paths = { "a/x.class", "a/b/x.class", "a/b", "a/c/d/b", "b", "dx", "bx", "-x", "]x", "ax", "a/x",
+         "b/cx", "x", "a}b", "a,b", "*x", "a.b+c(d)", ".x", "^x", "ab/c", "a/b/c" };
+      for (String glob : globs) {
+         String regex = GlobMatcher.toRegex(glob);
+         assertNotNull("Regular expression of " + glob, regex);
+         EntryFilter filter = new EntryFilter();
+         assertTrue("Entry filter of " + glob, filter.addInclude(glob));
+         for (String path : paths) {
+            assertEquals("Match of " + path + " by " + glob, Pattern.matches(regex, path), filter.accept(path));
+         }
+      }
+      for (String glob : new String[] { "[ab", "{a,b", "a\\" }) {
+         assertNull("Invalid pattern " + glob, GlobMatcher.toRegex(glob));
+         assertFalse("Invalid pattern " + glob, EntryFilter.isValid(glob));
+      }
+   }
+
+   /**
+    * Test of the caching of the compiled configuration of a properties file.
+    *
+    * @throws IOException
+    */
+   @Test
+   public void testConfigurationCache() throws IOException {
+      System.out.println("PropertiesParserTest: testConfigurationCache");
+      File dir = Files.createTempDirectory("jarrepackager").toFile();
+      try {
+         File libDir = new File(dir, "lib");
+         libDir.mkdirs();
+         new File(libDir, "a.jar").createNewFile();
+         new File(libDir, "b.jar").createNewFile();
+         String config = "<properties>\n"
+            + "   <manifest keep=\"skip\">\n"
+            + "      <newProperty key=\"Implementation-Title\" value=\"Test\" />\n"
+            + "   </manifest>\n"
+            + "   <inputs>\n"
+            + "      <file url=\"lib/*.jar\" />\n"
+            + "   </inputs>\n"
+            + "   <output url=\"out.jar\" />\n"
+            + "   <conflicts policy=\"lastWins\" />\n"
+            + "</properties>\n";
+         File configFile = new File(dir, "config.xml");
+         Files.write(configFile.toPath(), config.getBytes(StandardCharsets.UTF_8));
+         JarRepackager repackager = new JarRepackager();
+         PropertiesParser parser = new PropertiesParser(repackager);
+         parser.parse(configFile);
+         assertFalse("PropertiesParser should not have any exception", parser.hasParserExceptions());
+
+         ConfigurationCache cache = new ConfigurationCache(new File(dir, "cache"));
+         assertNull("The configuration should not be in the cache", cache.get(configFile));
+         cache.put(configFile, parser.getConfiguration());
+         CompiledConfiguration configuration = cache.get(configFile);
+         assertNotNull("The configuration should be in the cache", configuration);
+         assertEquals("input files", 2, configuration.getInputFiles().length);
+         assertEquals("output file", new File(dir, "out.jar").getAbsoluteFile(), configuration.getOutputFile().getAbsoluteFile());
+         assertEquals("conflict policy", ConflictResolver.LAST_WINS, configuration.getConflictPolicy());
+         assertEquals("manifest conflict policy", -1, configuration.getManifestConflictPolicy());
+         assertEquals("default manifest type", ManifestModel.SKIP, configuration.getManifestModel().getDefaultType());
+         assertEquals("new manifest property", "Test", configuration.getManifestModel().getNewProperties().get("Implementation-Title"));
+
+         repackager = new JarRepackager();
+         configuration.apply(repackager);
+         assertEquals("input files of the repackager", 2, repackager.getInputFiles().length);
+         assertEquals("conflict policy of the repackager", ConflictResolver.LAST_WINS, repackager.getConflictPolicy());
+
+         // adding a file in a scanned directory invalidates the cached configuration
+         File libFile = new File(libDir, "c.jar");
+         libFile.createNewFile();
+         libDir.setLastModified(libDir.lastModified() + 2000);
+         assertNull("The configuration should not be valid anymore", cache.get(configFile));
+      } finally {
+         deleteTree(dir);
+      }
+   }
+
+   private static void deleteTree(File file) {
+      File[] files = file.listFiles();
+      if (files != null) {
+         for (File child : files) {
+            deleteTree(child);
+         }
+      }
+      file.delete();
+   }
+}